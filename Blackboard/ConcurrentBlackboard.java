@@ -1,43 +1,589 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
 
 class ReviewMessage {
-    String username;
-    String product;
+    int usernameId; // Id-ul din SymbolTable.USERNAMES; numele se citește doar la ieșire
+    int productId;  // Id-ul din SymbolTable.PRODUCTS
     String reviewText;
     String attachment;
+    Sentiment sentimentSymbol; // Adnotarea SentimentDetectionFilter, afișată doar la ieșire
+    Sentiment sentimentLabel;  // Adnotarea SentimentDetectionPlusFilter, afișată doar la ieșire
+    private String analyzedText; // Textul pentru care este valid câmpul analysis
+    private int analysis;        // Analiza textului împachetată (vezi analysis()); 0 = încă neanalizat
+    long walSequence = -1; // Secvența din WriteAheadLog; -1 cât timp mesajul nu a fost notat
 
     public ReviewMessage(String username, String product, String reviewText, String attachment) {
-        this.username = username;
-        this.product = product;
+        this(SymbolTable.USERNAMES.intern(username), SymbolTable.PRODUCTS.intern(product), reviewText, attachment);
+    }
+
+    // Pentru cititorii de fișiere, care internează numele direct din octeți
+    ReviewMessage(int usernameId, int productId, String reviewText, String attachment) {
+        this.usernameId = usernameId;
+        this.productId = productId;
         this.reviewText = reviewText;
         this.attachment = attachment;
     }
 
+    // Sentimentul și categoriile de moderare, calculate o singură dată și refolosite de toate filtrele de text
+    Sentiment sentiment() {
+        return Sentiment.of((analysis() >>> 1) & 3);
+    }
+
+    int moderationMask() {
+        return analysis() >>> 3;
+    }
+
+    // Bitul 0 = calculată, biții 1-2 = Sentiment.ordinal(), restul = masca de moderare. Un singur int, fără obiect
+    // pe heap; scrierea lui este atomică, deci filtrele care rulează în paralel văd fie analiza completă, fie 0
+    private int analysis() {
+        int current = analysis;
+        if (current == 0 || analyzedText != reviewText) {
+            String text = reviewText;
+            Sentiment sentiment = Sentiment.of(text, 0, text == null ? 0 : text.length());
+            current = 1 | sentiment.ordinal() << 1 | ModerationPatterns.DEFAULT.scan(text) << 3;
+            analyzedText = text;
+            analysis = current;
+        }
+        return current;
+    }
+
+    // Textul recenziei cu adnotările de sentiment, generat doar la afișare
+    String renderedText() {
+        if (sentimentSymbol == null && sentimentLabel == null) return reviewText;
+        StringBuilder text = new StringBuilder(reviewText);
+        if (sentimentSymbol != null) text.append(sentimentSymbol.symbol);
+        if (sentimentLabel != null) text.append(sentimentLabel.label);
+        return text.toString();
+    }
+
+    // Numele sunt materializate din SymbolTable doar la ieșire
+    String username() {
+        return SymbolTable.USERNAMES.name(usernameId);
+    }
+
+    String product() {
+        return SymbolTable.PRODUCTS.name(productId);
+    }
+
     @Override
     public String toString() {
-        return username + ", " + product + ", " + reviewText + ", " + attachment;
+        return username() + ", " + product() + ", " + renderedText() + ", " + attachment;
     }
 }
 
 class Blackboard {
-    private final List<BlockingQueue<ReviewMessage>> queues;  // Cozi pentru fiecare etapă
-    
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private final List<BoundedStageQueue> queues;  // Cozi pentru fiecare etapă
+    private final WaitStrategy waitStrategy; // Cum așteaptă filtrele pe o etapă goală
+    private final WriteAheadLog wal;         // Opțional: jurnalul intrărilor în etapa 0 și al ieșirilor din Blackboard
+
     public Blackboard(int numStages) {
+        this(numStages, WaitStrategies.fromSystemProperty());
+    }
+
+    public Blackboard(int numStages, WaitStrategy waitStrategy) {
+        this(numStages, waitStrategy, DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+    }
+
+    // Politica se aplică etapei 0, unde intră mesajele; între etape filtrele așteaptă loc,
+    // deci presiunea unei etape lente ajunge până la intrare
+    public Blackboard(int numStages, WaitStrategy waitStrategy, int capacity, OverflowPolicy ingestPolicy) {
+        this(numStages, waitStrategy, capacity, ingestPolicy, null);
+    }
+
+    // Cu WAL, un mesaj eliminat în tăcere de DROP_* ar rămâne nefinalizat și ar fi reluat la repornire
+    public Blackboard(int numStages, WaitStrategy waitStrategy, int capacity, OverflowPolicy ingestPolicy, WriteAheadLog wal) {
+        if (wal != null && ingestPolicy != OverflowPolicy.BLOCK && ingestPolicy != OverflowPolicy.REJECT) {
+            throw new IllegalArgumentException("WriteAheadLog cere politica BLOCK sau REJECT pe etapa 0, nu " + ingestPolicy);
+        }
+        this.waitStrategy = waitStrategy;
+        this.wal = wal;
         queues = new ArrayList<>();
         for (int i = 0; i < numStages; i++) {
-            queues.add(new LinkedBlockingQueue<>());
+            OverflowPolicy policy = i == 0 ? ingestPolicy : OverflowPolicy.BLOCK;
+            queues.add(new BoundedStageQueue(new LinkedBlockingQueue<>(capacity), capacity, policy));
         }
     }
 
-    // Adaugă mesaj la o anumită etapă (coadă)
+    // Adaugă mesaj la o anumită etapă (coadă); cu WAL intrarea în etapa 0 este notată înainte de put
     public void addToStage(int stage, ReviewMessage message) throws InterruptedException {
-        queues.get(stage).put(message);
+        if (stage != 0 || wal == null || message == ReviewPipeline.END_MESSAGE) {
+            queues.get(stage).put(message);
+            return;
+        }
+        if (message.walSequence < 0) wal.logIngest(message); // Mesajele reluate sunt deja în jurnal
+        try {
+            queues.get(stage).put(message);
+        } catch (RejectedExecutionException e) {
+            wal.logCompletion(message);
+            throw e;
+        }
+    }
+
+    // Mesajul a ieșit din Blackboard: eliminat de un filtru sau acceptat după ultima etapă.
+    // Cu WAL ieșirea este notată, ca mesajul să nu fie reluat la repornire.
+    public void complete(ReviewMessage message) {
+        if (wal != null) wal.logCompletion(message);
+    }
+
+    public WriteAheadLog getWriteAheadLog() {
+        return wal;
     }
 
-    // Preia mesaj de la o anumită etapă (coadă)
+    // Preia mesaj de la o anumită etapă (coadă), așteptând conform strategiei alese
     public ReviewMessage getFromStage(int stage) throws InterruptedException {
-        return queues.get(stage).poll(100, TimeUnit.MILLISECONDS); 
+        return waitStrategy.take(queues.get(stage));
+    }
+
+    // Contoarele de adâncime ale unei etape
+    public BoundedStageQueue getStage(int stage) {
+        return queues.get(stage);
+    }
+}
+
+// Ce face put() când coada unei etape este plină
+enum OverflowPolicy {
+    BLOCK,       // Producătorul așteaptă loc (backpressure)
+    DROP_NEWEST, // Mesajul nou este eliminat
+    DROP_OLDEST, // Cel mai vechi mesaj din coadă este eliminat ca să facă loc
+    REJECT       // put() aruncă RejectedExecutionException către cel care trimite
+}
+
+// Coada mărginită a unei etape, cu politică de depășire și contoare de adâncime.
+// END_MESSAGE așteaptă mereu loc, ca etapele următoare să se oprească și sub suprasarcină.
+// REJECT este gândit pentru etapa de intrare; între etape se folosesc BLOCK sau DROP_*.
+class BoundedStageQueue extends AbstractQueue<ReviewMessage> implements BlockingQueue<ReviewMessage> {
+    private final BlockingQueue<ReviewMessage> delegate;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+
+    BoundedStageQueue(BlockingQueue<ReviewMessage> delegate, int capacity, OverflowPolicy policy) {
+        this.delegate = delegate;
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    @Override
+    public void put(ReviewMessage message) throws InterruptedException {
+        if (message == ReviewPipeline.END_MESSAGE || policy == OverflowPolicy.BLOCK) {
+            delegate.put(message);
+        } else if (!delegate.offer(message)) {
+            switch (policy) {
+                case DROP_NEWEST:
+                    dropped.incrementAndGet();
+                    return;
+                case DROP_OLDEST:
+                    do {
+                        if (delegate.poll() != null) dropped.incrementAndGet();
+                    } while (!delegate.offer(message));
+                    break;
+                case REJECT:
+                default:
+                    rejected.incrementAndGet();
+                    throw new RejectedExecutionException("Coada etapei este plină (" + capacity + " mesaje)");
+            }
+        }
+        recordDepth();
+    }
+
+    @Override
+    public boolean offer(ReviewMessage message) {
+        boolean added = delegate.offer(message);
+        if (added) recordDepth();
+        return added;
+    }
+
+    @Override
+    public boolean offer(ReviewMessage message, long timeout, TimeUnit unit) throws InterruptedException {
+        boolean added = delegate.offer(message, timeout, unit);
+        if (added) recordDepth();
+        return added;
+    }
+
+    // Vârful de adâncime; size() este ieftin pe LinkedBlockingQueue
+    void recordDepth() {
+        int depth = delegate.size();
+        int current = maxDepth.get();
+        while (depth > current && !maxDepth.compareAndSet(current, depth)) {
+            current = maxDepth.get();
+        }
+    }
+
+    @Override
+    public ReviewMessage take() throws InterruptedException {
+        return delegate.take();
+    }
+
+    @Override
+    public ReviewMessage poll() {
+        return delegate.poll();
+    }
+
+    @Override
+    public ReviewMessage poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.poll(timeout, unit);
+    }
+
+    @Override
+    public ReviewMessage peek() {
+        return delegate.peek();
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return delegate.remainingCapacity();
+    }
+
+    @Override
+    public int drainTo(Collection<? super ReviewMessage> c) {
+        return delegate.drainTo(c);
+    }
+
+    @Override
+    public int drainTo(Collection<? super ReviewMessage> c, int maxElements) {
+        return delegate.drainTo(c, maxElements);
+    }
+
+    @Override
+    public Iterator<ReviewMessage> iterator() {
+        return delegate.iterator();
+    }
+
+    BlockingQueue<ReviewMessage> getDelegate() {
+        return delegate;
+    }
+
+    OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return "adâncime " + size() + "/" + capacity + ", maxim " + getMaxDepth()
+                + ", eliminate " + getDroppedCount() + ", respinse " + getRejectedCount();
+    }
+}
+
+// Categoriile de moderare recunoscute de MultiPatternMatcher
+enum ModerationCategory {
+    PROFANITY,  // Cuvinte obscene
+    PROPAGANDA  // Propagandă politică
+}
+
+// Automat Aho-Corasick compilat o singură dată: o singură trecere peste text spune ce categorii apar,
+// indiferent câte șabloane sunt încărcate
+class MultiPatternMatcher {
+    private final int[] asciiClasses = new int[128]; // Clasa fiecărui caracter ASCII (0 = nu apare în șabloane)
+    private final Map<Character, Integer> otherClasses = new HashMap<>(); // Clasele caracterelor non-ASCII
+    private final int alphabetSize;
+    private final int[] transitions; // Automat complet: transitions[stare * alphabetSize + clasă]
+    private final int[] outputs;     // Masca de categorii recunoscute în fiecare stare
+    private final int allCategories;
+
+    public MultiPatternMatcher(Map<ModerationCategory, ? extends Collection<String>> patterns) {
+        // Alfabetul compact: doar caracterele care apar în șabloane, plus clasa 0 pentru restul
+        int classes = 1;
+        int categories = 0;
+        for (Map.Entry<ModerationCategory, ? extends Collection<String>> entry : patterns.entrySet()) {
+            categories |= 1 << entry.getKey().ordinal();
+            for (String pattern : entry.getValue()) {
+                if (pattern.isEmpty()) {
+                    throw new IllegalArgumentException("Șablonul nu poate fi gol pentru " + entry.getKey());
+                }
+                for (char c : pattern.toCharArray()) {
+                    if (classOf(c) == 0) {
+                        if (c < 128) asciiClasses[c] = classes++;
+                        else otherClasses.put(c, classes++);
+                    }
+                }
+            }
+        }
+        this.alphabetSize = classes;
+        this.allCategories = categories;
+
+        // Trie-ul șabloanelor
+        List<int[]> gotoRows = new ArrayList<>();
+        List<Integer> masks = new ArrayList<>();
+        gotoRows.add(newRow());
+        masks.add(0);
+        for (Map.Entry<ModerationCategory, ? extends Collection<String>> entry : patterns.entrySet()) {
+            int bit = 1 << entry.getKey().ordinal();
+            for (String pattern : entry.getValue()) {
+                int state = 0;
+                for (int i = 0; i < pattern.length(); i++) {
+                    int c = classOf(pattern.charAt(i));
+                    if (gotoRows.get(state)[c] == -1) {
+                        gotoRows.get(state)[c] = gotoRows.size();
+                        gotoRows.add(newRow());
+                        masks.add(0);
+                    }
+                    state = gotoRows.get(state)[c];
+                }
+                masks.set(state, masks.get(state) | bit);
+            }
+        }
+
+        // Legăturile de eșec, în ordinea lățimii; tranzițiile lipsă sunt completate din starea de eșec
+        int states = gotoRows.size();
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int[] root = gotoRows.get(0);
+        for (int c = 0; c < alphabetSize; c++) {
+            if (root[c] == -1) {
+                root[c] = 0;
+            } else {
+                fail[root[c]] = 0;
+                queue.add(root[c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            masks.set(state, masks.get(state) | masks.get(fail[state]));
+            int[] row = gotoRows.get(state);
+            for (int c = 0; c < alphabetSize; c++) {
+                if (row[c] == -1) {
+                    row[c] = gotoRows.get(fail[state])[c];
+                } else {
+                    fail[row[c]] = gotoRows.get(fail[state])[c];
+                    queue.add(row[c]);
+                }
+            }
+        }
+
+        this.transitions = new int[states * alphabetSize];
+        this.outputs = new int[states];
+        for (int state = 0; state < states; state++) {
+            System.arraycopy(gotoRows.get(state), 0, transitions, state * alphabetSize, alphabetSize);
+            outputs[state] = masks.get(state);
+        }
+    }
+
+    private int[] newRow() {
+        int[] row = new int[alphabetSize];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    private int classOf(char c) {
+        return c < 128 ? asciiClasses[c] : otherClasses.getOrDefault(c, 0);
+    }
+
+    // O singură trecere peste text; întoarce masca categoriilor găsite (bitul ordinal() al fiecărei categorii)
+    public int scan(CharSequence text) {
+        if (text == null) return 0;
+        int state = 0;
+        int mask = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * alphabetSize + classOf(text.charAt(i))];
+            mask |= outputs[state];
+            if (mask == allCategories) break; // Toate categoriile au fost deja găsite
+        }
+        return mask;
+    }
+
+    static boolean contains(int mask, ModerationCategory category) {
+        return (mask & (1 << category.ordinal())) != 0;
+    }
+}
+
+// Șabloanele de moderare folosite de filtre
+class ModerationPatterns {
+    static final MultiPatternMatcher DEFAULT = new MultiPatternMatcher(Map.of(
+            ModerationCategory.PROFANITY, List.of("@#$%"),
+            ModerationCategory.PROPAGANDA, List.of("+++", "---")));
+}
+
+// Sentimentul dedus din raportul dintre literele mari și cele mici; textul afișat se generează doar la ieșire
+enum Sentiment {
+    POSITIVE(" +", " (Positive)"),
+    NEGATIVE(" -", " (Negative)"),
+    NEUTRAL(" =", " (Neutral)");
+
+    final String symbol; // Forma scurtă, adăugată de SentimentDetectionFilter
+    final String label;  // Eticheta, adăugată de SentimentDetectionPlusFilter
+    private static final Sentiment[] VALUES = values(); // values() copiază tabloul la fiecare apel
+
+    Sentiment(String symbol, String label) {
+        this.symbol = symbol;
+        this.label = label;
+    }
+
+    static Sentiment fromCounts(int upperCaseCount, int lowerCaseCount) {
+        if (upperCaseCount > lowerCaseCount) return POSITIVE;
+        if (lowerCaseCount > upperCaseCount) return NEGATIVE;
+        return NEUTRAL;
+    }
+
+    static Sentiment of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    // Numără literele direct din text[from, to), fără copia char[] făcută de toCharArray()
+    static Sentiment of(CharSequence text, int from, int to) {
+        int upperCaseCount = 0, lowerCaseCount = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (Character.isUpperCase(c)) upperCaseCount++;
+            else if (Character.isLowerCase(c)) lowerCaseCount++;
+        }
+        return fromCounts(upperCaseCount, lowerCaseCount);
+    }
+}
+
+// Strategia prin care un filtru așteaptă când coada de intrare este goală
+interface WaitStrategy {
+    <E> E take(BlockingQueue<E> queue) throws InterruptedException;
+}
+
+// Blochează thread-ul pe coadă până sosește un mesaj; nu consumă CPU cât timp așteaptă
+class BlockingWaitStrategy implements WaitStrategy {
+    @Override
+    public <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+        return queue.take();
+    }
+}
+
+// Câteva încercări active, apoi park cu durată crescătoare până la maxParkNanos
+class SpinThenParkWaitStrategy implements WaitStrategy {
+    private final int spinTries;
+    private final long maxParkNanos;
+
+    public SpinThenParkWaitStrategy() {
+        this(100, 1_000_000);
+    }
+
+    public SpinThenParkWaitStrategy(int spinTries, long maxParkNanos) {
+        this.spinTries = spinTries;
+        this.maxParkNanos = maxParkNanos;
+    }
+
+    @Override
+    public <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+        int idleCount = 0;
+        long parkNanos = 1_000;
+        E e;
+        while ((e = queue.poll()) == null) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (idleCount < spinTries) {
+                Thread.onSpinWait();
+                idleCount++;
+            } else {
+                LockSupport.parkNanos(parkNanos);
+                parkNanos = Math.min(parkNanos * 2, maxParkNanos);
+            }
+        }
+        return e;
+    }
+}
+
+// Câteva încercări active, apoi cedează procesorul cu Thread.yield()
+class YieldingWaitStrategy implements WaitStrategy {
+    private static final int SPIN_TRIES = 100;
+
+    @Override
+    public <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+        int idleCount = 0;
+        E e;
+        while ((e = queue.poll()) == null) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (idleCount < SPIN_TRIES) {
+                Thread.onSpinWait();
+                idleCount++;
+            } else {
+                Thread.yield();
+            }
+        }
+        return e;
+    }
+}
+
+// Verifică coada continuu; latență minimă, dar ocupă un nucleu întreg
+class BusySpinWaitStrategy implements WaitStrategy {
+    @Override
+    public <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+        E e;
+        while ((e = queue.poll()) == null) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            Thread.onSpinWait();
+        }
+        return e;
+    }
+}
+
+// Alegerea strategiei pentru o instalare: -Dpipeline.waitStrategy=blocking|spin-park|yielding|busy-spin
+class WaitStrategies {
+    static final String PROPERTY = "pipeline.waitStrategy";
+
+    static WaitStrategy fromName(String name) {
+        switch (name.toLowerCase()) {
+            case "blocking":
+                return new BlockingWaitStrategy();
+            case "spin-park":
+                return new SpinThenParkWaitStrategy();
+            case "yielding":
+                return new YieldingWaitStrategy();
+            case "busy-spin":
+                return new BusySpinWaitStrategy();
+            default:
+                throw new IllegalArgumentException("Strategie de așteptare necunoscută: " + name);
+        }
+    }
+
+    static WaitStrategy fromSystemProperty() {
+        return fromName(System.getProperty(PROPERTY, "blocking"));
     }
 }
 class ClientConfig {
@@ -66,9 +612,143 @@ interface Filter {
     void process(Blackboard blackboard);
 }
 
+// Histogramă de latențe în nanosecunde, cu găleți log-liniare (eroare relativă sub 1/32 ≈ 3%).
+// record() nu alocă și poate fi apelat în paralel cu snapshot()/snapshotAndReset() din alt thread.
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int LINEAR_BUCKETS = 1 << SUB_BUCKET_BITS;   // Valorile 0..63 ns au găleata lor
+    private static final int HALF_BUCKETS = LINEAR_BUCKETS / 2;       // Găleți pe fiecare putere a lui 2 de mai sus
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (63 - SUB_BUCKET_BITS + 1) * HALF_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT); // Intervalul curent, golit la snapshotAndReset
+    private final AtomicLong max = new AtomicLong();
+    private final AtomicLong totalCount = new AtomicLong(); // Totaluri cumulative, nu se resetează
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucketOf(nanos));
+        totalCount.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long current = max.get();
+        while (nanos > current && !max.compareAndSet(current, nanos)) {
+            current = max.get();
+        }
+    }
+
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    // Copie a intervalului curent, fără resetare
+    public LatencySnapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new LatencySnapshot(copy, max.get());
+    }
+
+    // Copie a intervalului curent și începutul unui interval nou; fiecare valoare ajunge în exact un snapshot
+    public LatencySnapshot snapshotAndReset() {
+        long[] copy = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.getAndSet(i, 0);
+        }
+        return new LatencySnapshot(copy, max.getAndSet(0));
+    }
+
+    static int bucketOf(long value) {
+        if (value < LINEAR_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return LINEAR_BUCKETS + (shift - 1) * HALF_BUCKETS + (int) (value >>> shift) - HALF_BUCKETS;
+    }
+
+    static long lowestValueOf(int bucket) {
+        if (bucket < LINEAR_BUCKETS) return bucket;
+        int offset = bucket - LINEAR_BUCKETS;
+        int shift = offset / HALF_BUCKETS + 1;
+        return (long) (offset % HALF_BUCKETS + HALF_BUCKETS) << shift;
+    }
+
+    static long highestValueOf(int bucket) {
+        if (bucket < LINEAR_BUCKETS) return bucket;
+        int shift = (bucket - LINEAR_BUCKETS) / HALF_BUCKETS + 1;
+        return lowestValueOf(bucket) + (1L << shift) - 1;
+    }
+}
+
+// Distribuția latențelor dintr-un interval, calculată la raportare (în afara buclei filtrului)
+final class LatencySnapshot {
+    private final long[] counts;
+    private final long count;
+    private final long max;
+
+    LatencySnapshot(long[] counts, long recordedMax) {
+        this.counts = counts;
+        long total = 0;
+        long highest = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) continue;
+            total += counts[i];
+            highest = LatencyHistogram.lowestValueOf(i);
+        }
+        this.count = total;
+        // Un record() concurent cu resetarea poate lăsa maximul într-un interval și valoarea în celălalt
+        this.max = total == 0 ? 0 : Math.max(recordedMax, highest);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    // Latența (ns) sub care se află fracția dată din mesaje, ex. 0.99 pentru p99
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(LatencyHistogram.highestValueOf(i), max);
+        }
+        return max;
+    }
+
+    public long getP50() {
+        return getValueAtPercentile(0.50);
+    }
+
+    public long getP90() {
+        return getValueAtPercentile(0.90);
+    }
+
+    public long getP99() {
+        return getValueAtPercentile(0.99);
+    }
+
+    public long getP999() {
+        return getValueAtPercentile(0.999);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d, p50=%.1f µs, p90=%.1f µs, p99=%.1f µs, p999=%.1f µs, max=%.1f µs",
+                count, getP50() / 1000.0, getP90() / 1000.0, getP99() / 1000.0, getP999() / 1000.0, max / 1000.0);
+    }
+}
+
 interface FilterMetrics {
-    long getProcessingTime();
+    long getProcessingTime(); // Timpul cumulat în ms
     int getProcessedMessages();
+    LatencyHistogram getLatencyHistogram(); // Latența fiecărui mesaj trimis mai departe, în ns
 }
 
 
@@ -76,8 +756,7 @@ class CheckProfanitiesFilter implements Filter,FilterMetrics {
     private final ClientConfig config;
     private final int inputStage;   // Etapa (coada) de intrare
     private final int outputStage;  // Etapa (coada) de ieșire
-    private long processingTime = 0; 
-    private int processedMessages = 0;
+    private final LatencyHistogram latency = new LatencyHistogram();
 
     public CheckProfanitiesFilter(ClientConfig config, int inputStage, int outputStage) {
         this.config = config;
@@ -89,10 +768,9 @@ class CheckProfanitiesFilter implements Filter,FilterMetrics {
     public void process(Blackboard blackboard) {
         try {
             while (true) {
-                long startTime = System.currentTimeMillis();
                 // Preia mesaj din coada de intrare
                 ReviewMessage message = blackboard.getFromStage(inputStage);
-                if (message == null) continue;
+                long startTime = System.nanoTime();
 
                 // Propagă mesajul de END către următoarea etapă
                 if (message == ReviewPipeline.END_MESSAGE) {
@@ -101,15 +779,15 @@ class CheckProfanitiesFilter implements Filter,FilterMetrics {
                 }
 
                 // Procesare: elimină mesajele cu profanități
-                if (config.checkProfanities && message.reviewText.contains("@#$%")) {
+                if (config.checkProfanities
+                        && MultiPatternMatcher.contains(message.moderationMask(), ModerationCategory.PROFANITY)) {
+                    blackboard.complete(message);
                     continue; // Nu adăuga mesajul în următoarea coadă
                 }
 
                 // Trimite mesajul la următoarea etapă
                 blackboard.addToStage(outputStage, message);
-                processedMessages++;
-                long endTime = System.currentTimeMillis(); 
-                processingTime += (endTime - startTime); 
+                latency.record(System.nanoTime() - startTime);
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -117,305 +795,1651 @@ class CheckProfanitiesFilter implements Filter,FilterMetrics {
     }
     
     public long getProcessingTime() {
-        return processingTime;
+        return latency.getTotalNanos() / 1_000_000;
     }
 
     public int getProcessedMessages() {
-        return processedMessages;
+        return (int) latency.getTotalCount();
+    }
+
+    public LatencyHistogram getLatencyHistogram() {
+        return latency;
     }
 }
-class CheckBuyerFilter implements Filter, FilterMetrics{
-    private final Map<String, String> buyers;
-    private final ClientConfig config;
-    private final int inputStage;   // Etapa de intrare
-    private final int outputStage;  // Etapa de ieșire
-    private long processingTime = 0;
-    private int processedMessages = 0; 
+// Tabel concurent de simboluri: fiecare nume de utilizator sau produs distinct primește o singură dată un id int.
+// Mesajele, filtrele și indexul de achiziții lucrează doar cu id-uri; numele se citesc înapoi abia la ieșire.
+// Id -> nume nu ia lock; adăugarea unui simbol nou este serializată, dar are loc o singură dată pe simbol.
+final class SymbolTable {
+    static final int NONE = 0; // Id-ul valorii null; simbolurile reale primesc id-uri de la 1
+    static final SymbolTable USERNAMES = new SymbolTable();
+    static final SymbolTable PRODUCTS = new SymbolTable();
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[1024]; // Numele după id; publicat după fiecare adăugare
+    private int nextId = 1;
+
+    // Index după octeții UTF-8, pentru cititorii de fișiere: un simbol deja văzut nu mai cere un String nou
+    private int[] byteIds = new int[1024]; // 0 = slot liber
+    private byte[][] byteKeys = new byte[1024][];
+    private int byteCount;
+
+    int intern(String name) {
+        if (name == null) {
+            return NONE;
+        }
+        Integer id = ids.get(name);
+        return id != null ? id : add(name);
+    }
 
-    public CheckBuyerFilter(Map<String, String> buyers, ClientConfig config, int inputStage, int outputStage) {
-        this.buyers = buyers;
-        this.config = config;
-        this.inputStage = inputStage;
-        this.outputStage = outputStage;
+    // Id-ul unui nume deja internat sau NONE, fără a-l adăuga
+    int find(String name) {
+        if (name == null) {
+            return NONE;
+        }
+        Integer id = ids.get(name);
+        return id == null ? NONE : id;
     }
 
-    @Override
-    public void process(Blackboard blackboard) {
-        try {
-            while (true) {
-                long startTime = System.currentTimeMillis(); // Masurarea timpului de inceput
-                // Preia mesaj din coada corespunzătoare etapei de intrare
-                ReviewMessage message = blackboard.getFromStage(inputStage);
-                if (message == null) continue;
+    String name(int id) {
+        return names[id];
+    }
 
-                // Propagă mesajul de END către următoarea etapă
-                if (message == ReviewPipeline.END_MESSAGE) {
-                    blackboard.addToStage(outputStage, message);
-                    break;
-                }
+    int size() {
+        return ids.size();
+    }
 
-                // Verifică dacă utilizatorul a cumpărat produsul (doar dacă este activat în config)
-                if (config.checkBuyer) {
-                    String purchasedProduct = buyers.getOrDefault(message.username, "");
-                    if (!purchasedProduct.equals(message.product)) {
-                        continue; // Sarim peste mesaj dacă nu este valid
-                    }
-                }
+    private synchronized int add(String name) {
+        Integer existing = ids.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        int id = nextId++;
+        String[] current = names;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, id * 2);
+        }
+        current[id] = name;
+        names = current;
+        ids.put(name, id); // Cine primește id-ul îl primește după ce numele a fost publicat
+        return id;
+    }
 
-        
-                blackboard.addToStage(outputStage, message);
-                processedMessages++;
-                long endTime = System.currentTimeMillis(); 
-                processingTime += (endTime - startTime); 
+    // Internează octeții UTF-8 dați; de obicei un singur thread citește fișierul, deci lock-ul nu este disputat
+    synchronized int intern(byte[] bytes, int offset, int length) {
+        int mask = byteIds.length - 1;
+        int slot = hash(bytes, offset, length) & mask;
+        while (byteIds[slot] != 0) {
+            byte[] key = byteKeys[slot];
+            if (Arrays.equals(key, 0, key.length, bytes, offset, offset + length)) {
+                return byteIds[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        byte[] key = Arrays.copyOfRange(bytes, offset, offset + length);
+        int id = intern(new String(key, StandardCharsets.UTF_8));
+        byteIds[slot] = id;
+        byteKeys[slot] = key;
+        if (++byteCount > byteIds.length / 4 * 3) {
+            rehashBytes();
+        }
+        return id;
+    }
+
+    private void rehashBytes() {
+        int[] oldIds = byteIds;
+        byte[][] oldKeys = byteKeys;
+        byteIds = new int[oldIds.length * 2];
+        byteKeys = new byte[oldIds.length * 2][];
+        int mask = byteIds.length - 1;
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] == 0) {
+                continue;
+            }
+            byte[] key = oldKeys[i];
+            int slot = hash(key, 0, key.length) & mask;
+            while (byteIds[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            byteIds[slot] = oldIds[i];
+            byteKeys[slot] = key;
+        }
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        hash *= 0x9E3779B9; // Nume apropiate (user1, user2, ...) ar ocupa altfel sloturi vecine
+        return hash ^ (hash >>> 16);
+    }
+}
+
+// Index imuabil al achizițiilor (utilizator, produs); un utilizator poate avea oricâte produse.
+// Fiecare pereche de id-uri din SymbolTable este o cheie long într-un tabel cu adresare deschisă (long[]),
+// fără String-uri sau noduri pe heap, iar un filtru Bloom pe blocuri răspunde la negative cu un singur acces la memorie.
+// După construcție indexul nu se mai modifică, deci poate fi partajat de oricâte filtre fără copii sau sincronizare.
+final class PurchaseIndex {
+    static final String PROPERTY = "pipeline.purchases";
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final int BLOOM_BITS_PER_ENTRY = 10; // ~1% rezultate fals pozitive cu 4 biți pe cheie
+
+    private final long[] table; // 0 = slot liber; id-urile încep de la 1, deci nicio cheie nu este 0
+    private final int mask;
+    private final long[] bloom;
+    private final int bloomMask;
+    private final int size;
+
+    private PurchaseIndex(long[] table, int size) {
+        this.table = table;
+        this.mask = table.length - 1;
+        this.size = size;
+        int words = Integer.highestOneBit(Math.max(1, (int) Math.min(1L << 30, ((long) size * BLOOM_BITS_PER_ENTRY + 63) / 64)) * 2 - 1);
+        this.bloom = new long[words];
+        this.bloomMask = words - 1;
+        for (long key : table) {
+            if (key != 0) {
+                long hash = mix(key);
+                bloom[bloomWord(hash)] |= bloomBits(hash);
+            }
+        }
+    }
+
+    boolean hasPurchased(int usernameId, int productId) {
+        if (usernameId == SymbolTable.NONE || productId == SymbolTable.NONE) {
+            return false;
+        }
+        long key = key(usernameId, productId);
+        long hash = mix(key);
+        long bits = bloomBits(hash);
+        if ((bloom[bloomWord(hash)] & bits) != bits) {
+            return false;
+        }
+        for (int slot = (int) hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (table[slot] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Un nume care nu a fost internat niciodată nu poate avea achiziții
+    boolean hasPurchased(String username, String product) {
+        return hasPurchased(SymbolTable.USERNAMES.find(username), SymbolTable.PRODUCTS.find(product));
+    }
+
+    int size() {
+        return size;
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    static PurchaseIndex of(Map<String, String> buyers) {
+        Builder builder = new Builder();
+        buyers.forEach(builder::add);
+        return builder.build();
+    }
+
+    // Încărcare în bloc dintr-un fișier CSV cu câte o pereche "username,product" pe linie (antetul este opțional)
+    static PurchaseIndex load(Path file) throws IOException {
+        Builder builder = new Builder();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            builder.reserve(channel.size() / 24); // Estimare după o linie tipică
+            ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            long lineNumber = 0;
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(buffer) < 0;
+                buffer.flip();
+                int lineStart = 0;
+                int limit = buffer.limit();
+                for (int i = 0; i < limit; i++) {
+                    if (buffer.get(i) == '\n') {
+                        builder.addLine(buffer, lineStart, i, ++lineNumber, file);
+                        lineStart = i + 1;
+                    }
+                }
+                if (eof && lineStart < limit) {
+                    builder.addLine(buffer, lineStart, limit, ++lineNumber, file); // Ultima linie fără '\n'
+                    lineStart = limit;
+                }
+                if (lineStart == 0 && limit == buffer.capacity()) {
+                    throw new IOException(file + ":" + (lineNumber + 1) + ": linie mai lungă de " + READ_BUFFER_SIZE + " octeți");
+                }
+                buffer.position(lineStart);
+                buffer.compact();
+            }
+        }
+        return builder.build();
+    }
+
+    // Fără proprietatea pipeline.purchases se folosește maparea dată, altfel achizițiile din fișier
+    static PurchaseIndex fromSystemProperty(Map<String, String> fallback) throws IOException {
+        String file = System.getProperty(PROPERTY);
+        return file == null ? of(fallback) : load(Paths.get(file));
+    }
+
+    @Override
+    public String toString() {
+        return size + " achiziții, " + table.length + " sloturi, Bloom " + (bloom.length * 8L / 1024) + " KB";
+    }
+
+    static long key(int usernameId, int productId) {
+        return ((long) usernameId << 32) | (productId & 0xFFFFFFFFL);
+    }
+
+    // Amestecul final din MurmurHash3: id-urile consecutive ajung în sloturi și cuvinte Bloom împrăștiate
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    // Cuvântul din filtrul Bloom și cei 4 biți din el provin din părți diferite ale hash-ului
+    private int bloomWord(long hash) {
+        return (int) (hash >>> 32) & bloomMask;
+    }
+
+    private static long bloomBits(long hash) {
+        int bits = (int) (hash >>> 8);
+        return (1L << bits) | (1L << (bits >>> 6)) | (1L << (bits >>> 12)) | (1L << (bits >>> 18));
+    }
+
+    static final class Builder {
+        private static final int MIN_CAPACITY = 16;
+
+        private long[] table = new long[MIN_CAPACITY];
+        private int size;
+        private byte[] scratch = new byte[256]; // Octeții câmpului curent la încărcarea din fișier
+
+        Builder add(String username, String product) {
+            return add(SymbolTable.USERNAMES.intern(username), SymbolTable.PRODUCTS.intern(product));
+        }
+
+        Builder add(int usernameId, int productId) {
+            if (usernameId != SymbolTable.NONE && productId != SymbolTable.NONE) {
+                insert(key(usernameId, productId));
+            }
+            return this;
+        }
+
+        // Pregătește tabelul pentru cel puțin expected perechi, evitând redimensionările la încărcarea în bloc
+        void reserve(long expected) {
+            int capacity = capacityFor(expected);
+            if (capacity > table.length) {
+                table = rehash(table, capacity);
+            }
+        }
+
+        PurchaseIndex build() {
+            // Tabelul final are dimensiunea potrivită pentru size, chiar dacă reserve() a estimat mai mult
+            return new PurchaseIndex(rehash(table, capacityFor(size)), size);
+        }
+
+        // Câmpurile sunt internate direct din octeți; un nume deja cunoscut nu mai construiește un String
+        private void addLine(ByteBuffer buffer, int from, int to, long lineNumber, Path file) throws IOException {
+            if (to > from && buffer.get(to - 1) == '\r') {
+                to--;
+            }
+            if (to == from) {
+                return;
+            }
+            int comma = from;
+            while (comma < to && buffer.get(comma) != ',') {
+                comma++;
+            }
+            if (comma == to) {
+                throw new IOException(file + ":" + lineNumber + ": lipsește separatorul ','");
+            }
+            if (lineNumber == 1 && matches(buffer, from, to, "username,product")) {
+                return; // Antet
+            }
+            add(intern(SymbolTable.USERNAMES, buffer, from, comma), intern(SymbolTable.PRODUCTS, buffer, comma + 1, to));
+        }
+
+        private int intern(SymbolTable symbols, ByteBuffer buffer, int from, int to) {
+            int length = to - from;
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(from, scratch, 0, length);
+            return symbols.intern(scratch, 0, length);
+        }
+
+        private void insert(long key) {
+            int mask = table.length - 1;
+            int slot = (int) mix(key) & mask;
+            while (table[slot] != 0) {
+                if (table[slot] == key) {
+                    return; // Achiziție duplicată
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = key;
+            if (++size > table.length / 4 * 3) {
+                table = rehash(table, table.length * 2);
+            }
+        }
+
+        private static long[] rehash(long[] old, int capacity) {
+            long[] table = new long[capacity];
+            int mask = capacity - 1;
+            for (long key : old) {
+                if (key != 0) {
+                    int slot = (int) mix(key) & mask;
+                    while (table[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = key;
+                }
+            }
+            return table;
+        }
+
+        // Capacitatea (putere a lui 2) la care expected perechi ocupă cel mult 3/4 din tabel
+        private static int capacityFor(long expected) {
+            long needed = Math.max(MIN_CAPACITY, expected * 4 / 3 + 1);
+            if (needed > 1 << 30) {
+                throw new IllegalArgumentException("Prea multe achiziții pentru index: " + expected);
+            }
+            return Integer.highestOneBit((int) needed * 2 - 1);
+        }
+
+        private static boolean matches(ByteBuffer buffer, int from, int to, String text) {
+            if (to - from != text.length()) {
+                return false;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                if (buffer.get(from + i) != text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
+
+class CheckBuyerFilter implements Filter, FilterMetrics{
+    private final PurchaseIndex purchases;
+    private final ClientConfig config;
+    private final int inputStage;   // Etapa de intrare
+    private final int outputStage;  // Etapa de ieșire
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public CheckBuyerFilter(PurchaseIndex purchases, ClientConfig config, int inputStage, int outputStage) {
+        this.purchases = purchases;
+        this.config = config;
+        this.inputStage = inputStage;
+        this.outputStage = outputStage;
+    }
+
+    @Override
+    public void process(Blackboard blackboard) {
+        try {
+            while (true) {
+                // Preia mesaj din coada corespunzătoare etapei de intrare
+                ReviewMessage message = blackboard.getFromStage(inputStage);
+                long startTime = System.nanoTime();
+
+                // Propagă mesajul de END către următoarea etapă
+                if (message == ReviewPipeline.END_MESSAGE) {
+                    blackboard.addToStage(outputStage, message);
+                    break;
+                }
+
+                // Verifică dacă utilizatorul a cumpărat produsul (doar dacă este activat în config)
+                if (config.checkBuyer) {
+                    if (!purchases.hasPurchased(message.usernameId, message.productId)) {
+                        blackboard.complete(message);
+                        continue; // Sarim peste mesaj dacă nu este valid
+                    }
+                }
+
+        
+                blackboard.addToStage(outputStage, message);
+                latency.record(System.nanoTime() - startTime);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    public long getProcessingTime() {
+        return latency.getTotalNanos() / 1_000_000;
+    }
+
+    public int getProcessedMessages() {
+        return (int) latency.getTotalCount();
+    }
+
+    public LatencyHistogram getLatencyHistogram() {
+        return latency;
+    }
+}
+
+class CheckPoliticalPropagandaFilter implements Filter, FilterMetrics {
+    private final ClientConfig config;
+    private final int inputStage;   // Etapa de intrare
+    private final int outputStage;  // Etapa de ieșire
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public CheckPoliticalPropagandaFilter(ClientConfig config, int inputStage, int outputStage) {
+        this.config = config;
+        this.inputStage = inputStage;
+        this.outputStage = outputStage;
+    }
+
+    @Override
+    public void process(Blackboard blackboard) {
+        try {
+            while (true) {
+                // Preia mesaj din coada corespunzătoare etapei de intrare
+                ReviewMessage message = blackboard.getFromStage(inputStage);
+                long startTime = System.nanoTime();
+
+                // Propagă mesajul de END către următoarea etapă
+                if (message == ReviewPipeline.END_MESSAGE) {
+                    blackboard.addToStage(outputStage, message);
+                    break;
+                }
+
+                // Verifică propagandă politică (doar dacă este activat în config)
+                if (config.checkPoliticalPropaganda) {
+                    int matches = message.moderationMask(); // Calculată o singură dată pentru toate filtrele
+                    if (MultiPatternMatcher.contains(matches, ModerationCategory.PROPAGANDA)) {
+                        blackboard.complete(message);
+                        continue; // Sarim peste mesaj dacă conține șabloane suspecte
+                    }
+                }
+
+                // Trimite mesajul la următoarea etapă
+                blackboard.addToStage(outputStage, message);
+                latency.record(System.nanoTime() - startTime);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    public long getProcessingTime() {
+        return latency.getTotalNanos() / 1_000_000;
+    }
+
+    public int getProcessedMessages() {
+        return (int) latency.getTotalCount();
+    }
+
+    public LatencyHistogram getLatencyHistogram() {
+        return latency;
+    }
+}
+
+class ResizeImagesFilter implements Filter, FilterMetrics {
+    private final ClientConfig config;
+    private final int inputStage;   // Etapa de intrare
+    private final int outputStage;  // Etapa de ieșire
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public ResizeImagesFilter(ClientConfig config, int inputStage, int outputStage) {
+        this.config = config;
+        this.inputStage = inputStage;
+        this.outputStage = outputStage;
+    }
+
+    @Override
+    public void process(Blackboard blackboard) {
+        try {
+            while (true) {
+                // Preia mesaj din coada corespunzătoare etapei de intrare
+                ReviewMessage message = blackboard.getFromStage(inputStage);
+                long startTime = System.nanoTime();
+
+                // Propagă mesajul de END către următoarea etapă
+                if (message == ReviewPipeline.END_MESSAGE) {
+                    blackboard.addToStage(outputStage, message);
+                    break;
+                }
+
+                // Redimensionează imaginea (doar dacă este activat în config)
+                if (config.resizeImages && message.attachment != null) {
+                    message.attachment = message.attachment.toLowerCase();
+                }
+
+                // Trimite mesajul la următoarea etapă
+                blackboard.addToStage(outputStage, message);
+                latency.record(System.nanoTime() - startTime); // Latența mesajului, în ns
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    public long getProcessingTime() {
+        return latency.getTotalNanos() / 1_000_000;
+    }
+
+    public int getProcessedMessages() {
+        return (int) latency.getTotalCount();
+    }
+
+    public LatencyHistogram getLatencyHistogram() {
+        return latency;
+    }
+}
+
+class SentimentDetectionFilter implements Filter, FilterMetrics {
+    private final ClientConfig config;
+    private final int inputStage;
+    private final int outputStage;
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public SentimentDetectionFilter(ClientConfig config, int inputStage, int outputStage) {
+        this.config = config;
+        this.inputStage = inputStage;
+        this.outputStage = outputStage;
+    }
+
+    @Override
+    public void process(Blackboard blackboard) {
+        try {
+            while (true) {
+                ReviewMessage message = blackboard.getFromStage(inputStage);
+                long startTime = System.nanoTime();
+
+                if (message == ReviewPipeline.END_MESSAGE) {
+                    blackboard.addToStage(outputStage, message);
+                    break;
+                }
+
+                if (config.detectSentiment && message.reviewText != null) {
+                    // Sufixul corespunzător este adăugat doar la afișare
+                    message.sentimentSymbol = message.sentiment();
+                }
+
+                blackboard.addToStage(outputStage, message);
+                latency.record(System.nanoTime() - startTime);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    public long getProcessingTime() {
+        return latency.getTotalNanos() / 1_000_000;
+    }
+
+    public int getProcessedMessages() {
+        return (int) latency.getTotalCount();
+    }
+
+    public LatencyHistogram getLatencyHistogram() {
+        return latency;
+    }
+}
+
+class SentimentDetectionPlusFilter implements Filter, FilterMetrics {
+    private final ClientConfig config;
+    private final int inputStage;
+    private final int outputStage;
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public SentimentDetectionPlusFilter(ClientConfig config, int inputStage, int outputStage) {
+        this.config = config;
+        this.inputStage = inputStage;
+        this.outputStage = outputStage;
+    }
+
+    @Override
+    public void process(Blackboard blackboard) {
+        try {
+            while (true) {
+                ReviewMessage message = blackboard.getFromStage(inputStage);
+                long startTime = System.nanoTime();
+
+                if (message == ReviewPipeline.END_MESSAGE) {
+                    blackboard.addToStage(outputStage, message);
+                    break;
+                }
+
+                if (config.detectSentimentPlus && message.reviewText != null) {
+                    // Eticheta detaliată refolosește analiza etapei anterioare și apare doar la afișare
+                    message.sentimentLabel = message.sentiment();
+                }
+
+                blackboard.addToStage(outputStage, message);
+                latency.record(System.nanoTime() - startTime);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    public long getProcessingTime() {
+        return latency.getTotalNanos() / 1_000_000;
+    }
+
+    public int getProcessedMessages() {
+        return (int) latency.getTotalCount();
+    }
+
+    public LatencyHistogram getLatencyHistogram() {
+        return latency;
+    }
+}
+
+// Formatul fișierelor de recenzii citite de MappedReviewReader
+enum ReviewFileFormat {
+    CSV,    // username,product,reviewText,attachment; câmpurile cu virgule sau ghilimele între "..."
+    NDJSON; // Un obiect JSON pe linie: {"username":..., "product":..., "reviewText":..., "attachment":...}
+
+    static ReviewFileFormat fromFileName(String fileName) {
+        String name = fileName.toLowerCase();
+        return name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json") ? NDJSON : CSV;
+    }
+}
+
+// Primește fiecare mesaj citit; o etapă mărginită dă backpressure până la disc
+interface ReviewSink {
+    void accept(ReviewMessage message) throws InterruptedException;
+}
+
+// Citește un fișier de recenzii prin ferestre mapate în memorie și construiește mesajele direct din octeții mapați,
+// fără String-uri intermediare pentru linii. Heap-ul folosit nu depinde de dimensiunea fișierului.
+class MappedReviewReader {
+    static final int WINDOW_SIZE = 64 * 1024 * 1024; // O înregistrare trebuie să încapă într-o fereastră
+
+    private static final int USERNAME = 0;
+    private static final int PRODUCT = 1;
+    private static final int REVIEW_TEXT = 2;
+    private static final int ATTACHMENT = 3;
+
+    private final Path path;
+    private final ReviewFileFormat format;
+    private final String[] fields = new String[4];
+    private int usernameId; // Numele de utilizator și produsul nu devin String-uri, ci id-uri din SymbolTable
+    private int productId;
+    private byte[] scratch = new byte[256]; // Octeții câmpului curent, refolosiți de la un câmp la altul
+    private int scratchLength;
+
+    public MappedReviewReader(Path path) {
+        this(path, ReviewFileFormat.fromFileName(path.getFileName().toString()));
+    }
+
+    public MappedReviewReader(Path path, ReviewFileFormat format) {
+        this.path = path;
+        this.format = format;
+    }
+
+    // Trimite fiecare recenzie din fișier către sink și întoarce numărul de mesaje; END_MESSAGE rămâne în grija apelantului
+    public long readInto(ReviewSink sink) throws IOException, InterruptedException {
+        long count = 0;
+        boolean firstRecord = true;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long windowLength = Math.min(WINDOW_SIZE, size - position);
+                boolean lastWindow = position + windowLength == size;
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowLength);
+                int limit = (int) windowLength;
+                int offset = 0;
+                while (offset < limit) {
+                    int next = format == ReviewFileFormat.CSV
+                            ? parseCsvRecord(window, offset, limit, lastWindow)
+                            : parseJsonRecord(window, offset, limit, lastWindow);
+                    if (next < 0) break; // Înregistrarea continuă în fereastra următoare
+                    boolean header = firstRecord && format == ReviewFileFormat.CSV && "username".equals(SymbolTable.USERNAMES.name(usernameId));
+                    firstRecord = false;
+                    boolean blank = usernameId == SymbolTable.NONE
+                            || (SymbolTable.USERNAMES.name(usernameId).isEmpty() && productId == SymbolTable.NONE);
+                    if (!header && !blank) {
+                        int product = productId == SymbolTable.NONE ? SymbolTable.PRODUCTS.intern("") : productId;
+                        sink.accept(new ReviewMessage(usernameId, product, orEmpty(fields[REVIEW_TEXT]), fields[ATTACHMENT]));
+                        count++;
+                    }
+                    offset = next;
+                }
+                if (offset == 0 && !lastWindow) {
+                    throw new IOException("Înregistrare mai mare decât fereastra de " + WINDOW_SIZE + " octeți la poziția " + position);
+                }
+                position += offset;
+            }
+        }
+        return count;
+    }
+
+    private static String orEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    // Întoarce poziția de după sfârșitul liniei sau -1 dacă linia nu se termină în fereastră
+    private int parseCsvRecord(ByteBuffer buffer, int offset, int limit, boolean lastWindow) {
+        Arrays.fill(fields, null);
+        usernameId = productId = SymbolTable.NONE;
+        int field = 0;
+        int i = offset;
+        while (true) {
+            scratchLength = 0;
+            if (i < limit && buffer.get(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= limit) return -1;
+                    byte b = buffer.get(i++);
+                    if (b == '"') {
+                        if (i < limit && buffer.get(i) == '"') {
+                            append((byte) '"'); // "" în interiorul ghilimelelor
+                            i++;
+                        } else if (i >= limit && !lastWindow) {
+                            return -1;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        append(b);
+                    }
+                }
+            }
+            while (i < limit) {
+                byte b = buffer.get(i);
+                if (b == ',' || b == '\n') break;
+                if (b != '\r') append(b);
+                i++;
+            }
+            if (i >= limit && !lastWindow) return -1;
+            if (field < fields.length) {
+                store(field);
+            }
+            field++;
+            if (i >= limit) return limit;
+            if (buffer.get(i++) == '\n') return i;
+        }
+    }
+
+    // Un obiect JSON pe o linie; cheile necunoscute și valorile care nu sunt șiruri sunt ignorate
+    private int parseJsonRecord(ByteBuffer buffer, int offset, int limit, boolean lastWindow) {
+        int end = offset;
+        while (end < limit && buffer.get(end) != '\n') end++;
+        if (end == limit && !lastWindow) return -1;
+        int next = end == limit ? limit : end + 1;
+
+        Arrays.fill(fields, null);
+        usernameId = productId = SymbolTable.NONE;
+        int i = offset;
+        while (i < end) {
+            // Cheia
+            while (i < end && buffer.get(i) != '"') i++;
+            if (i >= end) break;
+            i = readJsonString(buffer, i + 1, end);
+            int key = fieldIndex();
+            // Valoarea
+            while (i < end && buffer.get(i) != ':') i++;
+            i++;
+            while (i < end && buffer.get(i) == ' ') i++;
+            if (i < end && buffer.get(i) == '"') {
+                i = readJsonString(buffer, i + 1, end);
+                if (key >= 0) store(key);
+            } else {
+                while (i < end && buffer.get(i) != ',' && buffer.get(i) != '}') i++;
+            }
+            i++;
+        }
+        return next;
+    }
+
+    // Citește un șir JSON (fără ghilimeaua de deschidere) în scratch și întoarce poziția de după ghilimeaua de închidere
+    private int readJsonString(ByteBuffer buffer, int i, int end) {
+        scratchLength = 0;
+        while (i < end) {
+            byte b = buffer.get(i++);
+            if (b == '"') return i;
+            if (b != '\\' || i >= end) {
+                append(b);
+                continue;
+            }
+            byte escaped = buffer.get(i++);
+            switch (escaped) {
+                case 'n': append((byte) '\n'); break;
+                case 't': append((byte) '\t'); break;
+                case 'r': append((byte) '\r'); break;
+                case 'b': append((byte) '\b'); break;
+                case 'f': append((byte) '\f'); break;
+                case 'u':
+                    if (i + 4 <= end) {
+                        int code = hex4(buffer, i);
+                        i += 4;
+                        // Caracterele din afara BMP vin ca două escape-uri consecutive (pereche de surogate)
+                        if (Character.isHighSurrogate((char) code) && i + 6 <= end
+                                && buffer.get(i) == '\\' && buffer.get(i + 1) == 'u') {
+                            int low = hex4(buffer, i + 2);
+                            if (Character.isLowSurrogate((char) low)) {
+                                code = Character.toCodePoint((char) code, (char) low);
+                                i += 6;
+                            }
+                        }
+                        appendUtf8(code);
+                    }
+                    break;
+                default: append(escaped); // \" \\ \/
+            }
+        }
+        return i;
+    }
+
+    private static int hex4(ByteBuffer buffer, int i) {
+        int code = 0;
+        for (int k = 0; k < 4; k++) {
+            code = code * 16 + Character.digit((char) buffer.get(i + k), 16);
+        }
+        return code;
+    }
+
+    private int fieldIndex() {
+        if (matches("username")) return USERNAME;
+        if (matches("product")) return PRODUCT;
+        if (matches("reviewText") || matches("text")) return REVIEW_TEXT;
+        if (matches("attachment")) return ATTACHMENT;
+        return -1;
+    }
+
+    private boolean matches(String key) {
+        if (key.length() != scratchLength) return false;
+        for (int i = 0; i < scratchLength; i++) {
+            if (scratch[i] != key.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private void append(byte b) {
+        if (scratchLength == scratch.length) {
+            scratch = Arrays.copyOf(scratch, scratch.length * 2);
+        }
+        scratch[scratchLength++] = b;
+    }
+
+    private void appendUtf8(int code) {
+        if (code < 0x80) {
+            append((byte) code);
+        } else if (code < 0x800) {
+            append((byte) (0xC0 | (code >> 6)));
+            append((byte) (0x80 | (code & 0x3F)));
+        } else if (code < 0x10000) {
+            append((byte) (0xE0 | (code >> 12)));
+            append((byte) (0x80 | ((code >> 6) & 0x3F)));
+            append((byte) (0x80 | (code & 0x3F)));
+        } else {
+            append((byte) (0xF0 | (code >> 18)));
+            append((byte) (0x80 | ((code >> 12) & 0x3F)));
+            append((byte) (0x80 | ((code >> 6) & 0x3F)));
+            append((byte) (0x80 | (code & 0x3F)));
+        }
+    }
+
+    private void store(int field) {
+        if (field == USERNAME) {
+            usernameId = SymbolTable.USERNAMES.intern(scratch, 0, scratchLength);
+        } else if (field == PRODUCT) {
+            productId = SymbolTable.PRODUCTS.intern(scratch, 0, scratchLength);
+        } else {
+            fields[field] = decode();
+        }
+    }
+
+    private String decode() {
+        return new String(scratch, 0, scratchLength, StandardCharsets.UTF_8);
+    }
+}
+
+// Scrie mesajele acceptate într-un fișier dintr-un thread separat, ca etapele să nu aștepte după disc sau consolă.
+// Mesajele sunt codate într-un buffer mare scris cu FileChannel.write când se umple; la fiecare commit de grup
+// (cel mult o dată la commitIntervalMillis) buffer-ul este golit și, opțional, forțat pe disc cu force.
+class BatchedFileSink implements ReviewSink, AutoCloseable {
+    static final String PROPERTY_PREFIX = "pipeline.sink.";
+    static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 10;
+    static final int QUEUE_CAPACITY = 8192;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final BlockingQueue<ReviewMessage> pending = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)      // Un surogat fără pereche devine '?', nu trunchiază linia
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final long commitIntervalNanos;
+    private final boolean force; // force după fiecare commit: mesajele confirmate supraviețuiesc unei căderi a sistemului
+    private final Thread writer;
+    private final AtomicLong writtenMessages = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private volatile IOException failure;
+    private volatile boolean closed;
+    private volatile ReviewSink commitListener; // Primește mesajele după ce commit-ul lor s-a terminat
+    private final List<ReviewMessage> uncommitted = new ArrayList<>(); // Folosit doar de writer
+    private boolean dirty; // Folosit doar de writer
+
+    BatchedFileSink(Path file) throws IOException {
+        this(file, DEFAULT_BUFFER_SIZE, DEFAULT_COMMIT_INTERVAL_MILLIS, false);
+    }
+
+    BatchedFileSink(Path file, int bufferSize, long commitIntervalMillis, boolean force) throws IOException {
+        this(file, bufferSize, commitIntervalMillis, force, false);
+    }
+
+    // Cu append, rezultatele unei rulări reluate din WriteAheadLog se adaugă la cele scrise înainte de cădere
+    BatchedFileSink(Path file, int bufferSize, long commitIntervalMillis, boolean force, boolean append) throws IOException {
+        if (bufferSize <= 0 || commitIntervalMillis < 0) {
+            throw new IllegalArgumentException("Buffer sau interval de commit invalid: " + bufferSize + ", " + commitIntervalMillis);
+        }
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.commitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(commitIntervalMillis);
+        this.force = force;
+        this.writer = new Thread(this::writeLoop, "result-writer");
+        writer.start();
+    }
+
+    // pipeline.sink.bufferSize, pipeline.sink.commitIntervalMillis și pipeline.sink.force
+    static BatchedFileSink fromSystemProperties(Path file) throws IOException {
+        return fromSystemProperties(file, false);
+    }
+
+    static BatchedFileSink fromSystemProperties(Path file, boolean append) throws IOException {
+        return new BatchedFileSink(file,
+                Integer.getInteger(PROPERTY_PREFIX + "bufferSize", DEFAULT_BUFFER_SIZE),
+                Long.getLong(PROPERTY_PREFIX + "commitIntervalMillis", DEFAULT_COMMIT_INTERVAL_MILLIS),
+                Boolean.getBoolean(PROPERTY_PREFIX + "force"),
+                append);
+    }
+
+    // Se setează înainte de primul mesaj; apelat din thread-ul writer
+    void setCommitListener(ReviewSink listener) {
+        this.commitListener = listener;
+    }
+
+    // Doar pune mesajul în coada writer-ului; când aceasta este plină producătorul așteaptă
+    @Override
+    public void accept(ReviewMessage message) throws InterruptedException {
+        if (message == ReviewPipeline.END_MESSAGE) return; // Sfârșitul fluxului este semnalat de close
+        if (failure != null) throw new UncheckedIOException(failure);
+        if (closed) throw new IllegalStateException("Sink-ul pentru " + file + " este închis");
+        pending.put(message);
+    }
+
+    private void writeLoop() {
+        List<ReviewMessage> batch = new ArrayList<>();
+        long nextCommit = System.nanoTime() + commitIntervalNanos;
+        boolean end = false;
+        try {
+            while (!end) {
+                long wait = nextCommit - System.nanoTime();
+                ReviewMessage first = wait > 0 ? pending.poll(wait, TimeUnit.NANOSECONDS) : pending.poll();
+                if (first != null) {
+                    batch.add(first);
+                    pending.drainTo(batch);
+                    for (ReviewMessage message : batch) {
+                        if (message == ReviewPipeline.END_MESSAGE) {
+                            end = true;
+                        } else {
+                            encode(message);
+                        }
+                    }
+                    batch.clear();
+                }
+                if (end || System.nanoTime() - nextCommit >= 0) {
+                    commit();
+                    nextCommit = System.nanoTime() + commitIntervalNanos;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+            // END poate fi deja în lotul întrerupt de eroare; altfel writer-ul l-ar aștepta la nesfârșit în coadă
+            for (ReviewMessage message : batch) {
+                if (message == ReviewPipeline.END_MESSAGE) end = true;
+            }
+            // Producătorii blocați pe coada plină sunt eliberați până la close
+            while (!end) {
+                try {
+                    end = pending.take() == ReviewPipeline.END_MESSAGE;
+                } catch (InterruptedException ie) {
+                    return;
+                }
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
     }
-    public long getProcessingTime() {
-        return processingTime;
-    }
 
-    public int getProcessedMessages() {
-        return processedMessages;
+    private void encode(ReviewMessage message) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(message.toString());
+        encoder.reset();
+        while (encoder.encode(chars, buffer, true).isOverflow()) {
+            flush();
+        }
+        if (!buffer.hasRemaining()) flush();
+        buffer.put((byte) '\n');
+        if (commitListener != null) uncommitted.add(message);
+        writtenMessages.incrementAndGet();
+        dirty = true;
     }
-}
 
-class CheckPoliticalPropagandaFilter implements Filter, FilterMetrics {
-    private final ClientConfig config;
-    private final int inputStage;   // Etapa de intrare
-    private final int outputStage;  // Etapa de ieșire
-    private long processingTime = 0; 
-    private int processedMessages = 0;
+    private void flush() throws IOException {
+        buffer.flip();
+        writtenBytes.addAndGet(buffer.remaining());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
 
-    public CheckPoliticalPropagandaFilter(ClientConfig config, int inputStage, int outputStage) {
-        this.config = config;
-        this.inputStage = inputStage;
-        this.outputStage = outputStage;
+    // Un singur write (și un singur force) pentru toate mesajele sosite de la commit-ul anterior
+    private void commit() throws IOException, InterruptedException {
+        if (!dirty) return;
+        flush();
+        if (force) channel.force(false);
+        commits.incrementAndGet();
+        dirty = false;
+        ReviewSink listener = commitListener;
+        if (listener != null) {
+            for (ReviewMessage message : uncommitted) {
+                listener.accept(message);
+            }
+            uncommitted.clear();
+        }
     }
 
+    // Scrie tot ce a rămas în coadă, face ultimul commit și închide fișierul. O întrerupere în timpul așteptării
+    // este restaurată și raportată ca InterruptedIOException, ca try-with-resources să nu primească InterruptedException
     @Override
-    public void process(Blackboard blackboard) {
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
         try {
-            while (true) {
-                long startTime = System.currentTimeMillis();
-                // Preia mesaj din coada corespunzătoare etapei de intrare
-                ReviewMessage message = blackboard.getFromStage(inputStage);
-                if (message == null) continue;
-
-                // Propagă mesajul de END către următoarea etapă
-                if (message == ReviewPipeline.END_MESSAGE) {
-                    blackboard.addToStage(outputStage, message);
-                    break;
-                }
-
-                // Verifică propagandă politică (doar dacă este activat în config)
-                if (config.checkPoliticalPropaganda) {
-                    String text = message.reviewText;
-                    if (text.contains("+++") || text.contains("---")) {
-                        continue; // Sarim peste mesaj dacă conține șabloane suspecte
-                    }
-                }
-
-                // Trimite mesajul la următoarea etapă
-                blackboard.addToStage(outputStage, message);
-                processedMessages++;
-                long endTime = System.currentTimeMillis();
-                processingTime += (endTime - startTime); 
-            }
+            pending.put(ReviewPipeline.END_MESSAGE);
+            writer.join();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Întrerupt în așteptarea scrierii în " + file);
         }
-    }
-    public long getProcessingTime() {
-        return processingTime;
+        channel.close();
+        if (failure != null) throw failure;
     }
 
-    public int getProcessedMessages() {
-        return processedMessages;
+    public long getWrittenMessages() {
+        return writtenMessages.get();
     }
-}
 
-class ResizeImagesFilter implements Filter, FilterMetrics {
-    private final ClientConfig config;
-    private final int inputStage;   // Etapa de intrare
-    private final int outputStage;  // Etapa de ieșire
-    private long processingTime = 0; 
-    private int processedMessages = 0; 
+    public long getWrittenBytes() {
+        return writtenBytes.get();
+    }
 
-    public ResizeImagesFilter(ClientConfig config, int inputStage, int outputStage) {
-        this.config = config;
-        this.inputStage = inputStage;
-        this.outputStage = outputStage;
+    public long getCommitCount() {
+        return commits.get();
     }
 
     @Override
-    public void process(Blackboard blackboard) {
-        try {
-            while (true) {
-                long startTime = System.currentTimeMillis();
-                // Preia mesaj din coada corespunzătoare etapei de intrare
-                ReviewMessage message = blackboard.getFromStage(inputStage);
-                if (message == null) continue;
+    public String toString() {
+        return file + ": " + getWrittenMessages() + " mesaje, " + getWrittenBytes() + " octeți, " + getCommitCount() + " commit-uri";
+    }
+}
 
-                // Propagă mesajul de END către următoarea etapă
-                if (message == ReviewPipeline.END_MESSAGE) {
-                    blackboard.addToStage(outputStage, message);
-                    break;
-                }
+// Jurnal append-only (write-ahead log) al mesajelor intrate în etapa 0 și al ieșirii lor din Blackboard.
+// Intrările sunt codate sub un lock direct într-un buffer comun; ieșirile sunt doar un bit setat fără lock.
+// Thread-ul "wal-writer" schimbă buffer-ul cu unul gol la fiecare commit de grup, adaugă o singură înregistrare
+// cu biții ieșirilor noi și scrie totul secvențial cu un singur write (și un singur force).
+// Checkpoint-ul reține poziția primei intrări încă nefinalizate, deci la repornire se citește doar coada
+// jurnalului și se reiau doar mesajele nefinalizate. Filtrele sunt deterministe, așa că un mesaj nefinalizat
+// se reia de la etapa 0. Format: [lungime int][CRC32C int][tip][secvență long + 4 câmpuri lungime+UTF-8
+// | număr int + perechi (prima secvență long, biți long)].
+class WriteAheadLog implements AutoCloseable {
+    static final String PROPERTY_PREFIX = "pipeline.wal.";
+    static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 5;
+    static final long DEFAULT_CHECKPOINT_INTERVAL_MILLIS = 1000;
+    static final long COMPACTION_THRESHOLD = 64L << 20; // Peste atât, prefixul finalizat al jurnalului este eliminat
+    static final int BUFFER_SIZE = 1 << 20;
+    static final int MAX_OPEN_SEQUENCES = 1 << 18;     // Câte mesaje pot fi în lucru între cel mai vechi și cel mai nou
+
+    private static final byte INGEST = 1;
+    private static final byte COMPLETIONS = 2;
+    private static final int HEADER = 2 * Integer.BYTES; // Lungime și CRC
+    private static final int WORDS = MAX_OPEN_SEQUENCES / Long.SIZE;
+    private static final String LOG_FILE = "wal.log";
+    private static final String CHECKPOINT_FILE = "wal.checkpoint";
+
+    private final Path directory;
+    private final long commitIntervalNanos;
+    private final long checkpointIntervalNanos;
+    private final boolean force; // Fără force jurnalul supraviețuiește căderii JVM-ului, dar nu și a sistemului
+    private final List<ReviewMessage> unfinished; // Mesajele de reluat, în ordinea din jurnal
+    private final long resumePosition;            // Câte mesaje de intrare are deja jurnalul
+
+    // Buffer-ul în care scriu producătorii, protejat de lock; secvențele sunt atribuite tot sub lock,
+    // deci intrările apar în jurnal în ordinea secvențelor
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition writerWakeup = lock.newCondition();
+    private final Condition spaceAvailable = lock.newCondition();
+    private ByteBuffer active = ByteBuffer.allocate(BUFFER_SIZE);
+    private long nextSequence;
+    private boolean writeRequested;
+    private boolean closing;
+
+    // Un bit pe secvență, într-un inel: setat de thread-ul care termină mesajul, citit și șters de writer
+    private final AtomicLongArray completed = new AtomicLongArray(WORDS);
+    private volatile long publishedLow; // lowSequence văzut de producători, pentru a nu refolosi biți încă necitiți
+
+    // Starea de mai jos este folosită doar de thread-ul writer
+    private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer completions = ByteBuffer.allocate(1 << 12);
+    private FileChannel channel;
+    private final CRC32C crc = new CRC32C();
+    private long end; // Poziția de după ultima înregistrare scrisă
+    private final long[] logged = new long[WORDS];                  // Ieșirile deja scrise în jurnal
+    private final long[] offsets = new long[MAX_OPEN_SEQUENCES];    // Poziția intrării fiecărei secvențe
+    private long lowSequence = -1;  // Cea mai veche secvență nefinalizată
+    private long highSequence = -1; // Secvența de după ultima intrare scrisă
+
+    private final Thread writer;
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong checkpoints = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+    private volatile IOException failure;
+
+    private WriteAheadLog(Path directory, long commitIntervalMillis, long checkpointIntervalMillis, boolean force) throws IOException {
+        this.directory = directory;
+        this.commitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(commitIntervalMillis);
+        this.checkpointIntervalNanos = TimeUnit.MILLISECONDS.toNanos(checkpointIntervalMillis);
+        this.force = force;
+        Files.createDirectories(directory);
+
+        // Recuperare: de la poziția din checkpoint până la ultima înregistrare întreagă
+        long start = 0;
+        long checkpointSequence = 0;
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpoint)) {
+            ByteBuffer saved = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+            start = saved.getLong();
+            checkpointSequence = saved.getLong();
+        }
+        channel = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        start = Math.min(start, channel.size());
+        Map<Long, ReviewMessage> recovered = new LinkedHashMap<>();
+        end = scan(start, recovered);
+        if (lowSequence < 0) {
+            lowSequence = highSequence = checkpointSequence; // Nicio intrare după checkpoint
+        }
+        channel.truncate(end); // O înregistrare scrisă pe jumătate la cădere este eliminată
+        channel.position(end);
+
+        this.unfinished = new ArrayList<>(recovered.values());
+        this.nextSequence = Math.max(checkpointSequence, highSequence);
+        this.resumePosition = nextSequence;
+        this.publishedLow = lowSequence;
+        this.writer = new Thread(this::writeLoop, "wal-writer");
+        writer.setDaemon(true); // O oprire fără close este tratată ca o cădere: ce nu a fost scris se recuperează din sursă
+        writer.start();
+    }
 
-                // Redimensionează imaginea (doar dacă este activat în config)
-                if (config.resizeImages && message.attachment != null) {
-                    message.attachment = message.attachment.toLowerCase();
-                }
+    static WriteAheadLog open(Path directory, long commitIntervalMillis, long checkpointIntervalMillis, boolean force) throws IOException {
+        if (commitIntervalMillis < 0 || checkpointIntervalMillis < 0) {
+            throw new IllegalArgumentException("Interval de commit sau checkpoint invalid: " + commitIntervalMillis + ", " + checkpointIntervalMillis);
+        }
+        return new WriteAheadLog(directory, commitIntervalMillis, checkpointIntervalMillis, force);
+    }
 
-                // Trimite mesajul la următoarea etapă
-                blackboard.addToStage(outputStage, message);
-                processedMessages++; // Incrementarea numarului de mesaje procesate
-                long endTime = System.currentTimeMillis(); // Masurarea timpului de sfarsit
-                processingTime += (endTime - startTime); 
+    // pipeline.wal.dir activează jurnalul; pipeline.wal.commitIntervalMillis, pipeline.wal.checkpointIntervalMillis
+    // și pipeline.wal.force îl configurează. Fără pipeline.wal.dir întoarce null.
+    static WriteAheadLog fromSystemProperties() throws IOException {
+        String directory = System.getProperty(PROPERTY_PREFIX + "dir");
+        if (directory == null) return null;
+        return open(Paths.get(directory),
+                Long.getLong(PROPERTY_PREFIX + "commitIntervalMillis", DEFAULT_COMMIT_INTERVAL_MILLIS),
+                Long.getLong(PROPERTY_PREFIX + "checkpointIntervalMillis", DEFAULT_CHECKPOINT_INTERVAL_MILLIS),
+                Boolean.getBoolean(PROPERTY_PREFIX + "force"));
+    }
+
+    // Citește jurnalul secvențial de la start; se oprește la prima înregistrare incompletă sau coruptă
+    private long scan(long start, Map<Long, ReviewMessage> recovered) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(start)), 1 << 16));
+        long position = start;
+        while (true) {
+            byte[] body;
+            try {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < 1 || length > channel.size() - position) break;
+                body = new byte[length];
+                in.readFully(body);
+                crc.reset();
+                crc.update(body, 0, length);
+                if ((int) crc.getValue() != checksum) break;
+            } catch (EOFException e) {
+                break;
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            ByteBuffer record = ByteBuffer.wrap(body);
+            if (record.get() == INGEST) {
+                long sequence = record.getLong();
+                ReviewMessage message = new ReviewMessage(readField(record), readField(record), readField(record), readField(record));
+                message.walSequence = sequence;
+                recovered.put(sequence, message);
+                trackIngest(sequence, position);
+            } else {
+                for (int pairs = record.getInt(); pairs > 0; pairs--) {
+                    long first = record.getLong();
+                    for (long bits = record.getLong(); bits != 0; bits &= bits - 1) {
+                        long sequence = first + Long.numberOfTrailingZeros(bits);
+                        recovered.remove(sequence);
+                        if (sequence >= lowSequence && sequence < highSequence) {
+                            logged[wordIndex(sequence)] |= 1L << sequence;
+                        }
+                    }
+                }
+                advanceLow();
+            }
+            position += HEADER + body.length;
         }
+        return position;
     }
-    public long getProcessingTime() {
-        return processingTime;
+
+    private static String readField(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) return null;
+        String value = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return value;
     }
 
-    public int getProcessedMessages() {
-        return processedMessages;
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
     }
-}
 
-class SentimentDetectionFilter implements Filter, FilterMetrics {
-    private final ClientConfig config;
-    private final int inputStage;
-    private final int outputStage;
-    private long processingTime = 0; 
-    private int processedMessages = 0;
+    private static int fieldLength(byte[] field) {
+        return Integer.BYTES + (field == null ? 0 : field.length);
+    }
 
-    public SentimentDetectionFilter(ClientConfig config, int inputStage, int outputStage) {
-        this.config = config;
-        this.inputStage = inputStage;
-        this.outputStage = outputStage;
+    private static void putField(ByteBuffer record, byte[] field) {
+        if (field == null) {
+            record.putInt(-1);
+        } else {
+            record.putInt(field.length).put(field);
+        }
     }
 
-    @Override
-    public void process(Blackboard blackboard) {
+    private static int wordIndex(long sequence) {
+        return (int) ((sequence >>> 6) & (WORDS - 1));
+    }
+
+    // Notează intrarea mesajului în etapa 0 și îi atribuie secvența; câmpurile sunt copiate acum,
+    // înainte ca filtrele să le modifice
+    void logIngest(ReviewMessage message) throws InterruptedException {
+        // Codarea UTF-8 se face înainte de lock; sub lock rămân doar copierile
+        byte[] username = bytes(message.username()); // Id-urile nu supraviețuiesc repornirii, deci jurnalul păstrează numele
+        byte[] product = bytes(message.product());
+        byte[] reviewText = bytes(message.reviewText);
+        byte[] attachment = bytes(message.attachment);
+        int length = 1 + Long.BYTES + fieldLength(username) + fieldLength(product) + fieldLength(reviewText) + fieldLength(attachment);
+        lock.lock();
         try {
-            while (true) {
-                long startTime = System.currentTimeMillis();
-                ReviewMessage message = blackboard.getFromStage(inputStage);
-                if (message == null) continue;
+            reserve(HEADER + length);
+            long sequence = nextSequence++;
+            active.putInt(length).putInt(0).put(INGEST).putLong(sequence); // CRC-ul este calculat de writer
+            putField(active, username);
+            putField(active, product);
+            putField(active, reviewText);
+            putField(active, attachment);
+            message.walSequence = sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
 
-                if (message == ReviewPipeline.END_MESSAGE) {
-                    blackboard.addToStage(outputStage, message);
-                    break;
-                }
+    // Notează că mesajul a ieșit din Blackboard (acceptat sau eliminat) și nu mai trebuie reluat; fără lock
+    void logCompletion(ReviewMessage message) {
+        long sequence = message.walSequence;
+        if (sequence < 0) return;
+        message.walSequence = -1; // Un mesaj este finalizat o singură dată
+        int index = wordIndex(sequence);
+        long bit = 1L << sequence;
+        long word;
+        do {
+            word = completed.get(index);
+        } while (!completed.compareAndSet(index, word, word | bit));
+    }
 
-                if (config.detectSentiment && message.reviewText != null) {
-                    int upper = 0, lower = 0;
-                    for (char c : message.reviewText.toCharArray()) {
-                        if (Character.isUpperCase(c)) upper++;
-                        else if (Character.isLowerCase(c)) lower++;
+    // Apelat sub lock; când buffer-ul sau inelul de secvențe este plin producătorul îl cere writer-ului și așteaptă
+    private void reserve(int size) throws InterruptedException {
+        while (true) {
+            if (failure != null) throw new UncheckedIOException(failure);
+            if (closing) throw new IllegalStateException("Jurnalul din " + directory + " este închis");
+            boolean sequenceAvailable = nextSequence - (publishedLow & -Long.SIZE) < MAX_OPEN_SEQUENCES;
+            if (sequenceAvailable && active.remaining() >= size) return;
+            if (sequenceAvailable && active.position() == 0) {
+                active = ByteBuffer.allocate(size); // O înregistrare mai mare decât buffer-ul
+                return;
+            }
+            writeRequested = true;
+            writerWakeup.signal();
+            spaceAvailable.await();
+        }
+    }
+
+    private void writeLoop() {
+        long nextCommit = System.nanoTime() + commitIntervalNanos;
+        long nextCheckpoint = System.nanoTime() + checkpointIntervalNanos;
+        try {
+            while (true) {
+                ByteBuffer batch;
+                boolean closed;
+                lock.lock();
+                try {
+                    long wait;
+                    while (!closing && !writeRequested && (wait = nextCommit - System.nanoTime()) > 0) {
+                        writerWakeup.awaitNanos(wait);
                     }
-                    
-                    // Adăugăm sufixul corespunzător
-                    if (upper > lower) message.reviewText += " +";
-                    else if (lower > upper) message.reviewText += " -";
-                    else message.reviewText += " =";
+                    batch = active;
+                    active = spare;
+                    spare = batch;
+                    writeRequested = false;
+                    closed = closing;
+                    spaceAvailable.signalAll();
+                } finally {
+                    lock.unlock();
                 }
-
-                blackboard.addToStage(outputStage, message);
-                processedMessages++; 
-                long endTime = System.currentTimeMillis(); 
-                processingTime += (endTime - startTime); 
+                commit(batch);
+                long now = System.nanoTime();
+                nextCommit = now + commitIntervalNanos;
+                if (closed || now - nextCheckpoint >= 0) {
+                    checkpoint(closed);
+                    nextCheckpoint = System.nanoTime() + checkpointIntervalNanos;
+                }
+                if (closed) return;
+            }
+        } catch (IOException e) {
+            failure = e;
+            lock.lock();
+            try {
+                spaceAvailable.signalAll(); // Producătorii care așteaptă loc primesc eroarea
+            } finally {
+                lock.unlock();
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
     }
-    public long getProcessingTime() {
-        return processingTime;
-    }
 
-    public int getProcessedMessages() {
-        return processedMessages;
+    // Completează CRC-urile intrărilor, adaugă ieșirile noi și scrie lotul cu un singur write
+    private void commit(ByteBuffer batch) throws IOException {
+        batch.flip();
+        byte[] bytes = batch.array();
+        for (int position = 0; position < batch.limit(); ) {
+            int length = batch.getInt(position);
+            int body = position + HEADER;
+            crc.reset();
+            crc.update(bytes, body, length);
+            batch.putInt(position + Integer.BYTES, (int) crc.getValue());
+            trackIngest(batch.getLong(body + 1), end + position);
+            position = body + length;
+            records.incrementAndGet();
+        }
+        // Doar secvențele ale căror intrări sunt deja în lot sau în jurnal; o ieșire nu precede niciodată intrarea
+        collectCompletions();
+        if (!batch.hasRemaining() && !completions.hasRemaining()) {
+            batch.clear();
+            return;
+        }
+        ByteBuffer[] write = {batch, completions};
+        long bytesToWrite = batch.remaining() + completions.remaining();
+        for (long written = 0; written < bytesToWrite; ) {
+            written += channel.write(write);
+        }
+        end += bytesToWrite;
+        batch.clear();
+        if (force) channel.force(false);
+        commits.incrementAndGet();
     }
-}
 
-class SentimentDetectionPlusFilter implements Filter, FilterMetrics {
-    private final ClientConfig config;
-    private final int inputStage;
-    private final int outputStage;
-    private long processingTime = 0; 
-    private int processedMessages = 0;
-
-    public SentimentDetectionPlusFilter(ClientConfig config, int inputStage, int outputStage) {
-        this.config = config;
-        this.inputStage = inputStage;
-        this.outputStage = outputStage;
+    private void collectCompletions() {
+        completions.clear();
+        completions.position(HEADER + 1 + Integer.BYTES);
+        int pairs = 0;
+        if (highSequence > lowSequence) {
+            long lastWord = (highSequence - 1) >>> 6;
+            for (long word = lowSequence >>> 6; word <= lastWord; word++) {
+                int index = (int) (word & (WORDS - 1));
+                long fresh = completed.get(index) & ~logged[index];
+                if (word == lastWord && (highSequence & 63) != 0) {
+                    fresh &= (1L << highSequence) - 1;
+                }
+                if (fresh == 0) continue;
+                logged[index] |= fresh;
+                if (completions.remaining() < 2 * Long.BYTES) {
+                    ByteBuffer grown = ByteBuffer.allocate(completions.capacity() * 2);
+                    completions.flip();
+                    grown.put(completions);
+                    completions = grown;
+                }
+                completions.putLong(word << 6).putLong(fresh);
+                records.addAndGet(Long.bitCount(fresh));
+                pairs++;
+            }
+        }
+        if (pairs == 0) {
+            completions.clear().limit(0);
+            return;
+        }
+        int length = completions.position() - HEADER;
+        completions.put(HEADER, COMPLETIONS).putInt(HEADER + 1, pairs);
+        crc.reset();
+        crc.update(completions.array(), HEADER, length);
+        completions.putInt(0, length).putInt(Integer.BYTES, (int) crc.getValue());
+        completions.flip();
+        advanceLow();
     }
 
-    @Override
-    public void process(Blackboard blackboard) {
-        try {
-            while (true) {
-                long startTime = System.currentTimeMillis();
-                ReviewMessage message = blackboard.getFromStage(inputStage);
-                if (message == null) continue;
+    private void trackIngest(long sequence, long position) {
+        if (lowSequence < 0) {
+            lowSequence = highSequence = sequence;
+        }
+        offsets[(int) (sequence & (MAX_OPEN_SEQUENCES - 1))] = position;
+        highSequence = Math.max(highSequence, sequence + 1);
+    }
 
-                if (message == ReviewPipeline.END_MESSAGE) {
-                    blackboard.addToStage(outputStage, message);
-                    break;
-                }
+    // Avansează peste secvențele finalizate; un cuvânt din inel este șters abia când toate secvențele lui au trecut
+    private void advanceLow() {
+        while (lowSequence < highSequence && (logged[wordIndex(lowSequence)] & (1L << lowSequence)) != 0) {
+            lowSequence++;
+            if ((lowSequence & 63) == 0) {
+                int index = wordIndex(lowSequence - 1);
+                logged[index] = 0;
+                completed.set(index, 0);
+            }
+        }
+        publishedLow = lowSequence;
+    }
 
-                if (config.detectSentimentPlus && message.reviewText != null) {
-                    int upper = 0, lower = 0;
-                    for (char c : message.reviewText.toCharArray()) {
-                        if (Character.isUpperCase(c)) upper++;
-                        else if (Character.isLowerCase(c)) lower++;
-                    }
-                    
-                    // Adăugăm eticheta detaliată
-                    if (upper > lower) message.reviewText += " (Positive)";
-                    else if (lower > upper) message.reviewText += " (Negative)";
-                    else message.reviewText += " (Neutral)";
+    // Salvează poziția primei intrări nefinalizate; când prefixul finalizat depășește pragul
+    // (sau la închidere) doar coada jurnalului este copiată într-un fișier nou
+    private void checkpoint(boolean closing) throws IOException {
+        long start = lowSequence < highSequence ? offsets[(int) (lowSequence & (MAX_OPEN_SEQUENCES - 1))] : end;
+        if (start > 0 && (closing || start >= COMPACTION_THRESHOLD)) {
+            // Checkpoint-ul de la 0 este corect și pentru jurnalul vechi, deci o cădere între pași nu pierde nimic
+            writeCheckpoint(0);
+            Path log = directory.resolve(LOG_FILE);
+            Path compacted = directory.resolve(LOG_FILE + ".tmp");
+            try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (long copied = 0; copied < end - start; ) {
+                    long transferred = channel.transferTo(start + copied, end - start - copied, target);
+                    if (transferred <= 0) throw new IOException("Jurnalul " + log + " este mai scurt decât " + end + " octeți");
+                    copied += transferred;
                 }
+                if (force) target.force(false);
+            }
+            channel.close();
+            Files.move(compacted, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(log, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(end - start);
+            end -= start;
+            for (long sequence = lowSequence; sequence < highSequence; sequence++) {
+                offsets[(int) (sequence & (MAX_OPEN_SEQUENCES - 1))] -= start;
+            }
+            compactions.incrementAndGet();
+            start = 0;
+        }
+        writeCheckpoint(start);
+        checkpoints.incrementAndGet();
+    }
 
-                blackboard.addToStage(outputStage, message);
-                processedMessages++; 
-                long endTime = System.currentTimeMillis(); 
-                processingTime += (endTime - startTime);
+    // Scris într-un fișier temporar și redenumit atomic, ca un checkpoint să fie mereu întreg
+    private void writeCheckpoint(long start) throws IOException {
+        Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        ByteBuffer saved = ByteBuffer.allocate(2 * Long.BYTES).putLong(start).putLong(highSequence);
+        saved.flip();
+        try (FileChannel target = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (saved.hasRemaining()) {
+                target.write(saved);
             }
+            if (force) target.force(false);
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Mesajele găsite nefinalizate la deschidere, de pus din nou în etapa 0
+    List<ReviewMessage> getUnfinished() {
+        return unfinished;
+    }
+
+    // Numărul de mesaje de intrare deja notate în jurnal; sursa le sare la repornire
+    long getResumePosition() {
+        return resumePosition;
+    }
+
+    // Scrie tot ce a rămas în buffer, face ultimul checkpoint și închide jurnalul. Ca la BatchedFileSink,
+    // o întrerupere în timpul așteptării este restaurată și raportată ca InterruptedIOException
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closing) return;
+            closing = true;
+            writerWakeup.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Întrerupt în așteptarea scrierii jurnalului din " + directory);
         }
+        channel.close();
+        if (failure != null) throw failure;
     }
-        public long getProcessingTime() {
-        return processingTime;
+
+    public long getRecordCount() {
+        return records.get();
     }
 
-    public int getProcessedMessages() {
-        return processedMessages;
+    public long getCommitCount() {
+        return commits.get();
+    }
+
+    @Override
+    public String toString() {
+        return directory + ": " + getRecordCount() + " intrări și ieșiri, " + getCommitCount() + " commit-uri, "
+                + checkpoints.get() + " checkpoint-uri, " + compactions.get() + " compactări, "
+                + unfinished.size() + " mesaje reluate";
     }
 }
+
 class ConcurrentBlackboard {
-    public static void main(String[] args) throws InterruptedException {
+    // Etapa de ingestie: un thread citește fișierul mapat în etapa 0, iar ultima etapă este golită în paralel în results,
+    // ca toate etapele să rămână mărginite oricât de mare ar fi fișierul. Cu WAL, mesajele nefinalizate la cădere
+    // sunt reluate primele, iar înregistrările din fișier deja notate în jurnal sunt sărite.
+    static void ingestFile(Path file, Blackboard blackboard, int firstStage, int lastStage, ReviewSink results) throws InterruptedException {
+        WriteAheadLog wal = blackboard.getWriteAheadLog();
+        long resumePosition = wal != null ? wal.getResumePosition() : 0;
+        AtomicLong submitted = new AtomicLong();
+        AtomicLong skipped = new AtomicLong();
+        ReviewSink firstStageSink = message -> {
+            try {
+                blackboard.addToStage(firstStage, message);
+            } catch (RejectedExecutionException e) {
+                // Cu politica REJECT mesajul este doar numărat de etapă, iar citirea continuă
+            }
+        };
+        Thread ingest = new Thread(() -> {
+            try {
+                if (wal != null) {
+                    for (ReviewMessage message : wal.getUnfinished()) {
+                        firstStageSink.accept(message);
+                    }
+                }
+                submitted.set(new MappedReviewReader(file).readInto(message -> {
+                    if (skipped.get() < resumePosition) {
+                        skipped.incrementAndGet();
+                    } else {
+                        firstStageSink.accept(message);
+                    }
+                }));
+            } catch (IOException e) {
+                System.out.println("Eroare la citirea fișierului " + file + ": " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                try {
+                    blackboard.addToStage(firstStage, ReviewPipeline.END_MESSAGE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "ingest");
+
+        long startTime = System.nanoTime();
+        ingest.start();
+        long accepted = 0;
+        ReviewMessage message;
+        while ((message = blackboard.getFromStage(lastStage)) != ReviewPipeline.END_MESSAGE) {
+            results.accept(message);
+            accepted++;
+        }
+        ingest.join();
+        double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+
+        System.out.println("Fișier: " + file);
+        System.out.println("Mesaje citite: " + submitted.get() + ", acceptate: " + accepted);
+        if (wal != null) {
+            System.out.println("Reluate din WAL: " + wal.getUnfinished().size() + ", sărite: " + skipped.get());
+        }
+        System.out.println("Timp: " + String.format("%.2f", seconds) + " s, throughput: "
+                + String.format("%.0f", submitted.get() / seconds) + " mesaje/secundă");
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
         Map<String, String> buyers = new HashMap<>();
         buyers.put("John", "Laptop");
         buyers.put("Mary", "Phone");
         buyers.put("Ann", "Book");
+        // Cu -Dpipeline.purchases=<fișier CSV>, achizițiile se încarcă în bloc din fișier în locul mapei de mai sus
+        PurchaseIndex purchases = PurchaseIndex.fromSystemProperty(buyers);
 
         ClientConfig client1Config = new ClientConfig(true, true, true, true, true, false);
 
+        // Capacitatea fiecărei etape și politica aplicată când etapa de intrare este plină
+        int capacity = args.length > 0 ? Integer.parseInt(args[0]) : Blackboard.DEFAULT_CAPACITY;
+        OverflowPolicy ingestPolicy = args.length > 1 ? OverflowPolicy.valueOf(args[1].toUpperCase()) : OverflowPolicy.BLOCK;
+
+        // Cu un fișier CSV sau NDJSON ca argument, recenziile vin din fișier în locul listei de test ("-")
+        boolean fromFile = args.length > 2 && !args[2].equals("-");
+        // Cu -Dpipeline.wal.dir, mesajele din etape sunt notate în WriteAheadLog și doar cele nefinalizate sunt reluate după o cădere
+        WriteAheadLog wal = fromFile ? WriteAheadLog.fromSystemProperties() : null;
+
         // Blackboard cu 7 cozi (0-6) pentru cele 6 filtre + o coadă finală
-        Blackboard blackboard = new Blackboard(7);
+        Blackboard blackboard = new Blackboard(7, WaitStrategies.fromSystemProperty(), capacity, ingestPolicy, wal);
 
         List<Filter> filters = Arrays.asList(
             new CheckProfanitiesFilter(client1Config, 0, 1),      // Stage 0 → 1
-            new CheckBuyerFilter(buyers, client1Config, 1, 2),     // Stage 1 → 2
+            new CheckBuyerFilter(purchases, client1Config, 1, 2),  // Stage 1 → 2
             new CheckPoliticalPropagandaFilter(client1Config, 2, 3), // Stage 2 → 3
             new ResizeImagesFilter(client1Config, 3, 4),           // Stage 3 → 4
             new SentimentDetectionFilter(client1Config, 4, 5),     // Stage 4 → 5
@@ -432,6 +2456,29 @@ class ConcurrentBlackboard {
             executor.execute(() -> filter.process(blackboard));
         }
 
+        // Cu un fișier de ieșire ca argument, mesajele acceptate sunt scrise de BatchedFileSink în locul consolei;
+        // după o cădere rezultatele rulării reluate se adaugă la cele existente
+        BatchedFileSink resultSink = args.length > 3
+                ? BatchedFileSink.fromSystemProperties(Paths.get(args[3]), wal != null && wal.getResumePosition() > 0)
+                : null;
+
+        if (fromFile) {
+            // Un mesaj acceptat este finalizat în WAL abia după ce commit-ul fișierului de ieșire l-a scris
+            if (resultSink != null) resultSink.setCommitListener(message -> blackboard.complete(message));
+            ingestFile(Paths.get(args[2]), blackboard, 0, 6, resultSink != null ? resultSink : message -> blackboard.complete(message));
+            executor.shutdown();
+            executor.awaitTermination(2, TimeUnit.SECONDS);
+            if (resultSink != null) {
+                resultSink.close();
+                System.out.println("Ieșire: " + resultSink);
+            }
+            if (wal != null) {
+                wal.close();
+                System.out.println("WAL: " + wal);
+            }
+            return;
+        }
+
         // Mesaje de intrare
         List<ReviewMessage> messages = Arrays.asList(
             new ReviewMessage("John", "Laptop", "ok", "PICTURE"),
@@ -444,7 +2491,11 @@ class ConcurrentBlackboard {
 
         // Adaugă mesaje în prima etapă (coada 0)
         for (ReviewMessage message : messages) {
-            blackboard.addToStage(0, message);
+            try {
+                blackboard.addToStage(0, message);
+            } catch (RejectedExecutionException e) {
+                System.out.println("Mesaj respins: " + message + " (" + e.getMessage() + ")");
+            }
         }
         blackboard.addToStage(0, ReviewPipeline.END_MESSAGE);
 
@@ -467,9 +2518,17 @@ class ConcurrentBlackboard {
         long totalExecutionTime = endTime - startTime; // Calculează durata totală în milisecunde
         double totalExecutionTimeSeconds = totalExecutionTime / 1000.0; // Convertire în secunde
 
-        // Afișează rezultatele mesajelor filtrate
-        for (ReviewMessage msg : processedMessages) {
-            System.out.println(msg);
+        // Afișează rezultatele mesajelor filtrate sau le scrie în fișierul de ieșire
+        if (resultSink != null) {
+            for (ReviewMessage msg : processedMessages) {
+                resultSink.accept(msg);
+            }
+            resultSink.close();
+            System.out.println("Ieșire: " + resultSink);
+        } else {
+            for (ReviewMessage msg : processedMessages) {
+                System.out.println(msg);
+            }
         }
 
         // **Număr total de mesaje procesate în ultima coadă**
@@ -485,13 +2544,208 @@ class ConcurrentBlackboard {
                 FilterMetrics metrics = (FilterMetrics) filter;
                 System.out.println(filter.getClass().getSimpleName() + 
                     " - Time: " + metrics.getProcessingTime() + " ms, Messages: " + metrics.getProcessedMessages());
+                System.out.println("    Latență: " + metrics.getLatencyHistogram().snapshotAndReset());
             }
         }
 
+        System.out.println("\nCozile etapelor:");
+        for (int stage = 0; stage < 7; stage++) {
+            System.out.println("Etapa " + stage + ": " + blackboard.getStage(stage));
+        }
+
         // **Afișează timpul total de execuție**
         System.out.println("\nTimp total de executie al sistemului: " + totalExecutionTime + " ms");
 
         // **Afișează throughput-ul**
         System.out.println("Throughput: " + String.format("%.2f", throughput) + " mesaje/secundă");
     }
-}
\ No newline at end of file
+}
+
+// Măsurători în stilul JMH: iterații de încălzire, iterații măsurate, throughput, timp mediu și rată de alocare
+class BenchmarkHarness {
+    // O invocare măsurată; filtrele trebuie pornite pe thread-uri create de threadFactory ca alocările lor să fie numărate
+    interface MeasuredRun {
+        void run(ThreadFactory threadFactory) throws Exception;
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+
+    public BenchmarkHarness(int warmupIterations, int measurementIterations) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+    }
+
+    static void printHeader() {
+        System.out.println(String.format("%-45s %-20s %4s %14s   %s", "Benchmark", "Mode", "Cnt", "Score", "Units"));
+    }
+
+    // setup() rulează înainte de fiecare iterație și nu intră în măsurătoare
+    public void measure(String name, int operations, Runnable setup, MeasuredRun body) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            setup.run();
+            runOnce(body);
+        }
+        double[] throughput = new double[measurementIterations];
+        double[] averageTime = new double[measurementIterations];
+        double[] allocationRate = new double[measurementIterations];
+        double[] allocationPerOp = new double[measurementIterations];
+        for (int i = 0; i < measurementIterations; i++) {
+            setup.run();
+            long[] result = runOnce(body); // { timp în ns, octeți alocați }
+            double seconds = result[0] / 1_000_000_000.0;
+            throughput[i] = operations / seconds;
+            averageTime[i] = (double) result[0] / operations;
+            allocationRate[i] = result[1] / (1024.0 * 1024.0) / seconds;
+            allocationPerOp[i] = (double) result[1] / operations;
+        }
+        print(name, "thrpt", throughput, "ops/s");
+        print(name, "avgt", averageTime, "ns/op");
+        print(name, "gc.alloc.rate", allocationRate, "MB/sec");
+        print(name, "gc.alloc.rate.norm", allocationPerOp, "B/op");
+    }
+
+    private long[] runOnce(MeasuredRun body) throws Exception {
+        LongAdder workerAllocations = new LongAdder();
+        // Fiecare thread de lucru își raportează alocările când se termină
+        ThreadFactory threadFactory = runnable -> new Thread(() -> {
+            try {
+                runnable.run();
+            } finally {
+                workerAllocations.add(THREADS.getCurrentThreadAllocatedBytes());
+            }
+        });
+        long allocationsBefore = THREADS.getCurrentThreadAllocatedBytes();
+        long startTime = System.nanoTime();
+        body.run(threadFactory);
+        long elapsed = System.nanoTime() - startTime;
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - allocationsBefore + workerAllocations.sum();
+        return new long[] { elapsed, allocated };
+    }
+
+    private static void print(String name, String mode, double[] values, String units) {
+        double mean = 0;
+        for (double value : values) mean += value;
+        mean /= values.length;
+        System.out.println(String.format("%-45s %-20s %4d %14.3f   %s", name, mode, values.length, mean, units));
+    }
+}
+
+// Încărcare de lucru generată determinist (aceeași sămânță), identică pentru toate arhitecturile comparate
+class ReviewWorkload {
+    static final long SEED = 42;
+    private static final String[] USERS = { "John", "Mary", "Ann", "Peter", "Alice", "Bob" };
+    private static final String[] PRODUCTS = { "Laptop", "Phone", "Book", "Tablet" };
+    private static final String[] WORDS = { "great", "ok", "BAD", "So", "GOOD", "love", "this", "product", "fast", "DELIVERY", "would", "buy", "again" };
+
+    final String[] usernames;
+    final String[] products;
+    final String[] texts;
+    final String[] attachments;
+
+    ReviewWorkload(int count) {
+        Random random = new Random(SEED);
+        usernames = new String[count];
+        products = new String[count];
+        texts = new String[count];
+        attachments = new String[count];
+        for (int i = 0; i < count; i++) {
+            usernames[i] = USERS[random.nextInt(USERS.length)];
+            products[i] = PRODUCTS[random.nextInt(PRODUCTS.length)];
+            StringBuilder text = new StringBuilder();
+            int words = 3 + random.nextInt(30);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) text.append(' ');
+                text.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            int moderation = random.nextInt(20); // ~5% profanități, ~10% propagandă
+            if (moderation == 0) text.append(" @#$%");
+            else if (moderation == 1) text.append(" +++");
+            else if (moderation == 2) text.append(" ---");
+            texts[i] = text.toString();
+            attachments[i] = "IMAGE_" + random.nextInt(100) + ".PNG";
+        }
+    }
+
+    static Map<String, String> buyers() {
+        Map<String, String> buyers = new HashMap<>();
+        buyers.put("John", "Laptop");
+        buyers.put("Mary", "Phone");
+        buyers.put("Ann", "Book");
+        buyers.put("Peter", "Tablet");
+        return buyers;
+    }
+
+    int size() {
+        return texts.length;
+    }
+
+    // Mesaje noi pentru fiecare iterație, ca analiza din cache și adnotările să nu treacă dintr-o iterație în alta
+    List<ReviewMessage> newMessages() {
+        List<ReviewMessage> messages = new ArrayList<>(texts.length);
+        for (int i = 0; i < texts.length; i++) {
+            messages.add(new ReviewMessage(usernames[i], products[i], texts[i], attachments[i]));
+        }
+        return messages;
+    }
+}
+
+// Blackboard-ul cu câte o coadă pe etapă, măsurat pe aceeași încărcare ca pipeline-ul
+// Rulare: java BlackboardBenchmark [mesaje] [iterații de încălzire] [iterații măsurate]
+class BlackboardBenchmark {
+    public static void main(String[] args) throws Exception {
+        int messageCount = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int warmups = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        ReviewWorkload workload = new ReviewWorkload(messageCount);
+        PurchaseIndex purchases = PurchaseIndex.of(ReviewWorkload.buyers());
+        ClientConfig config = new ClientConfig(true, true, true, true, true, true);
+        BenchmarkHarness harness = new BenchmarkHarness(warmups, iterations);
+        List<List<ReviewMessage>> input = new ArrayList<>(1);
+        input.add(null);
+
+        BenchmarkHarness.printHeader();
+        harness.measure("Blackboard.stages", messageCount,
+                () -> input.set(0, workload.newMessages()),
+                threadFactory -> runBlackboard(input.get(0), purchases, config, threadFactory));
+    }
+
+    static void runBlackboard(List<ReviewMessage> messages, PurchaseIndex purchases, ClientConfig config,
+                              ThreadFactory threadFactory) throws InterruptedException {
+        Blackboard blackboard = new Blackboard(7);
+        List<Filter> filters = Arrays.asList(
+            new CheckProfanitiesFilter(config, 0, 1),
+            new CheckBuyerFilter(purchases, config, 1, 2),
+            new CheckPoliticalPropagandaFilter(config, 2, 3),
+            new ResizeImagesFilter(config, 3, 4),
+            new SentimentDetectionFilter(config, 4, 5),
+            new SentimentDetectionPlusFilter(config, 5, 6)
+        );
+        ExecutorService executor = Executors.newFixedThreadPool(filters.size(), threadFactory);
+        for (Filter filter : filters) {
+            executor.execute(() -> filter.process(blackboard));
+        }
+        // Producătorul rulează pe un thread separat: etapele sunt mărginite, deci ieșirea trebuie golită în paralel
+        Thread producer = threadFactory.newThread(() -> {
+            try {
+                for (ReviewMessage message : messages) {
+                    blackboard.addToStage(0, message);
+                }
+                blackboard.addToStage(0, ReviewPipeline.END_MESSAGE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        while (blackboard.getFromStage(6) != ReviewPipeline.END_MESSAGE) {
+            // doar golim ultima etapă
+        }
+        producer.join();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
@@ -1,80 +1,329 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 class ReviewMessage {
-    String username;
-    String product;
+    int usernameId; // Id-ul din SymbolTable.USERNAMES; numele se citește doar la ieșire
+    int productId;  // Id-ul din SymbolTable.PRODUCTS
     String reviewText;
     String attachment;
-    private final int totalFilters; // Numărul total de filtre
-    private final AtomicInteger processedFilters = new AtomicInteger(0); // Contor atomic
-    Set<String> processedBy = ConcurrentHashMap.newKeySet();
+    Sentiment sentimentSymbol; // Adnotarea SentimentDetectionFilter, afișată doar la ieșire
+    Sentiment sentimentLabel;  // Adnotarea SentimentDetectionPlusFilter, afișată doar la ieșire
+    private String analyzedText; // Textul pentru care este valid câmpul analysis
+    private int analysis;        // Analiza textului împachetată (vezi analysis()); 0 = încă neanalizat
+    private final long allFiltersMask; // Câte un bit pentru fiecare filtru înregistrat
+    private volatile long processedMask;  // Biții filtrelor care au procesat deja mesajul
+    private volatile long dispatchedMask; // Biții filtrelor cărora li s-a trimis mesajul; -1 după eliminare
+    private static final AtomicLongFieldUpdater<ReviewMessage> PROCESSED_MASK =
+            AtomicLongFieldUpdater.newUpdater(ReviewMessage.class, "processedMask");
+    private static final AtomicLongFieldUpdater<ReviewMessage> DISPATCHED_MASK =
+            AtomicLongFieldUpdater.newUpdater(ReviewMessage.class, "dispatchedMask");
 
     public ReviewMessage(String username, String product, String reviewText, String attachment, int totalFilters) {
-        this.username = username;
-        this.product = product;
+        this.usernameId = SymbolTable.USERNAMES.intern(username);
+        this.productId = SymbolTable.PRODUCTS.intern(product);
         this.reviewText = reviewText;
         this.attachment = attachment;
-        this.totalFilters = totalFilters; // Inițializare corectă
+        this.allFiltersMask = totalFilters == Long.SIZE ? -1L : (1L << totalFilters) - 1;
     }
 
-    public boolean isProcessedBy(String filterName) {
-        return processedBy.contains(filterName);
+    public boolean isProcessedBy(int filterId) {
+        return (processedMask & (1L << filterId)) != 0;
     }
 
-    public void markProcessed(String filterName) {
-        processedBy.add(filterName);
-        processedFilters.incrementAndGet(); // Actualizează contorul
+    // Întoarce true doar pentru apelul care a completat masca, ca mesajul să fie terminat o singură dată
+    public boolean markProcessed(int filterId) {
+        long bit = 1L << filterId;
+        long current;
+        do {
+            current = processedMask;
+        } while (!PROCESSED_MASK.compareAndSet(this, current, current | bit));
+        return current != allFiltersMask && (current | bit) == allFiltersMask;
     }
 
     public boolean isFullyProcessed() {
-        return processedFilters.get() == totalFilters;
+        return processedMask == allFiltersMask;
+    }
+
+    long getProcessedMask() {
+        return processedMask;
+    }
+
+    // Rezervă mesajul pentru un filtru; doar un singur apelant câștigă, iar un mesaj eliminat nu mai poate fi rezervat
+    boolean claimFor(int filterId) {
+        long bit = 1L << filterId;
+        long current;
+        do {
+            current = dispatchedMask;
+            if ((current & bit) != 0) return false;
+        } while (!DISPATCHED_MASK.compareAndSet(this, current, current | bit));
+        return true;
+    }
+
+    // Marchează mesajul ca eliminat; întoarce true doar pentru primul filtru care îl elimină
+    boolean discard() {
+        return DISPATCHED_MASK.getAndSet(this, -1L) != -1L;
+    }
+
+    boolean isDiscarded() {
+        return dispatchedMask == -1L;
+    }
+
+    // Sentimentul și categoriile de moderare, calculate o singură dată și refolosite de toate filtrele de text
+    Sentiment sentiment() {
+        return Sentiment.of((analysis() >>> 1) & 3);
+    }
+
+    int moderationMask() {
+        return analysis() >>> 3;
+    }
+
+    // Bitul 0 = calculată, biții 1-2 = Sentiment.ordinal(), restul = masca de moderare. Un singur int, fără obiect
+    // pe heap; scrierea lui este atomică, deci filtrele care rulează în paralel văd fie analiza completă, fie 0
+    private int analysis() {
+        int current = analysis;
+        if (current == 0 || analyzedText != reviewText) {
+            String text = reviewText;
+            Sentiment sentiment = Sentiment.of(text, 0, text == null ? 0 : text.length());
+            current = 1 | sentiment.ordinal() << 1 | ModerationPatterns.DEFAULT.scan(text) << 3;
+            analyzedText = text;
+            analysis = current;
+        }
+        return current;
+    }
+
+    // Textul recenziei cu adnotările de sentiment, generat doar la afișare
+    String renderedText() {
+        if (sentimentSymbol == null && sentimentLabel == null) return reviewText;
+        StringBuilder text = new StringBuilder(reviewText);
+        if (sentimentSymbol != null) text.append(sentimentSymbol.symbol);
+        if (sentimentLabel != null) text.append(sentimentLabel.label);
+        return text.toString();
+    }
+
+    // Numele sunt materializate din SymbolTable doar la ieșire
+    String username() {
+        return SymbolTable.USERNAMES.name(usernameId);
+    }
+
+    String product() {
+        return SymbolTable.PRODUCTS.name(productId);
     }
 
     @Override
     public String toString() {
-        return username + ", " + product + ", " + reviewText + ", " + attachment;
+        return username() + ", " + product() + ", " + renderedText() + ", " + attachment;
     }
 }
 
+// Ce face addMessage() când Blackboard-ul are deja numărul maxim de mesaje în lucru
+enum OverflowPolicy {
+    BLOCK,       // Producătorul așteaptă să se termine un mesaj (backpressure)
+    DROP_NEWEST, // Mesajul nou este eliminat
+    DROP_OLDEST, // Nesuportat aici: mesajele admise sunt deja împărțite filtrelor
+    REJECT       // addMessage() aruncă RejectedExecutionException către cel care trimite
+}
+
+// Câmpurile unui mesaj pe care filtrele le declară ca citite sau scrise
+enum MessageField {
+    USERNAME,
+    PRODUCT,
+    REVIEW_TEXT,
+    ATTACHMENT,
+    SENTIMENT_SYMBOL,
+    SENTIMENT_LABEL
+}
+
+// Numărul de mesaje în lucru este mărginit la intrare: filtrele își trimit mesajele unul altuia,
+// deci cozi mărginite între filtre s-ar putea bloca reciproc
 class ConcurrentBlackboard {
-    private final BlockingQueue<ReviewMessage> queue = new LinkedBlockingQueue<>();
-    private final Set<String> activeFilters = ConcurrentHashMap.newKeySet();
+    static final int MAX_FILTERS = Long.SIZE - 1; // Starea unui mesaj încape într-un long; -1 marchează eliminarea
+    static final int DEFAULT_CAPACITY = 1024;
+
+    // Fiecare filtru are coada lui de mesaje gata de procesat, indexată după id
+    private final List<BlockingQueue<ReviewMessage>> readyQueues = new CopyOnWriteArrayList<>();
+    private final List<String> filterNames = new CopyOnWriteArrayList<>();
+    private final List<Set<MessageField>> reads = new CopyOnWriteArrayList<>();
+    private final List<Set<MessageField>> writes = new CopyOnWriteArrayList<>();
+    private final long[] dependencies = new long[MAX_FILTERS]; // Filtrele care trebuie să termine înaintea fiecărui filtru
+    private volatile long workerFiltersMask; // Filtrele planificate după dependențe
+    private volatile int finalFilter = -1;   // Filtrul care primește mesajul doar după toate celelalte
     private final AtomicInteger activeMessages = new AtomicInteger(0);
+    private final WaitStrategy waitStrategy; // Cum așteaptă filtrele când coada lor este goală
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final Semaphore admission; // Câte un permis pentru fiecare mesaj în lucru
+    private final AtomicInteger maxActiveMessages = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong(); // Mesaje eliminate de filtre; înlocuiește logarea per mesaj
+
+    public ConcurrentBlackboard() {
+        this(WaitStrategies.fromSystemProperty());
+    }
+
+    public ConcurrentBlackboard(WaitStrategy waitStrategy) {
+        this(waitStrategy, DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+    }
 
-    // Adaugă un mesaj în Blackboard
+    public ConcurrentBlackboard(WaitStrategy waitStrategy, int capacity, OverflowPolicy policy) {
+        if (policy == OverflowPolicy.DROP_OLDEST) {
+            throw new IllegalArgumentException("DROP_OLDEST nu este suportat: mesajele admise sunt deja la filtre");
+        }
+        this.waitStrategy = waitStrategy;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.admission = new Semaphore(capacity);
+    }
+
+    // Adaugă un mesaj în Blackboard; contorul crește înainte ca un filtru să-l poată termina
     public void addMessage(ReviewMessage message) throws InterruptedException {
-        queue.put(message);
-        activeMessages.incrementAndGet();
-    }
-
-    // Preia un mesaj pentru un anumit filtru
-    public ReviewMessage getMessageForFilter(String filterName) throws InterruptedException {
-        while (true) {
-            ReviewMessage message = queue.poll(100, TimeUnit.MILLISECONDS);
-            if (message == null) continue;
-            
-            if (!message.isProcessedBy(filterName)) {
-                return message;
-            } else {
-                queue.put(message); // Returnează mesajul în coadă pentru alte filtre
+        if (policy == OverflowPolicy.BLOCK) {
+            admission.acquire();
+        } else if (!admission.tryAcquire()) {
+            if (policy == OverflowPolicy.DROP_NEWEST) {
+                dropped.incrementAndGet();
+                return;
             }
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Blackboard-ul este plin (" + capacity + " mesaje în lucru)");
         }
+        int active = activeMessages.incrementAndGet();
+        int max = maxActiveMessages.get();
+        while (active > max && !maxActiveMessages.compareAndSet(max, active)) {
+            max = maxActiveMessages.get();
+        }
+        dispatch(message);
+    }
+
+    // Mesajul a fost acceptat sau eliminat și își eliberează locul
+    private void complete() {
+        activeMessages.decrementAndGet();
+        admission.release();
     }
 
-    public void returnMessage(ReviewMessage message, String filterName) throws InterruptedException {
-        message.markProcessed(filterName);
-        if (message.isFullyProcessed()) {
-            activeMessages.decrementAndGet();
+    // Preia următorul mesaj pentru care filtrul are toate datele de intrare gata; mesajele eliminate între timp
+    // de un filtru care rula în paralel sunt sărite
+    public ReviewMessage getMessageForFilter(int filterId) throws InterruptedException {
+        BlockingQueue<ReviewMessage> queue = readyQueues.get(filterId);
+        ReviewMessage message;
+        do {
+            message = waitStrategy.take(queue);
+        } while (message.isDiscarded());
+        return message;
+    }
+
+    public void returnMessage(ReviewMessage message, int filterId) throws InterruptedException {
+        if (message.markProcessed(filterId)) {
+            complete();
         } else {
-            queue.put(message);
+            dispatch(message);
         }
     }
 
-    public void registerFilter(String filterName) {
-        activeFilters.add(filterName);
+    // Mesajul eliminat de un filtru nu mai este trimis nimănui; filtrele care îl procesează deja doar îl ignoră la final
+    public void discardMessage(ReviewMessage message) {
+        if (message.discard()) {
+            discarded.incrementAndGet();
+            complete();
+        }
+    }
+
+    // Trimite mesajul tuturor filtrelor ale căror dependențe au terminat, ca ele să ruleze în paralel pe același mesaj;
+    // filtrul final îl primește doar când nu mai rămâne niciun alt filtru
+    private void dispatch(ReviewMessage message) throws InterruptedException {
+        long processed = message.getProcessedMask();
+        long pending = workerFiltersMask & ~processed;
+        if (pending == 0) {
+            // Fără filtru final, mesajul este terminat de returnMessage pentru ultimul filtru care îl procesează
+            if (finalFilter >= 0 && message.claimFor(finalFilter)) {
+                readyQueues.get(finalFilter).put(message);
+            }
+            return;
+        }
+        for (long candidates = pending; candidates != 0; candidates &= candidates - 1) {
+            int filterId = Long.numberOfTrailingZeros(candidates);
+            if ((dependencies[filterId] & ~processed) == 0 && message.claimFor(filterId)) {
+                readyQueues.get(filterId).put(message);
+            }
+        }
+    }
+
+    // Așteaptă până când fiecare mesaj adăugat a fost acceptat sau eliminat
+    public void awaitDone() throws InterruptedException {
+        while (!isDone()) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+    // Un filtru care nu își declară câmpurile este considerat că le citește și le scrie pe toate,
+    // deci rulează după toate filtrele înregistrate înaintea lui
+    public int registerFilter(String filterName) {
+        return registerFilter(filterName, EnumSet.allOf(MessageField.class), EnumSet.allOf(MessageField.class));
+    }
+
+    // Înregistrează un filtru și îi întoarce id-ul (poziția bitului său în starea mesajelor). Filtrul depinde de
+    // filtrele înregistrate înaintea lui care scriu ce citește sau scrie el, ori citesc ce scrie el.
+    public synchronized int registerFilter(String filterName, Set<MessageField> filterReads, Set<MessageField> filterWrites) {
+        int filterId = addFilter(filterName, filterReads, filterWrites);
+        long filterDependencies = 0;
+        for (long earlier = workerFiltersMask; earlier != 0; earlier &= earlier - 1) {
+            int other = Long.numberOfTrailingZeros(earlier);
+            if (overlaps(writes.get(other), filterReads) || overlaps(writes.get(other), filterWrites)
+                    || overlaps(reads.get(other), filterWrites)) {
+                filterDependencies |= 1L << other;
+            }
+        }
+        dependencies[filterId] = filterDependencies;
+        workerFiltersMask |= 1L << filterId;
+        return filterId;
+    }
+
+    // Înregistrează filtrul care trebuie să vadă mesajul ultimul
+    public synchronized int registerFinalFilter(String filterName) {
+        int filterId = addFilter(filterName, EnumSet.allOf(MessageField.class), EnumSet.noneOf(MessageField.class));
+        finalFilter = filterId;
+        return filterId;
+    }
+
+    private int addFilter(String filterName, Set<MessageField> filterReads, Set<MessageField> filterWrites) {
+        if (readyQueues.size() == MAX_FILTERS) {
+            throw new IllegalStateException("Blackboard-ul suportă cel mult " + MAX_FILTERS + " filtre");
+        }
+        Set<MessageField> readsCopy = EnumSet.noneOf(MessageField.class);
+        readsCopy.addAll(filterReads);
+        Set<MessageField> writesCopy = EnumSet.noneOf(MessageField.class);
+        writesCopy.addAll(filterWrites);
+        reads.add(readsCopy);
+        writes.add(writesCopy);
+        readyQueues.add(new LinkedBlockingQueue<>());
+        filterNames.add(filterName);
+        return readyQueues.size() - 1;
+    }
+
+    private static boolean overlaps(Set<MessageField> first, Set<MessageField> second) {
+        for (MessageField field : first) {
+            if (second.contains(field)) return true;
+        }
+        return false;
     }
 
     public boolean isDone() {
@@ -82,11 +331,306 @@ class ConcurrentBlackboard {
     }
 
     public int getTotalFilters() {
-        return activeFilters.size();
+        return readyQueues.size();
+    }
+
+    // Contoare de adâncime: mesaje în lucru, vârful lor, eliminate/respinse la intrare și coada fiecărui filtru
+    public int getActiveMessages() {
+        return activeMessages.get();
     }
 
-    public Set<String> getActiveFilters() {
-        return activeFilters;
+    public int getMaxActiveMessages() {
+        return maxActiveMessages.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    public int getQueueDepth(int filterId) {
+        return readyQueues.get(filterId).size();
+    }
+
+    public List<String> getActiveFilters() {
+        return Collections.unmodifiableList(filterNames);
+    }
+}
+
+// Categoriile de moderare recunoscute de MultiPatternMatcher
+enum ModerationCategory {
+    PROFANITY,  // Cuvinte obscene
+    PROPAGANDA  // Propagandă politică
+}
+
+// Automat Aho-Corasick compilat o singură dată: o singură trecere peste text spune ce categorii apar,
+// indiferent câte șabloane sunt încărcate
+class MultiPatternMatcher {
+    private final int[] asciiClasses = new int[128]; // Clasa fiecărui caracter ASCII (0 = nu apare în șabloane)
+    private final Map<Character, Integer> otherClasses = new HashMap<>(); // Clasele caracterelor non-ASCII
+    private final int alphabetSize;
+    private final int[] transitions; // Automat complet: transitions[stare * alphabetSize + clasă]
+    private final int[] outputs;     // Masca de categorii recunoscute în fiecare stare
+    private final int allCategories;
+
+    public MultiPatternMatcher(Map<ModerationCategory, ? extends Collection<String>> patterns) {
+        // Alfabetul compact: doar caracterele care apar în șabloane, plus clasa 0 pentru restul
+        int classes = 1;
+        int categories = 0;
+        for (Map.Entry<ModerationCategory, ? extends Collection<String>> entry : patterns.entrySet()) {
+            categories |= 1 << entry.getKey().ordinal();
+            for (String pattern : entry.getValue()) {
+                if (pattern.isEmpty()) {
+                    throw new IllegalArgumentException("Șablonul nu poate fi gol pentru " + entry.getKey());
+                }
+                for (char c : pattern.toCharArray()) {
+                    if (classOf(c) == 0) {
+                        if (c < 128) asciiClasses[c] = classes++;
+                        else otherClasses.put(c, classes++);
+                    }
+                }
+            }
+        }
+        this.alphabetSize = classes;
+        this.allCategories = categories;
+
+        // Trie-ul șabloanelor
+        List<int[]> gotoRows = new ArrayList<>();
+        List<Integer> masks = new ArrayList<>();
+        gotoRows.add(newRow());
+        masks.add(0);
+        for (Map.Entry<ModerationCategory, ? extends Collection<String>> entry : patterns.entrySet()) {
+            int bit = 1 << entry.getKey().ordinal();
+            for (String pattern : entry.getValue()) {
+                int state = 0;
+                for (int i = 0; i < pattern.length(); i++) {
+                    int c = classOf(pattern.charAt(i));
+                    if (gotoRows.get(state)[c] == -1) {
+                        gotoRows.get(state)[c] = gotoRows.size();
+                        gotoRows.add(newRow());
+                        masks.add(0);
+                    }
+                    state = gotoRows.get(state)[c];
+                }
+                masks.set(state, masks.get(state) | bit);
+            }
+        }
+
+        // Legăturile de eșec, în ordinea lățimii; tranzițiile lipsă sunt completate din starea de eșec
+        int states = gotoRows.size();
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int[] root = gotoRows.get(0);
+        for (int c = 0; c < alphabetSize; c++) {
+            if (root[c] == -1) {
+                root[c] = 0;
+            } else {
+                fail[root[c]] = 0;
+                queue.add(root[c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            masks.set(state, masks.get(state) | masks.get(fail[state]));
+            int[] row = gotoRows.get(state);
+            for (int c = 0; c < alphabetSize; c++) {
+                if (row[c] == -1) {
+                    row[c] = gotoRows.get(fail[state])[c];
+                } else {
+                    fail[row[c]] = gotoRows.get(fail[state])[c];
+                    queue.add(row[c]);
+                }
+            }
+        }
+
+        this.transitions = new int[states * alphabetSize];
+        this.outputs = new int[states];
+        for (int state = 0; state < states; state++) {
+            System.arraycopy(gotoRows.get(state), 0, transitions, state * alphabetSize, alphabetSize);
+            outputs[state] = masks.get(state);
+        }
+    }
+
+    private int[] newRow() {
+        int[] row = new int[alphabetSize];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    private int classOf(char c) {
+        return c < 128 ? asciiClasses[c] : otherClasses.getOrDefault(c, 0);
+    }
+
+    // O singură trecere peste text; întoarce masca categoriilor găsite (bitul ordinal() al fiecărei categorii)
+    public int scan(CharSequence text) {
+        if (text == null) return 0;
+        int state = 0;
+        int mask = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * alphabetSize + classOf(text.charAt(i))];
+            mask |= outputs[state];
+            if (mask == allCategories) break; // Toate categoriile au fost deja găsite
+        }
+        return mask;
+    }
+
+    static boolean contains(int mask, ModerationCategory category) {
+        return (mask & (1 << category.ordinal())) != 0;
+    }
+}
+
+// Șabloanele de moderare folosite de filtre
+class ModerationPatterns {
+    static final MultiPatternMatcher DEFAULT = new MultiPatternMatcher(Map.of(
+            ModerationCategory.PROFANITY, List.of("@#$%"),
+            ModerationCategory.PROPAGANDA, List.of("+++", "---")));
+}
+
+// Sentimentul dedus din raportul dintre literele mari și cele mici; textul afișat se generează doar la ieșire
+enum Sentiment {
+    POSITIVE("+", " (Positive)"),
+    NEGATIVE("-", " (Negative)"),
+    NEUTRAL("=", " (Neutral)");
+
+    final String symbol; // Forma scurtă, adăugată de SentimentDetectionFilter
+    final String label;  // Eticheta, adăugată de SentimentDetectionPlusFilter
+    private static final Sentiment[] VALUES = values(); // values() copiază tabloul la fiecare apel
+
+    Sentiment(String symbol, String label) {
+        this.symbol = symbol;
+        this.label = label;
+    }
+
+    static Sentiment fromCounts(int upperCaseCount, int lowerCaseCount) {
+        if (upperCaseCount > lowerCaseCount) return POSITIVE;
+        if (lowerCaseCount > upperCaseCount) return NEGATIVE;
+        return NEUTRAL;
+    }
+
+    static Sentiment of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    // Numără literele direct din text[from, to), fără copia char[] făcută de toCharArray()
+    static Sentiment of(CharSequence text, int from, int to) {
+        int upperCaseCount = 0, lowerCaseCount = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (Character.isUpperCase(c)) upperCaseCount++;
+            else if (Character.isLowerCase(c)) lowerCaseCount++;
+        }
+        return fromCounts(upperCaseCount, lowerCaseCount);
+    }
+}
+
+// Strategia prin care un filtru așteaptă când coada de intrare este goală
+interface WaitStrategy {
+    <E> E take(BlockingQueue<E> queue) throws InterruptedException;
+}
+
+// Blochează thread-ul pe coadă până sosește un mesaj; nu consumă CPU cât timp așteaptă
+class BlockingWaitStrategy implements WaitStrategy {
+    @Override
+    public <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+        return queue.take();
+    }
+}
+
+// Câteva încercări active, apoi park cu durată crescătoare până la maxParkNanos
+class SpinThenParkWaitStrategy implements WaitStrategy {
+    private final int spinTries;
+    private final long maxParkNanos;
+
+    public SpinThenParkWaitStrategy() {
+        this(100, 1_000_000);
+    }
+
+    public SpinThenParkWaitStrategy(int spinTries, long maxParkNanos) {
+        this.spinTries = spinTries;
+        this.maxParkNanos = maxParkNanos;
+    }
+
+    @Override
+    public <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+        int idleCount = 0;
+        long parkNanos = 1_000;
+        E e;
+        while ((e = queue.poll()) == null) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (idleCount < spinTries) {
+                Thread.onSpinWait();
+                idleCount++;
+            } else {
+                LockSupport.parkNanos(parkNanos);
+                parkNanos = Math.min(parkNanos * 2, maxParkNanos);
+            }
+        }
+        return e;
+    }
+}
+
+// Câteva încercări active, apoi cedează procesorul cu Thread.yield()
+class YieldingWaitStrategy implements WaitStrategy {
+    private static final int SPIN_TRIES = 100;
+
+    @Override
+    public <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+        int idleCount = 0;
+        E e;
+        while ((e = queue.poll()) == null) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (idleCount < SPIN_TRIES) {
+                Thread.onSpinWait();
+                idleCount++;
+            } else {
+                Thread.yield();
+            }
+        }
+        return e;
+    }
+}
+
+// Verifică coada continuu; latență minimă, dar ocupă un nucleu întreg
+class BusySpinWaitStrategy implements WaitStrategy {
+    @Override
+    public <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+        E e;
+        while ((e = queue.poll()) == null) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            Thread.onSpinWait();
+        }
+        return e;
+    }
+}
+
+// Alegerea strategiei pentru o instalare: -Dpipeline.waitStrategy=blocking|spin-park|yielding|busy-spin
+class WaitStrategies {
+    static final String PROPERTY = "pipeline.waitStrategy";
+
+    static WaitStrategy fromName(String name) {
+        switch (name.toLowerCase()) {
+            case "blocking":
+                return new BlockingWaitStrategy();
+            case "spin-park":
+                return new SpinThenParkWaitStrategy();
+            case "yielding":
+                return new YieldingWaitStrategy();
+            case "busy-spin":
+                return new BusySpinWaitStrategy();
+            default:
+                throw new IllegalArgumentException("Strategie de așteptare necunoscută: " + name);
+        }
+    }
+
+    static WaitStrategy fromSystemProperty() {
+        return fromName(System.getProperty(PROPERTY, "blocking"));
     }
 }
 
@@ -120,36 +664,37 @@ class CheckProfanitiesFilter implements Runnable {
     private final ConcurrentBlackboard blackboard;
     private final ClientConfig config;
     private final String filterName = "ProfanityFilter";
+    private final int filterId;
     private final AtomicInteger processedMessages = new AtomicInteger(0);
     private final AtomicLong processingTime = new AtomicLong(0);
 
     public CheckProfanitiesFilter(ConcurrentBlackboard blackboard, ClientConfig config) {
         this.blackboard = blackboard;
         this.config = config;
-        this.blackboard.registerFilter(filterName);
+        this.filterId = blackboard.registerFilter(filterName,
+                EnumSet.of(MessageField.REVIEW_TEXT), EnumSet.noneOf(MessageField.class));
     }
 
     @Override
     public void run() {
         try {
-            while (!blackboard.isDone()) {
-                ReviewMessage message = blackboard.getMessageForFilter(filterName);
-                if (message == null) 
-                    continue;
+            while (!Thread.currentThread().isInterrupted()) {
+                ReviewMessage message = blackboard.getMessageForFilter(filterId);
                 
                 if (message == ReviewPipeline.END_MESSAGE) {
-                    blackboard.returnMessage(message, filterName);
+                    blackboard.returnMessage(message, filterId);
                     break;
                 }
     
                 // Dacă mesajul conține profanități, îl eliminăm
-                if (config.checkProfanities && message.reviewText.contains("@#$%")) {
-                    System.out.println("CheckProfanitiesFilter: Mesaj eliminat: " + message);
+                if (config.checkProfanities
+                        && MultiPatternMatcher.contains(message.moderationMask(), ModerationCategory.PROFANITY)) {
+                    blackboard.discardMessage(message);
                     continue; // Nu retrimitem mesajul
                 }
                 
-                blackboard.returnMessage(message, filterName);
-                System.out.println("CheckProfanitiesFilter: Mesaj procesat: " + message);
+                processedMessages.incrementAndGet();
+                blackboard.returnMessage(message, filterId);
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -165,46 +710,403 @@ class CheckProfanitiesFilter implements Runnable {
     }
 }
 
+// Tabel concurent de simboluri: fiecare nume de utilizator sau produs distinct primește o singură dată un id int.
+// Mesajele, filtrele și indexul de achiziții lucrează doar cu id-uri; numele se citesc înapoi abia la ieșire.
+// Id -> nume nu ia lock; adăugarea unui simbol nou este serializată, dar are loc o singură dată pe simbol.
+final class SymbolTable {
+    static final int NONE = 0; // Id-ul valorii null; simbolurile reale primesc id-uri de la 1
+    static final SymbolTable USERNAMES = new SymbolTable();
+    static final SymbolTable PRODUCTS = new SymbolTable();
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[1024]; // Numele după id; publicat după fiecare adăugare
+    private int nextId = 1;
+
+    // Index după octeții UTF-8, pentru cititorii de fișiere: un simbol deja văzut nu mai cere un String nou
+    private int[] byteIds = new int[1024]; // 0 = slot liber
+    private byte[][] byteKeys = new byte[1024][];
+    private int byteCount;
+
+    int intern(String name) {
+        if (name == null) {
+            return NONE;
+        }
+        Integer id = ids.get(name);
+        return id != null ? id : add(name);
+    }
+
+    // Id-ul unui nume deja internat sau NONE, fără a-l adăuga
+    int find(String name) {
+        if (name == null) {
+            return NONE;
+        }
+        Integer id = ids.get(name);
+        return id == null ? NONE : id;
+    }
+
+    String name(int id) {
+        return names[id];
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    private synchronized int add(String name) {
+        Integer existing = ids.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        int id = nextId++;
+        String[] current = names;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, id * 2);
+        }
+        current[id] = name;
+        names = current;
+        ids.put(name, id); // Cine primește id-ul îl primește după ce numele a fost publicat
+        return id;
+    }
+
+    // Internează octeții UTF-8 dați; de obicei un singur thread citește fișierul, deci lock-ul nu este disputat
+    synchronized int intern(byte[] bytes, int offset, int length) {
+        int mask = byteIds.length - 1;
+        int slot = hash(bytes, offset, length) & mask;
+        while (byteIds[slot] != 0) {
+            byte[] key = byteKeys[slot];
+            if (Arrays.equals(key, 0, key.length, bytes, offset, offset + length)) {
+                return byteIds[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        byte[] key = Arrays.copyOfRange(bytes, offset, offset + length);
+        int id = intern(new String(key, StandardCharsets.UTF_8));
+        byteIds[slot] = id;
+        byteKeys[slot] = key;
+        if (++byteCount > byteIds.length / 4 * 3) {
+            rehashBytes();
+        }
+        return id;
+    }
+
+    private void rehashBytes() {
+        int[] oldIds = byteIds;
+        byte[][] oldKeys = byteKeys;
+        byteIds = new int[oldIds.length * 2];
+        byteKeys = new byte[oldIds.length * 2][];
+        int mask = byteIds.length - 1;
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] == 0) {
+                continue;
+            }
+            byte[] key = oldKeys[i];
+            int slot = hash(key, 0, key.length) & mask;
+            while (byteIds[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            byteIds[slot] = oldIds[i];
+            byteKeys[slot] = key;
+        }
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        hash *= 0x9E3779B9; // Nume apropiate (user1, user2, ...) ar ocupa altfel sloturi vecine
+        return hash ^ (hash >>> 16);
+    }
+}
+
+// Index imuabil al achizițiilor (utilizator, produs); un utilizator poate avea oricâte produse.
+// Fiecare pereche de id-uri din SymbolTable este o cheie long într-un tabel cu adresare deschisă (long[]),
+// fără String-uri sau noduri pe heap, iar un filtru Bloom pe blocuri răspunde la negative cu un singur acces la memorie.
+// După construcție indexul nu se mai modifică, deci poate fi partajat de oricâte filtre fără copii sau sincronizare.
+final class PurchaseIndex {
+    static final String PROPERTY = "pipeline.purchases";
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final int BLOOM_BITS_PER_ENTRY = 10; // ~1% rezultate fals pozitive cu 4 biți pe cheie
+
+    private final long[] table; // 0 = slot liber; id-urile încep de la 1, deci nicio cheie nu este 0
+    private final int mask;
+    private final long[] bloom;
+    private final int bloomMask;
+    private final int size;
+
+    private PurchaseIndex(long[] table, int size) {
+        this.table = table;
+        this.mask = table.length - 1;
+        this.size = size;
+        int words = Integer.highestOneBit(Math.max(1, (int) Math.min(1L << 30, ((long) size * BLOOM_BITS_PER_ENTRY + 63) / 64)) * 2 - 1);
+        this.bloom = new long[words];
+        this.bloomMask = words - 1;
+        for (long key : table) {
+            if (key != 0) {
+                long hash = mix(key);
+                bloom[bloomWord(hash)] |= bloomBits(hash);
+            }
+        }
+    }
+
+    boolean hasPurchased(int usernameId, int productId) {
+        if (usernameId == SymbolTable.NONE || productId == SymbolTable.NONE) {
+            return false;
+        }
+        long key = key(usernameId, productId);
+        long hash = mix(key);
+        long bits = bloomBits(hash);
+        if ((bloom[bloomWord(hash)] & bits) != bits) {
+            return false;
+        }
+        for (int slot = (int) hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (table[slot] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Un nume care nu a fost internat niciodată nu poate avea achiziții
+    boolean hasPurchased(String username, String product) {
+        return hasPurchased(SymbolTable.USERNAMES.find(username), SymbolTable.PRODUCTS.find(product));
+    }
+
+    int size() {
+        return size;
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    static PurchaseIndex of(Map<String, String> buyers) {
+        Builder builder = new Builder();
+        buyers.forEach(builder::add);
+        return builder.build();
+    }
+
+    // Încărcare în bloc dintr-un fișier CSV cu câte o pereche "username,product" pe linie (antetul este opțional)
+    static PurchaseIndex load(Path file) throws IOException {
+        Builder builder = new Builder();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            builder.reserve(channel.size() / 24); // Estimare după o linie tipică
+            ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            long lineNumber = 0;
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(buffer) < 0;
+                buffer.flip();
+                int lineStart = 0;
+                int limit = buffer.limit();
+                for (int i = 0; i < limit; i++) {
+                    if (buffer.get(i) == '\n') {
+                        builder.addLine(buffer, lineStart, i, ++lineNumber, file);
+                        lineStart = i + 1;
+                    }
+                }
+                if (eof && lineStart < limit) {
+                    builder.addLine(buffer, lineStart, limit, ++lineNumber, file); // Ultima linie fără '\n'
+                    lineStart = limit;
+                }
+                if (lineStart == 0 && limit == buffer.capacity()) {
+                    throw new IOException(file + ":" + (lineNumber + 1) + ": linie mai lungă de " + READ_BUFFER_SIZE + " octeți");
+                }
+                buffer.position(lineStart);
+                buffer.compact();
+            }
+        }
+        return builder.build();
+    }
+
+    // Fără proprietatea pipeline.purchases se folosește maparea dată, altfel achizițiile din fișier
+    static PurchaseIndex fromSystemProperty(Map<String, String> fallback) throws IOException {
+        String file = System.getProperty(PROPERTY);
+        return file == null ? of(fallback) : load(Paths.get(file));
+    }
+
+    @Override
+    public String toString() {
+        return size + " achiziții, " + table.length + " sloturi, Bloom " + (bloom.length * 8L / 1024) + " KB";
+    }
+
+    static long key(int usernameId, int productId) {
+        return ((long) usernameId << 32) | (productId & 0xFFFFFFFFL);
+    }
+
+    // Amestecul final din MurmurHash3: id-urile consecutive ajung în sloturi și cuvinte Bloom împrăștiate
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    // Cuvântul din filtrul Bloom și cei 4 biți din el provin din părți diferite ale hash-ului
+    private int bloomWord(long hash) {
+        return (int) (hash >>> 32) & bloomMask;
+    }
+
+    private static long bloomBits(long hash) {
+        int bits = (int) (hash >>> 8);
+        return (1L << bits) | (1L << (bits >>> 6)) | (1L << (bits >>> 12)) | (1L << (bits >>> 18));
+    }
+
+    static final class Builder {
+        private static final int MIN_CAPACITY = 16;
+
+        private long[] table = new long[MIN_CAPACITY];
+        private int size;
+        private byte[] scratch = new byte[256]; // Octeții câmpului curent la încărcarea din fișier
+
+        Builder add(String username, String product) {
+            return add(SymbolTable.USERNAMES.intern(username), SymbolTable.PRODUCTS.intern(product));
+        }
+
+        Builder add(int usernameId, int productId) {
+            if (usernameId != SymbolTable.NONE && productId != SymbolTable.NONE) {
+                insert(key(usernameId, productId));
+            }
+            return this;
+        }
+
+        // Pregătește tabelul pentru cel puțin expected perechi, evitând redimensionările la încărcarea în bloc
+        void reserve(long expected) {
+            int capacity = capacityFor(expected);
+            if (capacity > table.length) {
+                table = rehash(table, capacity);
+            }
+        }
+
+        PurchaseIndex build() {
+            // Tabelul final are dimensiunea potrivită pentru size, chiar dacă reserve() a estimat mai mult
+            return new PurchaseIndex(rehash(table, capacityFor(size)), size);
+        }
+
+        // Câmpurile sunt internate direct din octeți; un nume deja cunoscut nu mai construiește un String
+        private void addLine(ByteBuffer buffer, int from, int to, long lineNumber, Path file) throws IOException {
+            if (to > from && buffer.get(to - 1) == '\r') {
+                to--;
+            }
+            if (to == from) {
+                return;
+            }
+            int comma = from;
+            while (comma < to && buffer.get(comma) != ',') {
+                comma++;
+            }
+            if (comma == to) {
+                throw new IOException(file + ":" + lineNumber + ": lipsește separatorul ','");
+            }
+            if (lineNumber == 1 && matches(buffer, from, to, "username,product")) {
+                return; // Antet
+            }
+            add(intern(SymbolTable.USERNAMES, buffer, from, comma), intern(SymbolTable.PRODUCTS, buffer, comma + 1, to));
+        }
+
+        private int intern(SymbolTable symbols, ByteBuffer buffer, int from, int to) {
+            int length = to - from;
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(from, scratch, 0, length);
+            return symbols.intern(scratch, 0, length);
+        }
+
+        private void insert(long key) {
+            int mask = table.length - 1;
+            int slot = (int) mix(key) & mask;
+            while (table[slot] != 0) {
+                if (table[slot] == key) {
+                    return; // Achiziție duplicată
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = key;
+            if (++size > table.length / 4 * 3) {
+                table = rehash(table, table.length * 2);
+            }
+        }
+
+        private static long[] rehash(long[] old, int capacity) {
+            long[] table = new long[capacity];
+            int mask = capacity - 1;
+            for (long key : old) {
+                if (key != 0) {
+                    int slot = (int) mix(key) & mask;
+                    while (table[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = key;
+                }
+            }
+            return table;
+        }
+
+        // Capacitatea (putere a lui 2) la care expected perechi ocupă cel mult 3/4 din tabel
+        private static int capacityFor(long expected) {
+            long needed = Math.max(MIN_CAPACITY, expected * 4 / 3 + 1);
+            if (needed > 1 << 30) {
+                throw new IllegalArgumentException("Prea multe achiziții pentru index: " + expected);
+            }
+            return Integer.highestOneBit((int) needed * 2 - 1);
+        }
+
+        private static boolean matches(ByteBuffer buffer, int from, int to, String text) {
+            if (to - from != text.length()) {
+                return false;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                if (buffer.get(from + i) != text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
+
 class CheckBuyerFilter implements Runnable {
     private final ConcurrentBlackboard blackboard;
-    private final Map<String, String> buyers;
+    private final PurchaseIndex purchases;
     private final ClientConfig config;
     private final String filterName = "BuyerFilter";
+    private final int filterId;
     private final AtomicInteger processedMessages = new AtomicInteger(0);
     private final AtomicLong processingTime = new AtomicLong(0);
 
-    public CheckBuyerFilter(ConcurrentBlackboard blackboard, Map<String, String> buyers, ClientConfig config) {
+    public CheckBuyerFilter(ConcurrentBlackboard blackboard, PurchaseIndex purchases, ClientConfig config) {
         this.blackboard = blackboard;
-        this.buyers = new ConcurrentHashMap<>(buyers); // Copie thread-safe
+        this.purchases = purchases; // Imuabil, partajat fără copie
         this.config = config;
-        this.blackboard.registerFilter(filterName);
+        this.filterId = blackboard.registerFilter(filterName,
+                EnumSet.of(MessageField.USERNAME, MessageField.PRODUCT), EnumSet.noneOf(MessageField.class));
     }
 
     @Override
     public void run() {
         try {
-            while (!blackboard.isDone()) {
-                ReviewMessage message = blackboard.getMessageForFilter(filterName);
-                if (message == null) continue;
+            while (!Thread.currentThread().isInterrupted()) {
+                ReviewMessage message = blackboard.getMessageForFilter(filterId);
 
                 if (message == ReviewPipeline.END_MESSAGE) {
-                    blackboard.returnMessage(message, filterName);
+                    blackboard.returnMessage(message, filterId);
                     break;
                 }
 
                 boolean isValid = true;
                 if (config.checkBuyer) {
-                    String purchasedProduct = buyers.get(message.username);
-                    if (purchasedProduct == null || !purchasedProduct.equals(message.product)) {
-                        System.out.println("CheckBuyerFilter: Mesaj eliminat (utilizator nu a cumpărat produsul): " + message);
-                        continue; // Ieșim complet din metodă, fără a retrimite mesajul înapoi în coadă
+                    if (!purchases.hasPurchased(message.usernameId, message.productId)) {
+                        blackboard.discardMessage(message);
+                        continue; // Nu retrimitem mesajul înapoi în coadă
                     }
                     
                 }
 
                 processedMessages.incrementAndGet();
-                blackboard.returnMessage(message, filterName);
-                System.out.println("CheckBuyerFilter: Mesaj procesat: " + message);
+                blackboard.returnMessage(message, filterId);
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -224,24 +1126,25 @@ class ResizeImagesFilter implements Runnable {
     private final ConcurrentBlackboard blackboard;
     private final ClientConfig config;
     private final String filterName = "ResizeImagesFilter";
+    private final int filterId;
     private final AtomicInteger processedMessages = new AtomicInteger(0);
     private final AtomicLong processingTime = new AtomicLong(0);
 
     public ResizeImagesFilter(ConcurrentBlackboard blackboard, ClientConfig config) {
         this.blackboard = blackboard;
         this.config = config;
-        this.blackboard.registerFilter(filterName);
+        this.filterId = blackboard.registerFilter(filterName,
+                EnumSet.of(MessageField.ATTACHMENT), EnumSet.of(MessageField.ATTACHMENT));
     }
 
     @Override
         public void run() {
             try {
-                while (!blackboard.isDone()) {
-                    ReviewMessage message = blackboard.getMessageForFilter(filterName);
-                    if (message == null) continue;
+                while (!Thread.currentThread().isInterrupted()) {
+                    ReviewMessage message = blackboard.getMessageForFilter(filterId);
 
                     if (message == ReviewPipeline.END_MESSAGE) {
-                        blackboard.returnMessage(message, filterName);
+                        blackboard.returnMessage(message, filterId);
                         break;
                     }
 
@@ -249,9 +1152,8 @@ class ResizeImagesFilter implements Runnable {
                         message.attachment = "Resized: " + message.attachment.toLowerCase();
                     }
 
-                    message.markProcessed(filterName);
-                    blackboard.returnMessage(message, filterName);
-                    System.out.println("ResizeImagesFilter: Mesaj procesat: " + message);
+                    processedMessages.incrementAndGet();
+                    blackboard.returnMessage(message, filterId);
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -272,49 +1174,35 @@ class SentimentDetectionFilter implements Runnable {
     private final ConcurrentBlackboard blackboard;
     private final ClientConfig config;
     private final String filterName = "SentimentFilter";
+    private final int filterId;
     private final AtomicInteger processedMessages = new AtomicInteger(0);
     private final AtomicLong processingTime = new AtomicLong(0);
 
     public SentimentDetectionFilter(ConcurrentBlackboard blackboard, ClientConfig config) {
         this.blackboard = blackboard;
         this.config = config;
-        this.blackboard.registerFilter(filterName);
+        this.filterId = blackboard.registerFilter(filterName,
+                EnumSet.of(MessageField.REVIEW_TEXT), EnumSet.of(MessageField.SENTIMENT_SYMBOL));
     }
 
     @Override
     public void run() {
         try {
-            while (!blackboard.isDone()) {
-                ReviewMessage message = blackboard.getMessageForFilter(filterName);
-                if (message == null) continue;
+            while (!Thread.currentThread().isInterrupted()) {
+                ReviewMessage message = blackboard.getMessageForFilter(filterId);
                 
                 if (message == ReviewPipeline.END_MESSAGE) {
-                    blackboard.returnMessage(message, filterName);
+                    blackboard.returnMessage(message, filterId);
                     break;
                 }
 
                 if (config.detectSentiment && message.reviewText != null) {
-                    int upper = 0, lower = 0;
-                    String text = message.reviewText; // Lucrăm pe o copie locală
-                    
-                    for (char c : text.toCharArray()) {
-                        if (Character.isUpperCase(c)) upper++;
-                        else if (Character.isLowerCase(c)) lower++;
-                    }
-
-                    // Creăm un nou string în loc să modificăm pe cel existent
-                    String newText = text;
-                    if (upper > lower) newText += "+";
-                    else if (lower > upper) newText += "-";
-                    else newText += "=";
-
-                    // Actualizăm mesajul atomic
-                    message.reviewText = newText;
+                    // Textul rămâne neschimbat; simbolul este adăugat doar la afișare
+                    message.sentimentSymbol = message.sentiment();
                 }
 
                 processedMessages.incrementAndGet();
-                blackboard.returnMessage(message, filterName);
-                System.out.println("SentimentDetectionFilter: Mesaj procesat: " + message);
+                blackboard.returnMessage(message, filterId);
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -334,38 +1222,37 @@ class CheckPoliticalPropagandaFilter implements Runnable {
     private final ConcurrentBlackboard blackboard;
     private final ClientConfig config;
     private final String filterName = "PoliticalPropagandaFilter";
+    private final int filterId;
     private final AtomicInteger processedMessages = new AtomicInteger(0);
     private final AtomicLong processingTime = new AtomicLong(0);
 
     public CheckPoliticalPropagandaFilter(ConcurrentBlackboard blackboard, ClientConfig config) {
         this.blackboard = blackboard;
         this.config = config;
-        this.blackboard.registerFilter(filterName);
+        this.filterId = blackboard.registerFilter(filterName,
+                EnumSet.of(MessageField.REVIEW_TEXT), EnumSet.noneOf(MessageField.class));
     }
 
  
     @Override
     public void run() {
         try {
-            while (!blackboard.isDone()) {
-                ReviewMessage message = blackboard.getMessageForFilter(filterName);
-                if (message == null) continue;
+            while (!Thread.currentThread().isInterrupted()) {
+                ReviewMessage message = blackboard.getMessageForFilter(filterId);
     
                 if (message == ReviewPipeline.END_MESSAGE) {
-                    blackboard.returnMessage(message, filterName);
+                    blackboard.returnMessage(message, filterId);
                     break;
                 }
     
-                if (config.checkPoliticalPropaganda &&
-                    (message.reviewText.contains("+++") || message.reviewText.contains("---"))) {
-                    System.out.println("CheckPoliticalPropagandaFilter: Mesaj eliminat: " + message);
+                if (config.checkPoliticalPropaganda
+                        && MultiPatternMatcher.contains(message.moderationMask(), ModerationCategory.PROPAGANDA)) {
+                    blackboard.discardMessage(message);
                     continue; // Nu retrimitem mesajul înapoi
                 }
 
-    
-                message.markProcessed(filterName);
-                blackboard.returnMessage(message, filterName);
-                System.out.println("CheckPoliticalPropagandaFilter: Mesaj procesat: " + message);
+                processedMessages.incrementAndGet();
+                blackboard.returnMessage(message, filterId);
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -387,48 +1274,35 @@ class SentimentDetectionPlusFilter implements Runnable {
     private final ConcurrentBlackboard blackboard;
     private final ClientConfig config;
     private final String filterName = "SentimentPlusFilter";
+    private final int filterId;
     private final AtomicInteger processedMessages = new AtomicInteger(0);
     private final AtomicLong processingTime = new AtomicLong(0);
 
     public SentimentDetectionPlusFilter(ConcurrentBlackboard blackboard, ClientConfig config) {
         this.blackboard = blackboard;
         this.config = config;
-        this.blackboard.registerFilter(filterName);
+        this.filterId = blackboard.registerFilter(filterName,
+                EnumSet.of(MessageField.REVIEW_TEXT), EnumSet.of(MessageField.SENTIMENT_LABEL));
     }
 
     @Override
     public void run() {
         try {
-            while (!blackboard.isDone()) {
-                ReviewMessage message = blackboard.getMessageForFilter(filterName);
-                if (message == null) continue;
+            while (!Thread.currentThread().isInterrupted()) {
+                ReviewMessage message = blackboard.getMessageForFilter(filterId);
 
                 if (message == ReviewPipeline.END_MESSAGE) {
-                    blackboard.returnMessage(message, filterName);
+                    blackboard.returnMessage(message, filterId);
                     break;
                 }
 
                 if (config.detectSentimentPlus && message.reviewText != null) {
-                    int upper = 0, lower = 0;
-                    String currentText = message.reviewText;
-                    
-                    for (char c : currentText.toCharArray()) {
-                        if (Character.isUpperCase(c)) upper++;
-                        else if (Character.isLowerCase(c)) lower++;
-                    }
-
-                    String sentiment;
-                    if (upper > lower) sentiment = " (Positive)";
-                    else if (lower > upper) sentiment = " (Negative)";
-                    else sentiment = " (Neutral)";
-
-                    message.reviewText = currentText + sentiment;
-                    
+                    // Refolosește analiza deja calculată; eticheta apare doar la afișare
+                    message.sentimentLabel = message.sentiment();
                 }
 
                 processedMessages.incrementAndGet();
-                blackboard.returnMessage(message, filterName);
-                System.out.println("SentimentDetectionPlusFilter: Mesaj procesat: " + message);
+                blackboard.returnMessage(message, filterId);
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -447,35 +1321,40 @@ class SentimentDetectionPlusFilter implements Runnable {
 class FinalFilter implements Runnable {
     private final ConcurrentBlackboard blackboard;
     private final String filterName = "FinalFilter";
+    private final int filterId;
     private final BlockingQueue<ReviewMessage> resultsQueue = new LinkedBlockingQueue<>();
+    private final ReviewSink results; // Implicit mesajele acceptate rămân în memorie pentru getResults
 
     public FinalFilter(ConcurrentBlackboard blackboard) {
+        this(blackboard, null);
+    }
+
+    public FinalFilter(ConcurrentBlackboard blackboard, ReviewSink results) {
         this.blackboard = blackboard;
-        this.blackboard.registerFilter(filterName);
+        this.results = results != null ? results : resultsQueue::put;
+        this.filterId = blackboard.registerFinalFilter(filterName);
     }
 
     @Override
     public void run() {
         try {
-            while (!blackboard.isDone()) {
-                ReviewMessage message = blackboard.getMessageForFilter(filterName);
-                if (message == null) continue;
+            while (!Thread.currentThread().isInterrupted()) {
+                ReviewMessage message = blackboard.getMessageForFilter(filterId);
     
                 if (message == ReviewPipeline.END_MESSAGE) {
-                    blackboard.returnMessage(message, filterName);
+                    blackboard.returnMessage(message, filterId);
                     break;
                 }
     
                 // Verificăm dacă mesajul a fost eliminat de un filtru anterior
-                if (message.reviewText.contains("+++") || message.reviewText.contains("---")) {
-                    System.out.println("FinalFilter: Mesaj eliminat definitiv " + message);
+                if (MultiPatternMatcher.contains(message.moderationMask(), ModerationCategory.PROPAGANDA)) {
+                    blackboard.discardMessage(message);
                     continue; // Nu adăugăm mesajul în rezultate
                 }
-    
-                if (message.isFullyProcessed()) {
-                    resultsQueue.put(message);
-                    System.out.println("FinalFilter: Mesaj acceptat " + message);
-                }
+
+                // Blackboard-ul trimite mesajul aici doar după ce toate celelalte filtre l-au procesat
+                results.accept(message);
+                blackboard.returnMessage(message, filterId);
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
@@ -488,25 +1367,206 @@ class FinalFilter implements Runnable {
     }
 }
 
+// Primește fiecare mesaj acceptat de FinalFilter
+interface ReviewSink {
+    void accept(ReviewMessage message) throws InterruptedException;
+}
+
+// Scrie mesajele acceptate într-un fișier dintr-un thread separat, ca etapele să nu aștepte după disc sau consolă.
+// Mesajele sunt codate într-un buffer mare scris cu FileChannel.write când se umple; la fiecare commit de grup
+// (cel mult o dată la commitIntervalMillis) buffer-ul este golit și, opțional, forțat pe disc cu force.
+class BatchedFileSink implements ReviewSink, AutoCloseable {
+    static final String PROPERTY_PREFIX = "pipeline.sink.";
+    static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 10;
+    static final int QUEUE_CAPACITY = 8192;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final BlockingQueue<ReviewMessage> pending = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)      // Un surogat fără pereche devine '?', nu trunchiază linia
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final long commitIntervalNanos;
+    private final boolean force; // force după fiecare commit: mesajele confirmate supraviețuiesc unei căderi a sistemului
+    private final Thread writer;
+    private final AtomicLong writtenMessages = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private volatile IOException failure;
+    private volatile boolean closed;
+    private boolean dirty; // Folosit doar de writer
+
+    BatchedFileSink(Path file) throws IOException {
+        this(file, DEFAULT_BUFFER_SIZE, DEFAULT_COMMIT_INTERVAL_MILLIS, false);
+    }
+
+    BatchedFileSink(Path file, int bufferSize, long commitIntervalMillis, boolean force) throws IOException {
+        if (bufferSize <= 0 || commitIntervalMillis < 0) {
+            throw new IllegalArgumentException("Buffer sau interval de commit invalid: " + bufferSize + ", " + commitIntervalMillis);
+        }
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.commitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(commitIntervalMillis);
+        this.force = force;
+        this.writer = new Thread(this::writeLoop, "result-writer");
+        writer.start();
+    }
+
+    // pipeline.sink.bufferSize, pipeline.sink.commitIntervalMillis și pipeline.sink.force
+    static BatchedFileSink fromSystemProperties(Path file) throws IOException {
+        return new BatchedFileSink(file,
+                Integer.getInteger(PROPERTY_PREFIX + "bufferSize", DEFAULT_BUFFER_SIZE),
+                Long.getLong(PROPERTY_PREFIX + "commitIntervalMillis", DEFAULT_COMMIT_INTERVAL_MILLIS),
+                Boolean.getBoolean(PROPERTY_PREFIX + "force"));
+    }
+
+    // Doar pune mesajul în coada writer-ului; când aceasta este plină producătorul așteaptă
+    @Override
+    public void accept(ReviewMessage message) throws InterruptedException {
+        if (message == ReviewPipeline.END_MESSAGE) return; // Sfârșitul fluxului este semnalat de close
+        if (failure != null) throw new UncheckedIOException(failure);
+        if (closed) throw new IllegalStateException("Sink-ul pentru " + file + " este închis");
+        pending.put(message);
+    }
+
+    private void writeLoop() {
+        List<ReviewMessage> batch = new ArrayList<>();
+        long nextCommit = System.nanoTime() + commitIntervalNanos;
+        boolean end = false;
+        try {
+            while (!end) {
+                long wait = nextCommit - System.nanoTime();
+                ReviewMessage first = wait > 0 ? pending.poll(wait, TimeUnit.NANOSECONDS) : pending.poll();
+                if (first != null) {
+                    batch.add(first);
+                    pending.drainTo(batch);
+                    for (ReviewMessage message : batch) {
+                        if (message == ReviewPipeline.END_MESSAGE) {
+                            end = true;
+                        } else {
+                            encode(message);
+                        }
+                    }
+                    batch.clear();
+                }
+                if (end || System.nanoTime() - nextCommit >= 0) {
+                    commit();
+                    nextCommit = System.nanoTime() + commitIntervalNanos;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+            // END poate fi deja în lotul întrerupt de eroare; altfel writer-ul l-ar aștepta la nesfârșit în coadă
+            for (ReviewMessage message : batch) {
+                if (message == ReviewPipeline.END_MESSAGE) end = true;
+            }
+            // Producătorii blocați pe coada plină sunt eliberați până la close
+            while (!end) {
+                try {
+                    end = pending.take() == ReviewPipeline.END_MESSAGE;
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void encode(ReviewMessage message) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(message.toString());
+        encoder.reset();
+        while (encoder.encode(chars, buffer, true).isOverflow()) {
+            flush();
+        }
+        if (!buffer.hasRemaining()) flush();
+        buffer.put((byte) '\n');
+        writtenMessages.incrementAndGet();
+        dirty = true;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        writtenBytes.addAndGet(buffer.remaining());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Un singur write (și un singur force) pentru toate mesajele sosite de la commit-ul anterior
+    private void commit() throws IOException {
+        if (!dirty) return;
+        flush();
+        if (force) channel.force(false);
+        commits.incrementAndGet();
+        dirty = false;
+    }
+
+    // Scrie tot ce a rămas în coadă, face ultimul commit și închide fișierul. O întrerupere în timpul așteptării
+    // este restaurată și raportată ca InterruptedIOException, ca try-with-resources să nu primească InterruptedException
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            pending.put(ReviewPipeline.END_MESSAGE);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Întrerupt în așteptarea scrierii în " + file);
+        }
+        channel.close();
+        if (failure != null) throw failure;
+    }
+
+    public long getWrittenMessages() {
+        return writtenMessages.get();
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes.get();
+    }
+
+    public long getCommitCount() {
+        return commits.get();
+    }
+
+    @Override
+    public String toString() {
+        return file + ": " + getWrittenMessages() + " mesaje, " + getWrittenBytes() + " octeți, " + getCommitCount() + " commit-uri";
+    }
+}
+
 public class ConcurrentBlackboardExample {
-    public static void main(String[] args) throws InterruptedException {
+    public static void main(String[] args) throws InterruptedException, IOException {
         Map<String, String> buyers = new HashMap<>();
         buyers.put("John", "Laptop");
         buyers.put("Mary", "Phone");
         buyers.put("Ann", "Book");
+        // With -Dpipeline.purchases=<CSV file>, purchases are bulk-loaded from the file instead of the map above
+        PurchaseIndex purchases = PurchaseIndex.fromSystemProperty(buyers);
 
         ClientConfig config = new ClientConfig(true, true, true, true, true, false);
-        ConcurrentBlackboard blackboard = new ConcurrentBlackboard();
+        // Maximum number of in-flight messages and what happens to new ones when it is reached
+        int capacity = args.length > 0 ? Integer.parseInt(args[0]) : ConcurrentBlackboard.DEFAULT_CAPACITY;
+        OverflowPolicy policy = args.length > 1 ? OverflowPolicy.valueOf(args[1].toUpperCase()) : OverflowPolicy.BLOCK;
+        ConcurrentBlackboard blackboard = new ConcurrentBlackboard(WaitStrategies.fromSystemProperty(), capacity, policy);
+        // Optional output file: accepted messages are written by a background writer instead of kept in memory
+        BatchedFileSink resultSink = args.length > 2 ? BatchedFileSink.fromSystemProperties(Paths.get(args[2])) : null;
 
         // Register filters
         List<Runnable> filters = Arrays.asList(
             new CheckProfanitiesFilter(blackboard, config),
-            new CheckBuyerFilter(blackboard, buyers, config),
+            new CheckBuyerFilter(blackboard, purchases, config),
             new ResizeImagesFilter(blackboard, config),
             new CheckPoliticalPropagandaFilter(blackboard, config),
             new SentimentDetectionFilter(blackboard, config),
             new SentimentDetectionPlusFilter(blackboard, config),
-            new FinalFilter(blackboard)
+            new FinalFilter(blackboard, resultSink)
         );
 
         ExecutorService executor = Executors.newFixedThreadPool(filters.size());
@@ -520,22 +1580,209 @@ public class ConcurrentBlackboardExample {
             new ReviewMessage("Alice", "Tablet", "I love this +++", "TabletImage", totalFilters),
             new ReviewMessage("Peter", "Phone", "GREAT", "ManyPictures", totalFilters),
             new ReviewMessage("Ann", "Book", "So GOOD", "Image", totalFilters),
-            new ReviewMessage("Bob", "Laptop", "This is amazing ---", "LaptopImage", totalFilters),
-            new ReviewMessage("END", "", "", "", totalFilters) // END_MESSAGE
+            new ReviewMessage("Bob", "Laptop", "This is amazing ---", "LaptopImage", totalFilters)
         );
 
         for (ReviewMessage message : messages) {
-            blackboard.addMessage(message);
+            try {
+                blackboard.addMessage(message);
+            } catch (RejectedExecutionException e) {
+                System.out.println("Mesaj respins: " + message + " (" + e.getMessage() + ")");
+            }
         }
 
-        // Proper shutdown
-        executor.shutdown();
+        // Wait until every message was accepted or dropped, then stop the filters
+        blackboard.awaitDone();
+        executor.shutdownNow();
         while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
             System.out.println("Waiting for completion...");
         }
 
         // Get results
-        System.out.println("\nFinal Results:");
-        ((FinalFilter) filters.get(filters.size()-1)).getResults().forEach(System.out::println);
+        if (resultSink != null) {
+            resultSink.close();
+            System.out.println("\nFinal Results: " + resultSink);
+        } else {
+            System.out.println("\nFinal Results:");
+            ((FinalFilter) filters.get(filters.size()-1)).getResults().forEach(System.out::println);
+        }
+        System.out.println("\nIn-flight peak: " + blackboard.getMaxActiveMessages() + "/" + capacity
+                + ", dropped: " + blackboard.getDroppedCount() + ", rejected: " + blackboard.getRejectedCount()
+                + ", discarded by filters: " + blackboard.getDiscardedCount());
+    }
+}
+
+// Măsurători în stilul JMH: iterații de încălzire, iterații măsurate, throughput, timp mediu și rată de alocare
+class BenchmarkHarness {
+    // O invocare măsurată; filtrele trebuie pornite pe thread-uri create de threadFactory ca alocările lor să fie numărate
+    interface MeasuredRun {
+        void run(ThreadFactory threadFactory) throws Exception;
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+
+    public BenchmarkHarness(int warmupIterations, int measurementIterations) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+    }
+
+    static void printHeader() {
+        System.out.println(String.format("%-45s %-20s %4s %14s   %s", "Benchmark", "Mode", "Cnt", "Score", "Units"));
+    }
+
+    // setup() rulează înainte de fiecare iterație și nu intră în măsurătoare
+    public void measure(String name, int operations, Runnable setup, MeasuredRun body) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            setup.run();
+            runOnce(body);
+        }
+        double[] throughput = new double[measurementIterations];
+        double[] averageTime = new double[measurementIterations];
+        double[] allocationRate = new double[measurementIterations];
+        double[] allocationPerOp = new double[measurementIterations];
+        for (int i = 0; i < measurementIterations; i++) {
+            setup.run();
+            long[] result = runOnce(body); // { timp în ns, octeți alocați }
+            double seconds = result[0] / 1_000_000_000.0;
+            throughput[i] = operations / seconds;
+            averageTime[i] = (double) result[0] / operations;
+            allocationRate[i] = result[1] / (1024.0 * 1024.0) / seconds;
+            allocationPerOp[i] = (double) result[1] / operations;
+        }
+        print(name, "thrpt", throughput, "ops/s");
+        print(name, "avgt", averageTime, "ns/op");
+        print(name, "gc.alloc.rate", allocationRate, "MB/sec");
+        print(name, "gc.alloc.rate.norm", allocationPerOp, "B/op");
+    }
+
+    private long[] runOnce(MeasuredRun body) throws Exception {
+        LongAdder workerAllocations = new LongAdder();
+        // Fiecare thread de lucru își raportează alocările când se termină
+        ThreadFactory threadFactory = runnable -> new Thread(() -> {
+            try {
+                runnable.run();
+            } finally {
+                workerAllocations.add(THREADS.getCurrentThreadAllocatedBytes());
+            }
+        });
+        long allocationsBefore = THREADS.getCurrentThreadAllocatedBytes();
+        long startTime = System.nanoTime();
+        body.run(threadFactory);
+        long elapsed = System.nanoTime() - startTime;
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - allocationsBefore + workerAllocations.sum();
+        return new long[] { elapsed, allocated };
     }
-}
\ No newline at end of file
+
+    private static void print(String name, String mode, double[] values, String units) {
+        double mean = 0;
+        for (double value : values) mean += value;
+        mean /= values.length;
+        System.out.println(String.format("%-45s %-20s %4d %14.3f   %s", name, mode, values.length, mean, units));
+    }
+}
+
+// Încărcare de lucru generată determinist (aceeași sămânță), identică pentru toate arhitecturile comparate
+class ReviewWorkload {
+    static final long SEED = 42;
+    private static final String[] USERS = { "John", "Mary", "Ann", "Peter", "Alice", "Bob" };
+    private static final String[] PRODUCTS = { "Laptop", "Phone", "Book", "Tablet" };
+    private static final String[] WORDS = { "great", "ok", "BAD", "So", "GOOD", "love", "this", "product", "fast", "DELIVERY", "would", "buy", "again" };
+
+    final String[] usernames;
+    final String[] products;
+    final String[] texts;
+    final String[] attachments;
+
+    ReviewWorkload(int count) {
+        Random random = new Random(SEED);
+        usernames = new String[count];
+        products = new String[count];
+        texts = new String[count];
+        attachments = new String[count];
+        for (int i = 0; i < count; i++) {
+            usernames[i] = USERS[random.nextInt(USERS.length)];
+            products[i] = PRODUCTS[random.nextInt(PRODUCTS.length)];
+            StringBuilder text = new StringBuilder();
+            int words = 3 + random.nextInt(30);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) text.append(' ');
+                text.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            int moderation = random.nextInt(20); // ~5% profanități, ~10% propagandă
+            if (moderation == 0) text.append(" @#$%");
+            else if (moderation == 1) text.append(" +++");
+            else if (moderation == 2) text.append(" ---");
+            texts[i] = text.toString();
+            attachments[i] = "IMAGE_" + random.nextInt(100) + ".PNG";
+        }
+    }
+
+    static Map<String, String> buyers() {
+        Map<String, String> buyers = new HashMap<>();
+        buyers.put("John", "Laptop");
+        buyers.put("Mary", "Phone");
+        buyers.put("Ann", "Book");
+        buyers.put("Peter", "Tablet");
+        return buyers;
+    }
+
+    int size() {
+        return texts.length;
+    }
+
+    // Mesaje noi pentru fiecare iterație, ca analiza din cache și adnotările să nu treacă dintr-o iterație în alta
+    List<ReviewMessage> newMessages(int totalFilters) {
+        List<ReviewMessage> messages = new ArrayList<>(texts.length);
+        for (int i = 0; i < texts.length; i++) {
+            messages.add(new ReviewMessage(usernames[i], products[i], texts[i], attachments[i], totalFilters));
+        }
+        return messages;
+    }
+}
+
+// Blackboard-ul cu câte o coadă de mesaje gata de procesat pe filtru, măsurat pe aceeași încărcare ca pipeline-ul.
+// Rulare: java ConcurrentBlackboardBenchmark [mesaje] [iterații de încălzire] [iterații măsurate]
+class ConcurrentBlackboardBenchmark {
+    public static void main(String[] args) throws Exception {
+        int messageCount = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int warmups = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        ReviewWorkload workload = new ReviewWorkload(messageCount);
+        PurchaseIndex purchases = PurchaseIndex.of(ReviewWorkload.buyers());
+        ClientConfig config = new ClientConfig(true, true, true, true, true, true);
+        BenchmarkHarness harness = new BenchmarkHarness(warmups, iterations);
+
+        BenchmarkHarness.printHeader();
+        harness.measure("ConcurrentBlackboard.readyQueues", messageCount,
+                () -> { },
+                threadFactory -> runBlackboard(workload, purchases, config, threadFactory));
+    }
+
+    // Tabla și mesajele sunt create în interiorul măsurătorii: numărul de filtre este cunoscut abia după înregistrare
+    static void runBlackboard(ReviewWorkload workload, PurchaseIndex purchases, ClientConfig config,
+                              ThreadFactory threadFactory) throws InterruptedException {
+        ConcurrentBlackboard blackboard = new ConcurrentBlackboard();
+        List<Runnable> filters = Arrays.asList(
+            new CheckProfanitiesFilter(blackboard, config),
+            new CheckBuyerFilter(blackboard, purchases, config),
+            new ResizeImagesFilter(blackboard, config),
+            new CheckPoliticalPropagandaFilter(blackboard, config),
+            new SentimentDetectionFilter(blackboard, config),
+            new SentimentDetectionPlusFilter(blackboard, config),
+            new FinalFilter(blackboard)
+        );
+        ExecutorService executor = Executors.newFixedThreadPool(filters.size(), threadFactory);
+        filters.forEach(executor::execute);
+        for (ReviewMessage message : workload.newMessages(blackboard.getTotalFilters())) {
+            blackboard.addMessage(message);
+        }
+        blackboard.awaitDone();
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
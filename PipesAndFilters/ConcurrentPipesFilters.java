@@ -1,22 +1,103 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
 
 class ReviewMessage {
-    String username;
-    String product;
+    int usernameId; // Id-ul din SymbolTable.USERNAMES; numele se citeste doar la iesire
+    int productId;  // Id-ul din SymbolTable.PRODUCTS
     String reviewText;
     String attachment;
+    Sentiment sentimentSymbol; // Adnotarea SentimentDetectionFilter, afisata doar la iesire
+    Sentiment sentimentLabel;  // Adnotarea SentimentDetectionPlusFilter, afisata doar la iesire
+    private String analyzedText; // Textul pentru care este valid campul analysis
+    private int analysis;        // Analiza textului impachetata (vezi analysis()); 0 = inca neanalizat
+    long walSequence = -1; // Secventa din WriteAheadLog; -1 cat timp mesajul nu a fost notat
+    long sequence = -1;    // Numarul de ordine primit la intrarea intr-o etapa replicata
 
     public ReviewMessage(String username, String product, String reviewText, String attachment) {
-        this.username = username;
-        this.product = product;
+        this(SymbolTable.USERNAMES.intern(username), SymbolTable.PRODUCTS.intern(product), reviewText, attachment);
+    }
+
+    // Pentru cititorii de fisiere, care interneaza numele direct din octeti
+    ReviewMessage(int usernameId, int productId, String reviewText, String attachment) {
+        this.usernameId = usernameId;
+        this.productId = productId;
         this.reviewText = reviewText;
         this.attachment = attachment;
     }
 
+    // Sentimentul si categoriile de moderare, calculate o singura data si refolosite de toate filtrele de text
+    Sentiment sentiment() {
+        return Sentiment.of((analysis() >>> 1) & 3);
+    }
+
+    int moderationMask() {
+        return analysis() >>> 3;
+    }
+
+    // Bitul 0 = calculata, bitii 1-2 = Sentiment.ordinal(), restul = masca de moderare. Un singur int, fara obiect
+    // pe heap; scrierea lui este atomica, deci filtrele care ruleaza in paralel vad fie analiza completa, fie 0
+    private int analysis() {
+        int current = analysis;
+        if (current == 0 || analyzedText != reviewText) {
+            String text = reviewText;
+            Sentiment sentiment = Sentiment.of(text, 0, text == null ? 0 : text.length());
+            current = 1 | sentiment.ordinal() << 1 | ModerationPatterns.DEFAULT.scan(text) << 3;
+            analyzedText = text;
+            analysis = current;
+        }
+        return current;
+    }
+
+    // Textul recenziei cu adnotarile de sentiment, generat doar la afisare
+    String renderedText() {
+        if (sentimentSymbol == null && sentimentLabel == null) return reviewText;
+        StringBuilder text = new StringBuilder(reviewText);
+        if (sentimentSymbol != null) text.append(sentimentSymbol.symbol);
+        if (sentimentLabel != null) text.append(sentimentLabel.label);
+        return text.toString();
+    }
+
+    // Numele sunt materializate din SymbolTable doar la iesire
+    String username() {
+        return SymbolTable.USERNAMES.name(usernameId);
+    }
+
+    String product() {
+        return SymbolTable.PRODUCTS.name(productId);
+    }
+
     @Override
     public String toString() {
-        return username + ", " + product + ", " + reviewText + ", " + attachment;
+        return username() + ", " + product() + ", " + renderedText() + ", " + attachment;
     }
 }
 
@@ -46,284 +127,585 @@ interface Filter {
     void process(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue);
 }
 
-class CheckProfanitiesFilter implements Filter {
-    private final ClientConfig config;
-    private long processingTime = 0; // Timpul de procesare pentru acest filtru
-    private int processedMessages = 0; // Numarul de mesaje procesate
+// Categoriile de moderare recunoscute de MultiPatternMatcher
+enum ModerationCategory {
+    PROFANITY,  // Cuvinte obscene
+    PROPAGANDA  // Propaganda politica
+}
 
-    public CheckProfanitiesFilter(ClientConfig config) {
-        this.config = config;
-    }
+// Automat Aho-Corasick compilat o singura data: o singura trecere peste text spune ce categorii apar,
+// indiferent cate sabloane sunt incarcate
+class MultiPatternMatcher {
+    private final int[] asciiClasses = new int[128]; // Clasa fiecarui caracter ASCII (0 = nu apare in sabloane)
+    private final Map<Character, Integer> otherClasses = new HashMap<>(); // Clasele caracterelor non-ASCII
+    private final int alphabetSize;
+    private final int[] transitions; // Automat complet: transitions[stare * alphabetSize + clasa]
+    private final int[] outputs;     // Masca de categorii recunoscute in fiecare stare
+    private final int allCategories;
 
-    @Override
-    public void process(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue) {
-        try {
-            while (true) {
-                long startTime = System.currentTimeMillis(); // Masurarea timpului de inceput
-                ReviewMessage message = inputQueue.poll(100, TimeUnit.MILLISECONDS);
-                if (message == null) continue;
-                if (message == ReviewPipeline.END_MESSAGE) {
-                    outputQueue.put(message);
-                    break;
+    public MultiPatternMatcher(Map<ModerationCategory, ? extends Collection<String>> patterns) {
+        // Alfabetul compact: doar caracterele care apar in sabloane, plus clasa 0 pentru restul
+        int classes = 1;
+        int categories = 0;
+        for (Map.Entry<ModerationCategory, ? extends Collection<String>> entry : patterns.entrySet()) {
+            categories |= 1 << entry.getKey().ordinal();
+            for (String pattern : entry.getValue()) {
+                if (pattern.isEmpty()) {
+                    throw new IllegalArgumentException("Sablonul nu poate fi gol pentru " + entry.getKey());
+                }
+                for (char c : pattern.toCharArray()) {
+                    if (classOf(c) == 0) {
+                        if (c < 128) asciiClasses[c] = classes++;
+                        else otherClasses.put(c, classes++);
+                    }
+                }
+            }
+        }
+        this.alphabetSize = classes;
+        this.allCategories = categories;
+
+        // Trie-ul sabloanelor
+        List<int[]> gotoRows = new ArrayList<>();
+        List<Integer> masks = new ArrayList<>();
+        gotoRows.add(newRow());
+        masks.add(0);
+        for (Map.Entry<ModerationCategory, ? extends Collection<String>> entry : patterns.entrySet()) {
+            int bit = 1 << entry.getKey().ordinal();
+            for (String pattern : entry.getValue()) {
+                int state = 0;
+                for (int i = 0; i < pattern.length(); i++) {
+                    int c = classOf(pattern.charAt(i));
+                    if (gotoRows.get(state)[c] == -1) {
+                        gotoRows.get(state)[c] = gotoRows.size();
+                        gotoRows.add(newRow());
+                        masks.add(0);
+                    }
+                    state = gotoRows.get(state)[c];
                 }
+                masks.set(state, masks.get(state) | bit);
+            }
+        }
 
-                // Verifica daca filtrul este activat si daca mesajul contine cuvinte obscene
-                if (config.checkProfanities && message.reviewText.contains("@#$%")) {
-                    continue; // Ignora mesajul daca contine 
+        // Legaturile de esec, in ordinea latimii; tranzitiile lipsa sunt completate din starea de esec
+        int states = gotoRows.size();
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int[] root = gotoRows.get(0);
+        for (int c = 0; c < alphabetSize; c++) {
+            if (root[c] == -1) {
+                root[c] = 0;
+            } else {
+                fail[root[c]] = 0;
+                queue.add(root[c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            masks.set(state, masks.get(state) | masks.get(fail[state]));
+            int[] row = gotoRows.get(state);
+            for (int c = 0; c < alphabetSize; c++) {
+                if (row[c] == -1) {
+                    row[c] = gotoRows.get(fail[state])[c];
+                } else {
+                    fail[row[c]] = gotoRows.get(fail[state])[c];
+                    queue.add(row[c]);
                 }
-                outputQueue.put(message);
-                processedMessages++; // Incrementarea numarului de mesaje procesate
-                long endTime = System.currentTimeMillis(); // Masurarea timpului de sfarsit
-                processingTime += (endTime - startTime); // Actualizarea timpului total de procesare
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        }
+
+        this.transitions = new int[states * alphabetSize];
+        this.outputs = new int[states];
+        for (int state = 0; state < states; state++) {
+            System.arraycopy(gotoRows.get(state), 0, transitions, state * alphabetSize, alphabetSize);
+            outputs[state] = masks.get(state);
         }
     }
 
-    public long getProcessingTime() {
-        return processingTime;
+    private int[] newRow() {
+        int[] row = new int[alphabetSize];
+        Arrays.fill(row, -1);
+        return row;
     }
 
-    public int getProcessedMessages() {
-        return processedMessages;
+    private int classOf(char c) {
+        return c < 128 ? asciiClasses[c] : otherClasses.getOrDefault(c, 0);
+    }
+
+    // O singura trecere peste text; intoarce masca categoriilor gasite (bitul ordinal() al fiecarei categorii)
+    public int scan(CharSequence text) {
+        return text == null ? 0 : scan(text, 0, text.length());
+    }
+
+    // Trecerea peste text[from, to), de exemplu peste vederea CharBuffer a unui slab off-heap
+    public int scan(CharSequence text, int from, int to) {
+        int state = 0;
+        int mask = 0;
+        for (int i = from; i < to; i++) {
+            state = transitions[state * alphabetSize + classOf(text.charAt(i))];
+            mask |= outputs[state];
+            if (mask == allCategories) break; // Toate categoriile au fost deja gasite
+        }
+        return mask;
+    }
+
+    // Aceeasi trecere peste chars[from, to), pentru textele din bufferul partajat al unui ReviewBatch
+    public int scan(char[] chars, int from, int to) {
+        int state = 0;
+        int mask = 0;
+        for (int i = from; i < to; i++) {
+            state = transitions[state * alphabetSize + classOf(chars[i])];
+            mask |= outputs[state];
+            if (mask == allCategories) break;
+        }
+        return mask;
+    }
+
+    static boolean contains(int mask, ModerationCategory category) {
+        return (mask & (1 << category.ordinal())) != 0;
     }
 }
 
-class CheckBuyerFilter implements Filter {
-    private final Map<String, String> buyers;
-    private final ClientConfig config;
-    private long processingTime = 0; // Timpul de procesare pentru acest filtru
-    private int processedMessages = 0; // Numarul de mesaje procesate
+// Sabloanele de moderare folosite de filtre
+class ModerationPatterns {
+    static final MultiPatternMatcher DEFAULT = new MultiPatternMatcher(Map.of(
+            ModerationCategory.PROFANITY, List.of("@#$%"),
+            ModerationCategory.PROPAGANDA, List.of("+++", "---")));
+}
 
-    public CheckBuyerFilter(Map<String, String> buyers, ClientConfig config) {
-        this.buyers = buyers;
-        this.config = config;
+// Sentimentul dedus din raportul dintre literele mari si cele mici; textul afisat se genereaza doar la iesire
+enum Sentiment {
+    POSITIVE("+", " (Positive)"),
+    NEGATIVE("-", " (Negative)"),
+    NEUTRAL("=", " (Neutral)");
+
+    final String symbol; // Forma scurta, adaugata de SentimentDetectionFilter
+    final String label;  // Eticheta, adaugata de SentimentDetectionPlusFilter
+    private static final Sentiment[] VALUES = values(); // values() copiaza tabloul la fiecare apel
+
+    Sentiment(String symbol, String label) {
+        this.symbol = symbol;
+        this.label = label;
     }
 
-    @Override
-    public void process(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue) {
-        try {
-            while (true) {
-                long startTime = System.currentTimeMillis(); // Masurarea timpului de inceput
-                ReviewMessage message = inputQueue.poll(100, TimeUnit.MILLISECONDS);
-                if (message == null) continue;
-                if (message == ReviewPipeline.END_MESSAGE) {
-                    outputQueue.put(message);
-                    break;
-                }
+    static Sentiment fromCounts(int upperCaseCount, int lowerCaseCount) {
+        if (upperCaseCount > lowerCaseCount) return POSITIVE;
+        if (lowerCaseCount > upperCaseCount) return NEGATIVE;
+        return NEUTRAL;
+    }
 
-                // Verifica daca filtrul este activat si daca utilizatorul a cumparat produsul
-                if (config.checkBuyer && !buyers.getOrDefault(message.username, "").equals(message.product)) {
-                    continue; // Ignora mesajul daca utilizatorul nu a cumparat produsul
-                }
-                outputQueue.put(message);
-                processedMessages++; // Incrementarea numarului de mesaje procesate
-                long endTime = System.currentTimeMillis(); // Masurarea timpului de sfarsit
-                processingTime += (endTime - startTime); // Actualizarea timpului total de procesare
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    static Sentiment of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    // Numara literele direct din text[from, to), fara copia char[] facuta de toCharArray()
+    static Sentiment of(CharSequence text, int from, int to) {
+        int upperCaseCount = 0, lowerCaseCount = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (Character.isUpperCase(c)) upperCaseCount++;
+            else if (Character.isLowerCase(c)) lowerCaseCount++;
         }
+        return fromCounts(upperCaseCount, lowerCaseCount);
     }
+}
 
-    public long getProcessingTime() {
-        return processingTime;
+// Un lot de recenzii stocat pe coloane (struct-of-arrays): id-urile internate in tablouri paralele, textele si atasamentele
+// intr-un singur buffer de caractere partajat, adnotarile ca octeti si o masca de selectie cu un bit pe rand.
+// Filtrele pe loturi parcurg coloane contigue in loc sa urmeze pointerii fiecarui mesaj, iar un rand eliminat
+// doar isi sterge bitul din masca; nimic nu se muta sau se copiaza pana la iesire.
+final class ReviewBatch {
+    static final int DEFAULT_CAPACITY = 4096;
+    static final ReviewBatch END = new ReviewBatch(0); // Marcheaza sfarsitul fluxului de loturi, ca END_MESSAGE
+
+    private static final int NO_TEXT = -1; // Lungimea unui camp null
+
+    final int capacity;
+    final int[] usernameIds;
+    final int[] productIds;
+    final int[] textStart;        // Pozitia textului in chars
+    final int[] textLength;       // NO_TEXT pentru un text null
+    final int[] attachmentStart;
+    final int[] attachmentLength; // NO_TEXT pentru un mesaj fara atasament
+    final byte[] sentimentSymbol; // Sentiment.ordinal() + 1, 0 = neadnotat; afisat doar la iesire
+    final byte[] sentimentLabel;
+    final byte[] sentiment;       // Coloanele analizei textului, completate de analyze()
+    final int[] moderationMask;
+    private final long[] selected; // Bitul i = randul i nu a fost eliminat
+    private final long[] analyzed; // Bitul i = analiza randului i este completa
+    char[] chars;
+    int charCount;
+    int size;
+
+    ReviewBatch(int capacity) {
+        this.capacity = capacity;
+        usernameIds = new int[capacity];
+        productIds = new int[capacity];
+        textStart = new int[capacity];
+        textLength = new int[capacity];
+        attachmentStart = new int[capacity];
+        attachmentLength = new int[capacity];
+        sentimentSymbol = new byte[capacity];
+        sentimentLabel = new byte[capacity];
+        sentiment = new byte[capacity];
+        moderationMask = new int[capacity];
+        selected = new long[(capacity + 63) / 64];
+        analyzed = new long[(capacity + 63) / 64];
+        chars = new char[capacity * 64]; // Estimare pentru un text scurt si un atasament; creste la nevoie
     }
 
-    public int getProcessedMessages() {
-        return processedMessages;
+    boolean isFull() {
+        return size == capacity;
     }
-}
 
-class ResizeImagesFilter implements Filter {
-    private final ClientConfig config;
-    private long processingTime = 0; // Timpul de procesare pentru acest filtru
-    private int processedMessages = 0; // Numarul de mesaje procesate
+    void add(ReviewMessage message) {
+        int row = size;
+        add(message.usernameId, message.productId, message.reviewText, message.attachment);
+        sentimentSymbol[row] = encode(message.sentimentSymbol);
+        sentimentLabel[row] = encode(message.sentimentLabel);
+    }
 
-    public ResizeImagesFilter(ClientConfig config) {
-        this.config = config;
+    void add(int usernameId, int productId, String reviewText, String attachment) {
+        if (isFull()) {
+            throw new IllegalStateException("Lotul este plin: " + capacity + " randuri");
+        }
+        int row = size++;
+        usernameIds[row] = usernameId;
+        productIds[row] = productId;
+        textStart[row] = charCount;
+        textLength[row] = append(reviewText);
+        attachmentStart[row] = charCount;
+        attachmentLength[row] = append(attachment);
+        selected[row >>> 6] |= 1L << row;
     }
 
-    @Override
-    public void process(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue) {
-        try {
-            while (true) {
-                long startTime = System.currentTimeMillis(); // Masurarea timpului de inceput
-                ReviewMessage message = inputQueue.poll(100, TimeUnit.MILLISECONDS);
-                if (message == null) 
-                    continue;
-                if (message == ReviewPipeline.END_MESSAGE) {
-                    outputQueue.put(message);
-                    break;
-                }
+    private int append(String value) {
+        if (value == null) {
+            return NO_TEXT;
+        }
+        int length = value.length();
+        if (charCount + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + length));
+        }
+        value.getChars(0, length, chars, charCount);
+        charCount += length;
+        return length;
+    }
 
-                // Redimensioneaza atasamentul daca filtrul este activat
-                if (config.resizeImages && message.attachment != null) {
-                    message.attachment = message.attachment.toLowerCase();
-                }
-                outputQueue.put(message);
-                processedMessages++; // Incrementarea numarului de mesaje procesate
-                long endTime = System.currentTimeMillis(); // Masurarea timpului de sfarsit
-                processingTime += (endTime - startTime); // Actualizarea timpului total de procesare
+    boolean isSelected(int row) {
+        return (selected[row >>> 6] & (1L << row)) != 0;
+    }
+
+    void reject(int row) {
+        selected[row >>> 6] &= ~(1L << row);
+    }
+
+    // Urmatorul rand selectat incepand cu row sau -1; sare peste 64 de randuri eliminate dintr-o data
+    int nextSelected(int row) {
+        if (row >= size) {
+            return -1;
+        }
+        int word = row >>> 6;
+        long bits = selected[word] & (-1L << row);
+        while (bits == 0) {
+            if (++word == selected.length) {
+                return -1;
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            bits = selected[word];
         }
+        int next = (word << 6) + Long.numberOfTrailingZeros(bits);
+        return next < size ? next : -1;
     }
 
-    public long getProcessingTime() {
-        return processingTime;
+    int selectedCount() {
+        int count = 0;
+        for (long bits : selected) {
+            count += Long.bitCount(bits);
+        }
+        return count;
     }
 
-    public int getProcessedMessages() {
-        return processedMessages;
+    boolean hasText(int row) {
+        return textLength[row] != NO_TEXT;
+    }
+
+    // Analiza textului (sentiment si categorii de moderare) pentru randurile selectate inca neanalizate, o singura trecere pe rand
+    void analyze() {
+        for (int row = nextSelected(0); row >= 0; row = nextSelected(row + 1)) {
+            if ((analyzed[row >>> 6] & (1L << row)) != 0) {
+                continue;
+            }
+            int upperCaseCount = 0, lowerCaseCount = 0;
+            int length = Math.max(textLength[row], 0);
+            int start = textStart[row];
+            for (int i = start; i < start + length; i++) {
+                char c = chars[i];
+                if (Character.isUpperCase(c)) upperCaseCount++;
+                else if (Character.isLowerCase(c)) lowerCaseCount++;
+            }
+            sentiment[row] = (byte) Sentiment.fromCounts(upperCaseCount, lowerCaseCount).ordinal();
+            moderationMask[row] = hasText(row) ? ModerationPatterns.DEFAULT.scan(chars, start, start + length) : 0;
+            analyzed[row >>> 6] |= 1L << row;
+        }
+    }
+
+    // Mesajele randurilor selectate, in ordinea din lot; String-urile se construiesc doar aici, la iesire
+    void toMessages(Collection<? super ReviewMessage> messages) {
+        for (int row = nextSelected(0); row >= 0; row = nextSelected(row + 1)) {
+            ReviewMessage message = new ReviewMessage(usernameIds[row], productIds[row], string(textStart[row], textLength[row]),
+                    string(attachmentStart[row], attachmentLength[row]));
+            message.sentimentSymbol = decode(sentimentSymbol[row]);
+            message.sentimentLabel = decode(sentimentLabel[row]);
+            messages.add(message);
+        }
+    }
+
+    private String string(int start, int length) {
+        return length == NO_TEXT ? null : new String(chars, start, length);
+    }
+
+    static byte encode(Sentiment sentiment) {
+        return sentiment == null ? 0 : (byte) (sentiment.ordinal() + 1);
+    }
+
+    private static Sentiment decode(byte value) {
+        return value == 0 ? null : Sentiment.of(value - 1);
+    }
+
+    // Imparte mesajele in loturi de cel mult capacity randuri
+    static List<ReviewBatch> of(List<ReviewMessage> messages, int capacity) {
+        List<ReviewBatch> batches = new ArrayList<>((messages.size() + capacity - 1) / capacity);
+        ReviewBatch batch = null;
+        for (ReviewMessage message : messages) {
+            if (batch == null || batch.isFull()) {
+                batch = new ReviewBatch(capacity);
+                batches.add(batch);
+            }
+            batch.add(message);
+        }
+        return batches;
     }
 }
 
-class SentimentDetectionFilter implements Filter {
-    private final ClientConfig config;
-    private long processingTime = 0; // Timpul de procesare pentru acest filtru
-    private int processedMessages = 0; // Numarul de mesaje procesate
+// Strategia prin care un filtru asteapta cand coada de intrare este goala
+interface WaitStrategy {
+    <E> E take(BlockingQueue<E> queue) throws InterruptedException;
+}
 
-    public SentimentDetectionFilter(ClientConfig config) {
-        this.config = config;
+// Blocheaza thread-ul pe coada pana soseste un mesaj; nu consuma CPU cat timp asteapta
+class BlockingWaitStrategy implements WaitStrategy {
+    @Override
+    public <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+        return queue.take();
+    }
+}
+
+// Cateva incercari active, apoi park cu durata crescatoare pana la maxParkNanos
+class SpinThenParkWaitStrategy implements WaitStrategy {
+    private final int spinTries;
+    private final long maxParkNanos;
+
+    public SpinThenParkWaitStrategy() {
+        this(100, 1_000_000);
+    }
+
+    public SpinThenParkWaitStrategy(int spinTries, long maxParkNanos) {
+        this.spinTries = spinTries;
+        this.maxParkNanos = maxParkNanos;
     }
 
     @Override
-    public void process(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue) {
-        try {
-            while (true) {
-                long startTime = System.currentTimeMillis(); // Masurarea timpului de inceput
-                ReviewMessage message = inputQueue.poll(100, TimeUnit.MILLISECONDS);
-                if (message == null) 
-                    continue;
-                if (message == ReviewPipeline.END_MESSAGE) {
-                    outputQueue.put(message);
-                    break;
-                }
+    public <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+        int idleCount = 0;
+        long parkNanos = 1_000;
+        E e;
+        while ((e = queue.poll()) == null) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (idleCount < spinTries) {
+                Thread.onSpinWait();
+                idleCount++;
+            } else {
+                LockSupport.parkNanos(parkNanos);
+                parkNanos = Math.min(parkNanos * 2, maxParkNanos);
+            }
+        }
+        return e;
+    }
+}
 
-                // Detecteaza sentimentul daca filtrul este activat
-                if (config.detectSentiment && message.reviewText != null) {
-                    int upperCaseCount = 0, lowerCaseCount = 0;
-                    for (char c : message.reviewText.toCharArray()) {
-                        if (Character.isUpperCase(c))
-                             upperCaseCount++;
-                        else if (Character.isLowerCase(c)) 
-                            lowerCaseCount++;
-                    }
+// Cateva incercari active, apoi cedeaza procesorul cu Thread.yield()
+class YieldingWaitStrategy implements WaitStrategy {
+    private static final int SPIN_TRIES = 100;
 
-                    // Adauga un simbol in functie de numarul de litere mari si mici
-                    if (upperCaseCount > lowerCaseCount)
-                         message.reviewText += "+";
-                    else if (lowerCaseCount > upperCaseCount) 
-                        message.reviewText += "-";
-                    else
-                         message.reviewText += "=";
-                }
-                outputQueue.put(message);
-                processedMessages++; // Incrementarea numarului de mesaje procesate
-                long endTime = System.currentTimeMillis(); // Masurarea timpului de sfarsit
-                processingTime += (endTime - startTime); // Actualizarea timpului total de procesare
+    @Override
+    public <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+        int idleCount = 0;
+        E e;
+        while ((e = queue.poll()) == null) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (idleCount < SPIN_TRIES) {
+                Thread.onSpinWait();
+                idleCount++;
+            } else {
+                Thread.yield();
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
         }
+        return e;
     }
+}
 
-    public long getProcessingTime() {
-        return processingTime;
+// Verifica coada continuu; latenta minima, dar ocupa un nucleu intreg
+class BusySpinWaitStrategy implements WaitStrategy {
+    @Override
+    public <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+        E e;
+        while ((e = queue.poll()) == null) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            Thread.onSpinWait();
+        }
+        return e;
+    }
+}
+
+// Alegerea strategiei pentru o instalare: -Dpipeline.waitStrategy=blocking|spin-park|yielding|busy-spin
+class WaitStrategies {
+    static final String PROPERTY = "pipeline.waitStrategy";
+
+    static WaitStrategy fromName(String name) {
+        switch (name.toLowerCase()) {
+            case "blocking":
+                return new BlockingWaitStrategy();
+            case "spin-park":
+                return new SpinThenParkWaitStrategy();
+            case "yielding":
+                return new YieldingWaitStrategy();
+            case "busy-spin":
+                return new BusySpinWaitStrategy();
+            default:
+                throw new IllegalArgumentException("Strategie de asteptare necunoscuta: " + name);
+        }
     }
 
-    public int getProcessedMessages() {
-        return processedMessages;
+    static WaitStrategy fromSystemProperty() {
+        return fromName(System.getProperty(PROPERTY, "blocking"));
     }
 }
 
-class CheckPoliticalPropagandaFilter implements Filter {
-    private final ClientConfig config;
+// Varianta pe loturi a contractului Filter: preia pana la getBatchSize() mesaje cu drainTo,
+// le proceseaza impreuna si trimite mesajele ramase mai departe dintr-o singura data
+interface BatchFilter extends Filter {
+    int getBatchSize();
+
+    void processBatch(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue);
+}
+
+// Bucla comuna a filtrelor; fiecare filtru implementeaza doar apply() pentru un mesaj
+abstract class BaseFilter implements BatchFilter {
+    protected final ClientConfig config;
+    private int batchSize = 1; // Numarul maxim de mesaje preluate deodata (1 = mesaj cu mesaj)
+    private WaitStrategy waitStrategy = WaitStrategies.fromSystemProperty(); // Asteptarea pe coada goala
+    private WriteAheadLog wal; // Optional: mesajele eliminate sunt notate ca finalizate, ca sa nu fie reluate
+    private int parallelism = 1;          // Numarul de workeri ai etapei (1 = un singur thread, ca pana acum)
+    private boolean preserveOrder = true; // Cu mai multi workeri, ordinea de intrare se restabileste la iesire
     private long processingTime = 0; // Timpul de procesare pentru acest filtru
     private int processedMessages = 0; // Numarul de mesaje procesate
 
-    public CheckPoliticalPropagandaFilter(ClientConfig config) {
+    protected BaseFilter(ClientConfig config) {
         this.config = config;
     }
 
+    // Proceseaza un mesaj; intoarce false daca mesajul trebuie eliminat
+    abstract boolean apply(ReviewMessage message);
+
+    // Varianta pe coloane a lui apply(): parcurge randurile selectate si elimina un rand doar stergandu-i bitul
+    abstract void apply(ReviewBatch batch);
+
+    // Varianta off-heap a lui apply(): citeste si scrie recenzia direct in slab; intoarce false daca trebuie eliminata
+    abstract boolean apply(ArenaReview review);
+
+    public BaseFilter setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Dimensiunea lotului trebuie sa fie cel putin 1: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
     @Override
-    public void process(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue) {
-        try {
-            while (true) {
-                long startTime = System.currentTimeMillis(); // Masurarea timpului de inceput
-                ReviewMessage message = inputQueue.poll(100, TimeUnit.MILLISECONDS);
-                if (message == null)
-                     continue;
-                if (message == ReviewPipeline.END_MESSAGE) {
-                    outputQueue.put(message);
-                    break;
-                }
+    public int getBatchSize() {
+        return batchSize;
+    }
 
-                // Verifica daca filtrul este activat si daca mesajul contine propaganda politica
-                if (config.checkPoliticalPropaganda && (message.reviewText.contains("+++") || message.reviewText.contains("---"))) {
-                    continue; // Ignora mesajul daca contine propaganda politica
-                }
-                outputQueue.put(message);
-                processedMessages++; // Incrementarea numarului de mesaje procesate
-                long endTime = System.currentTimeMillis(); // Masurarea timpului de sfarsit
-                processingTime += (endTime - startTime); // Actualizarea timpului total de procesare
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    public BaseFilter setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        return this;
+    }
+
+    public BaseFilter setWriteAheadLog(WriteAheadLog wal) {
+        this.wal = wal;
+        return this;
+    }
+
+    // Numarul de workeri paraleli ai etapei; cu mai multi workeri etapa ruleaza ca ReplicatedStage
+    public BaseFilter setParallelism(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Numarul de workeri trebuie sa fie cel putin 1: " + workers);
         }
+        this.parallelism = workers;
+        return this;
     }
 
-    public long getProcessingTime() {
-        return processingTime;
+    int getParallelism() {
+        return parallelism;
     }
 
-    public int getProcessedMessages() {
-        return processedMessages;
+    // false = mesajele ies din etapa replicata in ordinea terminarii, fara ReorderBuffer
+    public BaseFilter setPreserveOrder(boolean preserveOrder) {
+        this.preserveOrder = preserveOrder;
+        return this;
     }
-}
 
-class SentimentDetectionPlusFilter implements Filter {
-    private final ClientConfig config;
-    private long processingTime = 0; // Timpul de procesare pentru acest filtru
-    private int processedMessages = 0; // Numarul de mesaje procesate
+    WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
 
-    public SentimentDetectionPlusFilter(ClientConfig config) {
-        this.config = config;
+    // Porneste etapa pe executor: un singur thread cu process() sau, cu paralelism > 1, workerii unei ReplicatedStage
+    public void start(ExecutorService executor, BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue) {
+        if (parallelism > 1) {
+            new ReplicatedStage(this, parallelism, preserveOrder, inputQueue, outputQueue).start(executor);
+        } else {
+            executor.execute(() -> process(inputQueue, outputQueue));
+        }
+    }
+
+    // Mesajul a fost eliminat de filtru; cu WAL este notat ca finalizat
+    void dropped(ReviewMessage message) {
+        if (wal != null) wal.logCompletion(message);
+    }
+
+    // Contoarele workerilor unei etape replicate, adunate cand workerul se opreste
+    synchronized void addStatistics(int messages, long millis) {
+        processedMessages += messages;
+        processingTime += millis;
     }
 
     @Override
     public void process(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue) {
+        if (batchSize > 1) {
+            processBatch(inputQueue, outputQueue);
+            return;
+        }
         try {
             while (true) {
+                ReviewMessage message = waitStrategy.take(inputQueue);
                 long startTime = System.currentTimeMillis(); // Masurarea timpului de inceput
-                ReviewMessage message = inputQueue.poll(100, TimeUnit.MILLISECONDS);
-                if (message == null) 
-                    continue;
                 if (message == ReviewPipeline.END_MESSAGE) {
                     outputQueue.put(message);
                     break;
                 }
 
-                // Detecteaza sentimentul cu etichete suplimentare daca filtrul este activat
-                if (config.detectSentimentPlus && message.reviewText != null) {
-                    int upperCaseCount = 0, lowerCaseCount = 0;
-                    for (char c : message.reviewText.toCharArray()) {
-                        if (Character.isUpperCase(c)) 
-                            upperCaseCount++;
-                        else if (Character.isLowerCase(c)) 
-                            lowerCaseCount++;
-                    }
-
-                    // Adauga o eticheta in functie de sentiment
-                    if (upperCaseCount > lowerCaseCount)
-                         message.reviewText += " (Positive)";
-                    else if (lowerCaseCount > upperCaseCount)
-                         message.reviewText += " (Negative)";
-                    else 
-                        message.reviewText += " (Neutral)";
+                if (!apply(message)) {
+                    dropped(message);
+                    continue; // Ignora mesajul eliminat de filtru
                 }
                 outputQueue.put(message);
                 processedMessages++; // Incrementarea numarului de mesaje procesate
@@ -335,54 +717,2887 @@ class SentimentDetectionPlusFilter implements Filter {
         }
     }
 
-    public long getProcessingTime() {
-        return processingTime;
-    }
+    @Override
+    public void processBatch(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue) {
+        List<ReviewMessage> batch = new ArrayList<>(batchSize);
+        List<ReviewMessage> survivors = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                ReviewMessage first = waitStrategy.take(inputQueue);
+                long startTime = System.currentTimeMillis(); // Masurarea timpului de inceput
+                batch.add(first);
+                inputQueue.drainTo(batch, batchSize - 1); // Preia restul lotului fara asteptare
 
-    public int getProcessedMessages() {
+                // END_MESSAGE este ultimul mesaj din coada, deci inchide lotul
+                boolean end = false;
+                for (ReviewMessage message : batch) {
+                    if (message == ReviewPipeline.END_MESSAGE) {
+                        end = true;
+                        break;
+                    }
+                    if (apply(message)) {
+                        survivors.add(message);
+                    } else {
+                        dropped(message);
+                    }
+                }
+
+                PipeQueues.putAll(outputQueue, survivors);
+                processedMessages += survivors.size(); // Incrementarea numarului de mesaje procesate
+                long endTime = System.currentTimeMillis(); // Masurarea timpului de sfarsit
+                processingTime += (endTime - startTime); // Actualizarea timpului total de procesare
+
+                if (end) {
+                    outputQueue.put(ReviewPipeline.END_MESSAGE);
+                    break;
+                }
+                batch.clear();
+                survivors.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Bucla pentru modul off-heap: prin cozi trec doar handle-uri, iar o recenzie eliminata isi elibereaza locul din slab
+    public void processArena(BlockingQueue<ArenaReview> inputQueue, BlockingQueue<ArenaReview> outputQueue) {
+        try {
+            while (true) {
+                ArenaReview review = waitStrategy.take(inputQueue);
+                long startTime = System.currentTimeMillis(); // Masurarea timpului de inceput
+                if (review == ArenaReview.END) {
+                    outputQueue.put(review);
+                    break;
+                }
+
+                if (!apply(review)) {
+                    review.release();
+                    continue; // Ignora recenzia eliminata de filtru
+                }
+                outputQueue.put(review);
+                processedMessages++; // Incrementarea numarului de mesaje procesate
+                long endTime = System.currentTimeMillis(); // Masurarea timpului de sfarsit
+                processingTime += (endTime - startTime); // Actualizarea timpului total de procesare
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Bucla pentru pipeline-ul pe coloane: loturile trec intregi de la o etapa la alta, ReviewBatch.END inchide fluxul
+    public void processColumns(BlockingQueue<ReviewBatch> inputQueue, BlockingQueue<ReviewBatch> outputQueue) {
+        try {
+            while (true) {
+                ReviewBatch batch = waitStrategy.take(inputQueue);
+                long startTime = System.currentTimeMillis(); // Masurarea timpului de inceput
+                if (batch == ReviewBatch.END) {
+                    outputQueue.put(batch);
+                    break;
+                }
+
+                apply(batch);
+                int selected = batch.selectedCount();
+                if (selected == 0) {
+                    continue; // Un lot fara randuri selectate nu mai are ce cauta in etapele urmatoare
+                }
+                outputQueue.put(batch);
+                processedMessages += selected; // Incrementarea numarului de mesaje procesate
+                long endTime = System.currentTimeMillis(); // Masurarea timpului de sfarsit
+                processingTime += (endTime - startTime); // Actualizarea timpului total de procesare
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getProcessingTime() {
+        return processingTime;
+    }
+
+    public int getProcessedMessages() {
         return processedMessages;
     }
 }
 
+// Restabileste ordinea de intrare dupa o etapa replicata: mesajul n pleaca doar dupa n-1.
+// Toate put-urile in coada de iesire se fac sub lock-ul bufferului, deci o SpscRingBufferQueue are un singur producator.
+class ReorderBuffer {
+    private static final ReviewMessage DROPPED = new ReviewMessage("DROPPED", "", "", ""); // Loc ocupat de un mesaj eliminat
+
+    private final BlockingQueue<ReviewMessage> outputQueue;
+    private ReviewMessage[] slots = new ReviewMessage[64]; // Fereastra circulara indexata dupa numarul de ordine
+    private long nextToRelease = 0;
+
+    ReorderBuffer(BlockingQueue<ReviewMessage> outputQueue) {
+        this.outputQueue = outputQueue;
+    }
+
+    // Apelat de workeri cand au terminat mesajul cu numarul de ordine dat (kept = false daca a fost eliminat)
+    synchronized void complete(long sequence, ReviewMessage message, boolean kept) throws InterruptedException {
+        while (sequence - nextToRelease >= slots.length) {
+            grow();
+        }
+        slots[(int) (sequence & (slots.length - 1))] = kept ? message : DROPPED;
+
+        // Elibereaza toate mesajele consecutive disponibile
+        int index = (int) (nextToRelease & (slots.length - 1));
+        while (slots[index] != null) {
+            ReviewMessage next = slots[index];
+            slots[index] = null;
+            if (next != DROPPED) {
+                outputQueue.put(next);
+            }
+            nextToRelease++;
+            index = (int) (nextToRelease & (slots.length - 1));
+        }
+    }
+
+    // Pentru END, dupa ce toti workerii s-au oprit
+    synchronized void put(ReviewMessage message) throws InterruptedException {
+        outputQueue.put(message);
+    }
+
+    private void grow() {
+        ReviewMessage[] larger = new ReviewMessage[slots.length * 2];
+        for (long sequence = nextToRelease; sequence < nextToRelease + slots.length; sequence++) {
+            larger[(int) (sequence & (larger.length - 1))] = slots[(int) (sequence & (slots.length - 1))];
+        }
+        slots = larger;
+    }
+}
+
+// Etapa rulata de mai multi workeri in paralel pe aceeasi coada de intrare. Preluarea (si numerotarea) se face
+// sub takeLock, iar scrierea la iesire sub lock-ul ReorderBuffer sau outputLock, deci cozile dintre etape,
+// inclusiv SpscRingBufferQueue, vad mereu un singur consumator si un singur producator; doar apply() ruleaza
+// in paralel. Numarul de ordine este dat la intrarea in etapa, nu la ingestie: mesajele eliminate de etapele
+// anterioare nu lasa goluri pe care bufferul sa le astepte. Lotul filtrului (setBatchSize) nu se aplica aici.
+class ReplicatedStage {
+    private final BaseFilter filter;
+    private final int workers;
+    private final WaitStrategy waitStrategy;
+    private final BlockingQueue<ReviewMessage> inputQueue;
+    private final BlockingQueue<ReviewMessage> outputQueue;
+    private final ReorderBuffer reorderBuffer; // null = fara ordine, workerii publica direct
+    private final AtomicInteger runningWorkers;
+    private final Object takeLock = new Object();
+    private final Object outputLock = new Object();
+    private long nextSequence = 0; // Sub takeLock
+    private boolean ended;         // Sub takeLock: END a fost preluat, ceilalti workeri se opresc
+
+    ReplicatedStage(BaseFilter filter, int workers, boolean preserveOrder,
+                    BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue) {
+        this.filter = filter;
+        this.workers = workers;
+        this.waitStrategy = filter.getWaitStrategy();
+        this.inputQueue = inputQueue;
+        this.outputQueue = outputQueue;
+        this.reorderBuffer = preserveOrder ? new ReorderBuffer(outputQueue) : null;
+        this.runningWorkers = new AtomicInteger(workers);
+    }
+
+    void start(ExecutorService executor) {
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::runWorker);
+        }
+    }
+
+    private void runWorker() {
+        int processed = 0;
+        long processingTime = 0;
+        try {
+            while (true) {
+                ReviewMessage message;
+                synchronized (takeLock) {
+                    if (ended) break;
+                    message = waitStrategy.take(inputQueue);
+                    if (message == ReviewPipeline.END_MESSAGE) {
+                        ended = true;
+                        break;
+                    }
+                    message.sequence = nextSequence++;
+                }
+
+                long startTime = System.currentTimeMillis();
+                boolean kept = filter.apply(message);
+                if (!kept) {
+                    filter.dropped(message);
+                }
+                if (reorderBuffer != null) {
+                    reorderBuffer.complete(message.sequence, message, kept);
+                } else if (kept) {
+                    synchronized (outputLock) {
+                        outputQueue.put(message);
+                    }
+                }
+                if (kept) {
+                    processed++;
+                    processingTime += System.currentTimeMillis() - startTime;
+                }
+            }
+            // Ultimul worker oprit trimite END; fiecare worker si-a terminat mesajul curent inainte sa se opreasca
+            if (runningWorkers.decrementAndGet() == 0) {
+                if (reorderBuffer != null) {
+                    reorderBuffer.put(ReviewPipeline.END_MESSAGE);
+                } else {
+                    synchronized (outputLock) {
+                        outputQueue.put(ReviewPipeline.END_MESSAGE);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            filter.addStatistics(processed, processingTime);
+        }
+    }
+}
+
+class CheckProfanitiesFilter extends BaseFilter {
+    public CheckProfanitiesFilter(ClientConfig config) {
+        super(config);
+    }
+
+    @Override
+    boolean apply(ReviewMessage message) {
+        // Verifica daca filtrul este activat si daca mesajul contine cuvinte obscene
+        return !(config.checkProfanities
+                && MultiPatternMatcher.contains(message.moderationMask(), ModerationCategory.PROFANITY));
+    }
+
+    @Override
+    boolean apply(ArenaReview review) {
+        return !(config.checkProfanities
+                && MultiPatternMatcher.contains(review.moderationMask(), ModerationCategory.PROFANITY));
+    }
+
+    @Override
+    void apply(ReviewBatch batch) {
+        if (!config.checkProfanities) return;
+        batch.analyze();
+        for (int row = batch.nextSelected(0); row >= 0; row = batch.nextSelected(row + 1)) {
+            if (MultiPatternMatcher.contains(batch.moderationMask[row], ModerationCategory.PROFANITY)) {
+                batch.reject(row);
+            }
+        }
+    }
+}
+
+// Tabel concurent de simboluri: fiecare nume de utilizator sau produs distinct primeste o singura data un id int.
+// Mesajele, filtrele si indexul de achizitii lucreaza doar cu id-uri; numele se citesc inapoi abia la iesire.
+// Id -> nume nu ia lock; adaugarea unui simbol nou este serializata, dar are loc o singura data pe simbol.
+final class SymbolTable {
+    static final int NONE = 0; // Id-ul valorii null; simbolurile reale primesc id-uri de la 1
+    static final SymbolTable USERNAMES = new SymbolTable();
+    static final SymbolTable PRODUCTS = new SymbolTable();
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[1024]; // Numele dupa id; publicat dupa fiecare adaugare
+    private int nextId = 1;
+
+    // Index dupa octetii UTF-8, pentru cititorii de fisiere: un simbol deja vazut nu mai cere un String nou
+    private int[] byteIds = new int[1024]; // 0 = slot liber
+    private byte[][] byteKeys = new byte[1024][];
+    private int byteCount;
+
+    int intern(String name) {
+        if (name == null) {
+            return NONE;
+        }
+        Integer id = ids.get(name);
+        return id != null ? id : add(name);
+    }
+
+    // Id-ul unui nume deja internat sau NONE, fara a-l adauga
+    int find(String name) {
+        if (name == null) {
+            return NONE;
+        }
+        Integer id = ids.get(name);
+        return id == null ? NONE : id;
+    }
+
+    String name(int id) {
+        return names[id];
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    private synchronized int add(String name) {
+        Integer existing = ids.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        int id = nextId++;
+        String[] current = names;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, id * 2);
+        }
+        current[id] = name;
+        names = current;
+        ids.put(name, id); // Cine primeste id-ul il primeste dupa ce numele a fost publicat
+        return id;
+    }
+
+    // Interneaza octetii UTF-8 dati; de obicei un singur thread citeste fisierul, deci lock-ul nu este disputat
+    synchronized int intern(byte[] bytes, int offset, int length) {
+        int mask = byteIds.length - 1;
+        int slot = hash(bytes, offset, length) & mask;
+        while (byteIds[slot] != 0) {
+            byte[] key = byteKeys[slot];
+            if (Arrays.equals(key, 0, key.length, bytes, offset, offset + length)) {
+                return byteIds[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        byte[] key = Arrays.copyOfRange(bytes, offset, offset + length);
+        int id = intern(new String(key, StandardCharsets.UTF_8));
+        byteIds[slot] = id;
+        byteKeys[slot] = key;
+        if (++byteCount > byteIds.length / 4 * 3) {
+            rehashBytes();
+        }
+        return id;
+    }
+
+    private void rehashBytes() {
+        int[] oldIds = byteIds;
+        byte[][] oldKeys = byteKeys;
+        byteIds = new int[oldIds.length * 2];
+        byteKeys = new byte[oldIds.length * 2][];
+        int mask = byteIds.length - 1;
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] == 0) {
+                continue;
+            }
+            byte[] key = oldKeys[i];
+            int slot = hash(key, 0, key.length) & mask;
+            while (byteIds[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            byteIds[slot] = oldIds[i];
+            byteKeys[slot] = key;
+        }
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        hash *= 0x9E3779B9; // Nume apropiate (user1, user2, ...) ar ocupa altfel sloturi vecine
+        return hash ^ (hash >>> 16);
+    }
+}
+
+// Index imuabil al achizitiilor (utilizator, produs); un utilizator poate avea oricate produse.
+// Fiecare pereche de id-uri din SymbolTable este o cheie long intr-un tabel cu adresare deschisa (long[]),
+// fara String-uri sau noduri pe heap, iar un filtru Bloom pe blocuri raspunde la negative cu un singur acces la memorie.
+// Dupa constructie indexul nu se mai modifica, deci poate fi partajat de oricate filtre fara copii sau sincronizare.
+final class PurchaseIndex {
+    static final String PROPERTY = "pipeline.purchases";
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final int BLOOM_BITS_PER_ENTRY = 10; // ~1% rezultate fals pozitive cu 4 biti pe cheie
+
+    private final long[] table; // 0 = slot liber; id-urile incep de la 1, deci nicio cheie nu este 0
+    private final int mask;
+    private final long[] bloom;
+    private final int bloomMask;
+    private final int size;
+
+    private PurchaseIndex(long[] table, int size) {
+        this.table = table;
+        this.mask = table.length - 1;
+        this.size = size;
+        int words = Integer.highestOneBit(Math.max(1, (int) Math.min(1L << 30, ((long) size * BLOOM_BITS_PER_ENTRY + 63) / 64)) * 2 - 1);
+        this.bloom = new long[words];
+        this.bloomMask = words - 1;
+        for (long key : table) {
+            if (key != 0) {
+                long hash = mix(key);
+                bloom[bloomWord(hash)] |= bloomBits(hash);
+            }
+        }
+    }
+
+    boolean hasPurchased(int usernameId, int productId) {
+        if (usernameId == SymbolTable.NONE || productId == SymbolTable.NONE) {
+            return false;
+        }
+        long key = key(usernameId, productId);
+        long hash = mix(key);
+        long bits = bloomBits(hash);
+        if ((bloom[bloomWord(hash)] & bits) != bits) {
+            return false;
+        }
+        for (int slot = (int) hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (table[slot] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Un nume care nu a fost internat niciodata nu poate avea achizitii
+    boolean hasPurchased(String username, String product) {
+        return hasPurchased(SymbolTable.USERNAMES.find(username), SymbolTable.PRODUCTS.find(product));
+    }
+
+    int size() {
+        return size;
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    static PurchaseIndex of(Map<String, String> buyers) {
+        Builder builder = new Builder();
+        buyers.forEach(builder::add);
+        return builder.build();
+    }
+
+    // Incarcare in bloc dintr-un fisier CSV cu cate o pereche "username,product" pe linie (antetul este optional)
+    static PurchaseIndex load(Path file) throws IOException {
+        Builder builder = new Builder();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            builder.reserve(channel.size() / 24); // Estimare dupa o linie tipica
+            ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            long lineNumber = 0;
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(buffer) < 0;
+                buffer.flip();
+                int lineStart = 0;
+                int limit = buffer.limit();
+                for (int i = 0; i < limit; i++) {
+                    if (buffer.get(i) == '\n') {
+                        builder.addLine(buffer, lineStart, i, ++lineNumber, file);
+                        lineStart = i + 1;
+                    }
+                }
+                if (eof && lineStart < limit) {
+                    builder.addLine(buffer, lineStart, limit, ++lineNumber, file); // Ultima linie fara '\n'
+                    lineStart = limit;
+                }
+                if (lineStart == 0 && limit == buffer.capacity()) {
+                    throw new IOException(file + ":" + (lineNumber + 1) + ": linie mai lunga de " + READ_BUFFER_SIZE + " octeti");
+                }
+                buffer.position(lineStart);
+                buffer.compact();
+            }
+        }
+        return builder.build();
+    }
+
+    // Fara proprietatea pipeline.purchases se foloseste maparea data, altfel achizitiile din fisier
+    static PurchaseIndex fromSystemProperty(Map<String, String> fallback) throws IOException {
+        String file = System.getProperty(PROPERTY);
+        return file == null ? of(fallback) : load(Paths.get(file));
+    }
+
+    @Override
+    public String toString() {
+        return size + " achizitii, " + table.length + " sloturi, Bloom " + (bloom.length * 8L / 1024) + " KB";
+    }
+
+    static long key(int usernameId, int productId) {
+        return ((long) usernameId << 32) | (productId & 0xFFFFFFFFL);
+    }
+
+    // Amestecul final din MurmurHash3: id-urile consecutive ajung in sloturi si cuvinte Bloom imprastiate
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    // Cuvantul din filtrul Bloom si cei 4 biti din el provin din parti diferite ale hash-ului
+    private int bloomWord(long hash) {
+        return (int) (hash >>> 32) & bloomMask;
+    }
+
+    private static long bloomBits(long hash) {
+        int bits = (int) (hash >>> 8);
+        return (1L << bits) | (1L << (bits >>> 6)) | (1L << (bits >>> 12)) | (1L << (bits >>> 18));
+    }
+
+    static final class Builder {
+        private static final int MIN_CAPACITY = 16;
+
+        private long[] table = new long[MIN_CAPACITY];
+        private int size;
+        private byte[] scratch = new byte[256]; // Octetii campului curent la incarcarea din fisier
+
+        Builder add(String username, String product) {
+            return add(SymbolTable.USERNAMES.intern(username), SymbolTable.PRODUCTS.intern(product));
+        }
+
+        Builder add(int usernameId, int productId) {
+            if (usernameId != SymbolTable.NONE && productId != SymbolTable.NONE) {
+                insert(key(usernameId, productId));
+            }
+            return this;
+        }
+
+        // Pregateste tabelul pentru cel putin expected perechi, evitand redimensionarile la incarcarea in bloc
+        void reserve(long expected) {
+            int capacity = capacityFor(expected);
+            if (capacity > table.length) {
+                table = rehash(table, capacity);
+            }
+        }
+
+        PurchaseIndex build() {
+            // Tabelul final are dimensiunea potrivita pentru size, chiar daca reserve() a estimat mai mult
+            return new PurchaseIndex(rehash(table, capacityFor(size)), size);
+        }
+
+        // Campurile sunt internate direct din octeti; un nume deja cunoscut nu mai construieste un String
+        private void addLine(ByteBuffer buffer, int from, int to, long lineNumber, Path file) throws IOException {
+            if (to > from && buffer.get(to - 1) == '\r') {
+                to--;
+            }
+            if (to == from) {
+                return;
+            }
+            int comma = from;
+            while (comma < to && buffer.get(comma) != ',') {
+                comma++;
+            }
+            if (comma == to) {
+                throw new IOException(file + ":" + lineNumber + ": lipseste separatorul ','");
+            }
+            if (lineNumber == 1 && matches(buffer, from, to, "username,product")) {
+                return; // Antet
+            }
+            add(intern(SymbolTable.USERNAMES, buffer, from, comma), intern(SymbolTable.PRODUCTS, buffer, comma + 1, to));
+        }
+
+        private int intern(SymbolTable symbols, ByteBuffer buffer, int from, int to) {
+            int length = to - from;
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(from, scratch, 0, length);
+            return symbols.intern(scratch, 0, length);
+        }
+
+        private void insert(long key) {
+            int mask = table.length - 1;
+            int slot = (int) mix(key) & mask;
+            while (table[slot] != 0) {
+                if (table[slot] == key) {
+                    return; // Achizitie duplicata
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = key;
+            if (++size > table.length / 4 * 3) {
+                table = rehash(table, table.length * 2);
+            }
+        }
+
+        private static long[] rehash(long[] old, int capacity) {
+            long[] table = new long[capacity];
+            int mask = capacity - 1;
+            for (long key : old) {
+                if (key != 0) {
+                    int slot = (int) mix(key) & mask;
+                    while (table[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = key;
+                }
+            }
+            return table;
+        }
+
+        // Capacitatea (putere a lui 2) la care expected perechi ocupa cel mult 3/4 din tabel
+        private static int capacityFor(long expected) {
+            long needed = Math.max(MIN_CAPACITY, expected * 4 / 3 + 1);
+            if (needed > 1 << 30) {
+                throw new IllegalArgumentException("Prea multe achizitii pentru index: " + expected);
+            }
+            return Integer.highestOneBit((int) needed * 2 - 1);
+        }
+
+        private static boolean matches(ByteBuffer buffer, int from, int to, String text) {
+            if (to - from != text.length()) {
+                return false;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                if (buffer.get(from + i) != text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
+
+class CheckBuyerFilter extends BaseFilter {
+    private final PurchaseIndex purchases;
+
+    public CheckBuyerFilter(PurchaseIndex purchases, ClientConfig config) {
+        super(config);
+        this.purchases = purchases;
+    }
+
+    @Override
+    boolean apply(ReviewMessage message) {
+        // Verifica daca filtrul este activat si daca utilizatorul a cumparat produsul
+        return !(config.checkBuyer && !purchases.hasPurchased(message.usernameId, message.productId));
+    }
+
+    @Override
+    boolean apply(ArenaReview review) {
+        return !(config.checkBuyer && !purchases.hasPurchased(review.usernameId(), review.productId()));
+    }
+
+    @Override
+    void apply(ReviewBatch batch) {
+        if (!config.checkBuyer) return;
+        // Doar coloanele de id-uri sunt citite; textele nu sunt atinse
+        int[] usernameIds = batch.usernameIds;
+        int[] productIds = batch.productIds;
+        for (int row = batch.nextSelected(0); row >= 0; row = batch.nextSelected(row + 1)) {
+            if (!purchases.hasPurchased(usernameIds[row], productIds[row])) {
+                batch.reject(row);
+            }
+        }
+    }
+}
+
+class ResizeImagesFilter extends BaseFilter {
+    public ResizeImagesFilter(ClientConfig config) {
+        super(config);
+    }
+
+    @Override
+    boolean apply(ReviewMessage message) {
+        // Redimensioneaza atasamentul daca filtrul este activat
+        if (config.resizeImages && message.attachment != null) {
+            message.attachment = lowerCase(message.attachment);
+        }
+        return true;
+    }
+
+    @Override
+    boolean apply(ArenaReview review) {
+        if (config.resizeImages && review.attachmentLength() >= 0) {
+            review.lowerCaseAttachment(); // Pe loc, in slab
+        }
+        return true;
+    }
+
+    @Override
+    void apply(ReviewBatch batch) {
+        if (!config.resizeImages) return;
+        // Atasamentele sunt transformate pe loc, in bufferul lotului, fara String-uri noi
+        char[] chars = batch.chars;
+        for (int row = batch.nextSelected(0); row >= 0; row = batch.nextSelected(row + 1)) {
+            int start = batch.attachmentStart[row];
+            lowerCase(chars, start, start + batch.attachmentLength[row]);
+        }
+    }
+
+    // Aceeasi transformare pe toate caile, independenta de Locale.getDefault(): Character.toLowerCase pe fiecare
+    // code point. Spre deosebire de String.toLowerCase(Locale.ROOT) nu schimba niciodata lungimea (U+0130 devine "i", nu "i" + punct),
+    // deci atasamentele din loturi si din slab-uri pot fi transformate pe loc
+    static String lowerCase(String value) {
+        int length = value.length();
+        int i = 0;
+        while (i < length) {
+            int c = value.codePointAt(i);
+            if (Character.toLowerCase(c) != c) break;
+            i += Character.charCount(c);
+        }
+        if (i == length) return value; // Deja cu litere mici, fara copie
+        char[] chars = value.toCharArray();
+        lowerCase(chars, i, length);
+        return new String(chars);
+    }
+
+    static void lowerCase(char[] chars, int from, int to) {
+        for (int i = from; i < to; ) {
+            char c = chars[i];
+            if (c < 0x80) { // ASCII, cazul obisnuit
+                if (c >= 'A' && c <= 'Z') chars[i] = (char) (c + ('a' - 'A'));
+                i++;
+                continue;
+            }
+            int codePoint = Character.codePointAt(chars, i, to);
+            i += Character.toChars(Character.toLowerCase(codePoint), chars, i);
+        }
+    }
+
+    // Varianta pentru caracterele unui slab din ReviewArena
+    static void lowerCase(CharBuffer chars, int from, int to) {
+        for (int i = from; i < to; ) {
+            char c = chars.get(i);
+            if (c < 0x80) {
+                if (c >= 'A' && c <= 'Z') chars.put(i, (char) (c + ('a' - 'A')));
+                i++;
+                continue;
+            }
+            if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(chars.get(i + 1))) {
+                int lower = Character.toLowerCase(Character.toCodePoint(c, chars.get(i + 1)));
+                chars.put(i, Character.highSurrogate(lower)).put(i + 1, Character.lowSurrogate(lower));
+                i += 2;
+            } else {
+                chars.put(i, (char) Character.toLowerCase((int) c));
+                i++;
+            }
+        }
+    }
+}
+
+class SentimentDetectionFilter extends BaseFilter {
+    public SentimentDetectionFilter(ClientConfig config) {
+        super(config);
+    }
+
+    @Override
+    boolean apply(ReviewMessage message) {
+        // Detecteaza sentimentul daca filtrul este activat
+        if (config.detectSentiment && message.reviewText != null) {
+            // Simbolul (+, - sau =) este adaugat textului doar la afisare
+            message.sentimentSymbol = message.sentiment();
+        }
+        return true;
+    }
+
+    @Override
+    boolean apply(ArenaReview review) {
+        if (config.detectSentiment && review.hasText()) {
+            review.setSentimentSymbol(review.sentiment());
+        }
+        return true;
+    }
+
+    @Override
+    void apply(ReviewBatch batch) {
+        if (!config.detectSentiment) return;
+        batch.analyze();
+        for (int row = batch.nextSelected(0); row >= 0; row = batch.nextSelected(row + 1)) {
+            if (batch.hasText(row)) {
+                batch.sentimentSymbol[row] = (byte) (batch.sentiment[row] + 1);
+            }
+        }
+    }
+}
+
+class CheckPoliticalPropagandaFilter extends BaseFilter {
+    public CheckPoliticalPropagandaFilter(ClientConfig config) {
+        super(config);
+    }
+
+    @Override
+    boolean apply(ReviewMessage message) {
+        // Verifica daca filtrul este activat si daca mesajul contine propaganda politica (o singura trecere pentru toate sabloanele)
+        return !(config.checkPoliticalPropaganda
+                && MultiPatternMatcher.contains(message.moderationMask(), ModerationCategory.PROPAGANDA));
+    }
+
+    @Override
+    boolean apply(ArenaReview review) {
+        return !(config.checkPoliticalPropaganda
+                && MultiPatternMatcher.contains(review.moderationMask(), ModerationCategory.PROPAGANDA));
+    }
+
+    @Override
+    void apply(ReviewBatch batch) {
+        if (!config.checkPoliticalPropaganda) return;
+        batch.analyze();
+        for (int row = batch.nextSelected(0); row >= 0; row = batch.nextSelected(row + 1)) {
+            if (MultiPatternMatcher.contains(batch.moderationMask[row], ModerationCategory.PROPAGANDA)) {
+                batch.reject(row);
+            }
+        }
+    }
+}
+
+class SentimentDetectionPlusFilter extends BaseFilter {
+    public SentimentDetectionPlusFilter(ClientConfig config) {
+        super(config);
+    }
+
+    @Override
+    boolean apply(ReviewMessage message) {
+        // Detecteaza sentimentul cu etichete suplimentare daca filtrul este activat
+        if (config.detectSentimentPlus && message.reviewText != null) {
+            // Refoloseste analiza facuta de SentimentDetectionFilter; eticheta apare doar la afisare
+            message.sentimentLabel = message.sentiment();
+        }
+        return true;
+    }
+
+    @Override
+    boolean apply(ArenaReview review) {
+        if (config.detectSentimentPlus && review.hasText()) {
+            review.setSentimentLabel(review.sentiment());
+        }
+        return true;
+    }
+
+    @Override
+    void apply(ReviewBatch batch) {
+        if (!config.detectSentimentPlus) return;
+        batch.analyze(); // Randurile analizate deja de SentimentDetectionFilter sunt sarite
+        for (int row = batch.nextSelected(0); row >= 0; row = batch.nextSelected(row + 1)) {
+            if (batch.hasText(row)) {
+                batch.sentimentLabel[row] = (byte) (batch.sentiment[row] + 1);
+            }
+        }
+    }
+}
+
+// Coada inelara preallocata, fara lock-uri, pentru exact un producator si un consumator.
+// Fiecare legatura dintre doua filtre are un singur thread care scrie si unul care citeste,
+// deci nu avem nevoie de lock-uri si nici de noduri alocate pentru fiecare mesaj.
+class SpscRingBufferQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    private static final int SPIN_TRIES = 100; // Numarul de incercari active inainte de park
+
+    private final Object[] buffer;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(0); // Urmatoarea pozitie citita de consumator
+    private final AtomicLong tail = new AtomicLong(0); // Urmatoarea pozitie scrisa de producator
+    private long cachedHead = 0; // Copia lui head vazuta de producator
+    private long cachedTail = 0; // Copia lui tail vazuta de consumator
+
+    public SpscRingBufferQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacitatea trebuie sa fie pozitiva: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1; // Rotunjim la o putere a lui 2 pentru indexare cu masca
+        this.buffer = new Object[size];
+        this.mask = size - 1;
+    }
+
+    // Apelat doar de producator
+    @Override
+    public boolean offer(E e) {
+        if (e == null) throw new NullPointerException();
+        long t = tail.get();
+        if (t - cachedHead >= buffer.length) {
+            cachedHead = head.get();
+            if (t - cachedHead >= buffer.length) return false; // Coada este plina
+        }
+        buffer[(int) t & mask] = e;
+        tail.lazySet(t + 1); // Publica elementul catre consumator
+        return true;
+    }
+
+    // Apelat doar de consumator
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long h = head.get();
+        if (h >= cachedTail) {
+            cachedTail = tail.get();
+            if (h >= cachedTail) return null; // Coada este goala
+        }
+        int index = (int) h & mask;
+        E e = (E) buffer[index];
+        buffer[index] = null;
+        head.lazySet(h + 1); // Elibereaza slotul pentru producator
+        return e;
+    }
+
+    // Publica toate elementele cu o singura actualizare a lui tail pentru fiecare grup care incape
+    public void putAll(List<? extends E> elements) throws InterruptedException {
+        int index = 0;
+        int idleCount = 0;
+        while (index < elements.size()) {
+            long t = tail.get();
+            long free = buffer.length - (t - cachedHead);
+            if (free <= 0) {
+                cachedHead = head.get();
+                free = buffer.length - (t - cachedHead);
+                if (free <= 0) {
+                    idleCount = idle(idleCount);
+                    continue;
+                }
+            }
+            int count = (int) Math.min(free, elements.size() - index);
+            for (int i = 0; i < count; i++) {
+                E e = elements.get(index + i);
+                if (e == null) throw new NullPointerException();
+                buffer[(int) (t + i) & mask] = e;
+            }
+            tail.lazySet(t + count); // Publica tot grupul catre consumator
+            index += count;
+            idleCount = 0;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        return (E) buffer[(int) head.get() & mask];
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        int idleCount = 0;
+        while (!offer(e)) {
+            idleCount = idle(idleCount);
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int idleCount = 0;
+        while (!offer(e)) {
+            if (System.nanoTime() - deadline >= 0) return false;
+            idleCount = idle(idleCount);
+        }
+        return true;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        int idleCount = 0;
+        E e;
+        while ((e = poll()) == null) {
+            idleCount = idle(idleCount);
+        }
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int idleCount = 0;
+        E e;
+        while ((e = poll()) == null) {
+            if (System.nanoTime() - deadline >= 0) return null;
+            idleCount = idle(idleCount);
+        }
+        return e;
+    }
+
+    // Asteptare: intai cateva incercari active, apoi park scurt
+    private int idle(int idleCount) throws InterruptedException {
+        if (Thread.interrupted()) throw new InterruptedException();
+        if (idleCount < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(1_000);
+        }
+        return idleCount + 1;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return buffer.length - size();
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == this) throw new IllegalArgumentException();
+        int count = 0;
+        E e;
+        while (count < maxElements && (e = poll()) != null) {
+            c.add(e);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, buffer.length));
+    }
+
+    // Iterarea nu este suportata: ar concura cu consumatorul unic
+    @Override
+    public Iterator<E> iterator() {
+        throw new UnsupportedOperationException("SpscRingBufferQueue nu poate fi iterata");
+    }
+}
+
+// Ce face put() cand coada unei etape este plina
+enum OverflowPolicy {
+    BLOCK,       // Producatorul asteapta loc (backpressure)
+    DROP_NEWEST, // Mesajul nou este eliminat
+    DROP_OLDEST, // Cel mai vechi mesaj din coada este eliminat ca sa faca loc
+    REJECT       // put() arunca RejectedExecutionException catre cel care trimite
+}
+
+// Coada marginita dintre doua etape, cu politica de depasire si contoare de adancime.
+// END_MESSAGE asteapta mereu loc, ca etapele urmatoare sa se opreasca si sub suprasarcina.
+// REJECT este gandit pentru coada de intrare; intre etape se folosesc BLOCK sau DROP_*.
+class BoundedStageQueue extends AbstractQueue<ReviewMessage> implements BlockingQueue<ReviewMessage> {
+    private final BlockingQueue<ReviewMessage> delegate;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+
+    BoundedStageQueue(BlockingQueue<ReviewMessage> delegate, int capacity, OverflowPolicy policy) {
+        this.delegate = delegate;
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    @Override
+    public void put(ReviewMessage message) throws InterruptedException {
+        if (message == ReviewPipeline.END_MESSAGE || policy == OverflowPolicy.BLOCK) {
+            delegate.put(message);
+        } else if (!delegate.offer(message)) {
+            switch (policy) {
+                case DROP_NEWEST:
+                    dropped.incrementAndGet();
+                    return;
+                case DROP_OLDEST:
+                    do {
+                        if (delegate.poll() != null) dropped.incrementAndGet();
+                    } while (!delegate.offer(message));
+                    break;
+                case REJECT:
+                default:
+                    rejected.incrementAndGet();
+                    throw new RejectedExecutionException("Coada etapei este plina (" + capacity + " mesaje)");
+            }
+        }
+        recordDepth();
+    }
+
+    @Override
+    public boolean offer(ReviewMessage message) {
+        boolean added = delegate.offer(message);
+        if (added) recordDepth();
+        return added;
+    }
+
+    @Override
+    public boolean offer(ReviewMessage message, long timeout, TimeUnit unit) throws InterruptedException {
+        boolean added = delegate.offer(message, timeout, unit);
+        if (added) recordDepth();
+        return added;
+    }
+
+    // Varful de adancime; size() este ieftin la ambele implementari
+    void recordDepth() {
+        int depth = delegate.size();
+        int current = maxDepth.get();
+        while (depth > current && !maxDepth.compareAndSet(current, depth)) {
+            current = maxDepth.get();
+        }
+    }
+
+    @Override
+    public ReviewMessage take() throws InterruptedException {
+        return delegate.take();
+    }
+
+    @Override
+    public ReviewMessage poll() {
+        return delegate.poll();
+    }
+
+    @Override
+    public ReviewMessage poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.poll(timeout, unit);
+    }
+
+    @Override
+    public ReviewMessage peek() {
+        return delegate.peek();
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return delegate.remainingCapacity();
+    }
+
+    @Override
+    public int drainTo(Collection<? super ReviewMessage> c) {
+        return delegate.drainTo(c);
+    }
+
+    @Override
+    public int drainTo(Collection<? super ReviewMessage> c, int maxElements) {
+        return delegate.drainTo(c, maxElements);
+    }
+
+    @Override
+    public Iterator<ReviewMessage> iterator() {
+        return delegate.iterator();
+    }
+
+    BlockingQueue<ReviewMessage> getDelegate() {
+        return delegate;
+    }
+
+    OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return "adancime " + size() + "/" + capacity + ", maxim " + getMaxDepth()
+                + ", eliminate " + getDroppedCount() + ", respinse " + getRejectedCount();
+    }
+}
+
+// Tipul de canal folosit intre doua filtre consecutive
+enum QueueType {
+    LINKED,      // LinkedBlockingQueue: marginita, cu lock si un nod alocat pentru fiecare mesaj
+    RING_BUFFER  // SpscRingBufferQueue: marginita, preallocata, fara lock-uri
+}
+
+class PipeQueues {
+    static final int DEFAULT_CAPACITY = 1024;
+
+    static <E> BlockingQueue<E> create(QueueType type) {
+        return create(type, DEFAULT_CAPACITY);
+    }
+
+    static <E> BlockingQueue<E> create(QueueType type, int capacity) {
+        switch (type) {
+            case RING_BUFFER:
+                return new SpscRingBufferQueue<>(capacity);
+            case LINKED:
+            default:
+                return new LinkedBlockingQueue<>(capacity);
+        }
+    }
+
+    // Coada marginita cu politica de depasire data; DROP_OLDEST scoate din capul cozii, deci cere o coada cu mai multi consumatori
+    static BoundedStageQueue create(QueueType type, int capacity, OverflowPolicy policy) {
+        if (type == QueueType.RING_BUFFER && policy == OverflowPolicy.DROP_OLDEST) {
+            throw new IllegalArgumentException("DROP_OLDEST nu este suportat pe coada inelara cu un singur consumator");
+        }
+        return new BoundedStageQueue(create(type, capacity), capacity, policy);
+    }
+
+    // Trimite un lot de mesaje in coada urmatoare; inelul il publica dintr-o singura data
+    @SuppressWarnings("unchecked")
+    static <E> void putAll(BlockingQueue<E> queue, List<? extends E> elements) throws InterruptedException {
+        if (queue instanceof BoundedStageQueue && ((BoundedStageQueue) queue).getPolicy() == OverflowPolicy.BLOCK) {
+            BoundedStageQueue bounded = (BoundedStageQueue) queue;
+            putAll((BlockingQueue<E>) bounded.getDelegate(), elements); // Fara politica de aplicat, lotul merge direct
+            bounded.recordDepth();
+            return;
+        }
+        if (queue instanceof SpscRingBufferQueue) {
+            ((SpscRingBufferQueue<E>) queue).putAll(elements);
+            return;
+        }
+        for (E e : elements) {
+            queue.put(e);
+        }
+    }
+}
+
+// Formatul fisierelor de recenzii citite de MappedReviewReader
+enum ReviewFileFormat {
+    CSV,    // username,product,reviewText,attachment; campurile cu virgule sau ghilimele intre "..."
+    NDJSON; // Un obiect JSON pe linie: {"username":..., "product":..., "reviewText":..., "attachment":...}
+
+    static ReviewFileFormat fromFileName(String fileName) {
+        String name = fileName.toLowerCase();
+        return name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json") ? NDJSON : CSV;
+    }
+}
+
+// Primeste fiecare mesaj citit; put pe o coada marginita da backpressure pana la disc
+interface ReviewSink {
+    void accept(ReviewMessage message) throws InterruptedException;
+
+    // Sink-urile fara suport off-heap primesc o copie pe heap, iar locul recenziei din slab este eliberat imediat
+    default void accept(ArenaReview review) throws InterruptedException {
+        try {
+            accept(review.toMessage());
+        } finally {
+            review.release();
+        }
+    }
+}
+
+// Citeste un fisier de recenzii prin ferestre mapate in memorie si construieste mesajele direct din octetii mapati,
+// fara String-uri intermediare pentru linii. Heap-ul folosit nu depinde de dimensiunea fisierului.
+class MappedReviewReader {
+    static final int WINDOW_SIZE = 64 * 1024 * 1024; // O inregistrare trebuie sa incapa intr-o fereastra
+
+    private static final int USERNAME = 0;
+    private static final int PRODUCT = 1;
+    private static final int REVIEW_TEXT = 2;
+    private static final int ATTACHMENT = 3;
+
+    private final Path path;
+    private final ReviewFileFormat format;
+    private final byte[][] fieldBytes = { null, null, new byte[256], new byte[256] }; // Octetii textului si ai atasamentului
+    private final int[] fieldLengths = new int[4]; // -1 = camp absent
+    private int usernameId; // Numele de utilizator si produsul nu devin String-uri, ci id-uri din SymbolTable
+    private int productId;
+    private byte[] scratch = new byte[256]; // Octetii campului curent, refolositi de la un camp la altul
+    private int scratchLength;
+
+    public MappedReviewReader(Path path) {
+        this(path, ReviewFileFormat.fromFileName(path.getFileName().toString()));
+    }
+
+    public MappedReviewReader(Path path, ReviewFileFormat format) {
+        this.path = path;
+        this.format = format;
+    }
+
+    // Trimite fiecare recenzie din fisier catre sink si intoarce numarul de mesaje; END_MESSAGE ramane in grija apelantului
+    public long readInto(ReviewSink sink) throws IOException, InterruptedException {
+        return read(() -> sink.accept(new ReviewMessage(usernameId, product(), orEmpty(field(REVIEW_TEXT)), field(ATTACHMENT))));
+    }
+
+    // Varianta off-heap: fiecare recenzie este scrisa in arena direct din octetii campurilor, fara String-uri,
+    // iar in coada ajunge doar handle-ul; ArenaReview.END ramane in grija apelantului
+    public long readInto(ReviewArena arena, BlockingQueue<ArenaReview> queue) throws IOException, InterruptedException {
+        try {
+            return read(() -> queue.put(arena.write(usernameId, product(), fieldBytes[REVIEW_TEXT], Math.max(fieldLengths[REVIEW_TEXT], 0),
+                    fieldBytes[ATTACHMENT], fieldLengths[ATTACHMENT])));
+        } finally {
+            arena.seal();
+        }
+    }
+
+    // Primeste inregistrarea curenta din campurile cititorului
+    private interface RecordHandler {
+        void accept() throws InterruptedException;
+    }
+
+    private long read(RecordHandler handler) throws IOException, InterruptedException {
+        long count = 0;
+        boolean firstRecord = true;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long windowLength = Math.min(WINDOW_SIZE, size - position);
+                boolean lastWindow = position + windowLength == size;
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowLength);
+                int limit = (int) windowLength;
+                int offset = 0;
+                while (offset < limit) {
+                    int next = format == ReviewFileFormat.CSV
+                            ? parseCsvRecord(window, offset, limit, lastWindow)
+                            : parseJsonRecord(window, offset, limit, lastWindow);
+                    if (next < 0) break; // Inregistrarea continua in fereastra urmatoare
+                    boolean header = firstRecord && format == ReviewFileFormat.CSV && "username".equals(SymbolTable.USERNAMES.name(usernameId));
+                    firstRecord = false;
+                    boolean blank = usernameId == SymbolTable.NONE
+                            || (SymbolTable.USERNAMES.name(usernameId).isEmpty() && productId == SymbolTable.NONE);
+                    if (!header && !blank) {
+                        handler.accept();
+                        count++;
+                    }
+                    offset = next;
+                }
+                if (offset == 0 && !lastWindow) {
+                    throw new IOException("Inregistrare mai mare decat fereastra de " + WINDOW_SIZE + " octeti la pozitia " + position);
+                }
+                position += offset;
+            }
+        }
+        return count;
+    }
+
+    private int product() {
+        return productId == SymbolTable.NONE ? SymbolTable.PRODUCTS.intern("") : productId;
+    }
+
+    private String field(int field) {
+        int length = fieldLengths[field];
+        return length < 0 ? null : new String(fieldBytes[field], 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static String orEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    // Intoarce pozitia de dupa sfarsitul liniei sau -1 daca linia nu se termina in fereastra
+    private int parseCsvRecord(ByteBuffer buffer, int offset, int limit, boolean lastWindow) {
+        Arrays.fill(fieldLengths, -1);
+        usernameId = productId = SymbolTable.NONE;
+        int field = 0;
+        int i = offset;
+        while (true) {
+            scratchLength = 0;
+            if (i < limit && buffer.get(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= limit) return -1;
+                    byte b = buffer.get(i++);
+                    if (b == '"') {
+                        if (i < limit && buffer.get(i) == '"') {
+                            append((byte) '"'); // "" in interiorul ghilimelelor
+                            i++;
+                        } else if (i >= limit && !lastWindow) {
+                            return -1;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        append(b);
+                    }
+                }
+            }
+            while (i < limit) {
+                byte b = buffer.get(i);
+                if (b == ',' || b == '\n') break;
+                if (b != '\r') append(b);
+                i++;
+            }
+            if (i >= limit && !lastWindow) return -1;
+            if (field < fieldLengths.length) {
+                store(field);
+            }
+            field++;
+            if (i >= limit) return limit;
+            if (buffer.get(i++) == '\n') return i;
+        }
+    }
+
+    // Un obiect JSON pe o linie; cheile necunoscute si valorile care nu sunt siruri sunt ignorate
+    private int parseJsonRecord(ByteBuffer buffer, int offset, int limit, boolean lastWindow) {
+        int end = offset;
+        while (end < limit && buffer.get(end) != '\n') end++;
+        if (end == limit && !lastWindow) return -1;
+        int next = end == limit ? limit : end + 1;
+
+        Arrays.fill(fieldLengths, -1);
+        usernameId = productId = SymbolTable.NONE;
+        int i = offset;
+        while (i < end) {
+            // Cheia
+            while (i < end && buffer.get(i) != '"') i++;
+            if (i >= end) break;
+            i = readJsonString(buffer, i + 1, end);
+            int key = fieldIndex();
+            // Valoarea
+            while (i < end && buffer.get(i) != ':') i++;
+            i++;
+            while (i < end && buffer.get(i) == ' ') i++;
+            if (i < end && buffer.get(i) == '"') {
+                i = readJsonString(buffer, i + 1, end);
+                if (key >= 0) store(key);
+            } else {
+                while (i < end && buffer.get(i) != ',' && buffer.get(i) != '}') i++;
+            }
+            i++;
+        }
+        return next;
+    }
+
+    // Citeste un sir JSON (fara ghilimeaua de deschidere) in scratch si intoarce pozitia de dupa ghilimeaua de inchidere
+    private int readJsonString(ByteBuffer buffer, int i, int end) {
+        scratchLength = 0;
+        while (i < end) {
+            byte b = buffer.get(i++);
+            if (b == '"') return i;
+            if (b != '\\' || i >= end) {
+                append(b);
+                continue;
+            }
+            byte escaped = buffer.get(i++);
+            switch (escaped) {
+                case 'n': append((byte) '\n'); break;
+                case 't': append((byte) '\t'); break;
+                case 'r': append((byte) '\r'); break;
+                case 'b': append((byte) '\b'); break;
+                case 'f': append((byte) '\f'); break;
+                case 'u':
+                    if (i + 4 <= end) {
+                        int code = hex4(buffer, i);
+                        i += 4;
+                        // Caracterele din afara BMP vin ca doua escape-uri consecutive (pereche de surogate)
+                        if (Character.isHighSurrogate((char) code) && i + 6 <= end
+                                && buffer.get(i) == '\\' && buffer.get(i + 1) == 'u') {
+                            int low = hex4(buffer, i + 2);
+                            if (Character.isLowSurrogate((char) low)) {
+                                code = Character.toCodePoint((char) code, (char) low);
+                                i += 6;
+                            }
+                        }
+                        appendUtf8(code);
+                    }
+                    break;
+                default: append(escaped); // \" \\ \/
+            }
+        }
+        return i;
+    }
+
+    private static int hex4(ByteBuffer buffer, int i) {
+        int code = 0;
+        for (int k = 0; k < 4; k++) {
+            code = code * 16 + Character.digit((char) buffer.get(i + k), 16);
+        }
+        return code;
+    }
+
+    private int fieldIndex() {
+        if (matches("username")) return USERNAME;
+        if (matches("product")) return PRODUCT;
+        if (matches("reviewText") || matches("text")) return REVIEW_TEXT;
+        if (matches("attachment")) return ATTACHMENT;
+        return -1;
+    }
+
+    private boolean matches(String key) {
+        if (key.length() != scratchLength) return false;
+        for (int i = 0; i < scratchLength; i++) {
+            if (scratch[i] != key.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private void append(byte b) {
+        if (scratchLength == scratch.length) {
+            scratch = Arrays.copyOf(scratch, scratch.length * 2);
+        }
+        scratch[scratchLength++] = b;
+    }
+
+    private void appendUtf8(int code) {
+        if (code < 0x80) {
+            append((byte) code);
+        } else if (code < 0x800) {
+            append((byte) (0xC0 | (code >> 6)));
+            append((byte) (0x80 | (code & 0x3F)));
+        } else if (code < 0x10000) {
+            append((byte) (0xE0 | (code >> 12)));
+            append((byte) (0x80 | ((code >> 6) & 0x3F)));
+            append((byte) (0x80 | (code & 0x3F)));
+        } else {
+            append((byte) (0xF0 | (code >> 18)));
+            append((byte) (0x80 | ((code >> 12) & 0x3F)));
+            append((byte) (0x80 | ((code >> 6) & 0x3F)));
+            append((byte) (0x80 | (code & 0x3F)));
+        }
+    }
+
+    private void store(int field) {
+        if (field == USERNAME) {
+            usernameId = SymbolTable.USERNAMES.intern(scratch, 0, scratchLength);
+        } else if (field == PRODUCT) {
+            productId = SymbolTable.PRODUCTS.intern(scratch, 0, scratchLength);
+        } else {
+            // Campul ramane in octeti: scratch devine buffer-ul campului, iar buffer-ul vechi al campului devine scratch
+            byte[] bytes = fieldBytes[field];
+            fieldBytes[field] = scratch;
+            fieldLengths[field] = scratchLength;
+            scratch = bytes;
+        }
+    }
+}
+
+// Recenziile din modul off-heap: fiecare este scrisa o singura data intr-un slab direct (ByteBuffer.allocateDirect),
+// iar prin cozi trec doar handle-uri ArenaReview refolosite. Un slab se recicleaza intreg cand toate recenziile
+// din el au ajuns la sink sau au fost eliminate; pe regim stabil nu se aloca nimic pe heap pentru un mesaj.
+// Activare: -Dpipeline.arena=true, cu pipeline.arena.slabSize si pipeline.arena.maxSlabs
+final class ReviewArena {
+    static final String PROPERTY = "pipeline.arena";
+    static final String PROPERTY_PREFIX = "pipeline.arena.";
+    static final int DEFAULT_SLAB_SIZE = 1 << 20;
+    static final int DEFAULT_MAX_SLABS = 64;
+
+    private final int slabSize;
+    private final int maxSlabs;
+    private final BlockingQueue<Slab> free; // ArrayBlockingQueue: reciclarea nu aloca noduri
+    private final AtomicInteger allocatedSlabs = new AtomicInteger();
+    private final AtomicLong recycledSlabs = new AtomicLong();
+    private final AtomicLong writtenReviews = new AtomicLong();
+    private Slab current; // Folosit doar de thread-ul care scrie
+
+    ReviewArena() {
+        this(DEFAULT_SLAB_SIZE, DEFAULT_MAX_SLABS);
+    }
+
+    ReviewArena(int slabSize, int maxSlabs) {
+        if (slabSize < 1024 || maxSlabs < 1) {
+            throw new IllegalArgumentException("Slab sau numar de slab-uri invalid: " + slabSize + ", " + maxSlabs);
+        }
+        this.slabSize = slabSize & ~7;
+        this.maxSlabs = maxSlabs;
+        this.free = new ArrayBlockingQueue<>(maxSlabs);
+    }
+
+    static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY);
+    }
+
+    static ReviewArena fromSystemProperties() {
+        return new ReviewArena(Integer.getInteger(PROPERTY_PREFIX + "slabSize", DEFAULT_SLAB_SIZE),
+                Integer.getInteger(PROPERTY_PREFIX + "maxSlabs", DEFAULT_MAX_SLABS));
+    }
+
+    // Scrie o recenzie cu textele date ca siruri; un camp null ramane null
+    ArenaReview write(int usernameId, int productId, CharSequence text, CharSequence attachment) throws InterruptedException {
+        int textLength = text == null ? -1 : text.length();
+        int attachmentLength = attachment == null ? -1 : attachment.length();
+        int offset = reserve(Math.max(textLength, 0) + Math.max(attachmentLength, 0));
+        CharBuffer chars = current.chars;
+        int textIndex = ArenaReview.textIndex(offset);
+        for (int i = 0; i < textLength; i++) {
+            chars.put(textIndex + i, text.charAt(i));
+        }
+        int attachmentIndex = textIndex + Math.max(textLength, 0);
+        for (int i = 0; i < attachmentLength; i++) {
+            chars.put(attachmentIndex + i, attachment.charAt(i));
+        }
+        return commit(offset, usernameId, productId, textLength, attachmentLength);
+    }
+
+    // Scrie o recenzie direct din octetii UTF-8 ai campurilor; lungimea -1 inseamna camp absent
+    ArenaReview write(int usernameId, int productId, byte[] text, int textLength, byte[] attachment, int attachmentLength)
+            throws InterruptedException {
+        // Un octet UTF-8 produce cel mult un char, deci lungimile in octeti marginesc spatiul necesar
+        int offset = reserve(Math.max(textLength, 0) + Math.max(attachmentLength, 0));
+        int textIndex = ArenaReview.textIndex(offset);
+        int textChars = decodeUtf8(text, textLength, textIndex);
+        int attachmentChars = decodeUtf8(attachment, attachmentLength, textIndex + Math.max(textChars, 0));
+        return commit(offset, usernameId, productId, textChars, attachmentChars);
+    }
+
+    // Rezerva loc pentru antet si maxChars caractere in slab-ul curent sau intr-unul nou
+    private int reserve(int maxChars) throws InterruptedException {
+        int size = ArenaReview.HEADER + 2 * maxChars;
+        if (current == null || current.position + size > current.capacity) {
+            if (current != null) current.release(); // Referinta scriitorului: slab-ul nu mai primeste recenzii
+            // O recenzie mai mare decat un slab primeste un slab separat, care nu intra in pool
+            current = size > slabSize ? new Slab(this, align(size), false) : acquire();
+            current.reset();
+        }
+        return current.position;
+    }
+
+    private ArenaReview commit(int offset, int usernameId, int productId, int textLength, int attachmentLength) {
+        ByteBuffer bytes = current.bytes;
+        bytes.putInt(offset + ArenaReview.USERNAME, usernameId);
+        bytes.putInt(offset + ArenaReview.PRODUCT, productId);
+        bytes.putInt(offset + ArenaReview.TEXT_LENGTH, textLength);
+        bytes.putInt(offset + ArenaReview.ATTACHMENT_LENGTH, attachmentLength);
+        bytes.putLong(offset + ArenaReview.MODERATION, 0); // Masca, analiza si adnotarile raman dintr-o folosire anterioara
+        current.position = align(offset + ArenaReview.HEADER + 2 * (Math.max(textLength, 0) + Math.max(attachmentLength, 0)));
+        writtenReviews.incrementAndGet();
+        return current.nextHandle(offset);
+    }
+
+    private int decodeUtf8(byte[] bytes, int length, int index) {
+        if (length < 0) return -1;
+        CharBuffer chars = current.chars;
+        int i = 0, j = index;
+        while (i < length) {
+            int b = bytes[i];
+            if (b >= 0) {
+                chars.put(j++, (char) b);
+                i++;
+                continue;
+            }
+            int extra, code, min;
+            if ((b & 0xE0) == 0xC0) { extra = 1; code = b & 0x1F; min = 0x80; }
+            else if ((b & 0xF0) == 0xE0) { extra = 2; code = b & 0x0F; min = 0x800; }
+            else if ((b & 0xF8) == 0xF0) { extra = 3; code = b & 0x07; min = 0x10000; }
+            else return decodeMalformed(bytes, length, index);
+            if (i + extra >= length) return decodeMalformed(bytes, length, index);
+            for (int k = 1; k <= extra; k++) {
+                int c = bytes[i + k];
+                if ((c & 0xC0) != 0x80) return decodeMalformed(bytes, length, index);
+                code = (code << 6) | (c & 0x3F);
+            }
+            if (code < min || code > Character.MAX_CODE_POINT || (code >= Character.MIN_SURROGATE && code <= Character.MAX_SURROGATE)) {
+                return decodeMalformed(bytes, length, index);
+            }
+            if (code >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                chars.put(j++, Character.highSurrogate(code));
+                chars.put(j++, Character.lowSurrogate(code));
+            } else {
+                chars.put(j++, (char) code);
+            }
+            i += extra + 1;
+        }
+        return j - index;
+    }
+
+    // Octetii invalizi sunt rari: decodorul JDK ii inlocuieste cu U+FFFD, exact ca pe calea cu String-uri
+    private int decodeMalformed(byte[] bytes, int length, int index) {
+        String decoded = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        for (int i = 0; i < decoded.length(); i++) {
+            current.chars.put(index + i, decoded.charAt(i));
+        }
+        return decoded.length();
+    }
+
+    // Un slab liber din pool; cand toate sunt in pipeline, scrierea asteapta ca sink-ul sa elibereze unul
+    private Slab acquire() throws InterruptedException {
+        Slab slab = free.poll();
+        if (slab != null) return slab;
+        if (allocatedSlabs.get() < maxSlabs) {
+            allocatedSlabs.incrementAndGet();
+            return new Slab(this, slabSize, true);
+        }
+        return free.take();
+    }
+
+    private void recycle(Slab slab) {
+        if (slab.pooled) {
+            recycledSlabs.incrementAndGet();
+            free.offer(slab);
+        }
+    }
+
+    // Sfarsitul scrierii: slab-ul curent se recicleaza dupa ce ultimele lui recenzii ajung la sink
+    void seal() {
+        if (current != null) {
+            current.release();
+            current = null;
+        }
+    }
+
+    private static int align(int position) {
+        return (position + 7) & ~7;
+    }
+
+    public long getWrittenReviews() {
+        return writtenReviews.get();
+    }
+
+    @Override
+    public String toString() {
+        return allocatedSlabs.get() + " slab-uri de " + slabSize / 1024 + " KB, reciclate " + recycledSlabs.get()
+                + " ori, " + getWrittenReviews() + " recenzii";
+    }
+
+    // Regiunea off-heap a unui grup de recenzii si handle-urile lor, refolosite la fiecare reciclare
+    static final class Slab {
+        private final ReviewArena arena;
+        final ByteBuffer bytes;
+        final CharBuffer chars; // Vedere peste aceiasi octeti; se folosesc doar pozitii absolute
+        final int capacity;
+        private final boolean pooled;
+        private final AtomicInteger references = new AtomicInteger(); // Recenziile neeliberate plus scriitorul
+        private ArenaReview[] handles = new ArenaReview[256];
+        private int handleCount;
+        private int position;
+
+        Slab(ReviewArena arena, int capacity, boolean pooled) {
+            this.arena = arena;
+            this.bytes = ByteBuffer.allocateDirect(capacity);
+            this.chars = bytes.asCharBuffer();
+            this.capacity = capacity;
+            this.pooled = pooled;
+        }
+
+        private void reset() {
+            position = 0;
+            handleCount = 0;
+            references.set(1);
+        }
+
+        private ArenaReview nextHandle(int offset) {
+            if (handleCount == handles.length) {
+                handles = Arrays.copyOf(handles, handles.length * 2);
+            }
+            ArenaReview handle = handles[handleCount];
+            if (handle == null) {
+                handle = new ArenaReview(this);
+                handles[handleCount] = handle;
+            }
+            handleCount++;
+            handle.offset = offset;
+            references.incrementAndGet();
+            return handle;
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                arena.recycle(this);
+            }
+        }
+    }
+}
+
+// Handle (flyweight) peste o recenzie dintr-un slab: campurile se citesc si se scriu direct in memoria off-heap.
+// Handle-ul apartine slab-ului si este refolosit dupa reciclare, deci nu trebuie pastrat dupa release().
+final class ArenaReview {
+    static final ArenaReview END = new ArenaReview(null); // Marcheaza sfarsitul fluxului, ca END_MESSAGE
+
+    // Antetul unei recenzii; textul si atasamentul urmeaza ca UTF-16
+    static final int USERNAME = 0;
+    static final int PRODUCT = 4;
+    static final int TEXT_LENGTH = 8;        // In caractere, -1 pentru null
+    static final int ATTACHMENT_LENGTH = 12;
+    static final int MODERATION = 16;        // Masca ModerationPatterns.DEFAULT
+    static final int ANALYZED = 20;          // 1 dupa prima analiza a textului
+    static final int SENTIMENT = 21;         // Sentiment.ordinal()
+    static final int SENTIMENT_SYMBOL = 22;  // Sentiment.ordinal() + 1, 0 = neadnotat
+    static final int SENTIMENT_LABEL = 23;
+    static final int HEADER = 24;
+
+    private final ReviewArena.Slab slab;
+    int offset;
+
+    ArenaReview(ReviewArena.Slab slab) {
+        this.slab = slab;
+    }
+
+    static int textIndex(int offset) {
+        return (offset + HEADER) >> 1;
+    }
+
+    int usernameId() {
+        return slab.bytes.getInt(offset + USERNAME);
+    }
+
+    int productId() {
+        return slab.bytes.getInt(offset + PRODUCT);
+    }
+
+    int textLength() {
+        return slab.bytes.getInt(offset + TEXT_LENGTH);
+    }
+
+    int attachmentLength() {
+        return slab.bytes.getInt(offset + ATTACHMENT_LENGTH);
+    }
+
+    boolean hasText() {
+        return textLength() >= 0;
+    }
+
+    // Caracterele recenziei; textul incepe la textIndex(), atasamentul imediat dupa el
+    CharBuffer chars() {
+        return slab.chars;
+    }
+
+    int textIndex() {
+        return textIndex(offset);
+    }
+
+    int attachmentIndex() {
+        return textIndex() + Math.max(textLength(), 0);
+    }
+
+    int moderationMask() {
+        analyze();
+        return slab.bytes.getInt(offset + MODERATION);
+    }
+
+    Sentiment sentiment() {
+        analyze();
+        return Sentiment.of(slab.bytes.get(offset + SENTIMENT));
+    }
+
+    // Ca ReviewMessage.analysis(), dar rezultatul ramane in antetul din slab si este calculat o singura data pentru toate filtrele
+    private void analyze() {
+        ByteBuffer bytes = slab.bytes;
+        if (bytes.get(offset + ANALYZED) != 0) return;
+        CharBuffer chars = slab.chars;
+        int start = textIndex();
+        int end = start + Math.max(textLength(), 0);
+        bytes.putInt(offset + MODERATION, hasText() ? ModerationPatterns.DEFAULT.scan(chars, start, end) : 0);
+        bytes.put(offset + SENTIMENT, (byte) Sentiment.of(chars, start, end).ordinal());
+        bytes.put(offset + ANALYZED, (byte) 1);
+    }
+
+    // Pe loc, cu aceeasi transformare ca ResizeImagesFilter pe heap
+    void lowerCaseAttachment() {
+        int start = attachmentIndex();
+        ResizeImagesFilter.lowerCase(slab.chars, start, start + attachmentLength());
+    }
+
+    Sentiment sentimentSymbol() {
+        return decode(slab.bytes.get(offset + SENTIMENT_SYMBOL));
+    }
+
+    void setSentimentSymbol(Sentiment sentiment) {
+        slab.bytes.put(offset + SENTIMENT_SYMBOL, (byte) (sentiment.ordinal() + 1));
+    }
+
+    Sentiment sentimentLabel() {
+        return decode(slab.bytes.get(offset + SENTIMENT_LABEL));
+    }
+
+    void setSentimentLabel(Sentiment sentiment) {
+        slab.bytes.put(offset + SENTIMENT_LABEL, (byte) (sentiment.ordinal() + 1));
+    }
+
+    private static Sentiment decode(byte value) {
+        return value == 0 ? null : Sentiment.of(value - 1);
+    }
+
+    // Recenzia a ajuns la capatul pipeline-ului (scrisa sau eliminata); locul ei din slab poate fi refolosit
+    void release() {
+        slab.release();
+    }
+
+    // Copie pe heap, pentru consola si pentru sink-urile fara suport off-heap
+    ReviewMessage toMessage() {
+        CharBuffer chars = slab.chars;
+        ReviewMessage message = new ReviewMessage(usernameId(), productId(), string(chars, textIndex(), textLength()),
+                string(chars, attachmentIndex(), attachmentLength()));
+        message.sentimentSymbol = sentimentSymbol();
+        message.sentimentLabel = sentimentLabel();
+        return message;
+    }
+
+    private static String string(CharBuffer chars, int start, int length) {
+        if (length < 0) return null;
+        char[] value = new char[length];
+        chars.get(start, value);
+        return new String(value);
+    }
+
+    @Override
+    public String toString() {
+        return this == END ? "END" : toMessage().toString();
+    }
+}
+
+// Scrie mesajele acceptate intr-un fisier dintr-un thread separat, ca etapele sa nu astepte dupa disc sau consola.
+// Mesajele sunt codate intr-un buffer mare scris cu FileChannel.write cand se umple; la fiecare commit de grup
+// (cel mult o data la commitIntervalMillis) buffer-ul este golit si, optional, fortat pe disc cu force.
+class BatchedFileSink implements ReviewSink, AutoCloseable {
+    static final String PROPERTY_PREFIX = "pipeline.sink.";
+    static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 10;
+    static final int QUEUE_CAPACITY = 8192;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final BlockingQueue<Object> pending = new ArrayBlockingQueue<>(QUEUE_CAPACITY); // ReviewMessage sau ArenaReview
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)      // Un surogat fara pereche devine '?', nu trunchiaza linia
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final long commitIntervalNanos;
+    private final boolean force; // force dupa fiecare commit: mesajele confirmate supravietuiesc unei caderi a sistemului
+    private final Thread writer;
+    private final AtomicLong writtenMessages = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private volatile IOException failure;
+    private volatile boolean closed;
+    private volatile ReviewSink commitListener; // Primeste mesajele dupa ce commit-ul lor s-a terminat
+    private final List<ReviewMessage> uncommitted = new ArrayList<>(); // Folosit doar de writer
+    private boolean dirty; // Folosit doar de writer
+
+    BatchedFileSink(Path file) throws IOException {
+        this(file, DEFAULT_BUFFER_SIZE, DEFAULT_COMMIT_INTERVAL_MILLIS, false);
+    }
+
+    BatchedFileSink(Path file, int bufferSize, long commitIntervalMillis, boolean force) throws IOException {
+        this(file, bufferSize, commitIntervalMillis, force, false);
+    }
+
+    // Cu append, rezultatele unei rulari reluate din WriteAheadLog se adauga la cele scrise inainte de cadere
+    BatchedFileSink(Path file, int bufferSize, long commitIntervalMillis, boolean force, boolean append) throws IOException {
+        if (bufferSize <= 0 || commitIntervalMillis < 0) {
+            throw new IllegalArgumentException("Buffer sau interval de commit invalid: " + bufferSize + ", " + commitIntervalMillis);
+        }
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.commitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(commitIntervalMillis);
+        this.force = force;
+        this.writer = new Thread(this::writeLoop, "result-writer");
+        writer.start();
+    }
+
+    // pipeline.sink.bufferSize, pipeline.sink.commitIntervalMillis si pipeline.sink.force
+    static BatchedFileSink fromSystemProperties(Path file) throws IOException {
+        return fromSystemProperties(file, false);
+    }
+
+    static BatchedFileSink fromSystemProperties(Path file, boolean append) throws IOException {
+        return new BatchedFileSink(file,
+                Integer.getInteger(PROPERTY_PREFIX + "bufferSize", DEFAULT_BUFFER_SIZE),
+                Long.getLong(PROPERTY_PREFIX + "commitIntervalMillis", DEFAULT_COMMIT_INTERVAL_MILLIS),
+                Boolean.getBoolean(PROPERTY_PREFIX + "force"),
+                append);
+    }
+
+    // Se seteaza inainte de primul mesaj; apelat din thread-ul writer
+    void setCommitListener(ReviewSink listener) {
+        this.commitListener = listener;
+    }
+
+    // Doar pune mesajul in coada writer-ului; cand aceasta este plina producatorul asteapta
+    @Override
+    public void accept(ReviewMessage message) throws InterruptedException {
+        if (message == ReviewPipeline.END_MESSAGE) return; // Sfarsitul fluxului este semnalat de close
+        if (failure != null) throw new UncheckedIOException(failure);
+        if (closed) throw new IllegalStateException("Sink-ul pentru " + file + " este inchis");
+        pending.put(message);
+    }
+
+    // Recenzia off-heap este codata direct din slab, fara copie pe heap, si eliberata dupa scriere
+    @Override
+    public void accept(ArenaReview review) throws InterruptedException {
+        if (review == ArenaReview.END) return;
+        if (failure != null) throw new UncheckedIOException(failure);
+        if (closed) throw new IllegalStateException("Sink-ul pentru " + file + " este inchis");
+        pending.put(review);
+    }
+
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<>();
+        int encoded = 0; // Pozitia din lot a mesajului curent; encode elibereaza singur recenziile off-heap
+        long nextCommit = System.nanoTime() + commitIntervalNanos;
+        boolean end = false;
+        try {
+            while (!end) {
+                long wait = nextCommit - System.nanoTime();
+                Object first = wait > 0 ? pending.poll(wait, TimeUnit.NANOSECONDS) : pending.poll();
+                if (first != null) {
+                    batch.add(first);
+                    pending.drainTo(batch);
+                    for (encoded = 0; encoded < batch.size(); encoded++) {
+                        Object message = batch.get(encoded);
+                        if (message == ReviewPipeline.END_MESSAGE) {
+                            end = true;
+                        } else if (message instanceof ArenaReview) {
+                            encode((ArenaReview) message);
+                        } else {
+                            encode((ReviewMessage) message);
+                        }
+                    }
+                    batch.clear();
+                }
+                if (end || System.nanoTime() - nextCommit >= 0) {
+                    commit();
+                    nextCommit = System.nanoTime() + commitIntervalNanos;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+            // END poate fi deja in lotul intrerupt de eroare; altfel writer-ul l-ar astepta la nesfarsit in coada
+            for (Object message : batch) {
+                if (message == ReviewPipeline.END_MESSAGE) end = true;
+            }
+            // Producatorii blocati pe coada plina sunt eliberati pana la close. Din lot sunt eliberate doar recenziile
+            // la care encode nu a ajuns; cea care a esuat si cele dinaintea ei au fost eliberate deja de encode
+            for (int i = encoded + 1; i < batch.size(); i++) {
+                Object message = batch.get(i);
+                if (message instanceof ArenaReview) ((ArenaReview) message).release();
+            }
+            while (!end) {
+                try {
+                    Object message = pending.take();
+                    end = message == ReviewPipeline.END_MESSAGE;
+                    if (message instanceof ArenaReview) ((ArenaReview) message).release();
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void encode(ReviewMessage message) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(message.toString());
+        encoder.reset();
+        while (encoder.encode(chars, buffer, true).isOverflow()) {
+            flush();
+        }
+        if (!buffer.hasRemaining()) flush();
+        buffer.put((byte) '\n');
+        if (commitListener != null) uncommitted.add(message);
+        writtenMessages.incrementAndGet();
+        dirty = true;
+    }
+
+    // Acelasi format ca ReviewMessage.toString(), codat in UTF-8 direct din slab
+    private void encode(ArenaReview review) throws IOException {
+        try {
+            putUtf8(SymbolTable.USERNAMES.name(review.usernameId()));
+            putUtf8(", ");
+            putUtf8(SymbolTable.PRODUCTS.name(review.productId()));
+            putUtf8(", ");
+            putUtf8(review.chars(), review.textIndex(), review.textLength());
+            Sentiment symbol = review.sentimentSymbol();
+            if (symbol != null) putUtf8(symbol.symbol);
+            Sentiment label = review.sentimentLabel();
+            if (label != null) putUtf8(label.label);
+            putUtf8(", ");
+            putUtf8(review.chars(), review.attachmentIndex(), review.attachmentLength());
+            if (!buffer.hasRemaining()) flush();
+            buffer.put((byte) '\n');
+            writtenMessages.incrementAndGet();
+            dirty = true;
+        } finally {
+            review.release();
+        }
+    }
+
+    private void putUtf8(String text) throws IOException {
+        putUtf8(text, 0, text.length());
+    }
+
+    // Caracterele text[start, start + length); length -1 scrie "null", ca String.valueOf
+    private void putUtf8(CharSequence text, int start, int length) throws IOException {
+        if (length < 0) {
+            putUtf8("null");
+            return;
+        }
+        for (int i = start; i < start + length; i++) {
+            if (buffer.remaining() < 4) flush();
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < start + length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xF0 | (code >> 18)));
+                buffer.put((byte) (0x80 | ((code >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((code >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (code & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?'); // Surogat fara pereche, inlocuit ca de String.getBytes
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        writtenBytes.addAndGet(buffer.remaining());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Un singur write (si un singur force) pentru toate mesajele sosite de la commit-ul anterior
+    private void commit() throws IOException, InterruptedException {
+        if (!dirty) return;
+        flush();
+        if (force) channel.force(false);
+        commits.incrementAndGet();
+        dirty = false;
+        ReviewSink listener = commitListener;
+        if (listener != null) {
+            for (ReviewMessage message : uncommitted) {
+                listener.accept(message);
+            }
+            uncommitted.clear();
+        }
+    }
+
+    // Scrie tot ce a ramas in coada, face ultimul commit si inchide fisierul. O intrerupere in timpul asteptarii
+    // este restaurata si raportata ca InterruptedIOException, ca try-with-resources sa nu primeasca InterruptedException
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            pending.put(ReviewPipeline.END_MESSAGE);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Intrerupt in asteptarea scrierii in " + file);
+        }
+        channel.close();
+        if (failure != null) throw failure;
+    }
+
+    public long getWrittenMessages() {
+        return writtenMessages.get();
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes.get();
+    }
+
+    public long getCommitCount() {
+        return commits.get();
+    }
+
+    @Override
+    public String toString() {
+        return file + ": " + getWrittenMessages() + " mesaje, " + getWrittenBytes() + " octeti, " + getCommitCount() + " commit-uri";
+    }
+}
+
+// Jurnal append-only (write-ahead log) al mesajelor puse in prima coada si al iesirii lor din pipeline.
+// Intrarile sunt codate sub un lock direct intr-un buffer comun; iesirile sunt doar un bit setat fara lock.
+// Thread-ul "wal-writer" schimba buffer-ul cu unul gol la fiecare commit de grup, adauga o singura inregistrare
+// cu bitii iesirilor noi si scrie totul secvential cu un singur write (si un singur force).
+// Checkpoint-ul retine pozitia primei intrari inca nefinalizate, deci la repornire se citeste doar coada
+// jurnalului si se reiau doar mesajele nefinalizate. Filtrele sunt deterministe, asa ca un mesaj nefinalizat
+// se reia de la primul filtru. Format: [lungime int][CRC32C int][tip][secventa long + 4 campuri lungime+UTF-8
+// | numar int + perechi (prima secventa long, biti long)].
+class WriteAheadLog implements AutoCloseable {
+    static final String PROPERTY_PREFIX = "pipeline.wal.";
+    static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 5;
+    static final long DEFAULT_CHECKPOINT_INTERVAL_MILLIS = 1000;
+    static final long COMPACTION_THRESHOLD = 64L << 20; // Peste atat, prefixul finalizat al jurnalului este eliminat
+    static final int BUFFER_SIZE = 1 << 20;
+    static final int MAX_OPEN_SEQUENCES = 1 << 18;     // Cate mesaje pot fi in lucru intre cel mai vechi si cel mai nou
+
+    private static final byte INGEST = 1;
+    private static final byte COMPLETIONS = 2;
+    private static final int HEADER = 2 * Integer.BYTES; // Lungime si CRC
+    private static final int WORDS = MAX_OPEN_SEQUENCES / Long.SIZE;
+    private static final String LOG_FILE = "wal.log";
+    private static final String CHECKPOINT_FILE = "wal.checkpoint";
+
+    private final Path directory;
+    private final long commitIntervalNanos;
+    private final long checkpointIntervalNanos;
+    private final boolean force; // Fara force jurnalul supravietuieste caderii JVM-ului, dar nu si a sistemului
+    private final List<ReviewMessage> unfinished; // Mesajele de reluat, in ordinea din jurnal
+    private final long resumePosition;            // Cate mesaje de intrare are deja jurnalul
+
+    // Buffer-ul in care scriu producatorii, protejat de lock; secventele sunt atribuite tot sub lock,
+    // deci intrarile apar in jurnal in ordinea secventelor
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition writerWakeup = lock.newCondition();
+    private final Condition spaceAvailable = lock.newCondition();
+    private ByteBuffer active = ByteBuffer.allocate(BUFFER_SIZE);
+    private long nextSequence;
+    private boolean writeRequested;
+    private boolean closing;
+
+    // Un bit pe secventa, intr-un inel: setat de thread-ul care termina mesajul, citit si sters de writer
+    private final AtomicLongArray completed = new AtomicLongArray(WORDS);
+    private volatile long publishedLow; // lowSequence vazut de producatori, pentru a nu refolosi biti inca necititi
+
+    // Starea de mai jos este folosita doar de thread-ul writer
+    private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer completions = ByteBuffer.allocate(1 << 12);
+    private FileChannel channel;
+    private final CRC32C crc = new CRC32C();
+    private long end; // Pozitia de dupa ultima inregistrare scrisa
+    private final long[] logged = new long[WORDS];                  // Iesirile deja scrise in jurnal
+    private final long[] offsets = new long[MAX_OPEN_SEQUENCES];    // Pozitia intrarii fiecarei secvente
+    private long lowSequence = -1;  // Cea mai veche secventa nefinalizata
+    private long highSequence = -1; // Secventa de dupa ultima intrare scrisa
+
+    private final Thread writer;
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong checkpoints = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+    private volatile IOException failure;
+
+    private WriteAheadLog(Path directory, long commitIntervalMillis, long checkpointIntervalMillis, boolean force) throws IOException {
+        this.directory = directory;
+        this.commitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(commitIntervalMillis);
+        this.checkpointIntervalNanos = TimeUnit.MILLISECONDS.toNanos(checkpointIntervalMillis);
+        this.force = force;
+        Files.createDirectories(directory);
+
+        // Recuperare: de la pozitia din checkpoint pana la ultima inregistrare intreaga
+        long start = 0;
+        long checkpointSequence = 0;
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpoint)) {
+            ByteBuffer saved = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+            start = saved.getLong();
+            checkpointSequence = saved.getLong();
+        }
+        channel = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        start = Math.min(start, channel.size());
+        Map<Long, ReviewMessage> recovered = new LinkedHashMap<>();
+        end = scan(start, recovered);
+        if (lowSequence < 0) {
+            lowSequence = highSequence = checkpointSequence; // Nicio intrare dupa checkpoint
+        }
+        channel.truncate(end); // O inregistrare scrisa pe jumatate la cadere este eliminata
+        channel.position(end);
+
+        this.unfinished = new ArrayList<>(recovered.values());
+        this.nextSequence = Math.max(checkpointSequence, highSequence);
+        this.resumePosition = nextSequence;
+        this.publishedLow = lowSequence;
+        this.writer = new Thread(this::writeLoop, "wal-writer");
+        writer.setDaemon(true); // O oprire fara close este tratata ca o cadere: ce nu a fost scris se recupereaza din sursa
+        writer.start();
+    }
+
+    static WriteAheadLog open(Path directory, long commitIntervalMillis, long checkpointIntervalMillis, boolean force) throws IOException {
+        if (commitIntervalMillis < 0 || checkpointIntervalMillis < 0) {
+            throw new IllegalArgumentException("Interval de commit sau checkpoint invalid: " + commitIntervalMillis + ", " + checkpointIntervalMillis);
+        }
+        return new WriteAheadLog(directory, commitIntervalMillis, checkpointIntervalMillis, force);
+    }
+
+    // pipeline.wal.dir activeaza jurnalul; pipeline.wal.commitIntervalMillis, pipeline.wal.checkpointIntervalMillis
+    // si pipeline.wal.force il configureaza. Fara pipeline.wal.dir intoarce null.
+    static WriteAheadLog fromSystemProperties() throws IOException {
+        String directory = System.getProperty(PROPERTY_PREFIX + "dir");
+        if (directory == null) return null;
+        return open(Paths.get(directory),
+                Long.getLong(PROPERTY_PREFIX + "commitIntervalMillis", DEFAULT_COMMIT_INTERVAL_MILLIS),
+                Long.getLong(PROPERTY_PREFIX + "checkpointIntervalMillis", DEFAULT_CHECKPOINT_INTERVAL_MILLIS),
+                Boolean.getBoolean(PROPERTY_PREFIX + "force"));
+    }
+
+    // Citeste jurnalul secvential de la start; se opreste la prima inregistrare incompleta sau corupta
+    private long scan(long start, Map<Long, ReviewMessage> recovered) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(start)), 1 << 16));
+        long position = start;
+        while (true) {
+            byte[] body;
+            try {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < 1 || length > channel.size() - position) break;
+                body = new byte[length];
+                in.readFully(body);
+                crc.reset();
+                crc.update(body, 0, length);
+                if ((int) crc.getValue() != checksum) break;
+            } catch (EOFException e) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.wrap(body);
+            if (record.get() == INGEST) {
+                long sequence = record.getLong();
+                ReviewMessage message = new ReviewMessage(readField(record), readField(record), readField(record), readField(record));
+                message.walSequence = sequence;
+                recovered.put(sequence, message);
+                trackIngest(sequence, position);
+            } else {
+                for (int pairs = record.getInt(); pairs > 0; pairs--) {
+                    long first = record.getLong();
+                    for (long bits = record.getLong(); bits != 0; bits &= bits - 1) {
+                        long sequence = first + Long.numberOfTrailingZeros(bits);
+                        recovered.remove(sequence);
+                        if (sequence >= lowSequence && sequence < highSequence) {
+                            logged[wordIndex(sequence)] |= 1L << sequence;
+                        }
+                    }
+                }
+                advanceLow();
+            }
+            position += HEADER + body.length;
+        }
+        return position;
+    }
+
+    private static String readField(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) return null;
+        String value = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return value;
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int fieldLength(byte[] field) {
+        return Integer.BYTES + (field == null ? 0 : field.length);
+    }
+
+    private static void putField(ByteBuffer record, byte[] field) {
+        if (field == null) {
+            record.putInt(-1);
+        } else {
+            record.putInt(field.length).put(field);
+        }
+    }
+
+    private static int wordIndex(long sequence) {
+        return (int) ((sequence >>> 6) & (WORDS - 1));
+    }
+
+    // Noteaza intrarea mesajului in prima coada si ii atribuie secventa; campurile sunt copiate acum,
+    // inainte ca filtrele sa le modifice
+    void logIngest(ReviewMessage message) throws InterruptedException {
+        // Codarea UTF-8 se face inainte de lock; sub lock raman doar copierile
+        byte[] username = bytes(message.username()); // Id-urile nu supravietuiesc repornirii, deci jurnalul pastreaza numele
+        byte[] product = bytes(message.product());
+        byte[] reviewText = bytes(message.reviewText);
+        byte[] attachment = bytes(message.attachment);
+        int length = 1 + Long.BYTES + fieldLength(username) + fieldLength(product) + fieldLength(reviewText) + fieldLength(attachment);
+        lock.lock();
+        try {
+            reserve(HEADER + length);
+            long sequence = nextSequence++;
+            active.putInt(length).putInt(0).put(INGEST).putLong(sequence); // CRC-ul este calculat de writer
+            putField(active, username);
+            putField(active, product);
+            putField(active, reviewText);
+            putField(active, attachment);
+            message.walSequence = sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Noteaza ca mesajul a iesit din pipeline (acceptat sau eliminat) si nu mai trebuie reluat; fara lock
+    void logCompletion(ReviewMessage message) {
+        long sequence = message.walSequence;
+        if (sequence < 0) return;
+        message.walSequence = -1; // Un mesaj este finalizat o singura data
+        int index = wordIndex(sequence);
+        long bit = 1L << sequence;
+        long word;
+        do {
+            word = completed.get(index);
+        } while (!completed.compareAndSet(index, word, word | bit));
+    }
+
+    // Apelat sub lock; cand buffer-ul sau inelul de secvente este plin producatorul il cere writer-ului si asteapta
+    private void reserve(int size) throws InterruptedException {
+        while (true) {
+            if (failure != null) throw new UncheckedIOException(failure);
+            if (closing) throw new IllegalStateException("Jurnalul din " + directory + " este inchis");
+            boolean sequenceAvailable = nextSequence - (publishedLow & -Long.SIZE) < MAX_OPEN_SEQUENCES;
+            if (sequenceAvailable && active.remaining() >= size) return;
+            if (sequenceAvailable && active.position() == 0) {
+                active = ByteBuffer.allocate(size); // O inregistrare mai mare decat buffer-ul
+                return;
+            }
+            writeRequested = true;
+            writerWakeup.signal();
+            spaceAvailable.await();
+        }
+    }
+
+    private void writeLoop() {
+        long nextCommit = System.nanoTime() + commitIntervalNanos;
+        long nextCheckpoint = System.nanoTime() + checkpointIntervalNanos;
+        try {
+            while (true) {
+                ByteBuffer batch;
+                boolean closed;
+                lock.lock();
+                try {
+                    long wait;
+                    while (!closing && !writeRequested && (wait = nextCommit - System.nanoTime()) > 0) {
+                        writerWakeup.awaitNanos(wait);
+                    }
+                    batch = active;
+                    active = spare;
+                    spare = batch;
+                    writeRequested = false;
+                    closed = closing;
+                    spaceAvailable.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                commit(batch);
+                long now = System.nanoTime();
+                nextCommit = now + commitIntervalNanos;
+                if (closed || now - nextCheckpoint >= 0) {
+                    checkpoint(closed);
+                    nextCheckpoint = System.nanoTime() + checkpointIntervalNanos;
+                }
+                if (closed) return;
+            }
+        } catch (IOException e) {
+            failure = e;
+            lock.lock();
+            try {
+                spaceAvailable.signalAll(); // Producatorii care asteapta loc primesc eroarea
+            } finally {
+                lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Completeaza CRC-urile intrarilor, adauga iesirile noi si scrie lotul cu un singur write
+    private void commit(ByteBuffer batch) throws IOException {
+        batch.flip();
+        byte[] bytes = batch.array();
+        for (int position = 0; position < batch.limit(); ) {
+            int length = batch.getInt(position);
+            int body = position + HEADER;
+            crc.reset();
+            crc.update(bytes, body, length);
+            batch.putInt(position + Integer.BYTES, (int) crc.getValue());
+            trackIngest(batch.getLong(body + 1), end + position);
+            position = body + length;
+            records.incrementAndGet();
+        }
+        // Doar secventele ale caror intrari sunt deja in lot sau in jurnal; o iesire nu precede niciodata intrarea
+        collectCompletions();
+        if (!batch.hasRemaining() && !completions.hasRemaining()) {
+            batch.clear();
+            return;
+        }
+        ByteBuffer[] write = {batch, completions};
+        long bytesToWrite = batch.remaining() + completions.remaining();
+        for (long written = 0; written < bytesToWrite; ) {
+            written += channel.write(write);
+        }
+        end += bytesToWrite;
+        batch.clear();
+        if (force) channel.force(false);
+        commits.incrementAndGet();
+    }
+
+    private void collectCompletions() {
+        completions.clear();
+        completions.position(HEADER + 1 + Integer.BYTES);
+        int pairs = 0;
+        if (highSequence > lowSequence) {
+            long lastWord = (highSequence - 1) >>> 6;
+            for (long word = lowSequence >>> 6; word <= lastWord; word++) {
+                int index = (int) (word & (WORDS - 1));
+                long fresh = completed.get(index) & ~logged[index];
+                if (word == lastWord && (highSequence & 63) != 0) {
+                    fresh &= (1L << highSequence) - 1;
+                }
+                if (fresh == 0) continue;
+                logged[index] |= fresh;
+                if (completions.remaining() < 2 * Long.BYTES) {
+                    ByteBuffer grown = ByteBuffer.allocate(completions.capacity() * 2);
+                    completions.flip();
+                    grown.put(completions);
+                    completions = grown;
+                }
+                completions.putLong(word << 6).putLong(fresh);
+                records.addAndGet(Long.bitCount(fresh));
+                pairs++;
+            }
+        }
+        if (pairs == 0) {
+            completions.clear().limit(0);
+            return;
+        }
+        int length = completions.position() - HEADER;
+        completions.put(HEADER, COMPLETIONS).putInt(HEADER + 1, pairs);
+        crc.reset();
+        crc.update(completions.array(), HEADER, length);
+        completions.putInt(0, length).putInt(Integer.BYTES, (int) crc.getValue());
+        completions.flip();
+        advanceLow();
+    }
+
+    private void trackIngest(long sequence, long position) {
+        if (lowSequence < 0) {
+            lowSequence = highSequence = sequence;
+        }
+        offsets[(int) (sequence & (MAX_OPEN_SEQUENCES - 1))] = position;
+        highSequence = Math.max(highSequence, sequence + 1);
+    }
+
+    // Avanseaza peste secventele finalizate; un cuvant din inel este sters abia cand toate secventele lui au trecut
+    private void advanceLow() {
+        while (lowSequence < highSequence && (logged[wordIndex(lowSequence)] & (1L << lowSequence)) != 0) {
+            lowSequence++;
+            if ((lowSequence & 63) == 0) {
+                int index = wordIndex(lowSequence - 1);
+                logged[index] = 0;
+                completed.set(index, 0);
+            }
+        }
+        publishedLow = lowSequence;
+    }
+
+    // Salveaza pozitia primei intrari nefinalizate; cand prefixul finalizat depaseste pragul
+    // (sau la inchidere) doar coada jurnalului este copiata intr-un fisier nou
+    private void checkpoint(boolean closing) throws IOException {
+        long start = lowSequence < highSequence ? offsets[(int) (lowSequence & (MAX_OPEN_SEQUENCES - 1))] : end;
+        if (start > 0 && (closing || start >= COMPACTION_THRESHOLD)) {
+            // Checkpoint-ul de la 0 este corect si pentru jurnalul vechi, deci o cadere intre pasi nu pierde nimic
+            writeCheckpoint(0);
+            Path log = directory.resolve(LOG_FILE);
+            Path compacted = directory.resolve(LOG_FILE + ".tmp");
+            try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (long copied = 0; copied < end - start; ) {
+                    long transferred = channel.transferTo(start + copied, end - start - copied, target);
+                    if (transferred <= 0) throw new IOException("Jurnalul " + log + " este mai scurt decat " + end + " octeti");
+                    copied += transferred;
+                }
+                if (force) target.force(false);
+            }
+            channel.close();
+            Files.move(compacted, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(log, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(end - start);
+            end -= start;
+            for (long sequence = lowSequence; sequence < highSequence; sequence++) {
+                offsets[(int) (sequence & (MAX_OPEN_SEQUENCES - 1))] -= start;
+            }
+            compactions.incrementAndGet();
+            start = 0;
+        }
+        writeCheckpoint(start);
+        checkpoints.incrementAndGet();
+    }
+
+    // Scris intr-un fisier temporar si redenumit atomic, ca un checkpoint sa fie mereu intreg
+    private void writeCheckpoint(long start) throws IOException {
+        Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        ByteBuffer saved = ByteBuffer.allocate(2 * Long.BYTES).putLong(start).putLong(highSequence);
+        saved.flip();
+        try (FileChannel target = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (saved.hasRemaining()) {
+                target.write(saved);
+            }
+            if (force) target.force(false);
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Mesajele gasite nefinalizate la deschidere, de pus din nou in prima coada
+    List<ReviewMessage> getUnfinished() {
+        return unfinished;
+    }
+
+    // Numarul de mesaje de intrare deja notate in jurnal; sursa le sare la repornire
+    long getResumePosition() {
+        return resumePosition;
+    }
+
+    // Scrie tot ce a ramas in buffer, face ultimul checkpoint si inchide jurnalul. Ca la BatchedFileSink,
+    // o intrerupere in timpul asteptarii este restaurata si raportata ca InterruptedIOException
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closing) return;
+            closing = true;
+            writerWakeup.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Intrerupt in asteptarea scrierii jurnalului din " + directory);
+        }
+        channel.close();
+        if (failure != null) throw failure;
+    }
+
+    public long getRecordCount() {
+        return records.get();
+    }
+
+    public long getCommitCount() {
+        return commits.get();
+    }
+
+    @Override
+    public String toString() {
+        return directory + ": " + getRecordCount() + " intrari si iesiri, " + getCommitCount() + " commit-uri, "
+                + checkpoints.get() + " checkpoint-uri, " + compactions.get() + " compactari, "
+                + unfinished.size() + " mesaje reluate";
+    }
+}
+
+// Modul in care ruleaza etapele pipeline-ului
+enum ExecutionMode {
+    FIXED_POOL,      // Pool fix de thread-uri de platforma, cate unul ocupat permanent de fiecare etapa
+    VIRTUAL_THREADS  // Cate un thread virtual pentru fiecare etapa (Java 21+)
+}
+
+class PipelineExecutors {
+    static ExecutorService create(ExecutionMode mode, int poolSize) {
+        if (mode == ExecutionMode.VIRTUAL_THREADS) {
+            return newVirtualThreadPerTaskExecutor();
+        }
+        return Executors.newFixedThreadPool(poolSize);
+    }
+
+    // Prin reflectie, ca sursele sa compileze si pe JDK-uri fara thread-uri virtuale
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Thread-urile virtuale necesita Java 21 sau mai nou", e);
+        }
+    }
+}
+
 class ConcurrentPipesFilters {
-    public static void main(String[] args) throws InterruptedException {
+    // Etapa de ingestie: un thread citeste fisierul mapat in prima coada, iar iesirea este golita in paralel in results,
+    // ca toate cozile sa ramana marginite oricat de mare ar fi fisierul
+    static void ingestFile(Path file, BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue,
+                           ReviewSink results) throws InterruptedException {
+        ingestFile(file, inputQueue, outputQueue, results, null);
+    }
+
+    // Cu WAL, fiecare mesaj este notat inainte de a intra in prima coada; mesajele nefinalizate la cadere
+    // sunt reluate primele, iar inregistrarile din fisier deja notate in jurnal sunt sarite
+    static void ingestFile(Path file, BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue,
+                           ReviewSink results, WriteAheadLog wal) throws InterruptedException {
+        long resumePosition = wal != null ? wal.getResumePosition() : 0;
+        AtomicLong submitted = new AtomicLong();
+        AtomicLong skipped = new AtomicLong();
+        ReviewSink firstQueueSink = message -> {
+            if (wal != null && message.walSequence < 0) wal.logIngest(message); // Mesajele reluate sunt deja in jurnal
+            try {
+                inputQueue.put(message);
+            } catch (RejectedExecutionException e) {
+                // Cu politica REJECT mesajul este doar numarat de coada, iar citirea continua
+                if (wal != null) wal.logCompletion(message);
+            }
+        };
+        Thread ingest = new Thread(() -> {
+            try {
+                if (wal != null) {
+                    for (ReviewMessage message : wal.getUnfinished()) {
+                        firstQueueSink.accept(message);
+                    }
+                }
+                submitted.set(new MappedReviewReader(file).readInto(message -> {
+                    if (skipped.get() < resumePosition) {
+                        skipped.incrementAndGet();
+                    } else {
+                        firstQueueSink.accept(message);
+                    }
+                }));
+            } catch (IOException e) {
+                System.out.println("Eroare la citirea fisierului " + file + ": " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                try {
+                    inputQueue.put(ReviewPipeline.END_MESSAGE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "ingest");
+
+        long startTime = System.nanoTime();
+        ingest.start();
+        long accepted = 0;
+        ReviewMessage message;
+        while ((message = outputQueue.take()) != ReviewPipeline.END_MESSAGE) {
+            results.accept(message);
+            accepted++;
+        }
+        ingest.join();
+        double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+
+        System.out.println("Fisier: " + file);
+        System.out.println("Mesaje citite: " + submitted.get() + ", acceptate: " + accepted);
+        if (wal != null) {
+            System.out.println("Reluate din WAL: " + wal.getUnfinished().size() + ", sarite: " + skipped.get());
+        }
+        System.out.println("Timp: " + String.format("%.2f", seconds) + " s, throughput: "
+                + String.format("%.0f", submitted.get() / seconds) + " mesaje/secunda");
+    }
+
+    // Ingestia in modul off-heap: recenziile sunt scrise o singura data in arena, prin cozi trec doar handle-uri,
+    // iar results le codeaza direct din slab-uri; fara sink, recenziile acceptate doar isi elibereaza locul
+    static void ingestFile(Path file, ReviewArena arena, BlockingQueue<ArenaReview> inputQueue, BlockingQueue<ArenaReview> outputQueue,
+                           ReviewSink results) throws InterruptedException {
+        AtomicLong submitted = new AtomicLong();
+        Thread ingest = new Thread(() -> {
+            try {
+                submitted.set(new MappedReviewReader(file).readInto(arena, inputQueue));
+            } catch (IOException e) {
+                System.out.println("Eroare la citirea fisierului " + file + ": " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                try {
+                    inputQueue.put(ArenaReview.END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "ingest");
+
+        long startTime = System.nanoTime();
+        ingest.start();
+        long accepted = 0;
+        ArenaReview review;
+        while ((review = outputQueue.take()) != ArenaReview.END) {
+            if (results != null) {
+                results.accept(review);
+            } else {
+                review.release();
+            }
+            accepted++;
+        }
+        ingest.join();
+        double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+
+        System.out.println("Fisier: " + file);
+        System.out.println("Mesaje citite: " + submitted.get() + ", acceptate: " + accepted);
+        System.out.println("Timp: " + String.format("%.2f", seconds) + " s, throughput: "
+                + String.format("%.0f", submitted.get() / seconds) + " mesaje/secunda");
+        System.out.println("Arena: " + arena);
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
         // Mapa pentru a stoca utilizatorii si produsele cumparate
         Map<String, String> buyers = new HashMap<>();
         buyers.put("John", "Laptop");
         buyers.put("Mary", "Phone");
         buyers.put("Ann", "Book");
+        // Cu -Dpipeline.purchases=<fisier CSV>, achizitiile se incarca in bloc din fisier in locul mapei de mai sus
+        PurchaseIndex purchases = PurchaseIndex.fromSystemProperty(buyers);
 
         // Configuratii pentru clienti
         ClientConfig client1Config = new ClientConfig(true, true, true, true, true, false); // Client 1
         ClientConfig client2Config = new ClientConfig(false, false, true, false, true, true); // Client 2
 
-        // Coada pentru fiecare filtru
-        BlockingQueue<ReviewMessage> queue1 = new LinkedBlockingQueue<>();
-        BlockingQueue<ReviewMessage> queue2 = new LinkedBlockingQueue<>();
-        BlockingQueue<ReviewMessage> queue3 = new LinkedBlockingQueue<>();
-        BlockingQueue<ReviewMessage> queue4 = new LinkedBlockingQueue<>();
-        BlockingQueue<ReviewMessage> queue5 = new LinkedBlockingQueue<>();
-        BlockingQueue<ReviewMessage> queue6 = new LinkedBlockingQueue<>();
-        BlockingQueue<ReviewMessage> outputQueue = new LinkedBlockingQueue<>();
+        // Tipul cozilor dintre filtre: LINKED (implicit) sau RING_BUFFER
+        QueueType queueType = args.length > 0 ? QueueType.valueOf(args[0].toUpperCase()) : QueueType.LINKED;
+        // Dimensiunea lotului preluat de fiecare filtru (1 = mesaj cu mesaj)
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        // Capacitatea fiecarei cozi si politica aplicata cand coada de intrare este plina
+        int capacity = args.length > 3 ? Integer.parseInt(args[3]) : PipeQueues.DEFAULT_CAPACITY;
+        OverflowPolicy ingestPolicy = args.length > 4 ? OverflowPolicy.valueOf(args[4].toUpperCase()) : OverflowPolicy.BLOCK;
+
+        // Coada pentru fiecare filtru; intre etape producatorul asteapta, deci presiunea ajunge la coada de intrare
+        BoundedStageQueue queue1 = PipeQueues.create(queueType, capacity, ingestPolicy);
+        BoundedStageQueue queue2 = PipeQueues.create(queueType, capacity, OverflowPolicy.BLOCK);
+        BoundedStageQueue queue3 = PipeQueues.create(queueType, capacity, OverflowPolicy.BLOCK);
+        BoundedStageQueue queue4 = PipeQueues.create(queueType, capacity, OverflowPolicy.BLOCK);
+        BoundedStageQueue queue5 = PipeQueues.create(queueType, capacity, OverflowPolicy.BLOCK);
+        BoundedStageQueue queue6 = PipeQueues.create(queueType, capacity, OverflowPolicy.BLOCK);
+        BoundedStageQueue outputQueue = PipeQueues.create(queueType, capacity, OverflowPolicy.BLOCK);
 
         // Crearea filtrelor
         CheckProfanitiesFilter profanityFilter = new CheckProfanitiesFilter(client1Config);
-        CheckBuyerFilter buyerFilter = new CheckBuyerFilter(buyers, client1Config);
+        CheckBuyerFilter buyerFilter = new CheckBuyerFilter(purchases, client1Config);
         ResizeImagesFilter resizeFilter = new ResizeImagesFilter(client1Config);
         SentimentDetectionFilter sentimentFilter = new SentimentDetectionFilter(client1Config);
         CheckPoliticalPropagandaFilter propagandaFilter = new CheckPoliticalPropagandaFilter(client1Config);
         SentimentDetectionPlusFilter sentimentPlusFilter = new SentimentDetectionPlusFilter(client1Config);
 
-        // ExecutorService cu 6 thread-uri (cate unul pentru fiecare filtru)
-        ExecutorService executor = Executors.newFixedThreadPool(6);
+        // Dimensiunea lotului se poate configura separat pentru fiecare etapa. Cu -Dpipeline.parallelism.<Filtru>=K
+        // etapa filtrului ruleaza cu K workeri (de exemplu -Dpipeline.parallelism.CheckBuyerFilter=4), iar cu
+        // -Dpipeline.preserveOrder=false mesajele ies in ordinea terminarii, fara ReorderBuffer
+        boolean preserveOrder = Boolean.parseBoolean(System.getProperty("pipeline.preserveOrder", "true"));
+        int workers = 0;
+        for (BaseFilter filter : Arrays.asList(profanityFilter, buyerFilter, resizeFilter, propagandaFilter, sentimentFilter, sentimentPlusFilter)) {
+            filter.setBatchSize(batchSize);
+            filter.setParallelism(Integer.getInteger("pipeline.parallelism." + filter.getClass().getSimpleName(), 1));
+            filter.setPreserveOrder(preserveOrder);
+            workers += filter.getParallelism();
+        }
+
+        // ExecutorService cu cate un thread pentru fiecare worker (6 fara etape replicate) sau cu thread-uri virtuale
+        ExecutionMode mode = args.length > 2 ? ExecutionMode.valueOf(args[2].toUpperCase()) : ExecutionMode.FIXED_POOL;
+        ExecutorService executor = PipelineExecutors.create(mode, workers);
+
+        // Cu -Dpipeline.arena=true, recenziile din fisier raman off-heap in slab-uri reciclate (vezi ReviewArena).
+        // Cozile dintre etape transporta handle-uri si blocheaza cand sunt pline; politica de depasire nu se aplica,
+        // iar fiecare etapa ruleaza pe un singur thread
+        if (args.length > 5 && !args[5].equals("-") && ReviewArena.isEnabled()) {
+            if (System.getProperty(WriteAheadLog.PROPERTY_PREFIX + "dir") != null) {
+                // Handle-urile din slab-uri nu au secventa de jurnal; WAL-ul acopera doar recenziile pe heap
+                throw new IllegalArgumentException("WriteAheadLog nu este suportat impreuna cu pipeline.arena");
+            }
+            List<BlockingQueue<ArenaReview>> arenaQueues = new ArrayList<>();
+            for (int i = 0; i < 7; i++) {
+                arenaQueues.add(PipeQueues.create(queueType, capacity));
+            }
+            List<BaseFilter> stages = Arrays.asList(profanityFilter, buyerFilter, resizeFilter, propagandaFilter, sentimentFilter, sentimentPlusFilter);
+            for (int i = 0; i < stages.size(); i++) {
+                BaseFilter stage = stages.get(i);
+                BlockingQueue<ArenaReview> in = arenaQueues.get(i);
+                BlockingQueue<ArenaReview> out = arenaQueues.get(i + 1);
+                executor.execute(() -> stage.processArena(in, out));
+            }
+            BatchedFileSink resultSink = args.length > 6 ? BatchedFileSink.fromSystemProperties(Paths.get(args[6])) : null;
+            ingestFile(Paths.get(args[5]), ReviewArena.fromSystemProperties(), arenaQueues.get(0), arenaQueues.get(6), resultSink);
+            executor.shutdown();
+            executor.awaitTermination(2, TimeUnit.SECONDS);
+            if (resultSink != null) {
+                resultSink.close();
+                System.out.println("Iesire: " + resultSink);
+            }
+            return;
+        }
+
+        // Cu un fisier CSV sau NDJSON ca argument, recenziile vin din fisier in locul listei de test ("-")
+        boolean fromFile = args.length > 5 && !args[5].equals("-");
+        // Cu -Dpipeline.wal.dir, mesajele din cozi sunt notate in WriteAheadLog si doar cele nefinalizate sunt reluate dupa o cadere.
+        // Un mesaj eliminat de DROP_* nu ar fi notat ca finalizat, deci jurnalul cere BLOCK sau REJECT pe prima coada
+        WriteAheadLog wal = fromFile ? WriteAheadLog.fromSystemProperties() : null;
+        if (wal != null && ingestPolicy != OverflowPolicy.BLOCK && ingestPolicy != OverflowPolicy.REJECT) {
+            wal.close();
+            throw new IllegalArgumentException("WriteAheadLog cere politica BLOCK sau REJECT pe prima coada, nu " + ingestPolicy);
+        }
+        for (BaseFilter filter : Arrays.asList(profanityFilter, buyerFilter, resizeFilter, propagandaFilter, sentimentFilter, sentimentPlusFilter)) {
+            filter.setWriteAheadLog(wal);
+        }
+
+        // Porneste thread-urile (sau workerii) pentru fiecare filtru
+        profanityFilter.start(executor, queue1, queue2);
+        buyerFilter.start(executor, queue2, queue3);
+        resizeFilter.start(executor, queue3, queue4);
+        propagandaFilter.start(executor, queue4, queue5);
+        sentimentFilter.start(executor, queue5, queue6);
+        sentimentPlusFilter.start(executor, queue6, outputQueue);
 
-        // Porneste thread-urile pentru fiecare filtru
-        executor.execute(() -> profanityFilter.process(queue1, queue2));
-        executor.execute(() -> buyerFilter.process(queue2, queue3));
-        executor.execute(() -> resizeFilter.process(queue3, queue4));
-        executor.execute(() -> propagandaFilter.process(queue4, queue5));
-        executor.execute(() -> sentimentFilter.process(queue5, queue6));
-        executor.execute(() -> sentimentPlusFilter.process(queue6, outputQueue));
+        // Cu un fisier de iesire ca argument, mesajele acceptate sunt scrise de BatchedFileSink in locul consolei;
+        // dupa o cadere rezultatele rularii reluate se adauga la cele existente
+        BatchedFileSink resultSink = args.length > 6
+                ? BatchedFileSink.fromSystemProperties(Paths.get(args[6]), wal != null && wal.getResumePosition() > 0)
+                : null;
+
+        if (fromFile) {
+            // Un mesaj acceptat este finalizat in WAL abia dupa ce commit-ul fisierului de iesire l-a scris
+            ReviewSink complete = message -> {
+                if (wal != null) wal.logCompletion(message);
+            };
+            if (resultSink != null) resultSink.setCommitListener(complete);
+            ingestFile(Paths.get(args[5]), queue1, outputQueue, resultSink != null ? resultSink : complete, wal);
+            executor.shutdown();
+            executor.awaitTermination(2, TimeUnit.SECONDS);
+            if (resultSink != null) {
+                resultSink.close();
+                System.out.println("Iesire: " + resultSink);
+            }
+            if (wal != null) {
+                wal.close();
+                System.out.println("WAL: " + wal);
+            }
+            return;
+        }
 
         // Lista de mesaje de test
         List<ReviewMessage> messages = Arrays.asList(
@@ -396,7 +3611,11 @@ class ConcurrentPipesFilters {
 
         // Adauga mesajele in prima coada
         for (ReviewMessage message : messages) {
-            queue1.put(message);
+            try {
+                queue1.put(message);
+            } catch (RejectedExecutionException e) {
+                System.out.println("Mesaj respins: " + message + " (" + e.getMessage() + ")");
+            }
         }
 
         // Adauga mesajul de final
@@ -446,9 +3665,521 @@ class ConcurrentPipesFilters {
         System.out.println("   - Timp de procesare: " + sentimentPlusFilter.getProcessingTime() + " ms");
         System.out.println("   - Mesaje procesate: " + sentimentPlusFilter.getProcessedMessages());
 
+        System.out.println("\n Cozi ");
+        List<BoundedStageQueue> queues = Arrays.asList(queue1, queue2, queue3, queue4, queue5, queue6, outputQueue);
+        for (int i = 0; i < queues.size(); i++) {
+            System.out.println((i == queues.size() - 1 ? "Iesire" : "Coada " + (i + 1)) + ": " + queues.get(i));
+        }
+
+        if (resultSink != null) {
+            while (!outputQueue.isEmpty()) {
+                resultSink.accept(outputQueue.poll());
+            }
+            resultSink.close();
+            System.out.println("\nIesire: " + resultSink);
+            return;
+        }
+
         System.out.println("\nMesaje Procesate:");
         while (!outputQueue.isEmpty()) {
             System.out.println(outputQueue.poll());
         }
     }
-}
\ No newline at end of file
+}
+
+// Compara throughput-ul pipeline-ului cu cozi LinkedBlockingQueue si cu cozi SpscRingBufferQueue
+class QueueBenchmark {
+    private static final String[] TEXTS = { "ok", "@#$%", "GREAT", "So GOOD", "I love this +++", "This is amazing ---" };
+
+    public static void main(String[] args) throws InterruptedException {
+        int messageCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        Map<String, String> buyers = new HashMap<>();
+        buyers.put("John", "Laptop");
+        buyers.put("Mary", "Phone");
+        buyers.put("Ann", "Book");
+        PurchaseIndex purchases = PurchaseIndex.of(buyers);
+        ClientConfig config = new ClientConfig(true, false, true, true, true, true);
+
+        for (int round = 0; round < rounds; round++) {
+            for (QueueType type : QueueType.values()) {
+                double throughput = run(type, messageCount, batchSize, purchases, config);
+                System.out.println("Runda " + (round + 1) + " " + type + ": " + String.format("%.0f", throughput) + " mesaje/secunda");
+            }
+        }
+    }
+
+    static List<ReviewMessage> generateMessages(int count) {
+        String[] users = { "John", "Mary", "Ann", "Peter" };
+        String[] products = { "Laptop", "Phone", "Book", "Tablet" };
+        List<ReviewMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(new ReviewMessage(users[i % users.length], products[i % products.length], TEXTS[i % TEXTS.length], "IMAGE" + (i % 10)));
+        }
+        return messages;
+    }
+
+    // Trece toate mesajele prin cele 6 filtre si intoarce numarul de mesaje/secunda
+    static double run(QueueType type, int messageCount, int batchSize, PurchaseIndex purchases, ClientConfig config) throws InterruptedException {
+        List<ReviewMessage> messages = generateMessages(messageCount);
+        List<BlockingQueue<ReviewMessage>> queues = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            queues.add(PipeQueues.create(type));
+        }
+        List<BaseFilter> filters = Arrays.asList(
+                new CheckProfanitiesFilter(config).setBatchSize(batchSize),
+                new CheckBuyerFilter(purchases, config).setBatchSize(batchSize),
+                new ResizeImagesFilter(config).setBatchSize(batchSize),
+                new CheckPoliticalPropagandaFilter(config).setBatchSize(batchSize),
+                new SentimentDetectionFilter(config).setBatchSize(batchSize),
+                new SentimentDetectionPlusFilter(config).setBatchSize(batchSize)
+        );
+
+        ExecutorService executor = Executors.newFixedThreadPool(filters.size());
+        for (int i = 0; i < filters.size(); i++) {
+            Filter filter = filters.get(i);
+            BlockingQueue<ReviewMessage> in = queues.get(i);
+            BlockingQueue<ReviewMessage> out = queues.get(i + 1);
+            executor.execute(() -> filter.process(in, out));
+        }
+
+        BlockingQueue<ReviewMessage> inputQueue = queues.get(0);
+        BlockingQueue<ReviewMessage> outputQueue = queues.get(queues.size() - 1);
+        long startTime = System.nanoTime();
+        Thread producer = new Thread(() -> {
+            try {
+                for (ReviewMessage message : messages) {
+                    inputQueue.put(message);
+                }
+                inputQueue.put(ReviewPipeline.END_MESSAGE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+
+        // Consumam iesirea pe thread-ul curent pana la mesajul de final
+        while (outputQueue.take() != ReviewPipeline.END_MESSAGE) {
+            // doar golim coada
+        }
+        long elapsed = System.nanoTime() - startTime;
+
+        producer.join();
+        executor.shutdown();
+        executor.awaitTermination(2, TimeUnit.SECONDS);
+        return messageCount / (elapsed / 1_000_000_000.0);
+    }
+}
+
+// Masoara pentru fiecare strategie de asteptare consumul de CPU in repaus si latenta de trezire
+class WaitStrategyBenchmark {
+    private static final String[] STRATEGIES = { "blocking", "spin-park", "yielding", "busy-spin" };
+
+    public static void main(String[] args) throws InterruptedException {
+        int wakeups = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        for (String name : STRATEGIES) {
+            WaitStrategy strategy = WaitStrategies.fromName(name);
+            double idleCpu = measureIdleCpu(strategy, threads);
+            long[] latencies = measureWakeupLatency(strategy, wakeups);
+            Arrays.sort(latencies);
+            System.out.println(name + ":");
+            System.out.println("   - CPU in repaus: " + String.format("%.1f", idleCpu) + " % dintr-un nucleu");
+            System.out.println("   - Latenta de trezire p50: " + latencies[latencies.length / 2] / 1_000 + " us");
+            System.out.println("   - Latenta de trezire p99: " + latencies[(int) (latencies.length * 0.99)] / 1_000 + " us");
+        }
+    }
+
+    // Un consumator asteapta 1 secunda pe o coada goala; intoarce procentul de CPU folosit
+    static double measureIdleCpu(WaitStrategy strategy, ThreadMXBean threads) throws InterruptedException {
+        BlockingQueue<Long> queue = new LinkedBlockingQueue<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                strategy.take(queue);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+        Thread.sleep(100); // Lasam consumatorul sa intre in asteptare
+        long cpuStart = threads.getThreadCpuTime(consumer.getId());
+        long wallStart = System.nanoTime();
+        Thread.sleep(1000);
+        long cpuEnd = threads.getThreadCpuTime(consumer.getId());
+        long wallEnd = System.nanoTime();
+        queue.put(0L);
+        consumer.join();
+        return 100.0 * (cpuEnd - cpuStart) / (wallEnd - wallStart);
+    }
+
+    // Producatorul trimite mesaje la intervale aleatoare; consumatorul noteaza cat a durat pana l-a primit
+    static long[] measureWakeupLatency(WaitStrategy strategy, int wakeups) throws InterruptedException {
+        BlockingQueue<Long> queue = new LinkedBlockingQueue<>();
+        long[] latencies = new long[wakeups];
+        Thread consumer = new Thread(() -> {
+            try {
+                for (int i = 0; i < wakeups; i++) {
+                    long sentAt = strategy.take(queue);
+                    latencies[i] = System.nanoTime() - sentAt;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+        Random random = new Random(42);
+        for (int i = 0; i < wakeups; i++) {
+            LockSupport.parkNanos(100_000 + random.nextInt(900_000)); // Trafic in rafale rare: 0.1 - 1 ms
+            queue.put(System.nanoTime());
+        }
+        consumer.join();
+        return latencies;
+    }
+}
+
+// Masuratori in stilul JMH: iteratii de incalzire, iteratii masurate, throughput, timp mediu si rata de alocare
+class BenchmarkHarness {
+    // O invocare masurata; filtrele trebuie pornite pe thread-uri create de threadFactory ca alocarile lor sa fie numarate
+    interface MeasuredRun {
+        void run(ThreadFactory threadFactory) throws Exception;
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+
+    public BenchmarkHarness(int warmupIterations, int measurementIterations) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+    }
+
+    static void printHeader() {
+        System.out.println(String.format("%-52s %-20s %4s %14s   %s", "Benchmark", "Mode", "Cnt", "Score", "Units"));
+    }
+
+    // setup() ruleaza inainte de fiecare iteratie si nu intra in masuratoare
+    public void measure(String name, int operations, Runnable setup, MeasuredRun body) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            setup.run();
+            runOnce(body);
+        }
+        double[] throughput = new double[measurementIterations];
+        double[] averageTime = new double[measurementIterations];
+        double[] allocationRate = new double[measurementIterations];
+        double[] allocationPerOp = new double[measurementIterations];
+        for (int i = 0; i < measurementIterations; i++) {
+            setup.run();
+            long[] result = runOnce(body); // { timp in ns, octeti alocati }
+            double seconds = result[0] / 1_000_000_000.0;
+            throughput[i] = operations / seconds;
+            averageTime[i] = (double) result[0] / operations;
+            allocationRate[i] = result[1] / (1024.0 * 1024.0) / seconds;
+            allocationPerOp[i] = (double) result[1] / operations;
+        }
+        print(name, "thrpt", throughput, "ops/s");
+        print(name, "avgt", averageTime, "ns/op");
+        print(name, "gc.alloc.rate", allocationRate, "MB/sec");
+        print(name, "gc.alloc.rate.norm", allocationPerOp, "B/op");
+    }
+
+    private long[] runOnce(MeasuredRun body) throws Exception {
+        LongAdder workerAllocations = new LongAdder();
+        // Fiecare thread de lucru isi raporteaza alocarile cand se termina
+        ThreadFactory threadFactory = runnable -> new Thread(() -> {
+            try {
+                runnable.run();
+            } finally {
+                workerAllocations.add(THREADS.getCurrentThreadAllocatedBytes());
+            }
+        });
+        long allocationsBefore = THREADS.getCurrentThreadAllocatedBytes();
+        long startTime = System.nanoTime();
+        body.run(threadFactory);
+        long elapsed = System.nanoTime() - startTime;
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - allocationsBefore + workerAllocations.sum();
+        return new long[] { elapsed, allocated };
+    }
+
+    private static void print(String name, String mode, double[] values, String units) {
+        double mean = 0;
+        for (double value : values) mean += value;
+        mean /= values.length;
+        System.out.println(String.format("%-52s %-20s %4d %14.3f   %s", name, mode, values.length, mean, units));
+    }
+}
+
+// Incarcare de lucru generata determinist (aceeasi samanta), identica pentru toate arhitecturile comparate
+class ReviewWorkload {
+    static final long SEED = 42;
+    private static final String[] USERS = { "John", "Mary", "Ann", "Peter", "Alice", "Bob" };
+    private static final String[] PRODUCTS = { "Laptop", "Phone", "Book", "Tablet" };
+    private static final String[] WORDS = { "great", "ok", "BAD", "So", "GOOD", "love", "this", "product", "fast", "DELIVERY", "would", "buy", "again" };
+
+    final String[] usernames;
+    final String[] products;
+    final String[] texts;
+    final String[] attachments;
+
+    ReviewWorkload(int count) {
+        Random random = new Random(SEED);
+        usernames = new String[count];
+        products = new String[count];
+        texts = new String[count];
+        attachments = new String[count];
+        for (int i = 0; i < count; i++) {
+            usernames[i] = USERS[random.nextInt(USERS.length)];
+            products[i] = PRODUCTS[random.nextInt(PRODUCTS.length)];
+            StringBuilder text = new StringBuilder();
+            int words = 3 + random.nextInt(30);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) text.append(' ');
+                text.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            int moderation = random.nextInt(20); // ~5% profanitati, ~10% propaganda
+            if (moderation == 0) text.append(" @#$%");
+            else if (moderation == 1) text.append(" +++");
+            else if (moderation == 2) text.append(" ---");
+            texts[i] = text.toString();
+            attachments[i] = "IMAGE_" + random.nextInt(100) + ".PNG";
+        }
+    }
+
+    static Map<String, String> buyers() {
+        Map<String, String> buyers = new HashMap<>();
+        buyers.put("John", "Laptop");
+        buyers.put("Mary", "Phone");
+        buyers.put("Ann", "Book");
+        buyers.put("Peter", "Tablet");
+        return buyers;
+    }
+
+    int size() {
+        return texts.length;
+    }
+
+    // Mesaje noi pentru fiecare iteratie, ca analiza din cache si adnotarile sa nu treaca dintr-o iteratie in alta
+    List<ReviewMessage> newMessages() {
+        List<ReviewMessage> messages = new ArrayList<>(texts.length);
+        for (int i = 0; i < texts.length; i++) {
+            messages.add(new ReviewMessage(usernames[i], products[i], texts[i], attachments[i]));
+        }
+        return messages;
+    }
+
+    // Aceleasi recenzii scrise in arena off-heap; handle-urile ajung in queue, urmate de ArenaReview.END
+    void writeTo(ReviewArena arena, BlockingQueue<ArenaReview> queue) throws InterruptedException {
+        for (int i = 0; i < texts.length; i++) {
+            queue.put(arena.write(SymbolTable.USERNAMES.intern(usernames[i]), SymbolTable.PRODUCTS.intern(products[i]), texts[i], attachments[i]));
+        }
+        arena.seal();
+        queue.put(ArenaReview.END);
+    }
+
+    // Aceleasi recenzii direct in loturi pe coloane, fara obiecte ReviewMessage intermediare
+    List<ReviewBatch> newBatches(int capacity) {
+        List<ReviewBatch> batches = new ArrayList<>((texts.length + capacity - 1) / capacity);
+        ReviewBatch batch = null;
+        for (int i = 0; i < texts.length; i++) {
+            if (batch == null || batch.isFull()) {
+                batch = new ReviewBatch(capacity);
+                batches.add(batch);
+            }
+            batch.add(SymbolTable.USERNAMES.intern(usernames[i]), SymbolTable.PRODUCTS.intern(products[i]), texts[i], attachments[i]);
+        }
+        return batches;
+    }
+}
+
+// Pipeline-ul pe etape (pipes and filters) si microbenchmark-uri pentru filtrele de text
+// Rulare: java PipesAndFiltersBenchmark [mesaje] [iteratii de incalzire] [iteratii masurate]
+class PipesAndFiltersBenchmark {
+    public static void main(String[] args) throws Exception {
+        int messageCount = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int warmups = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        ReviewWorkload workload = new ReviewWorkload(messageCount);
+        PurchaseIndex purchases = PurchaseIndex.of(ReviewWorkload.buyers());
+        ClientConfig config = new ClientConfig(true, true, true, true, true, true);
+        BenchmarkHarness harness = new BenchmarkHarness(warmups, iterations);
+        List<List<ReviewMessage>> input = new ArrayList<>(1);
+        input.add(null);
+
+        BenchmarkHarness.printHeader();
+        for (QueueType queueType : QueueType.values()) {
+            harness.measure("PipesAndFilters.pipeline:" + queueType, messageCount,
+                    () -> input.set(0, workload.newMessages()),
+                    threadFactory -> runPipeline(input.get(0), queueType, purchases, config, threadFactory));
+        }
+
+        // Aceleasi etape pe loturi de ReviewBatch.DEFAULT_CAPACITY randuri stocate pe coloane
+        List<List<ReviewBatch>> batches = new ArrayList<>(1);
+        batches.add(null);
+        for (QueueType queueType : QueueType.values()) {
+            harness.measure("PipesAndFilters.columnar:" + queueType, messageCount,
+                    () -> batches.set(0, workload.newBatches(ReviewBatch.DEFAULT_CAPACITY)),
+                    threadFactory -> runColumnarPipeline(batches.get(0), queueType, purchases, config, threadFactory));
+        }
+
+        // Modul off-heap: scrierea in arena intra in masuratoare, iar slab-urile sunt refolosite de la o iteratie la alta
+        ReviewArena arena = new ReviewArena();
+        for (QueueType queueType : QueueType.values()) {
+            harness.measure("PipesAndFilters.arena:" + queueType, messageCount, () -> { },
+                    threadFactory -> runArenaPipeline(workload, arena, queueType, purchases, config, threadFactory));
+        }
+
+        // Microbenchmark-uri: apply() pe thread-ul curent, fara cozi
+        List<BaseFilter> filters = Arrays.asList(
+                new CheckProfanitiesFilter(config),
+                new CheckPoliticalPropagandaFilter(config),
+                new SentimentDetectionFilter(config),
+                new SentimentDetectionPlusFilter(config),
+                new ResizeImagesFilter(config));
+        for (BaseFilter filter : filters) {
+            harness.measure("TextFilters." + filter.getClass().getSimpleName(), messageCount,
+                    () -> input.set(0, workload.newMessages()),
+                    threadFactory -> {
+                        for (ReviewMessage message : input.get(0)) {
+                            filter.apply(message);
+                        }
+                    });
+            harness.measure("TextFilters.columnar." + filter.getClass().getSimpleName(), messageCount,
+                    () -> batches.set(0, workload.newBatches(ReviewBatch.DEFAULT_CAPACITY)),
+                    threadFactory -> {
+                        for (ReviewBatch batch : batches.get(0)) {
+                            filter.apply(batch);
+                        }
+                    });
+        }
+    }
+
+    static void runPipeline(List<ReviewMessage> messages, QueueType queueType, PurchaseIndex purchases, ClientConfig config,
+                            ThreadFactory threadFactory) throws InterruptedException {
+        List<BlockingQueue<ReviewMessage>> queues = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            queues.add(PipeQueues.create(queueType));
+        }
+        List<BaseFilter> filters = Arrays.asList(
+                new CheckProfanitiesFilter(config),
+                new CheckBuyerFilter(purchases, config),
+                new ResizeImagesFilter(config),
+                new CheckPoliticalPropagandaFilter(config),
+                new SentimentDetectionFilter(config),
+                new SentimentDetectionPlusFilter(config));
+        ExecutorService executor = Executors.newFixedThreadPool(filters.size(), threadFactory);
+        for (int i = 0; i < filters.size(); i++) {
+            BaseFilter filter = filters.get(i);
+            BlockingQueue<ReviewMessage> in = queues.get(i);
+            BlockingQueue<ReviewMessage> out = queues.get(i + 1);
+            executor.execute(() -> filter.process(in, out));
+        }
+
+        // Producatorul ruleaza pe un thread separat, ca o coada inelara plina sa nu blocheze consumatorul
+        BlockingQueue<ReviewMessage> inputQueue = queues.get(0);
+        Thread producer = threadFactory.newThread(() -> {
+            try {
+                for (ReviewMessage message : messages) {
+                    inputQueue.put(message);
+                }
+                inputQueue.put(ReviewPipeline.END_MESSAGE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        BlockingQueue<ReviewMessage> outputQueue = queues.get(queues.size() - 1);
+        while (outputQueue.take() != ReviewPipeline.END_MESSAGE) {
+            // doar golim coada
+        }
+        producer.join();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    static void runArenaPipeline(ReviewWorkload workload, ReviewArena arena, QueueType queueType, PurchaseIndex purchases,
+                                 ClientConfig config, ThreadFactory threadFactory) throws InterruptedException {
+        List<BlockingQueue<ArenaReview>> queues = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            queues.add(PipeQueues.create(queueType));
+        }
+        List<BaseFilter> filters = Arrays.asList(
+                new CheckProfanitiesFilter(config),
+                new CheckBuyerFilter(purchases, config),
+                new ResizeImagesFilter(config),
+                new CheckPoliticalPropagandaFilter(config),
+                new SentimentDetectionFilter(config),
+                new SentimentDetectionPlusFilter(config));
+        ExecutorService executor = Executors.newFixedThreadPool(filters.size(), threadFactory);
+        for (int i = 0; i < filters.size(); i++) {
+            BaseFilter filter = filters.get(i);
+            BlockingQueue<ArenaReview> in = queues.get(i);
+            BlockingQueue<ArenaReview> out = queues.get(i + 1);
+            executor.execute(() -> filter.processArena(in, out));
+        }
+
+        BlockingQueue<ArenaReview> inputQueue = queues.get(0);
+        Thread producer = threadFactory.newThread(() -> {
+            try {
+                workload.writeTo(arena, inputQueue);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        BlockingQueue<ArenaReview> outputQueue = queues.get(queues.size() - 1);
+        ArenaReview review;
+        while ((review = outputQueue.take()) != ArenaReview.END) {
+            review.release(); // Recenzia a ajuns la capat; slab-ul ei poate fi reciclat
+        }
+        producer.join();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    static void runColumnarPipeline(List<ReviewBatch> batches, QueueType queueType, PurchaseIndex purchases, ClientConfig config,
+                                    ThreadFactory threadFactory) throws InterruptedException {
+        List<BlockingQueue<ReviewBatch>> queues = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            queues.add(PipeQueues.create(queueType, 16)); // Cateva loturi in zbor ajung; un lot are mii de randuri
+        }
+        List<BaseFilter> filters = Arrays.asList(
+                new CheckProfanitiesFilter(config),
+                new CheckBuyerFilter(purchases, config),
+                new ResizeImagesFilter(config),
+                new CheckPoliticalPropagandaFilter(config),
+                new SentimentDetectionFilter(config),
+                new SentimentDetectionPlusFilter(config));
+        ExecutorService executor = Executors.newFixedThreadPool(filters.size(), threadFactory);
+        for (int i = 0; i < filters.size(); i++) {
+            BaseFilter filter = filters.get(i);
+            BlockingQueue<ReviewBatch> in = queues.get(i);
+            BlockingQueue<ReviewBatch> out = queues.get(i + 1);
+            executor.execute(() -> filter.processColumns(in, out));
+        }
+
+        BlockingQueue<ReviewBatch> inputQueue = queues.get(0);
+        Thread producer = threadFactory.newThread(() -> {
+            try {
+                for (ReviewBatch batch : batches) {
+                    inputQueue.put(batch);
+                }
+                inputQueue.put(ReviewBatch.END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        BlockingQueue<ReviewBatch> outputQueue = queues.get(queues.size() - 1);
+        while (outputQueue.take() != ReviewBatch.END) {
+            // doar golim coada
+        }
+        producer.join();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
@@ -1,22 +1,91 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
 
 class ReviewMessage {
-    String username;
-    String product;
+    int usernameId; // Id-ul din SymbolTable.USERNAMES; numele se citește doar la ieșire
+    int productId;  // Id-ul din SymbolTable.PRODUCTS
     String reviewText;
     String attachment;
+    Sentiment sentimentSymbol; // Adnotarea SentimentDetectionFilter, afișată doar la ieșire
+    Sentiment sentimentLabel;  // Adnotarea SentimentDetectionPlusFilter, afișată doar la ieșire
+    private String analyzedText; // Textul pentru care este valid câmpul analysis
+    private int analysis;        // Analiza textului împachetată (vezi analysis()); 0 = încă neanalizat
+    long sequence = -1; // Numărul de ordine primit la intrarea într-o etapă replicată
+    String client;      // Clientul care a trimis mesajul, în pipeline-ul partajat
+    int clientFlags = ClientConfig.ALL_FLAGS; // Filtrele active pentru client; implicit toate filtrele pipeline-ului
 
     public ReviewMessage(String username, String product, String reviewText, String attachment) {
-        this.username = username;
-        this.product = product;
+        this.usernameId = SymbolTable.USERNAMES.intern(username);
+        this.productId = SymbolTable.PRODUCTS.intern(product);
         this.reviewText = reviewText;
         this.attachment = attachment;
     }
 
+    // Sentimentul și categoriile de moderare, calculate o singură dată și refolosite de toate filtrele de text
+    Sentiment sentiment() {
+        return Sentiment.of((analysis() >>> 1) & 3);
+    }
+
+    int moderationMask() {
+        return analysis() >>> 3;
+    }
+
+    // Bitul 0 = calculată, biții 1-2 = Sentiment.ordinal(), restul = masca de moderare. Un singur int, fără obiect
+    // pe heap; scrierea lui este atomică, deci filtrele care rulează în paralel văd fie analiza completă, fie 0
+    private int analysis() {
+        int current = analysis;
+        if (current == 0 || analyzedText != reviewText) {
+            String text = reviewText;
+            Sentiment sentiment = Sentiment.of(text, 0, text == null ? 0 : text.length());
+            current = 1 | sentiment.ordinal() << 1 | ModerationPatterns.DEFAULT.scan(text) << 3;
+            analyzedText = text;
+            analysis = current;
+        }
+        return current;
+    }
+
+    // Textul recenziei cu adnotările de sentiment, generat doar la afișare
+    String renderedText() {
+        if (sentimentSymbol == null && sentimentLabel == null) return reviewText;
+        StringBuilder text = new StringBuilder(reviewText);
+        if (sentimentSymbol != null) text.append(sentimentSymbol.symbol);
+        if (sentimentLabel != null) text.append(sentimentLabel.label);
+        return text.toString();
+    }
+
+    // Atașează mesajului clientul și configurația lui compilată, pentru pipeline-ul partajat
+    ReviewMessage forClient(String client, int clientFlags) {
+        this.client = client;
+        this.clientFlags = clientFlags;
+        return this;
+    }
+
+    // Numele sunt materializate din SymbolTable doar la ieșire
+    String username() {
+        return SymbolTable.USERNAMES.name(usernameId);
+    }
+
+    String product() {
+        return SymbolTable.PRODUCTS.name(productId);
+    }
+
     @Override
     public String toString() {
-        return username + ", " + product + ", " + reviewText + ", " + attachment;
+        return username() + ", " + product() + ", " + renderedText() + ", " + attachment;
     }
 }
 
@@ -24,140 +93,1444 @@ class ReviewPipeline {
     static final ReviewMessage END_MESSAGE = new ReviewMessage("END", "", "", "");
 }
 
-interface Filter {
-    void process(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue);
-}
+interface Filter {
+    void process(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue);
+}
+
+// Categoriile de moderare recunoscute de MultiPatternMatcher
+enum ModerationCategory {
+    PROFANITY,  // Cuvinte obscene
+    PROPAGANDA  // Propagandă politică
+}
+
+// Automat Aho-Corasick compilat o singură dată: o singură trecere peste text spune ce categorii apar,
+// indiferent câte șabloane sunt încărcate
+class MultiPatternMatcher {
+    private final int[] asciiClasses = new int[128]; // Clasa fiecărui caracter ASCII (0 = nu apare în șabloane)
+    private final Map<Character, Integer> otherClasses = new HashMap<>(); // Clasele caracterelor non-ASCII
+    private final int alphabetSize;
+    private final int[] transitions; // Automat complet: transitions[stare * alphabetSize + clasă]
+    private final int[] outputs;     // Masca de categorii recunoscute în fiecare stare
+    private final int allCategories;
+
+    public MultiPatternMatcher(Map<ModerationCategory, ? extends Collection<String>> patterns) {
+        // Alfabetul compact: doar caracterele care apar în șabloane, plus clasa 0 pentru restul
+        int classes = 1;
+        int categories = 0;
+        for (Map.Entry<ModerationCategory, ? extends Collection<String>> entry : patterns.entrySet()) {
+            categories |= 1 << entry.getKey().ordinal();
+            for (String pattern : entry.getValue()) {
+                if (pattern.isEmpty()) {
+                    throw new IllegalArgumentException("Șablonul nu poate fi gol pentru " + entry.getKey());
+                }
+                for (char c : pattern.toCharArray()) {
+                    if (classOf(c) == 0) {
+                        if (c < 128) asciiClasses[c] = classes++;
+                        else otherClasses.put(c, classes++);
+                    }
+                }
+            }
+        }
+        this.alphabetSize = classes;
+        this.allCategories = categories;
+
+        // Trie-ul șabloanelor
+        List<int[]> gotoRows = new ArrayList<>();
+        List<Integer> masks = new ArrayList<>();
+        gotoRows.add(newRow());
+        masks.add(0);
+        for (Map.Entry<ModerationCategory, ? extends Collection<String>> entry : patterns.entrySet()) {
+            int bit = 1 << entry.getKey().ordinal();
+            for (String pattern : entry.getValue()) {
+                int state = 0;
+                for (int i = 0; i < pattern.length(); i++) {
+                    int c = classOf(pattern.charAt(i));
+                    if (gotoRows.get(state)[c] == -1) {
+                        gotoRows.get(state)[c] = gotoRows.size();
+                        gotoRows.add(newRow());
+                        masks.add(0);
+                    }
+                    state = gotoRows.get(state)[c];
+                }
+                masks.set(state, masks.get(state) | bit);
+            }
+        }
+
+        // Legăturile de eșec, în ordinea lățimii; tranzițiile lipsă sunt completate din starea de eșec
+        int states = gotoRows.size();
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int[] root = gotoRows.get(0);
+        for (int c = 0; c < alphabetSize; c++) {
+            if (root[c] == -1) {
+                root[c] = 0;
+            } else {
+                fail[root[c]] = 0;
+                queue.add(root[c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            masks.set(state, masks.get(state) | masks.get(fail[state]));
+            int[] row = gotoRows.get(state);
+            for (int c = 0; c < alphabetSize; c++) {
+                if (row[c] == -1) {
+                    row[c] = gotoRows.get(fail[state])[c];
+                } else {
+                    fail[row[c]] = gotoRows.get(fail[state])[c];
+                    queue.add(row[c]);
+                }
+            }
+        }
+
+        this.transitions = new int[states * alphabetSize];
+        this.outputs = new int[states];
+        for (int state = 0; state < states; state++) {
+            System.arraycopy(gotoRows.get(state), 0, transitions, state * alphabetSize, alphabetSize);
+            outputs[state] = masks.get(state);
+        }
+    }
+
+    private int[] newRow() {
+        int[] row = new int[alphabetSize];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    private int classOf(char c) {
+        return c < 128 ? asciiClasses[c] : otherClasses.getOrDefault(c, 0);
+    }
+
+    // O singură trecere peste text; întoarce masca categoriilor găsite (bitul ordinal() al fiecărei categorii)
+    public int scan(CharSequence text) {
+        if (text == null) return 0;
+        int state = 0;
+        int mask = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * alphabetSize + classOf(text.charAt(i))];
+            mask |= outputs[state];
+            if (mask == allCategories) break; // Toate categoriile au fost deja găsite
+        }
+        return mask;
+    }
+
+    static boolean contains(int mask, ModerationCategory category) {
+        return (mask & (1 << category.ordinal())) != 0;
+    }
+}
+
+// Șabloanele de moderare folosite de filtre
+class ModerationPatterns {
+    static final MultiPatternMatcher DEFAULT = new MultiPatternMatcher(Map.of(
+            ModerationCategory.PROFANITY, List.of("@#$%"),
+            ModerationCategory.PROPAGANDA, List.of("+++", "---")));
+}
+
+// Sentimentul dedus din raportul dintre literele mari și cele mici; textul afișat se generează doar la ieșire
+enum Sentiment {
+    POSITIVE("+", " (Positive)"),
+    NEGATIVE("-", " (Negative)"),
+    NEUTRAL("=", " (Neutral)");
+
+    final String symbol; // Forma scurtă, adăugată de SentimentDetectionFilter
+    final String label;  // Eticheta, adăugată de SentimentDetectionPlusFilter
+    private static final Sentiment[] VALUES = values(); // values() copiază tabloul la fiecare apel
+
+    Sentiment(String symbol, String label) {
+        this.symbol = symbol;
+        this.label = label;
+    }
+
+    static Sentiment fromCounts(int upperCaseCount, int lowerCaseCount) {
+        if (upperCaseCount > lowerCaseCount) return POSITIVE;
+        if (lowerCaseCount > upperCaseCount) return NEGATIVE;
+        return NEUTRAL;
+    }
+
+    static Sentiment of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    // Numără literele direct din text[from, to), fără copia char[] făcută de toCharArray()
+    static Sentiment of(CharSequence text, int from, int to) {
+        int upperCaseCount = 0, lowerCaseCount = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (Character.isUpperCase(c)) upperCaseCount++;
+            else if (Character.isLowerCase(c)) lowerCaseCount++;
+        }
+        return fromCounts(upperCaseCount, lowerCaseCount);
+    }
+}
+
+// Strategia prin care un filtru așteaptă când coada de intrare este goală
+interface WaitStrategy {
+    <E> E take(BlockingQueue<E> queue) throws InterruptedException;
+}
+
+// Blochează thread-ul pe coadă până sosește un mesaj; nu consumă CPU cât timp așteaptă
+class BlockingWaitStrategy implements WaitStrategy {
+    @Override
+    public <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+        return queue.take();
+    }
+}
+
+// Câteva încercări active, apoi park cu durată crescătoare până la maxParkNanos
+class SpinThenParkWaitStrategy implements WaitStrategy {
+    private final int spinTries;
+    private final long maxParkNanos;
+
+    public SpinThenParkWaitStrategy() {
+        this(100, 1_000_000);
+    }
+
+    public SpinThenParkWaitStrategy(int spinTries, long maxParkNanos) {
+        this.spinTries = spinTries;
+        this.maxParkNanos = maxParkNanos;
+    }
+
+    @Override
+    public <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+        int idleCount = 0;
+        long parkNanos = 1_000;
+        E e;
+        while ((e = queue.poll()) == null) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (idleCount < spinTries) {
+                Thread.onSpinWait();
+                idleCount++;
+            } else {
+                LockSupport.parkNanos(parkNanos);
+                parkNanos = Math.min(parkNanos * 2, maxParkNanos);
+            }
+        }
+        return e;
+    }
+}
+
+// Câteva încercări active, apoi cedează procesorul cu Thread.yield()
+class YieldingWaitStrategy implements WaitStrategy {
+    private static final int SPIN_TRIES = 100;
+
+    @Override
+    public <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+        int idleCount = 0;
+        E e;
+        while ((e = queue.poll()) == null) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (idleCount < SPIN_TRIES) {
+                Thread.onSpinWait();
+                idleCount++;
+            } else {
+                Thread.yield();
+            }
+        }
+        return e;
+    }
+}
+
+// Verifică coada continuu; latență minimă, dar ocupă un nucleu întreg
+class BusySpinWaitStrategy implements WaitStrategy {
+    @Override
+    public <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+        E e;
+        while ((e = queue.poll()) == null) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            Thread.onSpinWait();
+        }
+        return e;
+    }
+}
+
+// Alegerea strategiei pentru o instalare: -Dpipeline.waitStrategy=blocking|spin-park|yielding|busy-spin
+class WaitStrategies {
+    static final String PROPERTY = "pipeline.waitStrategy";
+
+    static WaitStrategy fromName(String name) {
+        switch (name.toLowerCase()) {
+            case "blocking":
+                return new BlockingWaitStrategy();
+            case "spin-park":
+                return new SpinThenParkWaitStrategy();
+            case "yielding":
+                return new YieldingWaitStrategy();
+            case "busy-spin":
+                return new BusySpinWaitStrategy();
+            default:
+                throw new IllegalArgumentException("Strategie de așteptare necunoscută: " + name);
+        }
+    }
+
+    static WaitStrategy fromSystemProperty() {
+        return fromName(System.getProperty(PROPERTY, "blocking"));
+    }
+}
+
+// Varianta pe loturi a contractului Filter: preia până la getBatchSize() mesaje cu drainTo,
+// le procesează împreună și trimite mai departe mesajele rămase dintr-o singură dată
+interface BatchFilter extends Filter {
+    int getBatchSize();
+
+    void processBatch(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue);
+}
+
+// Costul unui filtru, folosit de ReviewPipelineBuilder la fuziunea etapelor
+enum FilterCost {
+    CHEAP,     // Fără stare și rapid: poate rula pe același thread cu vecinii
+    EXPENSIVE, // Muncă grea pe fiecare mesaj: primește o etapă proprie
+    BLOCKING   // Poate aștepta după resurse externe: primește o etapă proprie
+}
+
+// Bucla comună a filtrelor; fiecare filtru implementează doar apply() pentru un mesaj
+abstract class BaseFilter implements BatchFilter {
+    private int batchSize = 1; // 1 = mesaj cu mesaj
+    private WaitStrategy waitStrategy = WaitStrategies.fromSystemProperty(); // Așteptarea pe coada goală
+
+    // Procesează un mesaj; întoarce false dacă mesajul trebuie eliminat
+    abstract boolean apply(ReviewMessage message);
+
+    // Flag-ul din ClientConfig care activează filtrul; 0 = filtrul rulează pentru orice client
+    int getClientFlag() {
+        return 0;
+    }
+
+    // Aplică filtrul doar dacă clientul mesajului l-a activat; altfel mesajul trece neschimbat
+    final boolean applyIfEnabled(ReviewMessage message) {
+        return !isEnabledFor(message) || apply(message);
+    }
+
+    final boolean isEnabledFor(ReviewMessage message) {
+        int flag = getClientFlag();
+        return flag == 0 || (message.clientFlags & flag) != 0;
+    }
+
+    // Filtrele ieftine și fără stare pot fi fuzionate într-o singură etapă
+    FilterCost getCost() {
+        return FilterCost.CHEAP;
+    }
+
+    // Filtrele care pot elimina mesaje; celelalte doar transformă mesajul
+    boolean rejects() {
+        return false;
+    }
+
+    public BaseFilter setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Dimensiunea lotului trebuie să fie cel puțin 1: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public BaseFilter setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        return this;
+    }
+
+    WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    @Override
+    public void process(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue) {
+        if (batchSize > 1) {
+            processBatch(inputQueue, outputQueue);
+            return;
+        }
+        try {
+            while (true) {
+                ReviewMessage message = waitStrategy.take(inputQueue);
+                if (message == ReviewPipeline.END_MESSAGE) {
+                    outputQueue.put(message);
+                    break;
+                }
+                if (applyIfEnabled(message)) {
+                    outputQueue.put(message);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void processBatch(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue) {
+        List<ReviewMessage> batch = new ArrayList<>(batchSize);
+        List<ReviewMessage> survivors = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                ReviewMessage first = waitStrategy.take(inputQueue);
+                batch.add(first);
+                inputQueue.drainTo(batch, batchSize - 1); // Restul lotului, fără așteptare
+
+                // END_MESSAGE este ultimul mesaj din coadă, deci închide lotul
+                boolean end = false;
+                for (ReviewMessage message : batch) {
+                    if (message == ReviewPipeline.END_MESSAGE) {
+                        end = true;
+                        break;
+                    }
+                    if (applyIfEnabled(message)) {
+                        survivors.add(message);
+                    }
+                }
+
+                // LinkedBlockingQueue nu are put în bloc; addAll ar arunca excepție pe o coadă plină
+                for (ReviewMessage message : survivors) {
+                    outputQueue.put(message);
+                }
+                if (end) {
+                    outputQueue.put(ReviewPipeline.END_MESSAGE);
+                    break;
+                }
+                batch.clear();
+                survivors.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
+
+// Filtrare profanități
+class CheckProfanitiesFilter extends BaseFilter {
+    @Override
+    boolean apply(ReviewMessage message) {
+        return !MultiPatternMatcher.contains(message.moderationMask(), ModerationCategory.PROFANITY);
+    }
+
+    @Override
+    boolean rejects() {
+        return true;
+    }
+
+    @Override
+    int getClientFlag() {
+        return ClientConfig.FILTER_PROFANITIES;
+    }
+}
+
+// Tabel concurent de simboluri: fiecare nume de utilizator sau produs distinct primește o singură dată un id int.
+// Mesajele, filtrele și indexul de achiziții lucrează doar cu id-uri; numele se citesc înapoi abia la ieșire.
+// Id -> nume nu ia lock; adăugarea unui simbol nou este serializată, dar are loc o singură dată pe simbol.
+final class SymbolTable {
+    static final int NONE = 0; // Id-ul valorii null; simbolurile reale primesc id-uri de la 1
+    static final SymbolTable USERNAMES = new SymbolTable();
+    static final SymbolTable PRODUCTS = new SymbolTable();
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[1024]; // Numele după id; publicat după fiecare adăugare
+    private int nextId = 1;
+
+    // Index după octeții UTF-8, pentru cititorii de fișiere: un simbol deja văzut nu mai cere un String nou
+    private int[] byteIds = new int[1024]; // 0 = slot liber
+    private byte[][] byteKeys = new byte[1024][];
+    private int byteCount;
+
+    int intern(String name) {
+        if (name == null) {
+            return NONE;
+        }
+        Integer id = ids.get(name);
+        return id != null ? id : add(name);
+    }
+
+    // Id-ul unui nume deja internat sau NONE, fără a-l adăuga
+    int find(String name) {
+        if (name == null) {
+            return NONE;
+        }
+        Integer id = ids.get(name);
+        return id == null ? NONE : id;
+    }
+
+    String name(int id) {
+        return names[id];
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    private synchronized int add(String name) {
+        Integer existing = ids.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        int id = nextId++;
+        String[] current = names;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, id * 2);
+        }
+        current[id] = name;
+        names = current;
+        ids.put(name, id); // Cine primește id-ul îl primește după ce numele a fost publicat
+        return id;
+    }
+
+    // Internează octeții UTF-8 dați; de obicei un singur thread citește fișierul, deci lock-ul nu este disputat
+    synchronized int intern(byte[] bytes, int offset, int length) {
+        int mask = byteIds.length - 1;
+        int slot = hash(bytes, offset, length) & mask;
+        while (byteIds[slot] != 0) {
+            byte[] key = byteKeys[slot];
+            if (Arrays.equals(key, 0, key.length, bytes, offset, offset + length)) {
+                return byteIds[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        byte[] key = Arrays.copyOfRange(bytes, offset, offset + length);
+        int id = intern(new String(key, StandardCharsets.UTF_8));
+        byteIds[slot] = id;
+        byteKeys[slot] = key;
+        if (++byteCount > byteIds.length / 4 * 3) {
+            rehashBytes();
+        }
+        return id;
+    }
+
+    private void rehashBytes() {
+        int[] oldIds = byteIds;
+        byte[][] oldKeys = byteKeys;
+        byteIds = new int[oldIds.length * 2];
+        byteKeys = new byte[oldIds.length * 2][];
+        int mask = byteIds.length - 1;
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] == 0) {
+                continue;
+            }
+            byte[] key = oldKeys[i];
+            int slot = hash(key, 0, key.length) & mask;
+            while (byteIds[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            byteIds[slot] = oldIds[i];
+            byteKeys[slot] = key;
+        }
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        hash *= 0x9E3779B9; // Nume apropiate (user1, user2, ...) ar ocupa altfel sloturi vecine
+        return hash ^ (hash >>> 16);
+    }
+}
+
+// Index imuabil al achizițiilor (utilizator, produs); un utilizator poate avea oricâte produse.
+// Fiecare pereche de id-uri din SymbolTable este o cheie long într-un tabel cu adresare deschisă (long[]),
+// fără String-uri sau noduri pe heap, iar un filtru Bloom pe blocuri răspunde la negative cu un singur acces la memorie.
+// După construcție indexul nu se mai modifică, deci poate fi partajat de oricâte filtre fără copii sau sincronizare.
+final class PurchaseIndex {
+    static final String PROPERTY = "pipeline.purchases";
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final int BLOOM_BITS_PER_ENTRY = 10; // ~1% rezultate fals pozitive cu 4 biți pe cheie
+
+    private final long[] table; // 0 = slot liber; id-urile încep de la 1, deci nicio cheie nu este 0
+    private final int mask;
+    private final long[] bloom;
+    private final int bloomMask;
+    private final int size;
+
+    private PurchaseIndex(long[] table, int size) {
+        this.table = table;
+        this.mask = table.length - 1;
+        this.size = size;
+        int words = Integer.highestOneBit(Math.max(1, (int) Math.min(1L << 30, ((long) size * BLOOM_BITS_PER_ENTRY + 63) / 64)) * 2 - 1);
+        this.bloom = new long[words];
+        this.bloomMask = words - 1;
+        for (long key : table) {
+            if (key != 0) {
+                long hash = mix(key);
+                bloom[bloomWord(hash)] |= bloomBits(hash);
+            }
+        }
+    }
+
+    boolean hasPurchased(int usernameId, int productId) {
+        if (usernameId == SymbolTable.NONE || productId == SymbolTable.NONE) {
+            return false;
+        }
+        long key = key(usernameId, productId);
+        long hash = mix(key);
+        long bits = bloomBits(hash);
+        if ((bloom[bloomWord(hash)] & bits) != bits) {
+            return false;
+        }
+        for (int slot = (int) hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (table[slot] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Un nume care nu a fost internat niciodată nu poate avea achiziții
+    boolean hasPurchased(String username, String product) {
+        return hasPurchased(SymbolTable.USERNAMES.find(username), SymbolTable.PRODUCTS.find(product));
+    }
+
+    int size() {
+        return size;
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    static PurchaseIndex of(Map<String, String> buyers) {
+        Builder builder = new Builder();
+        buyers.forEach(builder::add);
+        return builder.build();
+    }
+
+    // Încărcare în bloc dintr-un fișier CSV cu câte o pereche "username,product" pe linie (antetul este opțional)
+    static PurchaseIndex load(Path file) throws IOException {
+        Builder builder = new Builder();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            builder.reserve(channel.size() / 24); // Estimare după o linie tipică
+            ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            long lineNumber = 0;
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(buffer) < 0;
+                buffer.flip();
+                int lineStart = 0;
+                int limit = buffer.limit();
+                for (int i = 0; i < limit; i++) {
+                    if (buffer.get(i) == '\n') {
+                        builder.addLine(buffer, lineStart, i, ++lineNumber, file);
+                        lineStart = i + 1;
+                    }
+                }
+                if (eof && lineStart < limit) {
+                    builder.addLine(buffer, lineStart, limit, ++lineNumber, file); // Ultima linie fără '\n'
+                    lineStart = limit;
+                }
+                if (lineStart == 0 && limit == buffer.capacity()) {
+                    throw new IOException(file + ":" + (lineNumber + 1) + ": linie mai lungă de " + READ_BUFFER_SIZE + " octeți");
+                }
+                buffer.position(lineStart);
+                buffer.compact();
+            }
+        }
+        return builder.build();
+    }
+
+    // Fără proprietatea pipeline.purchases se folosește maparea dată, altfel achizițiile din fișier
+    static PurchaseIndex fromSystemProperty(Map<String, String> fallback) throws IOException {
+        String file = System.getProperty(PROPERTY);
+        return file == null ? of(fallback) : load(Paths.get(file));
+    }
+
+    @Override
+    public String toString() {
+        return size + " achiziții, " + table.length + " sloturi, Bloom " + (bloom.length * 8L / 1024) + " KB";
+    }
+
+    static long key(int usernameId, int productId) {
+        return ((long) usernameId << 32) | (productId & 0xFFFFFFFFL);
+    }
+
+    // Amestecul final din MurmurHash3: id-urile consecutive ajung în sloturi și cuvinte Bloom împrăștiate
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    // Cuvântul din filtrul Bloom și cei 4 biți din el provin din părți diferite ale hash-ului
+    private int bloomWord(long hash) {
+        return (int) (hash >>> 32) & bloomMask;
+    }
+
+    private static long bloomBits(long hash) {
+        int bits = (int) (hash >>> 8);
+        return (1L << bits) | (1L << (bits >>> 6)) | (1L << (bits >>> 12)) | (1L << (bits >>> 18));
+    }
+
+    static final class Builder {
+        private static final int MIN_CAPACITY = 16;
+
+        private long[] table = new long[MIN_CAPACITY];
+        private int size;
+        private byte[] scratch = new byte[256]; // Octeții câmpului curent la încărcarea din fișier
+
+        Builder add(String username, String product) {
+            return add(SymbolTable.USERNAMES.intern(username), SymbolTable.PRODUCTS.intern(product));
+        }
+
+        Builder add(int usernameId, int productId) {
+            if (usernameId != SymbolTable.NONE && productId != SymbolTable.NONE) {
+                insert(key(usernameId, productId));
+            }
+            return this;
+        }
+
+        // Pregătește tabelul pentru cel puțin expected perechi, evitând redimensionările la încărcarea în bloc
+        void reserve(long expected) {
+            int capacity = capacityFor(expected);
+            if (capacity > table.length) {
+                table = rehash(table, capacity);
+            }
+        }
+
+        PurchaseIndex build() {
+            // Tabelul final are dimensiunea potrivită pentru size, chiar dacă reserve() a estimat mai mult
+            return new PurchaseIndex(rehash(table, capacityFor(size)), size);
+        }
+
+        // Câmpurile sunt internate direct din octeți; un nume deja cunoscut nu mai construiește un String
+        private void addLine(ByteBuffer buffer, int from, int to, long lineNumber, Path file) throws IOException {
+            if (to > from && buffer.get(to - 1) == '\r') {
+                to--;
+            }
+            if (to == from) {
+                return;
+            }
+            int comma = from;
+            while (comma < to && buffer.get(comma) != ',') {
+                comma++;
+            }
+            if (comma == to) {
+                throw new IOException(file + ":" + lineNumber + ": lipsește separatorul ','");
+            }
+            if (lineNumber == 1 && matches(buffer, from, to, "username,product")) {
+                return; // Antet
+            }
+            add(intern(SymbolTable.USERNAMES, buffer, from, comma), intern(SymbolTable.PRODUCTS, buffer, comma + 1, to));
+        }
+
+        private int intern(SymbolTable symbols, ByteBuffer buffer, int from, int to) {
+            int length = to - from;
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(from, scratch, 0, length);
+            return symbols.intern(scratch, 0, length);
+        }
+
+        private void insert(long key) {
+            int mask = table.length - 1;
+            int slot = (int) mix(key) & mask;
+            while (table[slot] != 0) {
+                if (table[slot] == key) {
+                    return; // Achiziție duplicată
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = key;
+            if (++size > table.length / 4 * 3) {
+                table = rehash(table, table.length * 2);
+            }
+        }
+
+        private static long[] rehash(long[] old, int capacity) {
+            long[] table = new long[capacity];
+            int mask = capacity - 1;
+            for (long key : old) {
+                if (key != 0) {
+                    int slot = (int) mix(key) & mask;
+                    while (table[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = key;
+                }
+            }
+            return table;
+        }
+
+        // Capacitatea (putere a lui 2) la care expected perechi ocupă cel mult 3/4 din tabel
+        private static int capacityFor(long expected) {
+            long needed = Math.max(MIN_CAPACITY, expected * 4 / 3 + 1);
+            if (needed > 1 << 30) {
+                throw new IllegalArgumentException("Prea multe achiziții pentru index: " + expected);
+            }
+            return Integer.highestOneBit((int) needed * 2 - 1);
+        }
+
+        private static boolean matches(ByteBuffer buffer, int from, int to, String text) {
+            if (to - from != text.length()) {
+                return false;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                if (buffer.get(from + i) != text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
+
+// Cererea (utilizator, produs) trimisă depozitului de achiziții; cheie în cache și în lotul curent
+final class PurchaseQuery {
+    final int usernameId;
+    final int productId;
+
+    PurchaseQuery(int usernameId, int productId) {
+        this.usernameId = usernameId;
+        this.productId = productId;
+    }
+
+    // Numele, pentru depozitele care nu cunosc id-urile din SymbolTable
+    String username() {
+        return SymbolTable.USERNAMES.name(usernameId);
+    }
+
+    String product() {
+        return SymbolTable.PRODUCTS.name(productId);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof PurchaseQuery)) {
+            return false;
+        }
+        PurchaseQuery query = (PurchaseQuery) other;
+        return usernameId == query.usernameId && productId == query.productId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(PurchaseIndex.key(usernameId, productId) * 0x9E3779B97F4A7C15L);
+    }
+}
+
+// Depozitul extern de achiziții; un lot întreg de cereri pleacă într-un singur drum dus-întors
+interface PurchaseStore {
+    // Câte un rezultat pentru fiecare cerere, în ordinea din listă
+    CompletableFuture<boolean[]> hasPurchased(List<PurchaseQuery> queries);
+}
+
+// Înlocuitor în proces pentru depozitul extern: răspunde din PurchaseIndex după o latență simulată
+class InMemoryPurchaseStore implements PurchaseStore, AutoCloseable {
+    private final PurchaseIndex purchases;
+    private final long latencyMicros;
+    private final ScheduledExecutorService responder;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+
+    public InMemoryPurchaseStore(PurchaseIndex purchases, long latencyMicros) {
+        this.purchases = purchases;
+        this.latencyMicros = latencyMicros;
+        this.responder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "purchase-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public CompletableFuture<boolean[]> hasPurchased(List<PurchaseQuery> batch) {
+        requests.incrementAndGet();
+        queries.addAndGet(batch.size());
+        CompletableFuture<boolean[]> response = new CompletableFuture<>();
+        // Latența este a drumului dus-întors, nu a fiecărei cereri din lot
+        responder.schedule(() -> {
+            boolean[] results = new boolean[batch.size()];
+            for (int i = 0; i < results.length; i++) {
+                PurchaseQuery query = batch.get(i);
+                results[i] = purchases.hasPurchased(query.usernameId, query.productId);
+            }
+            response.complete(results);
+        }, latencyMicros, TimeUnit.MICROSECONDS);
+        return response;
+    }
+
+    long getRequestCount() {
+        return requests.get();
+    }
+
+    long getQueryCount() {
+        return queries.get();
+    }
+
+    @Override
+    public void close() {
+        responder.shutdownNow();
+    }
+}
+
+// Clientul depozitului folosit de CheckBuyerFilter: cererile sunt grupate în loturi de cel mult maxBatchSize
+// sau trimise după maxDelayMicros de la prima cerere din lot, cererile identice aflate deja în zbor primesc
+// același rezultat, iar răspunsurile stau într-un cache LRU mărginit, cu TTL separat pentru răspunsurile negative
+class PurchaseLookup implements AutoCloseable {
+    // Rezultate gata calculate pentru cache și mesajele care nu cer verificare; nu sunt completate de nimeni altcineva
+    static final CompletableFuture<Boolean> PURCHASED = CompletableFuture.completedFuture(true);
+    static final CompletableFuture<Boolean> NOT_PURCHASED = CompletableFuture.completedFuture(false);
+    static final long DEFAULT_RESPONSE_TIMEOUT_MILLIS = 5_000;
+
+    private final PurchaseStore store;
+    private final int maxBatchSize;
+    private final long maxDelayMicros;
+    private final long responseTimeoutMillis; // După atât, un lot fără răspuns eșuează, ca etapa să nu aștepte la nesfârșit
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final Map<PurchaseQuery, CacheEntry> cache;
+    private final ScheduledExecutorService timer;
+
+    private final Object lock = new Object();
+    private final Map<PurchaseQuery, CompletableFuture<Boolean>> inFlight = new HashMap<>(); // Lotul curent și loturile trimise
+    private List<PurchaseQuery> pending = new ArrayList<>(); // Lotul curent, încă netrimis
+    private long batchNumber = 0; // Numărul lotului curent, ca timer-ul să nu trimită un lot deja plecat
+    private boolean closed;
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong sentQueries = new AtomicLong();
+
+    private static final class CacheEntry {
+        final boolean purchased;
+        final long expiresAt;
+
+        CacheEntry(boolean purchased, long expiresAt) {
+            this.purchased = purchased;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public PurchaseLookup(PurchaseStore store) {
+        this(store, 64, 1_000, 100_000, 60_000, 5_000);
+    }
+
+    public PurchaseLookup(PurchaseStore store, int maxBatchSize, long maxDelayMicros,
+                          int cacheCapacity, long ttlMillis, long negativeTtlMillis) {
+        this(store, maxBatchSize, maxDelayMicros, cacheCapacity, ttlMillis, negativeTtlMillis, DEFAULT_RESPONSE_TIMEOUT_MILLIS);
+    }
+
+    public PurchaseLookup(PurchaseStore store, int maxBatchSize, long maxDelayMicros,
+                          int cacheCapacity, long ttlMillis, long negativeTtlMillis, long responseTimeoutMillis) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Dimensiunea lotului trebuie să fie cel puțin 1: " + maxBatchSize);
+        }
+        if (responseTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Timeout-ul răspunsului trebuie să fie pozitiv: " + responseTimeoutMillis);
+        }
+        this.store = store;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMicros = maxDelayMicros;
+        this.responseTimeoutMillis = responseTimeoutMillis;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+        // Ordinea de acces face din LinkedHashMap un LRU; cea mai veche intrare iese la depășirea capacității
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<PurchaseQuery, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PurchaseQuery, CacheEntry> eldest) {
+                return size() > cacheCapacity;
+            }
+        });
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "purchase-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Rezultatul se completează pe thread-ul depozitului; eșecurile depozitului ajung ca excepție în rezultat
+    public CompletableFuture<Boolean> hasPurchased(int usernameId, int productId) {
+        if (usernameId == SymbolTable.NONE || productId == SymbolTable.NONE) {
+            return NOT_PURCHASED;
+        }
+        PurchaseQuery query = new PurchaseQuery(usernameId, productId);
+        CacheEntry entry = cache.get(query);
+        if (entry != null) {
+            if (entry.expiresAt - System.nanoTime() > 0) {
+                cacheHits.incrementAndGet();
+                return entry.purchased ? PURCHASED : NOT_PURCHASED;
+            }
+            cache.remove(query);
+        }
+
+        CompletableFuture<Boolean> result;
+        List<PurchaseQuery> full = null;
+        synchronized (lock) {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException("PurchaseLookup este închis"));
+            }
+            result = inFlight.get(query);
+            if (result != null) {
+                coalesced.incrementAndGet();
+                return result;
+            }
+            result = new CompletableFuture<>();
+            inFlight.put(query, result);
+            pending.add(query);
+            if (pending.size() >= maxBatchSize) {
+                full = takePending();
+            } else if (pending.size() == 1) {
+                long batch = batchNumber;
+                timer.schedule(() -> flush(batch), maxDelayMicros, TimeUnit.MICROSECONDS);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return result;
+    }
+
+    // Trimite lotul dat dacă nu a plecat deja pentru că s-a umplut
+    private void flush(long batch) {
+        List<PurchaseQuery> due = null;
+        synchronized (lock) {
+            if (batch == batchNumber && !pending.isEmpty()) {
+                due = takePending();
+            }
+        }
+        if (due != null) {
+            send(due);
+        }
+    }
+
+    private List<PurchaseQuery> takePending() {
+        List<PurchaseQuery> batch = pending;
+        pending = new ArrayList<>(maxBatchSize);
+        batchNumber++;
+        return batch;
+    }
+
+    private void send(List<PurchaseQuery> batch) {
+        batches.incrementAndGet();
+        sentQueries.addAndGet(batch.size());
+        CompletableFuture<boolean[]> response;
+        try {
+            response = store.hasPurchased(batch);
+            if (response == null) {
+                throw new IllegalStateException("Depozitul nu a întors niciun răspuns pentru " + batch.size() + " cereri");
+            }
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        // Pe o copie, ca timeout-ul să nu completeze rezultatul depozitului
+        response.copy()
+                .orTimeout(responseTimeoutMillis, TimeUnit.MILLISECONDS)
+                .whenComplete((results, error) -> complete(batch, results, error));
+    }
+
+    // Completează rezultatul fiecărei cereri din lot. Un răspuns lipsă sau de altă lungime eșuează tot lotul, iar
+    // orice cerere rămasă necompletată (o excepție la jumătatea lotului) este eșuată în finally: CompletableFuture
+    // ar înghiți excepția, iar CheckBuyerFilter ar aștepta la nesfârșit rezultatul
+    private void complete(List<PurchaseQuery> batch, boolean[] results, Throwable error) {
+        if (error == null && (results == null || results.length != batch.size())) {
+            error = new IllegalStateException("Depozitul a răspuns cu " + (results == null ? "null" : results.length + " rezultate")
+                    + " pentru " + batch.size() + " cereri");
+        }
+        long now = System.nanoTime();
+        int index = 0;
+        CompletableFuture<Boolean> result = null;
+        try {
+            for (; index < batch.size(); index++) {
+                PurchaseQuery query = batch.get(index);
+                synchronized (lock) {
+                    result = inFlight.remove(query);
+                }
+                if (result == null) {
+                    continue; // Eșuată deja de close()
+                }
+                if (error != null) {
+                    result.completeExceptionally(error); // Eșecurile nu intră în cache
+                    continue;
+                }
+                boolean purchased = results[index];
+                cache.put(query, new CacheEntry(purchased, now + (purchased ? ttlNanos : negativeTtlNanos)));
+                result.complete(purchased);
+            }
+        } finally {
+            if (index < batch.size()) {
+                Throwable failure = error != null ? error : new IllegalStateException("Răspunsul depozitului nu a putut fi procesat");
+                if (result != null) {
+                    result.completeExceptionally(failure);
+                }
+                for (int i = index + 1; i < batch.size(); i++) {
+                    CompletableFuture<Boolean> remaining;
+                    synchronized (lock) {
+                        remaining = inFlight.remove(batch.get(i));
+                    }
+                    if (remaining != null) {
+                        remaining.completeExceptionally(failure);
+                    }
+                }
+            }
+        }
+    }
+
+    long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    long getBatchCount() {
+        return batches.get();
+    }
+
+    // Lotul netrimis încă și loturile care își așteaptă răspunsul eșuează, ca etapele să nu rămână blocate
+    @Override
+    public void close() {
+        List<CompletableFuture<Boolean>> abandoned;
+        synchronized (lock) {
+            if (closed) return;
+            closed = true; // Sub lock, ca niciun lot nou să nu mai fie programat pe timer după oprirea lui
+            abandoned = new ArrayList<>(inFlight.values());
+            inFlight.clear();
+            pending = new ArrayList<>(0);
+            batchNumber++;
+        }
+        timer.shutdownNow();
+        IllegalStateException failure = new IllegalStateException("PurchaseLookup a fost închis înainte de răspuns");
+        for (CompletableFuture<Boolean> result : abandoned) {
+            result.completeExceptionally(failure);
+        }
+    }
+
+    @Override
+    public String toString() {
+        long sent = batches.get();
+        return "cache: " + getCacheHits() + " răspunsuri, comasate: " + getCoalescedCount() + ", loturi: " + sent
+                + " (în medie " + String.format("%.1f", sent == 0 ? 0.0 : (double) sentQueries.get() / sent) + " cereri)";
+    }
+}
+
+// Verificare cumpărător certificat
+class CheckBuyerFilter extends BaseFilter {
+    private static final long IDLE_PARK_NANOS = 100_000; // Cât așteaptă etapa asincronă mesaje noi între verificările ferestrei
+
+    private final PurchaseIndex purchases;
+    private final PurchaseLookup lookup;
+    private final int maxInFlight;
+    private final AtomicLong failedLookups = new AtomicLong();
+
+    // Verificare sincronă în indexul local
+    public CheckBuyerFilter(PurchaseIndex purchases) {
+        this.purchases = purchases;
+        this.lookup = null;
+        this.maxInFlight = 1;
+    }
+
+    // Verificare asincronă în depozitul extern, cu până la maxInFlight mesaje care își așteaptă răspunsul
+    public CheckBuyerFilter(PurchaseLookup lookup, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Numărul de cereri în zbor trebuie să fie cel puțin 1: " + maxInFlight);
+        }
+        this.purchases = null;
+        this.lookup = lookup;
+        this.maxInFlight = maxInFlight;
+    }
+
+    // Folosit când filtrul rulează fuzionat sau replicat: așteaptă răspunsul pe loc
+    @Override
+    boolean apply(ReviewMessage message) {
+        if (lookup == null) {
+            return purchases.hasPurchased(message.usernameId, message.productId);
+        }
+        return isPurchased(lookup.hasPurchased(message.usernameId, message.productId));
+    }
+
+    // Un depozit indisponibil nu poate certifica cumpărătorul, deci mesajul este eliminat
+    private boolean isPurchased(CompletableFuture<Boolean> result) {
+        try {
+            return result.join();
+        } catch (CompletionException | CancellationException e) {
+            failedLookups.incrementAndGet();
+            return false;
+        }
+    }
+
+    long getFailedLookups() {
+        return failedLookups.get();
+    }
+
+    @Override
+    public void process(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue) {
+        if (lookup == null) {
+            super.process(inputQueue, outputQueue);
+            return;
+        }
+        processAsync(inputQueue, outputQueue);
+    }
+
+    // Fereastră de cel mult maxInFlight mesaje în ordinea de intrare: cererile pleacă imediat ce mesajul intră,
+    // iar mesajele ies din capul ferestrei pe măsură ce primesc răspuns, deci ordinea de intrare se păstrează
+    private void processAsync(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue) {
+        ArrayDeque<ReviewMessage> window = new ArrayDeque<>(maxInFlight);
+        ArrayDeque<CompletableFuture<Boolean>> results = new ArrayDeque<>(maxInFlight);
+        Thread stageThread = Thread.currentThread();
+        BiConsumer<Boolean, Throwable> wakeUp = (purchased, error) -> LockSupport.unpark(stageThread);
+        boolean end = false;
+        try {
+            while (true) {
+                while (!results.isEmpty() && results.peekFirst().isDone()) {
+                    ReviewMessage message = window.pollFirst();
+                    if (isPurchased(results.pollFirst())) {
+                        outputQueue.put(message);
+                    }
+                }
+                if (end && window.isEmpty()) {
+                    outputQueue.put(ReviewPipeline.END_MESSAGE);
+                    break;
+                }
+
+                if (!end && window.size() < maxInFlight) {
+                    // Cu fereastra goală nu avem ce elibera, deci putem aștepta normal după mesaje noi
+                    ReviewMessage message = window.isEmpty() ? getWaitStrategy().take(inputQueue) : inputQueue.poll();
+                    if (message == ReviewPipeline.END_MESSAGE) {
+                        end = true;
+                        continue;
+                    }
+                    if (message != null) {
+                        CompletableFuture<Boolean> result = isEnabledFor(message)
+                                ? lookup.hasPurchased(message.usernameId, message.productId)
+                                : PurchaseLookup.PURCHASED;
+                        if (!result.isDone()) {
+                            result.whenComplete(wakeUp);
+                        }
+                        window.addLast(message);
+                        results.addLast(result);
+                        continue;
+                    }
+                }
+
+                // Capul ferestrei încă așteaptă: răspunsurile ne trezesc prin unpark, mesajele noi sunt verificate periodic
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // În producție achizițiile vin dintr-un depozit extern
+    @Override
+    FilterCost getCost() {
+        return FilterCost.BLOCKING;
+    }
+
+    @Override
+    boolean rejects() {
+        return true;
+    }
+
+    @Override
+    int getClientFlag() {
+        return ClientConfig.FILTER_CERTIFIED_BUYERS;
+    }
+}
+
+// Redimensionare imagini (transformă numele fișierului în litere mici)
+class ResizeImagesFilter extends BaseFilter {
+    @Override
+    boolean apply(ReviewMessage message) {
+        if (message.attachment != null) {
+            message.attachment = message.attachment.toLowerCase();
+        }
+        return true;
+    }
+
+    @Override
+    int getClientFlag() {
+        return ClientConfig.RESIZE_IMAGES;
+    }
+}
+
+// Filtrare propagandă politică
+class CheckPoliticalPropagandaFilter extends BaseFilter {
+    @Override
+    boolean apply(ReviewMessage message) {
+        // O singură trecere pentru toate șabloanele de propagandă
+        return !MultiPatternMatcher.contains(message.moderationMask(), ModerationCategory.PROPAGANDA);
+    }
+
+    @Override
+    boolean rejects() {
+        return true;
+    }
+
+    @Override
+    int getClientFlag() {
+        return ClientConfig.FILTER_POLITICAL_PROPAGANDA;
+    }
+}
+
+// Detectare sentiment
+class SentimentDetectionFilter extends BaseFilter {
+    @Override
+    boolean apply(ReviewMessage message) {
+        // Simbolul (+, - sau =) este adăugat textului doar la afișare
+        message.sentimentSymbol = message.sentiment();
+        return true;
+    }
+
+    // Poate declanșa analiza completă a textului, dacă niciun filtru anterior nu a făcut-o
+    @Override
+    FilterCost getCost() {
+        return FilterCost.EXPENSIVE;
+    }
+
+    @Override
+    int getClientFlag() {
+        return ClientConfig.DETECT_SENTIMENT;
+    }
+}
+
+// Mai multe filtre ieftine consecutive rulate unul după altul pe același thread
+class FusedFilter extends BaseFilter {
+    private final List<BaseFilter> filters;
+
+    public FusedFilter(List<BaseFilter> filters) {
+        this.filters = new ArrayList<>(filters);
+        int batchSize = 1;
+        for (BaseFilter filter : filters) {
+            batchSize = Math.max(batchSize, filter.getBatchSize());
+        }
+        setBatchSize(batchSize);
+    }
 
-// Filtrare profanități
-class CheckProfanitiesFilter implements Filter {
     @Override
-    public void process(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue) {
-        try {
-            while (true) {
-                ReviewMessage message = inputQueue.poll(100, TimeUnit.MILLISECONDS);
-                if (message == null) continue;
-                if (message == ReviewPipeline.END_MESSAGE) {
-                    outputQueue.put(message);
-                    break;
-                }
-                if (!message.reviewText.contains("@#$%")) {
-                    outputQueue.put(message);
-                }
+    boolean apply(ReviewMessage message) {
+        for (BaseFilter filter : filters) {
+            if (!filter.applyIfEnabled(message)) {
+                return false; // Primul filtru care elimină mesajul oprește lanțul
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
         }
+        return true;
+    }
+
+    List<BaseFilter> getFilters() {
+        return filters;
     }
 }
 
-// Verificare cumpărător certificat
-class CheckBuyerFilter implements Filter {
-    private final Map<String, String> buyers;
+// Filtrele care elimină mesaje, rulate pe același thread într-o ordine ajustată din mers: la fiecare REORDER_INTERVAL
+// mesaje se sortează după costul mediu împărțit la rata de eliminare, deci filtrele ieftine și selective ajung primele
+class AdaptiveRejectionFilter extends FusedFilter {
+    static final int REORDER_INTERVAL = 1024;
+
+    private final AtomicLongArray seen;    // Mesaje evaluate de fiecare filtru
+    private final AtomicLongArray dropped; // Mesaje eliminate de fiecare filtru
+    private final AtomicLongArray nanos;   // Timpul petrecut în fiecare filtru
+    private final AtomicLong processed = new AtomicLong();
+    private volatile int[] order;          // Indicii filtrelor în ordinea curentă
 
-    public CheckBuyerFilter(Map<String, String> buyers) {
-        this.buyers = buyers;
+    public AdaptiveRejectionFilter(List<BaseFilter> filters) {
+        super(filters);
+        int count = filters.size();
+        seen = new AtomicLongArray(count);
+        dropped = new AtomicLongArray(count);
+        nanos = new AtomicLongArray(count);
+        order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i; // Până la prima reordonare se păstrează ordinea configurată
+        }
     }
 
     @Override
-    public void process(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue) {
-        try {
-            while (true) {
-                ReviewMessage message = inputQueue.poll(100, TimeUnit.MILLISECONDS);
-                if (message == null) continue;
-                if (message == ReviewPipeline.END_MESSAGE) {
-                    outputQueue.put(message);
-                    break;
-                }
-                if (buyers.getOrDefault(message.username, "").equals(message.product)) {
-                    outputQueue.put(message);
-                }
+    boolean apply(ReviewMessage message) {
+        List<BaseFilter> filters = getFilters();
+        boolean passed = true;
+        for (int index : order) {
+            BaseFilter filter = filters.get(index);
+            if (!filter.isEnabledFor(message)) {
+                continue; // Dezactivat pentru clientul mesajului; nu intră în statistici
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            long startTime = System.nanoTime();
+            passed = filter.apply(message);
+            nanos.addAndGet(index, System.nanoTime() - startTime);
+            seen.incrementAndGet(index);
+            if (!passed) {
+                dropped.incrementAndGet(index);
+                break; // Primul filtru care elimină mesajul oprește lanțul
+            }
+        }
+        if (processed.incrementAndGet() % REORDER_INTERVAL == 0) {
+            reorder();
         }
+        return passed;
     }
-}
 
-// Redimensionare imagini (transformă numele fișierului în litere mici)
-class ResizeImagesFilter implements Filter {
-    @Override
-    public void process(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue) {
-        try {
-            while (true) {
-                ReviewMessage message = inputQueue.poll(100, TimeUnit.MILLISECONDS);
-                if (message == null) continue;
-                if (message == ReviewPipeline.END_MESSAGE) {
-                    outputQueue.put(message);
-                    break;
-                }
-                if (message.attachment != null) {
-                    message.attachment = message.attachment.toLowerCase();
-                }
-                outputQueue.put(message);
+    // Ordinea optimă pentru predicate independente: crescător după cost / rata de eliminare.
+    // Statisticile se înjumătățesc după fiecare reordonare, ca ordinea să urmărească schimbările din trafic.
+    private void reorder() {
+        int count = order.length;
+        double[] rank = new double[count];
+        for (int i = 0; i < count; i++) {
+            long evaluated = seen.get(i);
+            if (evaluated == 0) {
+                rank[i] = 0; // Filtru încă nemăsurat: merită încercat mai devreme
+                continue;
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            double cost = (double) nanos.get(i) / evaluated;
+            double dropRate = (double) dropped.get(i) / evaluated;
+            rank[i] = dropRate == 0 ? Double.MAX_VALUE : cost / dropRate;
+        }
+        Integer[] sorted = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = i;
         }
+        Arrays.sort(sorted, Comparator.comparingDouble(i -> rank[i]));
+        int[] next = new int[count];
+        for (int i = 0; i < count; i++) {
+            next[i] = sorted[i];
+            // Atomic, ca incrementările făcute între timp de celelalte thread-uri să nu se piardă
+            seen.getAndUpdate(i, v -> v >> 1);
+            dropped.getAndUpdate(i, v -> v >> 1);
+            nanos.getAndUpdate(i, v -> v >> 1);
+        }
+        order = next;
     }
-}
 
-// Filtrare propagandă politică
-class CheckPoliticalPropagandaFilter implements Filter {
-    @Override
-    public void process(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue) {
-        try {
-            while (true) {
-                ReviewMessage message = inputQueue.poll(100, TimeUnit.MILLISECONDS);
-                if (message == null) continue;
-                if (message == ReviewPipeline.END_MESSAGE) {
-                    outputQueue.put(message);
-                    break;
-                }
-                if (message.reviewText != null && (message.reviewText.contains("+++") || message.reviewText.contains("---"))) {
-                    continue;
-                }
-                outputQueue.put(message);
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    // Ordinea curentă, pentru afișare
+    List<BaseFilter> getCurrentOrder() {
+        List<BaseFilter> current = new ArrayList<>();
+        for (int index : order) {
+            current.add(getFilters().get(index));
         }
+        return current;
     }
-}
 
-// Detectare sentiment
-class SentimentDetectionFilter implements Filter {
+    // Etapa moștenește cel mai mare cost al filtrelor sale, ca să nu fie fuzionată cu un filtru blocant
     @Override
-    public void process(BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue) {
-        try {
-            while (true) {
-                ReviewMessage message = inputQueue.poll(100, TimeUnit.MILLISECONDS);
-                if (message == null) continue;
-                if (message == ReviewPipeline.END_MESSAGE) {
-                    outputQueue.put(message);
-                    break;
-                }
-                int upperCaseCount = 0, lowerCaseCount = 0;
-                for (char c : message.reviewText.toCharArray()) {
-                    if (Character.isUpperCase(c)) upperCaseCount++;
-                    else if (Character.isLowerCase(c)) lowerCaseCount++;
-                }
-                if (upperCaseCount > lowerCaseCount) {
-                    message.reviewText += "+";
-                } else if (lowerCaseCount > upperCaseCount) {
-                    message.reviewText += "-";
-                } else {
-                    message.reviewText += "=";
-                }
-                outputQueue.put(message);
+    FilterCost getCost() {
+        FilterCost cost = FilterCost.CHEAP;
+        for (BaseFilter filter : getFilters()) {
+            if (filter.getCost().compareTo(cost) > 0) {
+                cost = filter.getCost();
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
         }
+        return cost;
+    }
+
+    @Override
+    boolean rejects() {
+        return true;
     }
 }
 
 // Configurația clientului
 class ClientConfig {
+    // Biții configurației compilate, purtată de fiecare mesaj în pipeline-ul partajat
+    static final int FILTER_PROFANITIES = 1;
+    static final int FILTER_CERTIFIED_BUYERS = 1 << 1;
+    static final int RESIZE_IMAGES = 1 << 2;
+    static final int FILTER_POLITICAL_PROPAGANDA = 1 << 3;
+    static final int DETECT_SENTIMENT = 1 << 4;
+    static final int ALL_FLAGS = -1;
+
     boolean filterProfanities;
     boolean filterCertifiedBuyers;
     boolean resizeImages;
@@ -172,56 +1545,406 @@ class ClientConfig {
         this.filterPoliticalPropaganda = filterPoliticalPropaganda;
         this.detectSentiment = detectSentiment;
     }
+
+    // Configurația ca un singur cuvânt de flag-uri
+    int toFlags() {
+        int flags = 0;
+        if (filterProfanities) flags |= FILTER_PROFANITIES;
+        if (filterCertifiedBuyers) flags |= FILTER_CERTIFIED_BUYERS;
+        if (resizeImages) flags |= RESIZE_IMAGES;
+        if (filterPoliticalPropaganda) flags |= FILTER_POLITICAL_PROPAGANDA;
+        if (detectSentiment) flags |= DETECT_SENTIMENT;
+        return flags;
+    }
+}
+
+// Restabilește ordinea de intrare după o etapă replicată: mesajul n pleacă doar după n-1
+class ReorderBuffer {
+    private static final ReviewMessage DROPPED = new ReviewMessage("DROPPED", "", "", ""); // Loc ocupat de un mesaj eliminat
+
+    private final BlockingQueue<ReviewMessage> outputQueue;
+    private ReviewMessage[] slots = new ReviewMessage[64]; // Fereastră circulară indexată după numărul de ordine
+    private long nextToRelease = 0;
+
+    public ReorderBuffer(BlockingQueue<ReviewMessage> outputQueue) {
+        this.outputQueue = outputQueue;
+    }
+
+    // Apelat de workeri când au terminat mesajul cu numărul de ordine dat (kept = false dacă a fost eliminat)
+    public synchronized void complete(long sequence, ReviewMessage message, boolean kept) throws InterruptedException {
+        while (sequence - nextToRelease >= slots.length) {
+            grow();
+        }
+        slots[(int) (sequence & (slots.length - 1))] = kept ? message : DROPPED;
+
+        // Eliberează toate mesajele consecutive disponibile
+        int index = (int) (nextToRelease & (slots.length - 1));
+        while (slots[index] != null) {
+            ReviewMessage next = slots[index];
+            slots[index] = null;
+            if (next != DROPPED) {
+                outputQueue.put(next);
+            }
+            nextToRelease++;
+            index = (int) (nextToRelease & (slots.length - 1));
+        }
+    }
+
+    private void grow() {
+        ReviewMessage[] larger = new ReviewMessage[slots.length * 2];
+        for (long sequence = nextToRelease; sequence < nextToRelease + slots.length; sequence++) {
+            larger[(int) (sequence & (larger.length - 1))] = slots[(int) (sequence & (slots.length - 1))];
+        }
+        slots = larger;
+    }
+}
+
+// Etapă rulată de mai mulți workeri în paralel pe aceeași coadă de intrare
+class ReplicatedStage {
+    private final BaseFilter filter;
+    private final int workers;
+    private final boolean preserveOrder;
+    private final WaitStrategy waitStrategy;
+    private final BlockingQueue<ReviewMessage> inputQueue;
+    private final BlockingQueue<ReviewMessage> outputQueue;
+    private final ReorderBuffer reorderBuffer;
+    private final AtomicInteger runningWorkers;
+    private final Object takeLock = new Object(); // Preluarea și numerotarea trebuie să fie atomice
+    private long nextSequence = 0;
+
+    public ReplicatedStage(BaseFilter filter, int workers, boolean preserveOrder, WaitStrategy waitStrategy,
+                           BlockingQueue<ReviewMessage> inputQueue, BlockingQueue<ReviewMessage> outputQueue) {
+        this.filter = filter;
+        this.workers = workers;
+        this.preserveOrder = preserveOrder;
+        this.waitStrategy = waitStrategy;
+        this.inputQueue = inputQueue;
+        this.outputQueue = outputQueue;
+        this.reorderBuffer = preserveOrder ? new ReorderBuffer(outputQueue) : null;
+        this.runningWorkers = new AtomicInteger(workers);
+    }
+
+    public void start(ExecutorService executor) {
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::runWorker);
+        }
+    }
+
+    private void runWorker() {
+        try {
+            while (true) {
+                ReviewMessage message;
+                if (preserveOrder) {
+                    synchronized (takeLock) {
+                        message = waitStrategy.take(inputQueue);
+                        if (message != ReviewPipeline.END_MESSAGE) {
+                            message.sequence = nextSequence++;
+                        }
+                    }
+                } else {
+                    message = waitStrategy.take(inputQueue);
+                }
+
+                if (message == ReviewPipeline.END_MESSAGE) {
+                    inputQueue.put(message); // Îl lăsăm și pentru ceilalți workeri
+                    // Ultimul worker oprit trimite END; toate mesajele anterioare au fost deja terminate
+                    if (runningWorkers.decrementAndGet() == 0) {
+                        inputQueue.remove(message);
+                        outputQueue.put(message);
+                    }
+                    break;
+                }
+
+                boolean kept = filter.applyIfEnabled(message);
+                if (preserveOrder) {
+                    reorderBuffer.complete(message.sequence, message, kept);
+                } else if (kept) {
+                    outputQueue.put(message);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
+
+// Setări de execuție pentru fiecare etapă (filtru) din pipeline
+class StageSettings {
+    private final Map<Class<? extends BaseFilter>, Integer> batchSizes = new HashMap<>();
+    private final Map<Class<? extends BaseFilter>, Integer> parallelism = new HashMap<>();
+    private boolean preserveOrder = true; // Ordinea de intrare se păstrează după etapele replicate
+    private WaitStrategy waitStrategy = WaitStrategies.fromSystemProperty();
+    private boolean fusion = true; // Fuzionează filtrele ieftine consecutive într-o etapă
+    private boolean adaptiveOrdering = false; // Reordonează filtrele care elimină mesaje după selectivitate și cost
+    private PurchaseLookup purchaseLookup; // null = CheckBuyerFilter verifică sincron în indexul local
+    private int lookupsInFlight = 256;
+
+    public StageSettings batchSize(Class<? extends BaseFilter> filterType, int batchSize) {
+        batchSizes.put(filterType, batchSize);
+        return this;
+    }
+
+    int getBatchSize(Class<? extends BaseFilter> filterType) {
+        return batchSizes.getOrDefault(filterType, 1);
+    }
+
+    // Numărul de workeri paraleli pentru etapa filtrului dat
+    public StageSettings parallelism(Class<? extends BaseFilter> filterType, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Numărul de workeri trebuie să fie cel puțin 1: " + workers);
+        }
+        parallelism.put(filterType, workers);
+        return this;
+    }
+
+    // O etapă fuzionată rulează cu paralelismul maxim cerut de filtrele ei
+    int getParallelism(BaseFilter stage) {
+        if (stage instanceof FusedFilter) {
+            int workers = 1;
+            for (BaseFilter filter : ((FusedFilter) stage).getFilters()) {
+                workers = Math.max(workers, getParallelism(filter));
+            }
+            return workers;
+        }
+        return parallelism.getOrDefault(stage.getClass(), 1);
+    }
+
+    // false = mod neordonat, fără ReorderBuffer, pentru throughput maxim
+    public StageSettings preserveOrder(boolean preserveOrder) {
+        this.preserveOrder = preserveOrder;
+        return this;
+    }
+
+    boolean isOrderPreserved() {
+        return preserveOrder;
+    }
+
+    // Strategia de așteptare este aceeași pentru toate etapele unei instalări
+    public StageSettings waitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+        return this;
+    }
+
+    WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public StageSettings fusion(boolean fusion) {
+        this.fusion = fusion;
+        return this;
+    }
+
+    boolean isFusionEnabled() {
+        return fusion;
+    }
+
+    // Filtrele care elimină mesaje rulează primele, în ordinea ajustată de AdaptiveRejectionFilter, iar cele blocante
+    // imediat după, fiecare în etapa lui; filtrele care transformă mesajul rulează la final, ca munca lor să nu se piardă
+    public StageSettings adaptiveOrdering(boolean adaptiveOrdering) {
+        this.adaptiveOrdering = adaptiveOrdering;
+        return this;
+    }
+
+    boolean isAdaptiveOrderingEnabled() {
+        return adaptiveOrdering;
+    }
+
+    // CheckBuyerFilter interoghează asincron depozitul extern, cu până la inFlight mesaje care își așteaptă răspunsul;
+    // filtrul rămâne o etapă proprie (vezi FilterCost.BLOCKING), altfel ar aștepta fiecare răspuns pe loc
+    public StageSettings purchaseLookup(PurchaseLookup purchaseLookup, int inFlight) {
+        if (inFlight < 1) {
+            throw new IllegalArgumentException("Numărul de cereri în zbor trebuie să fie cel puțin 1: " + inFlight);
+        }
+        this.purchaseLookup = purchaseLookup;
+        this.lookupsInFlight = inFlight;
+        return this;
+    }
+
+    PurchaseLookup getPurchaseLookup() {
+        return purchaseLookup;
+    }
+
+    int getLookupsInFlight() {
+        return lookupsInFlight;
+    }
 }
 
 // Construcția pipeline-ului de filtrare în funcție de configurația clientului
 class ReviewPipelineBuilder {
-    public static BlockingQueue<ReviewMessage> buildPipeline(ClientConfig config, Map<String, String> buyers, ExecutorService executor) {
-        final BlockingQueue<ReviewMessage> inputQueue = new LinkedBlockingQueue<>();
-        BlockingQueue<ReviewMessage> currentQueue = inputQueue;
-        
+    public static BlockingQueue<ReviewMessage> buildPipeline(ClientConfig config, PurchaseIndex purchases, ExecutorService executor) {
+        return buildPipeline(config, purchases, executor, new StageSettings());
+    }
+
+    public static BlockingQueue<ReviewMessage> buildPipeline(ClientConfig config, PurchaseIndex purchases, ExecutorService executor, StageSettings settings) {
+        return buildPipeline(config, purchases, executor, settings, new LinkedBlockingQueue<>());
+    }
+
+    // Ultima etapă scrie în outputQueue, inclusiv END_MESSAGE
+    public static BlockingQueue<ReviewMessage> buildPipeline(ClientConfig config, PurchaseIndex purchases, ExecutorService executor,
+                                                             StageSettings settings, BlockingQueue<ReviewMessage> outputQueue) {
+        List<BaseFilter> filters = new ArrayList<>();
         if (config.filterProfanities) {
-            final BlockingQueue<ReviewMessage> nextQueue = new LinkedBlockingQueue<>();
-            executor.execute(() -> new CheckProfanitiesFilter().process(currentQueue, nextQueue));
-            currentQueue = nextQueue;
+            filters.add(new CheckProfanitiesFilter());
         }
         if (config.filterCertifiedBuyers) {
-            final BlockingQueue<ReviewMessage> nextQueue = new LinkedBlockingQueue<>();
-            executor.execute(() -> new CheckBuyerFilter(buyers).process(currentQueue, nextQueue));
-            currentQueue = nextQueue;
+            filters.add(buyerFilter(purchases, settings));
         }
         if (config.resizeImages) {
-            final BlockingQueue<ReviewMessage> nextQueue = new LinkedBlockingQueue<>();
-            executor.execute(() -> new ResizeImagesFilter().process(currentQueue, nextQueue));
-            currentQueue = nextQueue;
+            filters.add(new ResizeImagesFilter());
         }
         if (config.filterPoliticalPropaganda) {
-            final BlockingQueue<ReviewMessage> nextQueue = new LinkedBlockingQueue<>();
-            executor.execute(() -> new CheckPoliticalPropagandaFilter().process(currentQueue, nextQueue));
-            currentQueue = nextQueue;
+            filters.add(new CheckPoliticalPropagandaFilter());
         }
         if (config.detectSentiment) {
-            final BlockingQueue<ReviewMessage> nextQueue = new LinkedBlockingQueue<>();
-            executor.execute(() -> new SentimentDetectionFilter().process(currentQueue, nextQueue));
+            filters.add(new SentimentDetectionFilter());
+        }
+        return wireStages(filters, executor, settings, outputQueue);
+    }
+
+    // Un singur set de etape pentru toți clienții: fiecare filtru verifică flag-urile mesajului
+    // (vezi ReviewMessage.forClient), deci numărul de thread-uri și cozi nu crește cu numărul de clienți
+    public static BlockingQueue<ReviewMessage> buildSharedPipeline(PurchaseIndex purchases, ExecutorService executor,
+                                                                   StageSettings settings, BlockingQueue<ReviewMessage> outputQueue) {
+        List<BaseFilter> filters = new ArrayList<>();
+        filters.add(new CheckProfanitiesFilter());
+        filters.add(buyerFilter(purchases, settings));
+        filters.add(new ResizeImagesFilter());
+        filters.add(new CheckPoliticalPropagandaFilter());
+        filters.add(new SentimentDetectionFilter());
+        return wireStages(filters, executor, settings, outputQueue);
+    }
+
+    // Cu un PurchaseLookup în setări, achizițiile se verifică în depozitul extern în locul indexului local
+    private static CheckBuyerFilter buyerFilter(PurchaseIndex purchases, StageSettings settings) {
+        PurchaseLookup lookup = settings.getPurchaseLookup();
+        return lookup == null ? new CheckBuyerFilter(purchases) : new CheckBuyerFilter(lookup, settings.getLookupsInFlight());
+    }
+
+    private static BlockingQueue<ReviewMessage> wireStages(List<BaseFilter> filters, ExecutorService executor,
+                                                           StageSettings settings, BlockingQueue<ReviewMessage> outputQueue) {
+        for (BaseFilter filter : filters) {
+            filter.setBatchSize(settings.getBatchSize(filter.getClass()));
+        }
+        if (settings.isAdaptiveOrderingEnabled()) {
+            filters = rejectionsFirst(filters);
+        }
+        List<BaseFilter> stages = settings.isFusionEnabled() ? fuse(filters) : filters;
+
+        if (stages.isEmpty()) {
+            return outputQueue; // Niciun filtru activ: mesajele ajung direct la ieșire
+        }
+        final BlockingQueue<ReviewMessage> inputQueue = new LinkedBlockingQueue<>();
+        BlockingQueue<ReviewMessage> currentQueue = inputQueue;
+        for (int i = 0; i < stages.size(); i++) {
+            BaseFilter filter = stages.get(i);
+            filter.setWaitStrategy(settings.getWaitStrategy());
+            final BlockingQueue<ReviewMessage> stageInput = currentQueue;
+            final BlockingQueue<ReviewMessage> nextQueue = i == stages.size() - 1 ? outputQueue : new LinkedBlockingQueue<>();
+            int workers = settings.getParallelism(filter);
+            if (workers > 1) {
+                new ReplicatedStage(filter, workers, settings.isOrderPreserved(), settings.getWaitStrategy(), stageInput, nextQueue).start(executor);
+            } else {
+                executor.execute(() -> filter.process(stageInput, nextQueue));
+            }
             currentQueue = nextQueue;
         }
         return inputQueue;
     }
+
+    // Filtrele care elimină mesaje într-o etapă adaptivă, urmate de filtrele care transformă, în ordinea configurată.
+    // Un filtru blocant nu intră în etapa adaptivă: acolo ar fi apelat doar prin apply(), deci ar aștepta fiecare
+    // răspuns pe loc. Rămâne o etapă proprie, după etapa adaptivă, ca să primească doar mesajele care au trecut de ea.
+    static List<BaseFilter> rejectionsFirst(List<BaseFilter> filters) {
+        List<BaseFilter> rejecting = new ArrayList<>();
+        List<BaseFilter> blocking = new ArrayList<>();
+        List<BaseFilter> transforming = new ArrayList<>();
+        for (BaseFilter filter : filters) {
+            if (!filter.rejects()) {
+                transforming.add(filter);
+            } else if (filter.getCost() == FilterCost.BLOCKING) {
+                blocking.add(filter);
+            } else {
+                rejecting.add(filter);
+            }
+        }
+        List<BaseFilter> ordered = new ArrayList<>();
+        if (rejecting.size() > 1) {
+            ordered.add(new AdaptiveRejectionFilter(rejecting));
+        } else {
+            ordered.addAll(rejecting);
+        }
+        ordered.addAll(blocking);
+        ordered.addAll(transforming);
+        return ordered;
+    }
+
+    // Grupează filtrele ieftine consecutive; filtrele scumpe sau blocante rămân etape separate
+    static List<BaseFilter> fuse(List<BaseFilter> filters) {
+        List<BaseFilter> stages = new ArrayList<>();
+        List<BaseFilter> cheapRun = new ArrayList<>();
+        for (BaseFilter filter : filters) {
+            if (filter.getCost() == FilterCost.CHEAP) {
+                cheapRun.add(filter);
+                continue;
+            }
+            addFusedStage(cheapRun, stages);
+            stages.add(filter);
+        }
+        addFusedStage(cheapRun, stages);
+        return stages;
+    }
+
+    private static void addFusedStage(List<BaseFilter> cheapRun, List<BaseFilter> stages) {
+        if (cheapRun.size() == 1) {
+            stages.add(cheapRun.get(0));
+        } else if (cheapRun.size() > 1) {
+            stages.add(new FusedFilter(cheapRun));
+        }
+        cheapRun.clear();
+    }
+}
+
+// Modul în care rulează etapele pipeline-urilor
+enum ExecutionMode {
+    FIXED_POOL,      // Pool fix de thread-uri de platformă, câte unul ocupat permanent de fiecare etapă
+    VIRTUAL_THREADS  // Câte un thread virtual pentru fiecare etapă (Java 21+)
+}
+
+class PipelineExecutors {
+    static ExecutorService create(ExecutionMode mode, int poolSize) {
+        if (mode == ExecutionMode.VIRTUAL_THREADS) {
+            return newVirtualThreadPerTaskExecutor();
+        }
+        return Executors.newFixedThreadPool(poolSize);
+    }
+
+    // Prin reflecție, ca sursele să compileze și pe JDK-uri fără thread-uri virtuale
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Thread-urile virtuale necesită Java 21 sau mai nou", e);
+        }
+    }
 }
 
 // Aplicația principală
 class ConcurrentPipesFilters {
-    public static void main(String[] args) throws InterruptedException {
+    public static void main(String[] args) throws InterruptedException, IOException {
         Map<String, String> buyers = new HashMap<>();
         buyers.put("John", "Laptop");
         buyers.put("Mary", "Phone");
         buyers.put("Ann", "Book");
+        // Cu -Dpipeline.purchases=<fișier CSV>, achizițiile se încarcă în bloc din fișier în locul mapei de mai sus
+        PurchaseIndex purchases = PurchaseIndex.fromSystemProperty(buyers);
 
         Map<String, ClientConfig> clientConfigs = new HashMap<>();
         clientConfigs.put("ShopA", new ClientConfig(true, false, true, true, true));
         clientConfigs.put("ShopB", new ClientConfig(false, true, false, false, true));
 
-        ExecutorService executor = Executors.newFixedThreadPool(6);
+        // FIXED_POOL (implicit) sau VIRTUAL_THREADS; în modul virtual numărul de etape nu mai este limitat de pool
+        ExecutionMode mode = args.length > 0 ? ExecutionMode.valueOf(args[0].toUpperCase()) : ExecutionMode.FIXED_POOL;
+        ExecutorService executor = PipelineExecutors.create(mode, 6);
 
         List<ReviewMessage> messages = Arrays.asList(
             new ReviewMessage("John", "Laptop", "ok", "PICTURE"),
@@ -231,7 +1954,7 @@ class ConcurrentPipesFilters {
 
         for (String client : clientConfigs.keySet()) {
             System.out.println("Processing reviews for " + client + "...");
-            BlockingQueue<ReviewMessage> pipeline = ReviewPipelineBuilder.buildPipeline(clientConfigs.get(client), buyers, executor);
+            BlockingQueue<ReviewMessage> pipeline = ReviewPipelineBuilder.buildPipeline(clientConfigs.get(client), purchases, executor);
             for (ReviewMessage message : messages) {
                 pipeline.put(message);
             }
@@ -242,4 +1965,180 @@ class ConcurrentPipesFilters {
         executor.shutdown();
         executor.awaitTermination(2, TimeUnit.SECONDS);
     }
-}
\ No newline at end of file
+}
+
+// Compară modul FIXED_POOL cu VIRTUAL_THREADS pentru un număr tot mai mare de pipeline-uri per client
+class ExecutionModeBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int messagesPerPipeline = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int[] pipelineCounts = { 10, 100, 1_000 };
+
+        Map<String, String> buyers = new HashMap<>();
+        buyers.put("John", "Laptop");
+        buyers.put("Mary", "Phone");
+        buyers.put("Ann", "Book");
+        PurchaseIndex purchases = PurchaseIndex.of(buyers);
+
+        for (int pipelines : pipelineCounts) {
+            for (ExecutionMode mode : ExecutionMode.values()) {
+                try {
+                    run(mode, pipelines, messagesPerPipeline, purchases);
+                } catch (UnsupportedOperationException e) {
+                    System.out.println(mode + ", " + pipelines + " pipeline-uri: " + e.getMessage());
+                }
+            }
+            runShared(pipelines, messagesPerPipeline, purchases);
+        }
+    }
+
+    // Același trafic, dar toți clienții împart un singur pipeline; configurația călătorește cu fiecare mesaj
+    static void runShared(int clients, int messagesPerClient, PurchaseIndex purchases) throws InterruptedException {
+        int[] clientFlags = {
+            new ClientConfig(true, false, true, true, true).toFlags(),
+            new ClientConfig(false, true, false, false, true).toFlags()
+        };
+        StageSettings settings = new StageSettings().waitStrategy(new BlockingWaitStrategy());
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int baselineThreads;
+        do {
+            baselineThreads = threads.getThreadCount();
+            Thread.sleep(100);
+        } while (threads.getThreadCount() < baselineThreads);
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+
+        long startTime = System.nanoTime();
+        BlockingQueue<ReviewMessage> output = new LinkedBlockingQueue<>();
+        BlockingQueue<ReviewMessage> input = ReviewPipelineBuilder.buildSharedPipeline(purchases, executor, settings, output);
+        for (int client = 0; client < clients; client++) {
+            String name = "Shop" + client;
+            for (int i = 0; i < messagesPerClient; i++) {
+                input.put(new ReviewMessage("John", "Laptop", i % 2 == 0 ? "So GOOD" : "ok", "PICTURE")
+                        .forClient(name, clientFlags[client % clientFlags.length]));
+            }
+        }
+        input.put(ReviewPipeline.END_MESSAGE);
+        int platformThreads = threads.getThreadCount() - baselineThreads;
+        while (output.take() != ReviewPipeline.END_MESSAGE) {
+            // doar golim coada
+        }
+        long elapsed = System.nanoTime() - startTime;
+
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        double seconds = elapsed / 1_000_000_000.0;
+        System.out.println("SHARED, " + clients + " clienți: " + String.format("%.1f", elapsed / 1_000_000.0) + " ms, "
+                + String.format("%.0f", clients * messagesPerClient / seconds) + " mesaje/secundă, "
+                + platformThreads + " thread-uri de platformă noi");
+    }
+
+    static void run(ExecutionMode mode, int pipelines, int messagesPerPipeline, PurchaseIndex purchases) throws InterruptedException {
+        ClientConfig[] configs = {
+            new ClientConfig(true, false, true, true, true),
+            new ClientConfig(false, true, false, false, true)
+        };
+        StageSettings settings = new StageSettings().waitStrategy(new BlockingWaitStrategy());
+        // Fiecare pipeline are cel mult 5 etape; pool-ul fix trebuie să le acopere pe toate, altfel se blochează
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        // Așteptăm ca thread-urile rundei anterioare să se oprească
+        int baselineThreads;
+        do {
+            baselineThreads = threads.getThreadCount();
+            Thread.sleep(100);
+        } while (threads.getThreadCount() < baselineThreads);
+        ExecutorService executor = PipelineExecutors.create(mode, pipelines * 5);
+
+        long startTime = System.nanoTime();
+        List<BlockingQueue<ReviewMessage>> inputs = new ArrayList<>();
+        List<BlockingQueue<ReviewMessage>> outputs = new ArrayList<>();
+        for (int i = 0; i < pipelines; i++) {
+            BlockingQueue<ReviewMessage> outputQueue = new LinkedBlockingQueue<>();
+            inputs.add(ReviewPipelineBuilder.buildPipeline(configs[i % configs.length], purchases, executor, settings, outputQueue));
+            outputs.add(outputQueue);
+        }
+        for (BlockingQueue<ReviewMessage> input : inputs) {
+            for (int i = 0; i < messagesPerPipeline; i++) {
+                input.put(new ReviewMessage("John", "Laptop", i % 2 == 0 ? "So GOOD" : "ok", "PICTURE"));
+            }
+            input.put(ReviewPipeline.END_MESSAGE);
+        }
+        int platformThreads = threads.getThreadCount() - baselineThreads; // Thread-urile virtuale nu sunt numărate
+        for (BlockingQueue<ReviewMessage> output : outputs) {
+            while (output.take() != ReviewPipeline.END_MESSAGE) {
+                // doar golim coada
+            }
+        }
+        long elapsed = System.nanoTime() - startTime;
+
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        double seconds = elapsed / 1_000_000_000.0;
+        System.out.println(mode + ", " + pipelines + " pipeline-uri: " + String.format("%.1f", elapsed / 1_000_000.0) + " ms, "
+                + String.format("%.0f", pipelines * messagesPerPipeline / seconds) + " mesaje/secundă, "
+                + platformThreads + " thread-uri de platformă noi");
+    }
+}
+
+// Verificarea cumpărătorilor într-un depozit cu latență: câte un drum dus-întors per mesaj, comparat cu loturi
+// asincrone cu și fără cache. Rulare: java PurchaseStoreBenchmark [mesaje] [latența depozitului în microsecunde]
+class PurchaseStoreBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int messageCount = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        long latencyMicros = args.length > 1 ? Long.parseLong(args[1]) : 500;
+
+        // 2000 de utilizatori cu câte 1-3 produse; jumătate din recenzii vin de la cumpărători
+        Random random = new Random(42);
+        PurchaseIndex.Builder builder = PurchaseIndex.builder();
+        for (int user = 0; user < 2_000; user++) {
+            for (int product = 0; product <= user % 3; product++) {
+                builder.add("user" + user, "product" + product);
+            }
+        }
+        PurchaseIndex purchases = builder.build();
+        List<ReviewMessage> messages = new ArrayList<>(messageCount);
+        List<ReviewMessage> expected = new ArrayList<>();
+        for (int i = 0; i < messageCount; i++) {
+            int user = random.nextInt(2_000);
+            int product = random.nextBoolean() ? random.nextInt(user % 3 + 1) : 3 + random.nextInt(10);
+            ReviewMessage message = new ReviewMessage("user" + user, "product" + product, "ok", "PICTURE");
+            messages.add(message);
+            if (purchases.hasPurchased(message.usernameId, message.productId)) {
+                expected.add(message);
+            }
+        }
+
+        run("sincron, câte o cerere", messages, expected, purchases, latencyMicros, 1, 1, 0);
+        run("asincron, loturi fără cache", messages, expected, purchases, latencyMicros, 256, 64, 0);
+        run("asincron, loturi cu cache", messages, expected, purchases, latencyMicros, 256, 64, 100_000);
+    }
+
+    static void run(String name, List<ReviewMessage> messages, List<ReviewMessage> expected, PurchaseIndex purchases,
+                    long latencyMicros, int inFlight, int batchSize, int cacheCapacity) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try (InMemoryPurchaseStore store = new InMemoryPurchaseStore(purchases, latencyMicros);
+             PurchaseLookup lookup = new PurchaseLookup(store, batchSize, 1_000, cacheCapacity, 60_000, 5_000)) {
+            StageSettings settings = new StageSettings().purchaseLookup(lookup, inFlight);
+            BlockingQueue<ReviewMessage> output = new LinkedBlockingQueue<>();
+            long startTime = System.nanoTime();
+            BlockingQueue<ReviewMessage> input = ReviewPipelineBuilder.buildPipeline(
+                    new ClientConfig(false, true, false, false, false), purchases, executor, settings, output);
+            for (ReviewMessage message : messages) {
+                input.put(message);
+            }
+            input.put(ReviewPipeline.END_MESSAGE);
+            List<ReviewMessage> received = new ArrayList<>();
+            for (ReviewMessage message = output.take(); message != ReviewPipeline.END_MESSAGE; message = output.take()) {
+                received.add(message);
+            }
+            long elapsed = System.nanoTime() - startTime;
+
+            double seconds = elapsed / 1_000_000_000.0;
+            System.out.println(name + ": " + String.format("%.1f", elapsed / 1_000_000.0) + " ms, "
+                    + String.format("%.0f", messages.size() / seconds) + " mesaje/secundă, "
+                    + store.getRequestCount() + " cereri la depozit, " + lookup
+                    + ", ieșire " + (received.equals(expected) ? "corectă și în ordine" : "GREȘITĂ"));
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+}